@@ -39,6 +39,7 @@ public class C1XMetrics {
     public static int MethodsFolded;
     public static int InlineForcedMethods;
     public static int InlineForbiddenMethods;
+    public static int InlineProfiledReceivers;
     public static int InlinedJsrs;
     public static int NullCheckIterations;
     public static int NullCheckEliminations;
@@ -53,6 +54,10 @@ public class C1XMetrics {
     public static int BlocksSkipped;
     public static int BlocksDeleted;
     public static int DeadCodeEliminated;
+    public static int AllocationsScalarReplaced;
+    public static int LocksElided;
+    public static int LoopInvariantsHoisted;
+    public static int LoopsUnrolled;
     public static int ResolveCPEAttempts;
     public static int BytecodesCompiled;
     public static int CodeBytesEmitted;
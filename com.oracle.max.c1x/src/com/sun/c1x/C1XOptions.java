@@ -36,6 +36,7 @@ public final class C1XOptions {
     public static boolean OptInline                          = ____;
     public static boolean OptInlineExcept                    = ____;
     public static boolean OptInlineSynchronized              = ____;
+    public static boolean OptProfileGuidedInlining           = ____;
 
     public static int     MaximumInstructionCount            = 37000;
     public static float   MaximumInlineRatio                 = 0.90f;
@@ -45,6 +46,16 @@ public final class C1XOptions {
     public static int     MaximumRecursiveInlineLevel        = 1;
     public static int     MaximumDesiredSize                 = 8000;
     public static int     MaximumShortLoopSize               = 5;
+    public static int     ProfileInliningMinCount            = 100;
+    public static float   ProfileInliningMinProbability      = 0.90f;
+
+    // escape analysis settings
+    public static int     EscapeAnalysisMaxFields            = 32;
+    public static int     EscapeAnalysisMaxArrayLength       = 32;
+
+    // loop optimization settings
+    public static int     LoopUnrollFactor                   = 4;
+    public static int     MaximumUnrolledLoopSize            = 64;
 
     // intrinsification settings
     public static boolean OptIntrinsify                      = ____;
@@ -68,6 +79,9 @@ public final class C1XOptions {
     // printing settings
     public static boolean PrintHIR                           = ____;
     public static boolean PrintInliningFailures              = ____;
+    public static boolean PrintProfiledInlining              = ____;
+    public static boolean PrintEscapeAnalysis                = ____;
+    public static boolean PrintLoopOptimizations             = ____;
     public static boolean PrintLIR                           = ____;
     public static boolean PrintCFGToFile                     = ____;
     public static boolean PrintMetrics                       = ____;
@@ -119,6 +133,10 @@ public final class C1XOptions {
     public static boolean OptDeadCodeElimination2;
     public static boolean OptControlFlow;
     public static boolean OptMoveElimination;
+    public static boolean OptEscapeAnalysis;
+    public static boolean OptLoopInvariantCodeMotion;
+    public static boolean OptLoopBoundsCheckElimination;
+    public static boolean OptLoopUnrolling;
 
     // optimistic optimization settings
     public static boolean UseAssumptions                = true;
@@ -220,6 +238,7 @@ public final class C1XOptions {
         OptIntrinsify                   = lll;
         OptInlineExcept                 = lll;
         OptInlineSynchronized           = lll;
+        OptProfileGuidedInlining        = lll;
         UseStackMapTableLiveness        = lll;
         UseAssumptions                  = lll;
         OptIterativeNCE                 = lll;
@@ -230,5 +249,9 @@ public final class C1XOptions {
         OptDiamondElimination           = lll;
         OptCEElimination                = lll;
         OptBlockSkipping                = lll;
+        OptEscapeAnalysis               = lll;
+        OptLoopInvariantCodeMotion      = lll;
+        OptLoopBoundsCheckElimination   = lll;
+        OptLoopUnrolling                = lll;
     }
 }
@@ -2136,20 +2136,45 @@ public final class LinearScan {
         }
     }
 
-    CiFrame computeFrameForState(int opId, FrameState state, CiBitMap frameRefMap) {
+    /**
+     * Converts a value in a frame state to the location or constant describing it in the debug information.
+     * A {@link VirtualObject} is converted to a {@link CiVirtualObject} whose contents are those recorded
+     * in {@code topState}. All occurrences of a virtual object within the frames described by {@code topState}
+     * are converted to the same {@link CiVirtualObject}.
+     */
+    CiValue toCiValue(int opId, Value value, FrameState topState, IdentityHashMap<VirtualObject, CiVirtualObject> virtualObjects) {
+        if (value instanceof VirtualObject) {
+            VirtualObject object = (VirtualObject) value;
+            CiVirtualObject result = virtualObjects.get(object);
+            if (result == null) {
+                Value[] entries = topState.virtualObjectValues(object);
+                assert entries != null : "no contents recorded for " + object + " in " + topState;
+                CiValue[] values = new CiValue[entries.length];
+                result = CiVirtualObject.get(object.type(), values, virtualObjects.size());
+                virtualObjects.put(object, result);
+                for (int i = 0; i < entries.length; i++) {
+                    values[i] = toCiValue(opId, entries[i], topState, virtualObjects);
+                }
+            }
+            return result;
+        }
+        return toCiValue(opId, value);
+    }
+
+    CiFrame computeFrameForState(int opId, FrameState state, FrameState topState, IdentityHashMap<VirtualObject, CiVirtualObject> virtualObjects, CiBitMap frameRefMap) {
         CiFrame callerFrame = null;
 
         FrameState callerState = state.callerState();
         if (callerState != null) {
             // process recursively to compute outermost scope first
-            callerFrame = computeFrameForState(opId, callerState, frameRefMap);
+            callerFrame = computeFrameForState(opId, callerState, topState, virtualObjects, frameRefMap);
         }
 
         CiValue[] values = new CiValue[state.valuesSize() + state.locksSize()];
         int valueIndex = 0;
 
         for (int i = 0; i < state.valuesSize(); i++) {
-            values[valueIndex++] = toCiValue(opId, state.valueAt(i));
+            values[valueIndex++] = toCiValue(opId, state.valueAt(i), topState, virtualObjects);
         }
 
         for (int i = 0; i < state.locksSize(); i++) {
@@ -2165,7 +2190,7 @@ public final class LinearScan {
                     // lock on class for synchronized static method
                     values[valueIndex++] = lock.asConstant();
                 } else {
-                    values[valueIndex++] = toCiValue(opId, lock);
+                    values[valueIndex++] = toCiValue(opId, lock, topState, virtualObjects);
                 }
             }
         }
@@ -2203,7 +2228,7 @@ public final class LinearScan {
         if (C1XOptions.TraceLinearScanLevel >= 3) {
             TTY.println("creating debug information at opId %d", opId);
         }
-        return computeFrameForState(opId, state, frameRefMap);
+        return computeFrameForState(opId, state, state, new IdentityHashMap<VirtualObject, CiVirtualObject>(), frameRefMap);
     }
 
     private void assignLocations(List<LIRInstruction> instructions, IntervalWalker iw) {
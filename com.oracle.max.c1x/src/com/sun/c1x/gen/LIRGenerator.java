@@ -45,6 +45,7 @@ import com.sun.c1x.stub.*;
 import com.sun.c1x.util.*;
 import com.sun.c1x.value.*;
 import com.sun.c1x.value.FrameState.PhiProcedure;
+import com.sun.c1x.value.FrameState.ValueProcedure;
 import com.sun.cri.bytecode.*;
 import com.sun.cri.ci.*;
 import com.sun.cri.ci.CiAddress.Scale;
@@ -313,6 +314,14 @@ public abstract class LIRGenerator extends ValueVisitor {
         emitXir(snippet, x, stateFor(x), null, true);
     }
 
+    @Override
+    public void visitTypeGuard(TypeGuard x) {
+        XirArgument obj = toXirArgument(x.object());
+        XirArgument hub = XirArgument.forObject(x.type.getEncoding(RiType.Representation.ObjectHub).asObject());
+        XirSnippet snippet = xir.genTypeCheck(site(x), obj, hub, x.type);
+        emitXir(snippet, x, stateFor(x), null, false);
+    }
+
     @Override
     public void visitInstanceOf(InstanceOf x) {
         XirArgument obj = toXirArgument(x.object());
@@ -431,9 +440,8 @@ public abstract class LIRGenerator extends ValueVisitor {
         setNoResult(x);
 
         if (currentBlock.next() instanceof OsrEntry) {
-            // need to free up storage used for OSR entry point
-            CiValue osrBuffer = currentBlock.next().operand();
-            callRuntime(CiRuntimeCall.OSRMigrationEnd, null, osrBuffer);
+            // the locals have been loaded from the OSR buffer: notify the runtime that the migration is complete
+            callRuntime(CiRuntimeCall.OSRMigrationEnd, stateFor(x, x.stateAfter()));
             emitXir(xir.genSafepointPoll(site(x)), x, stateFor(x, x.stateAfter()), null, false);
         } else if (x.isSafepointPoll()) {
             emitXir(xir.genSafepointPoll(site(x)), x, stateFor(x, x.stateAfter()), null, false);
@@ -897,6 +905,11 @@ public abstract class LIRGenerator extends ValueVisitor {
         Util.shouldNotReachHere();
     }
 
+    @Override
+    public void visitVirtualObject(VirtualObject i) {
+        Util.shouldNotReachHere();
+    }
+
     @Override
     public void visitReturn(Return x) {
         if (x.kind.isVoid()) {
@@ -1825,6 +1838,15 @@ public abstract class LIRGenerator extends ValueVisitor {
     }
 
     protected void preGCWriteBarrier(CiValue addrOpr, boolean patch, LIRDebugInfo info) {
+        CiValue pointer = addrOpr;
+        if (addrOpr instanceof CiAddress) {
+            pointer = newVariable(compilation.target.wordKind);
+            lir.lea((CiAddress) addrOpr, pointer);
+        }
+        XirSnippet writeBarrier = xir.genPreWriteBarrier(toXirArgument(pointer));
+        if (writeBarrier != null) {
+            emitXir(writeBarrier, null, null, null, false);
+        }
     }
 
     protected void setNoResult(Instruction x) {
@@ -1896,9 +1918,21 @@ public abstract class LIRGenerator extends ValueVisitor {
             bci = scope.callerBCI();
             s = s.callerState();
         }
+
+        if (state.hasVirtualObjects()) {
+            state.forEachLiveStateValue(new ValueProcedure() {
+                public void doValue(Value value) {
+                    walkStateValue(value);
+                }
+            });
+        }
     }
 
     private void walkStateValue(Value value) {
+        if (value instanceof VirtualObject) {
+            // the contents of a virtual object are walked separately
+            return;
+        }
         if (value != null) {
             assert !value.hasSubst() : "missed substitution";
             assert value.isLive() : "value must be marked live in frame state";
@@ -120,7 +120,14 @@ public final class GraphBuilder {
         // 2. compute the block map and get the entrypoint(s)
         BlockMap blockMap = compilation.getBlockMap(scope.method, compilation.osrBCI);
         BlockBegin stdEntry = blockMap.get(0);
-        BlockBegin osrEntry = compilation.osrBCI < 0 ? null : blockMap.get(compilation.osrBCI);
+        BlockBegin osrEntry = null;
+        if (compilation.osrBCI >= 0) {
+            // the OSR entry is a separate block that loads the locals from the OSR buffer and then
+            // jumps to the loop header; it is filled in when the loop header is first parsed
+            osrEntry = new BlockBegin(compilation.osrBCI, ir.nextBlockNumber());
+            osrEntry.setOsrEntry(true);
+            ir.osrEntryBlock = osrEntry;
+        }
         pushRootScope(scope, blockMap, startBlock);
         MutableFrameState initialState = stateAtEntry(rootMethod);
         startBlock.mergeOrClone(initialState);
@@ -204,7 +211,9 @@ public final class GraphBuilder {
 
         if (compilation.osrBCI >= 0) {
             BlockBegin osrBlock = blockMap.get(compilation.osrBCI);
-            assert osrBlock.wasVisited();
+            if (!osrBlock.wasVisited() || ir.osrEntryBlock.end() == null) {
+                throw new CiBailout("OSR entry point is not reachable");
+            }
             if (!osrBlock.stateBefore().stackEmpty()) {
                 throw new CiBailout("cannot OSR with non-empty stack");
             }
@@ -921,9 +930,11 @@ public final class GraphBuilder {
         if (target == null) {
             return;
         }
+        // the state with the arguments still on the stack is needed to deoptimize a profile-guarded inlining
+        FrameState stateBefore = C1XOptions.OptProfileGuidedInlining ? curState.immutableCopy(bci()) : null;
         Value[] args = curState.popArguments(target.signature().argumentSlots(true));
         if (!tryRemoveCall(target, args, false)) {
-            genInvokeIndirect(INVOKEINTERFACE, target, args, cpi, constantPool);
+            genInvokeIndirect(INVOKEINTERFACE, target, args, cpi, constantPool, stateBefore);
         }
     }
 
@@ -932,9 +943,11 @@ public final class GraphBuilder {
         if (target == null) {
             return;
         }
+        // the state with the arguments still on the stack is needed to deoptimize a profile-guarded inlining
+        FrameState stateBefore = C1XOptions.OptProfileGuidedInlining ? curState.immutableCopy(bci()) : null;
         Value[] args = curState.popArguments(target.signature().argumentSlots(true));
         if (!tryRemoveCall(target, args, false)) {
-            genInvokeIndirect(INVOKEVIRTUAL, target, args, cpi, constantPool);
+            genInvokeIndirect(INVOKEVIRTUAL, target, args, cpi, constantPool, stateBefore);
         }
     }
 
@@ -997,7 +1010,7 @@ public final class GraphBuilder {
         return false;
     }
 
-    private void genInvokeIndirect(int opcode, RiMethod target, Value[] args, int cpi, RiConstantPool constantPool) {
+    private void genInvokeIndirect(int opcode, RiMethod target, Value[] args, int cpi, RiConstantPool constantPool, FrameState stateBefore) {
         Value receiver = args[0];
 
         assert target.holder().kind(false) == CiKind.Object;
@@ -1056,12 +1069,67 @@ public final class GraphBuilder {
                 assert result : "Inlining must succeed";
                 return;
             }
+            // 4. inline the method of the dominant receiver type recorded by the type profile
+            if (stateBefore != null && tryInlineProfiledReceiver(resolvedTarget, args, stateBefore)) {
+                return;
+            }
         }
 
         // devirtualization failed, produce an actual invokevirtual
         appendInvoke(opcode, target, args, false, cpi, constantPool);
     }
 
+    /**
+     * Attempts to inline the implementation of {@code target} for the receiver type that dominates the
+     * {@linkplain RiResolvedMethod#typeProfile(int) type profile} of the current call site. The inlined code
+     * is guarded by a {@link TypeGuard} that deoptimizes if the receiver has any other type, so the call
+     * site does not need a virtual dispatch fallback.
+     *
+     * @param target the resolved target of the virtual or interface call
+     * @param args the arguments of the call
+     * @param stateBefore the state before the call, with the arguments on the stack
+     * @return {@code true} if the call was inlined
+     */
+    private boolean tryInlineProfiledReceiver(RiResolvedMethod target, Value[] args, FrameState stateBefore) {
+        RiTypeProfile profile = method().typeProfile(bci());
+        if (profile == null || profile.types == null || profile.count < C1XOptions.ProfileInliningMinCount) {
+            return cannotInline(target, "no mature receiver type profile");
+        }
+        RiResolvedType dominant = null;
+        float probability = 0f;
+        for (int i = 0; i < profile.types.length; i++) {
+            if (profile.probabilities[i] > probability) {
+                probability = profile.probabilities[i];
+                dominant = profile.types[i];
+            }
+        }
+        if (dominant == null || probability < C1XOptions.ProfileInliningMinProbability) {
+            return cannotInline(target, "receiver type profile is polymorphic (morphism " + profile.morphism + ")");
+        }
+        if (dominant.isInterface() || isAbstract(dominant.accessFlags()) || !dominant.isSubtypeOf(target.holder())) {
+            return cannotInline(target, "profiled receiver type " + dominant + " is not a concrete subtype of the holder");
+        }
+        RiResolvedMethod impl = dominant.resolveMethodImpl(target);
+        if (impl == null || isAbstract(impl.accessFlags()) || !checkInliningConditions(impl)) {
+            return false;
+        }
+        if (C1XOptions.PrintProfiledInlining) {
+            TTY.println("Inlining " + impl + " into " + compilation.method + " for profiled receiver type " + dominant +
+                            " (probability " + probability + ", " + profile.count + " calls)");
+        }
+        C1XMetrics.InlineProfiledReceivers++;
+
+        Value receiver = args[0];
+        if (!receiver.isNonNull()) {
+            receiver = append(new NullCheck(receiver, null));
+            args[0] = receiver;
+        }
+        appendWithoutOptimization(new TypeGuard(receiver, dominant, stateBefore), bci());
+        boolean result = tryInline(impl, args);
+        assert result : "inlining conditions were checked above";
+        return result;
+    }
+
     private CiKind returnKind(RiMethod target) {
         return target.signature().returnKind(false);
     }
@@ -2046,13 +2114,63 @@ public final class GraphBuilder {
         lastInstr = origLast;
     }
 
+    /**
+     * Fills in the OSR entry block created in {@link #build(IRScope)}. The block loads every
+     * live local of the interpreter frame from the OSR buffer (one word per local index) and
+     * then jumps to the loop header {@code target}, merging its state into the header's phis.
+     *
+     * @param target the loop header at which the OSR compilation is entered
+     */
+    private void setupOsrEntryBlock(BlockBegin target) {
+        FrameState targetState = target.stateBefore();
+        if (!targetState.stackEmpty()) {
+            throw new CiBailout("cannot OSR with non-empty stack");
+        }
+        if (targetState.locksSize() > 0 || isSynchronized(compilation.method.accessFlags())) {
+            throw new CiBailout("cannot OSR with locked monitors");
+        }
+
+        BlockBegin origBlock = curBlock;
+        MutableFrameState origState = curState;
+        Instruction origLast = lastInstr;
+
+        BlockBegin osrBlock = ir.osrEntryBlock;
+        killMemoryMap();
+        curBlock = osrBlock;
+        curState = targetState.copy();
+        lastInstr = osrBlock;
+        osrBlock.setNext(null, -1);
+
+        Value buffer = appendWithoutOptimization(new OsrEntry(), target.bci());
+        int wordSize = compilation.target.wordSize;
+        for (int i = 0; i < curState.localsSize(); i++) {
+            Value local = curState.localAt(i);
+            if (local != null) {
+                Value offset = appendConstant(CiConstant.forInt(i * wordSize));
+                Value value = appendWithoutOptimization(new UnsafeGetRaw(local.kind, buffer, offset, 0, false), target.bci());
+                curState.storeLocal(i, value);
+            }
+        }
+
+        FrameState stateAfter = curState.immutableCopy(target.bci());
+        Goto g = new Goto(target, stateAfter, false);
+        appendWithoutOptimization(g, target.bci());
+        osrBlock.setEnd(g);
+        target.mergeOrClone(stateAfter);
+
+        curBlock = origBlock;
+        curState = origState;
+        lastInstr = origLast;
+    }
+
     private void iterateAllBlocks() {
         BlockBegin b;
         while ((b = scopeData.removeFromWorkList()) != null) {
             if (!b.wasVisited()) {
                 if (b.isOsrEntry()) {
-                    // OSR not yet supported
-                    Util.shouldNotReachHere();
+                    // the loop header targeted by OSR: build the entry block that migrates into it
+                    setupOsrEntryBlock(b);
+                    b.setOsrEntry(false);
                 }
                 b.setWasVisited(true);
                 // now parse the block
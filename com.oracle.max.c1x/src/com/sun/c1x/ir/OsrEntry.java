@@ -31,11 +31,12 @@ import com.sun.cri.ci.*;
 public final class OsrEntry extends Instruction {
 
     /**
-     * Constructs a new OsrEntry instruction.
+     * Constructs a new OsrEntry instruction. The buffer is a raw address, so it is
+     * typed as a {@link CiKind#Long} as required by {@link UnsafeGetRaw}.
      */
     public OsrEntry() {
-        // TODO: this should be a CiKind.Word
-        super(CiKind.Jsr);
+        super(CiKind.Long);
+        setFlag(Flag.NonNull);
     }
 
     @Override
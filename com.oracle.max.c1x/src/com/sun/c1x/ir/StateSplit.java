@@ -74,6 +74,17 @@ public abstract class StateSplit extends Instruction {
         this.stateBefore = stateBefore;
     }
 
+    /**
+     * Replaces the state of this instruction after it has been moved to a position where the state
+     * before executing it is different.
+     *
+     * @param stateBefore the state at the new position
+     */
+    public final void replaceStateBefore(FrameState stateBefore) {
+        assert this.stateBefore != null && !isStateCleared();
+        this.stateBefore = stateBefore;
+    }
+
     /**
      * Gets the state for this instruction.
      * @return the state
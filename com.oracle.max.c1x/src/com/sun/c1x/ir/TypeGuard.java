@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.c1x.ir;
+
+import static com.sun.c1x.util.Util.*;
+
+import com.oracle.max.criutils.*;
+import com.sun.c1x.value.*;
+import com.sun.cri.ci.*;
+import com.sun.cri.ri.*;
+
+/**
+ * Checks that the exact type of a non-null object is a given type and deoptimizes if it is not.
+ * This is used to guard code that was specialized for the receiver type recorded in a type profile.
+ */
+public final class TypeGuard extends StateSplit {
+
+    Value object;
+    public final RiResolvedType type;
+
+    /**
+     * Creates a new TypeGuard instruction.
+     *
+     * @param object the instruction producing the object whose type is checked; must not be null
+     * @param type the expected exact type of the object
+     * @param stateBefore the state to deoptimize to if the check fails
+     */
+    public TypeGuard(Value object, RiResolvedType type, FrameState stateBefore) {
+        super(CiKind.Illegal, stateBefore);
+        assert object.isNonNull();
+        this.object = object;
+        this.type = type;
+        setFlag(Flag.LiveSideEffect); // ensure this instruction is not eliminated
+    }
+
+    /**
+     * Gets the instruction that produces the object whose type is checked.
+     */
+    public Value object() {
+        return object;
+    }
+
+    @Override
+    public boolean canTrap() {
+        return true;
+    }
+
+    @Override
+    public void inputValuesDo(ValueClosure closure) {
+        object = closure.apply(object);
+    }
+
+    @Override
+    public void accept(ValueVisitor v) {
+        v.visitTypeGuard(this);
+    }
+
+    @Override
+    public void print(LogStream out) {
+        out.print("typeGuard ").print(valueString(object)).print(" ").print(CiUtil.toJavaName(type));
+    }
+}
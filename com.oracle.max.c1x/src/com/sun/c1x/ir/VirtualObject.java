@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.c1x.ir;
+
+import com.oracle.max.criutils.*;
+import com.sun.c1x.opt.*;
+import com.sun.c1x.value.*;
+import com.sun.cri.ci.*;
+import com.sun.cri.ri.*;
+
+/**
+ * The {@code VirtualObject} value represents an allocation that has been removed by
+ * {@linkplain EscapeAnalyzer escape analysis}. It only appears in {@linkplain FrameState frame states}.
+ * The values of the object's fields at a given deoptimization point are recorded in the frame
+ * state used for the debug information at that point (see {@link FrameState#virtualObjectValues(VirtualObject)}).
+ */
+public final class VirtualObject extends Value {
+
+    private final RiResolvedType type;
+    private final int entryCount;
+
+    /**
+     * Creates a new virtual object.
+     * @param type the type of the object whose allocation was removed
+     * @param entryCount the number of fields of an instance or the length of an array
+     */
+    public VirtualObject(RiResolvedType type, int entryCount) {
+        super(CiKind.Object);
+        this.type = type;
+        this.entryCount = entryCount;
+        setFlag(Flag.NonNull);
+    }
+
+    /**
+     * Gets the type of the object whose allocation was removed.
+     */
+    public RiResolvedType type() {
+        return type;
+    }
+
+    /**
+     * Gets the number of values describing the contents of this object.
+     */
+    public int entryCount() {
+        return entryCount;
+    }
+
+    @Override
+    public BlockBegin block() {
+        return null;
+    }
+
+    @Override
+    public RiResolvedType declaredType() {
+        return type;
+    }
+
+    @Override
+    public RiResolvedType exactType() {
+        return type;
+    }
+
+    @Override
+    public void accept(ValueVisitor v) {
+        v.visitVirtualObject(this);
+    }
+
+    @Override
+    public void print(LogStream out) {
+        out.print("virtual ").print(CiUtil.toJavaName(type));
+    }
+}
@@ -0,0 +1,554 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.c1x.opt;
+
+import java.util.*;
+
+import com.oracle.max.criutils.*;
+import com.sun.c1x.*;
+import com.sun.c1x.graph.*;
+import com.sun.c1x.ir.*;
+import com.sun.c1x.value.*;
+import com.sun.c1x.value.FrameState.PhiProcedure;
+import com.sun.cri.ci.*;
+import com.sun.cri.ri.*;
+
+/**
+ * Removes allocations of objects that do not escape the compilation unit and replaces accesses to their
+ * fields (or elements) with the values stored. An allocation is replaced if the object is only used
+ * as the receiver of field and constant-index array element accesses, by {@code monitorenter} and
+ * {@code monitorexit}, and in frame states. All stores to the object must be in the block containing
+ * the allocation so that the contents of the object are known at every point without creating phis.
+ * Locking a replaced object is removed.
+ * <p>
+ * Frame states refer to a replaced object through a {@link VirtualObject} and record its contents
+ * (see {@link FrameState#setVirtualObjectValues(VirtualObject, Value[])}) so that the object can be
+ * reallocated, and relocked if necessary, upon deoptimization.
+ */
+public final class EscapeAnalyzer {
+
+    /**
+     * An allocation that is a candidate for scalar replacement.
+     */
+    private static final class Candidate {
+        final StateSplit allocation;
+        final BlockBegin block;
+        final RiResolvedType type;
+
+        /**
+         * The instance fields of the allocated object, superclass fields first, or {@code null} if it is an array.
+         */
+        final RiResolvedField[] fields;
+
+        /**
+         * The storage kind of each field or element.
+         */
+        final CiKind[] kinds;
+
+        /**
+         * The values of the fields or elements at the end of {@link #block}. A {@code null} entry denotes the default value
+         * until the default values have been inserted into the IR.
+         */
+        final Value[] finalValues;
+
+        /**
+         * The initial values of the fields or elements.
+         */
+        Value[] initialValues;
+
+        /**
+         * The instruction after which the object's contents are tracked within {@link #block}.
+         */
+        Instruction start;
+
+        /**
+         * The array length of an array allocation.
+         */
+        Constant length;
+
+        VirtualObject object;
+        boolean escapes;
+
+        /**
+         * Set once an instruction that may throw to an exception handler follows the allocation in {@link #block}.
+         * The handler would see the contents of the object at the throwing instruction, so later stores prevent
+         * scalar replacement.
+         */
+        boolean sealed;
+
+        Candidate(StateSplit allocation, BlockBegin block, RiResolvedType type, RiResolvedField[] fields, CiKind[] kinds) {
+            this.allocation = allocation;
+            this.block = block;
+            this.type = type;
+            this.fields = fields;
+            this.kinds = kinds;
+            this.finalValues = new Value[kinds.length];
+        }
+
+        boolean isArray() {
+            return fields == null;
+        }
+    }
+
+    final IR ir;
+    final InstructionSubstituter substituter;
+    final List<BlockBegin> blocks = new ArrayList<BlockBegin>();
+    final IdentityHashMap<Value, Candidate> candidates = new IdentityHashMap<Value, Candidate>();
+
+    /**
+     * Maps each frame state used by an instruction to the block and number of preceding stores in that block.
+     * A frame state used at two points separated by a store to a candidate cannot record a single set of contents.
+     */
+    final IdentityHashMap<FrameState, Long> statePositions = new IdentityHashMap<FrameState, Long>();
+
+    /**
+     * Performs escape analysis and scalar replacement on the specified IR.
+     * @param ir the IR
+     */
+    public EscapeAnalyzer(IR ir) {
+        this.ir = ir;
+        this.substituter = new InstructionSubstituter(ir);
+        ir.startBlock.iteratePreOrder(new BlockClosure() {
+            public void apply(BlockBegin block) {
+                blocks.add(block);
+            }
+        });
+
+        for (BlockBegin block : blocks) {
+            findCandidates(block);
+        }
+        if (candidates.isEmpty()) {
+            return;
+        }
+        for (BlockBegin block : blocks) {
+            findEscapes(block);
+        }
+
+        List<Candidate> replaced = new ArrayList<Candidate>();
+        for (Candidate c : candidates.values()) {
+            if (!c.escapes) {
+                replaced.add(c);
+            }
+        }
+        if (replaced.isEmpty()) {
+            return;
+        }
+        candidates.clear();
+        for (Candidate c : replaced) {
+            candidates.put(c.allocation, c);
+            replaceAllocation(c);
+        }
+        for (BlockBegin block : blocks) {
+            replaceUses(block);
+        }
+        substituter.finish();
+    }
+
+    private void findCandidates(BlockBegin block) {
+        for (Instruction i = block.next(); i != null; i = i.next()) {
+            Candidate c = null;
+            if (i instanceof NewInstance) {
+                c = newInstanceCandidate((NewInstance) i, block);
+            } else if (i instanceof NewTypeArray) {
+                c = newTypeArrayCandidate((NewTypeArray) i, block);
+            }
+            if (c != null) {
+                candidates.put(i, c);
+            }
+        }
+    }
+
+    private static Candidate newInstanceCandidate(NewInstance allocation, BlockBegin block) {
+        RiResolvedType type = allocation.exactType();
+        if (type == null || !type.isInstanceClass() || !type.isInitialized() || type.hasFinalizer()) {
+            return null;
+        }
+        ArrayList<RiResolvedField> fields = new ArrayList<RiResolvedField>();
+        for (RiResolvedType t = type; t != null; t = t.superType()) {
+            fields.addAll(0, Arrays.asList(t.declaredFields()));
+        }
+        if (fields.size() > C1XOptions.EscapeAnalysisMaxFields) {
+            return null;
+        }
+        CiKind[] kinds = new CiKind[fields.size()];
+        for (int i = 0; i < kinds.length; i++) {
+            RiResolvedField field = fields.get(i);
+            kinds[i] = field.kind(false);
+            if (kinds[i] != field.kind(true)) {
+                // the field does not hold a Java value
+                return null;
+            }
+        }
+        return new Candidate(allocation, block, type, fields.toArray(new RiResolvedField[fields.size()]), kinds);
+    }
+
+    private static Candidate newTypeArrayCandidate(NewTypeArray allocation, BlockBegin block) {
+        Value length = allocation.length();
+        if (!length.isConstant() || length.kind != CiKind.Int) {
+            return null;
+        }
+        int n = length.asConstant().asInt();
+        if (n < 0 || n > C1XOptions.EscapeAnalysisMaxArrayLength) {
+            return null;
+        }
+        RiResolvedType type = allocation.exactType();
+        CiKind elementKind = type.componentType().kind(false);
+        if (elementKind != allocation.elementKind()) {
+            // the elements are not Java values
+            return null;
+        }
+        CiKind[] kinds = new CiKind[n];
+        Arrays.fill(kinds, elementKind);
+        return new Candidate(allocation, block, type, null, kinds);
+    }
+
+    /**
+     * Gets the index of the field or element of a candidate accessed by a given instruction.
+     *
+     * @return the index of the accessed entry or -1 if {@code access} does not access a known entry of {@code c}
+     */
+    private static int entryIndex(Candidate c, Instruction access) {
+        if (access instanceof AccessField) {
+            AccessField a = (AccessField) access;
+            if (!c.isArray() && !a.isStatic() && a.isLoaded()) {
+                for (int i = 0; i < c.fields.length; i++) {
+                    if (c.fields[i] == a.field()) {
+                        return i;
+                    }
+                }
+            }
+        } else if (access instanceof AccessIndexed) {
+            Value index = ((AccessIndexed) access).index();
+            if (c.isArray() && index.isConstant() && index.kind == CiKind.Int) {
+                int i = index.asConstant().asInt();
+                if (i >= 0 && i < c.kinds.length) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Determines if a given use of a candidate can be removed when the candidate is scalar replaced.
+     */
+    private static boolean isReplaceableUse(Candidate c, Instruction use) {
+        Value object = c.allocation;
+        if (use instanceof LoadField) {
+            return ((LoadField) use).object() == object && entryIndex(c, use) >= 0;
+        }
+        if (use instanceof StoreField) {
+            StoreField store = (StoreField) use;
+            return store.object() == object && store.value() != object && entryIndex(c, use) >= 0;
+        }
+        if (use instanceof LoadIndexed) {
+            return ((LoadIndexed) use).array() == object && entryIndex(c, use) >= 0;
+        }
+        if (use instanceof StoreIndexed) {
+            StoreIndexed store = (StoreIndexed) use;
+            return store.array() == object && store.value() != object && entryIndex(c, use) >= 0;
+        }
+        if (use instanceof ArrayLength) {
+            return c.isArray();
+        }
+        if (use instanceof MonitorEnter || use instanceof MonitorExit) {
+            return ((AccessMonitor) use).object() == object;
+        }
+        return false;
+    }
+
+    /**
+     * Gets the candidate accessed by a given instruction if the instruction is one that is removed when the
+     * candidate is scalar replaced.
+     */
+    private Candidate accessedCandidate(Instruction i) {
+        Value object = null;
+        if (i instanceof AccessField) {
+            object = ((AccessField) i).object();
+        } else if (i instanceof AccessArray) {
+            object = ((AccessArray) i).array();
+        } else if (i instanceof MonitorEnter || i instanceof MonitorExit) {
+            object = ((AccessMonitor) i).object();
+        }
+        if (object != null) {
+            Candidate c = candidates.get(object);
+            if (c != null && isReplaceableUse(c, i)) {
+                return c;
+            }
+        }
+        return null;
+    }
+
+    private void findEscapes(final BlockBegin block) {
+        // candidates allocated so far in this block
+        final List<Candidate> allocated = new ArrayList<Candidate>();
+        int stores = 0;
+        for (Instruction i = block.next(); i != null; i = i.next()) {
+            final Instruction use = i;
+            i.inputValuesDo(new ValueClosure() {
+                public Value apply(Value value) {
+                    Candidate c = candidates.get(value);
+                    if (c != null && !isReplaceableUse(c, use)) {
+                        escape(c, use);
+                    }
+                    return value;
+                }
+            });
+
+            Candidate accessed = accessedCandidate(i);
+            if (accessed != null && (i instanceof StoreField || i instanceof StoreIndexed)) {
+                if (accessed.block != block || accessed.sealed) {
+                    escape(accessed, i);
+                } else {
+                    accessed.finalValues[entryIndex(accessed, i)] = i instanceof StoreField ? ((StoreField) i).value() : ((StoreIndexed) i).value();
+                    stores++;
+                }
+            }
+
+            long position = ((long) block.blockID << 32) | stores;
+            recordPosition(i.stateBefore(), position, block);
+            recordPosition(i.stateAfter(), position, block);
+
+            if (accessed == null && i.canTrap() && i.exceptionHandlers() != null && !i.exceptionHandlers().isEmpty()) {
+                for (Candidate c : allocated) {
+                    c.sealed = true;
+                }
+            }
+            Candidate c = candidates.get(i);
+            if (c != null) {
+                allocated.add(c);
+            }
+        }
+
+        block.stateBefore().forEachPhi(block, new PhiProcedure() {
+            public boolean doPhi(Phi phi) {
+                for (int j = 0; j < phi.inputCount(); j++) {
+                    Candidate c = candidates.get(phi.inputAt(j));
+                    if (c != null) {
+                        escape(c, phi);
+                    }
+                }
+                return true;
+            }
+        });
+    }
+
+    private void recordPosition(FrameState state, long position, BlockBegin block) {
+        if (state == null) {
+            return;
+        }
+        Long previous = statePositions.put(state, position);
+        if (previous != null && previous != position) {
+            int previousBlockID = (int) (previous >>> 32);
+            for (Candidate c : candidates.values()) {
+                if (c.block == block || c.block.blockID == previousBlockID) {
+                    escape(c, null);
+                }
+            }
+        }
+    }
+
+    private static void escape(Candidate c, Value use) {
+        if (!c.escapes) {
+            c.escapes = true;
+            if (C1XOptions.PrintEscapeAnalysis) {
+                TTY.println("EscapeAnalysis: " + c.allocation + " (" + CiUtil.toJavaName(c.type) + ") escapes" + (use == null ? "" : " through " + use));
+            }
+        }
+    }
+
+    /**
+     * Replaces the allocation of a candidate with the default values of its fields or elements.
+     */
+    private void replaceAllocation(Candidate c) {
+        StateSplit allocation = c.allocation;
+        Instruction prev = allocation.prev(c.block);
+        Instruction next = allocation.next();
+        int bci = allocation.bci();
+
+        EnumMap<CiKind, Constant> defaults = new EnumMap<CiKind, Constant>(CiKind.class);
+        c.initialValues = new Value[c.kinds.length];
+        for (int i = 0; i < c.kinds.length; i++) {
+            CiKind kind = c.kinds[i];
+            Constant value = defaults.get(kind);
+            if (value == null) {
+                value = new Constant(CiConstant.defaultValue(kind.stackKind()));
+                defaults.put(kind, value);
+                prev = append(prev, value, bci);
+            }
+            c.initialValues[i] = value;
+            if (c.finalValues[i] == null) {
+                c.finalValues[i] = value;
+            }
+        }
+        if (c.isArray()) {
+            c.length = Constant.forInt(c.kinds.length);
+            prev = append(prev, c.length, bci);
+        }
+        prev.resetNext(next);
+        c.start = prev;
+        c.object = new VirtualObject(c.type, c.kinds.length);
+
+        C1XMetrics.AllocationsScalarReplaced++;
+        if (C1XOptions.PrintEscapeAnalysis) {
+            TTY.println("EscapeAnalysis: replaced " + allocation + " (" + CiUtil.toJavaName(c.type) + ") in " + ir.compilation.method);
+        }
+    }
+
+    private static Instruction append(Instruction prev, Instruction i, int bci) {
+        prev.resetNext(i);
+        i.setBCI(bci);
+        return i;
+    }
+
+    /**
+     * Removes or rewrites the uses of replaced candidates in a given block.
+     */
+    private void replaceUses(BlockBegin block) {
+        // the current contents of the candidates allocated in this block
+        IdentityHashMap<Candidate, Value[]> current = new IdentityHashMap<Candidate, Value[]>();
+
+        if (block.exceptionHandlerStates() != null) {
+            for (FrameState state : block.exceptionHandlerStates()) {
+                replaceInState(state, null);
+            }
+        }
+        replaceInState(block.stateBefore(), current);
+
+        Instruction prev = block;
+        for (Instruction i = block.next(); i != null; i = prev.next()) {
+            Instruction next = i.next();
+            Candidate c = accessedCandidate(i);
+            if (c != null) {
+                Value[] values = current.get(c);
+                if (values == null) {
+                    values = c.finalValues;
+                }
+                if (i instanceof StoreField || i instanceof StoreIndexed) {
+                    assert values != c.finalValues : "store outside allocating block";
+                    int index = entryIndex(c, i);
+                    Value value = i instanceof StoreField ? ((StoreField) i).value() : ((StoreIndexed) i).value();
+                    Value narrowed = narrow(value, c.kinds[index]);
+                    if (narrowed != value) {
+                        prev = append(prev, (Instruction) narrowed, i.bci());
+                    }
+                    values[index] = narrowed;
+                } else if (i instanceof LoadField || i instanceof LoadIndexed) {
+                    substituter.setSubst(i, values[entryIndex(c, i)]);
+                } else if (i instanceof ArrayLength) {
+                    substituter.setSubst(i, c.length);
+                } else {
+                    C1XMetrics.LocksElided++;
+                }
+                prev.resetNext(next);
+                continue;
+            }
+
+            replaceInState(i.stateBefore(), current);
+            replaceInState(i.stateAfter(), current);
+            prev = i;
+
+            for (Candidate a : candidates.values()) {
+                if (a.start == i) {
+                    current.put(a, a.initialValues.clone());
+                }
+            }
+        }
+
+        // blocks dominated by this block (and hence processed after it) see the narrowed final values
+        for (Map.Entry<Candidate, Value[]> entry : current.entrySet()) {
+            Value[] values = entry.getValue();
+            System.arraycopy(values, 0, entry.getKey().finalValues, 0, values.length);
+        }
+    }
+
+    /**
+     * Narrows a value stored to a sub-word field or element the same way the store would.
+     */
+    private static Value narrow(Value value, CiKind kind) {
+        Convert.Op op;
+        switch (kind) {
+            case Boolean:
+            case Byte:
+                op = Convert.Op.I2B;
+                break;
+            case Short:
+                op = Convert.Op.I2S;
+                break;
+            case Char:
+                op = Convert.Op.I2C;
+                break;
+            default:
+                return value;
+        }
+        if (value.isConstant()) {
+            int v = value.asConstant().asInt();
+            int n = op == Convert.Op.I2B ? (byte) v : op == Convert.Op.I2S ? (short) v : (char) v;
+            return n == v ? value : Constant.forInt(n);
+        }
+        if (value instanceof Convert && ((Convert) value).opcode == op) {
+            return value;
+        }
+        return new Convert(op, value, CiKind.Int);
+    }
+
+    /**
+     * Replaces references to replaced candidates in a frame state with the corresponding virtual objects
+     * and records the contents of the virtual objects referenced by the frame state.
+     *
+     * @param current the current contents of the candidates allocated in the block being processed or {@code null}
+     *            if no contents are to be recorded
+     */
+    private void replaceInState(FrameState state, IdentityHashMap<Candidate, Value[]> current) {
+        if (state == null) {
+            return;
+        }
+        final List<Candidate> referenced = new ArrayList<Candidate>();
+        state.valuesDo(new ValueClosure() {
+            public Value apply(Value value) {
+                Candidate c = candidates.get(value);
+                if (c == null && value instanceof VirtualObject) {
+                    for (Candidate a : candidates.values()) {
+                        if (a.object == value) {
+                            c = a;
+                            break;
+                        }
+                    }
+                }
+                if (c != null) {
+                    if (!referenced.contains(c)) {
+                        referenced.add(c);
+                    }
+                    return c.object;
+                }
+                return value;
+            }
+        });
+        if (current != null) {
+            for (Candidate c : referenced) {
+                Value[] values = current.get(c);
+                state.setVirtualObjectValues(c.object, values != null ? values.clone() : c.finalValues);
+            }
+        }
+    }
+}
@@ -0,0 +1,604 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.c1x.opt;
+
+import static com.sun.cri.bytecode.Bytecodes.*;
+
+import java.util.*;
+
+import com.oracle.max.criutils.*;
+import com.sun.c1x.*;
+import com.sun.c1x.graph.*;
+import com.sun.c1x.ir.*;
+import com.sun.c1x.value.*;
+import com.sun.c1x.value.FrameState.PhiProcedure;
+import com.sun.cri.ci.*;
+import com.sun.cri.ri.*;
+
+/**
+ * Optimizes the natural loops of a method. The loops are derived from the loop headers, loop ends and dominators
+ * computed by {@link ComputeLinearScanOrder} and are processed innermost first. For each loop with a single
+ * pre-header, this pass:
+ * <ul>
+ * <li>removes the bounds checks of array accesses indexed by an induction variable that is known to be in bounds
+ * from the loop condition,</li>
+ * <li>moves loop invariant arithmetic and loads that are not killed by a store in the loop to the pre-header, and</li>
+ * <li>unrolls loops consisting of a header and a single body block that have a constant trip count.</li>
+ * </ul>
+ */
+public class LoopOptimizer {
+
+    /**
+     * The flags copied from an instruction to its copies in an unrolled loop.
+     */
+    private static final Value.Flag[] COPIED_FLAGS = {Value.Flag.NonNull, Value.Flag.NoNullCheck, Value.Flag.NoStoreCheck,
+        Value.Flag.NoBoundsCheck, Value.Flag.NoZeroCheck, Value.Flag.NoReadBarrier, Value.Flag.NoWriteBarrier, Value.Flag.NoDivSpecialCase};
+
+    /**
+     * A natural loop.
+     */
+    static final class Loop {
+        final BlockBegin header;
+        final BlockBegin preHeader;
+
+        /**
+         * The blocks of this loop in linear scan order, starting with the header.
+         */
+        final List<BlockBegin> blocks;
+        final Set<BlockBegin> blockSet;
+
+        /**
+         * The instructions currently in the blocks of this loop.
+         */
+        final Set<Value> instructions = Collections.newSetFromMap(new IdentityHashMap<Value, Boolean>());
+
+        /**
+         * Denotes if this loop contains an instruction that may write to an arbitrary memory location.
+         */
+        boolean killsMemory;
+        final Set<RiField> storedFields = new HashSet<RiField>();
+        final EnumSet<CiKind> storedElementKinds = EnumSet.noneOf(CiKind.class);
+
+        Loop(BlockBegin header, BlockBegin preHeader, List<BlockBegin> blocks) {
+            this.header = header;
+            this.preHeader = preHeader;
+            this.blocks = blocks;
+            this.blockSet = Collections.newSetFromMap(new IdentityHashMap<BlockBegin, Boolean>());
+            this.blockSet.addAll(blocks);
+        }
+
+        boolean isInvariant(Value value) {
+            if (value instanceof Phi) {
+                return !blockSet.contains(value.block());
+            }
+            return !instructions.contains(value);
+        }
+    }
+
+    /**
+     * An induction variable {@code i} of a loop whose condition is {@code i < limit} and which is incremented by one on
+     * every back edge.
+     */
+    static final class InductionVariable {
+        final Phi phi;
+        final Value limit;
+
+        /**
+         * The value of {@link #phi} on entry to the loop.
+         */
+        final Value init;
+
+        /**
+         * The successor of the loop header that is executed if the loop condition holds.
+         */
+        final BlockBegin body;
+
+        InductionVariable(Phi phi, Value limit, Value init, BlockBegin body) {
+            this.phi = phi;
+            this.limit = limit;
+            this.init = init;
+            this.body = body;
+        }
+    }
+
+    final IR ir;
+
+    /**
+     * Creates a new loop optimizer and performs it on the specified IR.
+     * The {@linkplain IR#linearScanOrder() linear scan order} must have been computed.
+     *
+     * @param ir the IR
+     */
+    public LoopOptimizer(IR ir) {
+        this.ir = ir;
+        List<Loop> loops = findLoops(ir.linearScanOrder());
+        for (Loop loop : loops) {
+            InductionVariable iv = findInductionVariable(loop);
+            if (iv != null && C1XOptions.OptLoopBoundsCheckElimination) {
+                eliminateBoundsChecks(loop, iv);
+            }
+            if (C1XOptions.OptLoopInvariantCodeMotion) {
+                summarizeMemoryEffects(loop);
+                hoistInvariants(loop);
+            }
+            if (iv != null && C1XOptions.OptLoopUnrolling) {
+                unroll(loop, iv);
+            }
+        }
+    }
+
+    private static boolean dominates(BlockBegin dominator, BlockBegin block) {
+        for (BlockBegin b = block; b != null; b = b.dominator()) {
+            if (b == dominator) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the natural loops with a single pre-header, ordered such that inner loops precede the loops enclosing them.
+     */
+    private static List<Loop> findLoops(List<BlockBegin> order) {
+        List<Loop> loops = new ArrayList<Loop>();
+        for (BlockBegin header : order) {
+            if (!header.isLinearScanLoopHeader() || header.isExceptionEntry()) {
+                continue;
+            }
+            BlockBegin preHeader = null;
+            ArrayList<BlockBegin> work = new ArrayList<BlockBegin>();
+            for (BlockBegin pred : header.predecessors()) {
+                if (dominates(header, pred)) {
+                    work.add(pred);
+                } else if (preHeader == null) {
+                    preHeader = pred;
+                } else if (preHeader != pred) {
+                    preHeader = header;
+                }
+            }
+            if (preHeader == null || preHeader == header || work.isEmpty() || preHeader.numberOfSux() != 1 || !(preHeader.end() instanceof Goto)) {
+                continue;
+            }
+
+            Set<BlockBegin> blockSet = Collections.newSetFromMap(new IdentityHashMap<BlockBegin, Boolean>());
+            blockSet.add(header);
+            boolean natural = true;
+            while (!work.isEmpty()) {
+                BlockBegin block = work.remove(work.size() - 1);
+                if (blockSet.add(block)) {
+                    if (!dominates(header, block)) {
+                        natural = false;
+                        break;
+                    }
+                    work.addAll(block.predecessors());
+                }
+            }
+            if (!natural) {
+                continue;
+            }
+
+            List<BlockBegin> blocks = new ArrayList<BlockBegin>(blockSet.size());
+            for (BlockBegin block : order) {
+                if (blockSet.contains(block)) {
+                    blocks.add(block);
+                }
+            }
+            assert blocks.get(0) == header;
+            loops.add(new Loop(header, preHeader, blocks));
+        }
+        Collections.sort(loops, new Comparator<Loop>() {
+            public int compare(Loop o1, Loop o2) {
+                return o1.blocks.size() - o2.blocks.size();
+            }
+        });
+        return loops;
+    }
+
+    /**
+     * Finds the induction variable controlling a loop. The loop must be exited from its header if the condition
+     * {@code i < limit} does not hold where {@code i} is a phi of the header whose value on entry is a non-negative
+     * constant and which is incremented by one on every back edge.
+     */
+    private static InductionVariable findInductionVariable(Loop loop) {
+        BlockBegin header = loop.header;
+        if (!(header.end() instanceof If)) {
+            return null;
+        }
+        If test = (If) header.end();
+        Value x = test.x();
+        Value y = test.y();
+        Condition cond = test.condition();
+        if (isHeaderPhi(header, y)) {
+            Value t = x;
+            x = y;
+            y = t;
+            cond = cond.mirror();
+        }
+        if (!isHeaderPhi(header, x) || x.kind != CiKind.Int) {
+            return null;
+        }
+
+        BlockBegin body;
+        BlockBegin exit;
+        if (cond == Condition.LT) {
+            body = test.trueSuccessor();
+            exit = test.falseSuccessor();
+        } else if (cond == Condition.GE) {
+            body = test.falseSuccessor();
+            exit = test.trueSuccessor();
+        } else {
+            return null;
+        }
+        if (!loop.blockSet.contains(body) || loop.blockSet.contains(exit) || body.numberOfPreds() != 1) {
+            return null;
+        }
+
+        Phi phi = (Phi) x;
+        Value init = null;
+        for (int j = 0; j < phi.inputCount(); j++) {
+            Value input = phi.inputAt(j);
+            if (header.predAt(j) == loop.preHeader) {
+                init = input;
+            } else if (!isIncrement(input, phi)) {
+                return null;
+            }
+        }
+        if (init == null || !init.isConstant() || init.asConstant().asInt() < 0) {
+            return null;
+        }
+        return new InductionVariable(phi, y, init, body);
+    }
+
+    private static boolean isHeaderPhi(BlockBegin header, Value value) {
+        return value instanceof Phi && value.block() == header && !value.isIllegal();
+    }
+
+    private static boolean isIncrement(Value value, Phi phi) {
+        if (value instanceof ArithmeticOp) {
+            ArithmeticOp add = (ArithmeticOp) value;
+            if (add.opcode == IADD) {
+                return (add.x() == phi && isIntConstant(add.y(), 1)) || (add.y() == phi && isIntConstant(add.x(), 1));
+            }
+        }
+        return false;
+    }
+
+    private static boolean isIntConstant(Value value, int n) {
+        return value.isConstant() && value.kind == CiKind.Int && value.asConstant().asInt() == n;
+    }
+
+    /**
+     * Removes the bounds check of each access {@code a[i]} in the loop where {@code i} is the induction variable and the
+     * loop limit is {@code a.length} or a constant not greater than the length of {@code a}. Only accesses in blocks
+     * dominated by the loop body are considered as they can only execute after the loop condition has held in the
+     * current iteration. This excludes the header and any exception handler in the loop that may be entered from the
+     * header, where {@code i} can be equal to the limit. The index {@code i} is non-negative as it starts at a
+     * non-negative value and is incremented by one up to at most the limit.
+     */
+    private static void eliminateBoundsChecks(Loop loop, InductionVariable iv) {
+        for (BlockBegin block : loop.blocks) {
+            if (!dominates(iv.body, block)) {
+                continue;
+            }
+            for (Instruction i = block.next(); i != null; i = i.next()) {
+                if (i instanceof AccessIndexed) {
+                    AccessIndexed access = (AccessIndexed) i;
+                    if (access.index() == iv.phi && access.needsBoundsCheck() && isWithinLength(iv.limit, access.array())) {
+                        access.eliminateBoundsCheck();
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean isWithinLength(Value limit, Value array) {
+        if (limit instanceof ArrayLength) {
+            return ((ArrayLength) limit).array() == array;
+        }
+        if (limit.isConstant() && limit.kind == CiKind.Int && array instanceof NewArray) {
+            Value length = ((NewArray) array).length();
+            return length.isConstant() && length.kind == CiKind.Int && limit.asConstant().asInt() <= length.asConstant().asInt();
+        }
+        return false;
+    }
+
+    /**
+     * Records the instructions in a loop and determines which memory locations they may write.
+     */
+    private static void summarizeMemoryEffects(Loop loop) {
+        loop.instructions.clear();
+        loop.storedFields.clear();
+        loop.storedElementKinds.clear();
+        loop.killsMemory = false;
+        for (BlockBegin block : loop.blocks) {
+            for (Instruction i = block.next(); i != null; i = i.next()) {
+                loop.instructions.add(i);
+                if (i instanceof StoreField) {
+                    StoreField store = (StoreField) i;
+                    if (store.isLoaded()) {
+                        loop.storedFields.add(store.field());
+                    } else {
+                        loop.killsMemory = true;
+                    }
+                } else if (i instanceof StoreIndexed) {
+                    loop.storedElementKinds.add(((StoreIndexed) i).elementKind());
+                } else if (!isMemoryNeutral(i)) {
+                    loop.killsMemory = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Determines if a given instruction neither writes memory nor orders memory accesses.
+     */
+    private static boolean isMemoryNeutral(Instruction i) {
+        if (i instanceof LoadField) {
+            return !((LoadField) i).isVolatile();
+        }
+        return i instanceof Op2 || i instanceof Convert || i instanceof NegateOp || i instanceof Constant ||
+               i instanceof LoadIndexed || i instanceof ArrayLength || i instanceof NullCheck ||
+               i instanceof CheckCast || i instanceof InstanceOf || i instanceof BlockEnd;
+    }
+
+    /**
+     * Moves the invariant instructions of a loop to the end of its pre-header. An instruction that can trap is only
+     * moved if it is in the header and not preceded by an instruction that remains in the loop and either can trap or
+     * has a side effect. Such an instruction is executed at least once whenever the pre-header is executed and
+     * nothing observable happens between the end of the pre-header and the instruction.
+     */
+    private static void hoistInvariants(Loop loop) {
+        BlockBegin preHeader = loop.preHeader;
+        BlockEnd preHeaderEnd = preHeader.end();
+        Instruction insertionPoint = preHeaderEnd.prev(preHeader);
+
+        for (BlockBegin block : loop.blocks) {
+            boolean inHeaderPrefix = block == loop.header && preHeaderEnd.stateAfter() != null;
+            Instruction prev = block;
+            for (Instruction i = block.next(); !(i instanceof BlockEnd); i = prev.next()) {
+                if (isHoistable(loop, i, inHeaderPrefix)) {
+                    prev.resetNext(i.next());
+                    if (i.canTrap()) {
+                        ((StateSplit) i).replaceStateBefore(preHeaderEnd.stateAfter());
+                    }
+                    insertionPoint.resetNext(i);
+                    i.resetNext(preHeaderEnd);
+                    insertionPoint = i;
+                    loop.instructions.remove(i);
+                    C1XMetrics.LoopInvariantsHoisted++;
+                } else {
+                    if (i.canTrap() || !isMemoryNeutral(i)) {
+                        inHeaderPrefix = false;
+                    }
+                    prev = i;
+                }
+            }
+        }
+    }
+
+    private static boolean isHoistable(final Loop loop, Instruction i, boolean inHeaderPrefix) {
+        if (i.hasSubst()) {
+            return false;
+        }
+        boolean isLoad;
+        Value object;
+        if (i instanceof Op2 || i instanceof Convert || i instanceof NegateOp) {
+            if (i.canTrap()) {
+                return false;
+            }
+            isLoad = false;
+            object = null;
+        } else if (i instanceof LoadField) {
+            LoadField load = (LoadField) i;
+            if (load.isVolatile() || !load.isLoaded() || load.needsPatching() || loop.killsMemory || loop.storedFields.contains(load.field())) {
+                return false;
+            }
+            isLoad = true;
+            object = load.object();
+        } else if (i instanceof LoadIndexed) {
+            LoadIndexed load = (LoadIndexed) i;
+            if (loop.killsMemory || loop.storedElementKinds.contains(load.elementKind())) {
+                return false;
+            }
+            isLoad = true;
+            object = load.array();
+        } else if (i instanceof ArrayLength) {
+            isLoad = true;
+            object = ((ArrayLength) i).array();
+        } else {
+            return false;
+        }
+
+        final boolean[] invariant = {true};
+        i.inputValuesDo(new ValueClosure() {
+            public Value apply(Value value) {
+                if (!loop.isInvariant(value)) {
+                    invariant[0] = false;
+                }
+                return value;
+            }
+        });
+        if (!invariant[0]) {
+            return false;
+        }
+
+        if (isLoad && !inHeaderPrefix) {
+            // a load in the loop body may rely on a null check or bounds check in the loop
+            return !i.canTrap() && object.isNonNull() && !(i instanceof LoadIndexed);
+        }
+        return !i.canTrap() || i.exceptionHandlers().isEmpty();
+    }
+
+    /**
+     * Unrolls a loop consisting of its header and a single body block if the trip count is a constant that is a multiple
+     * of the unroll factor. The header may only contain the loop condition so that the copies of the body need not be
+     * separated by copies of the header.
+     */
+    private void unroll(Loop loop, InductionVariable iv) {
+        BlockBegin header = loop.header;
+        BlockBegin body = iv.body;
+        if (loop.blocks.size() != 2 || !(body.end() instanceof Goto) || body.end().suxAt(0) != header ||
+            body.numberOfExceptionHandlers() != 0 || !iv.limit.isConstant() || iv.limit.kind != CiKind.Int) {
+            return;
+        }
+        for (Instruction i = header.next(); !(i instanceof BlockEnd); i = i.next()) {
+            if (!(i instanceof Constant)) {
+                return;
+            }
+        }
+        int tripCount = iv.limit.asConstant().asInt() - iv.init.asConstant().asInt();
+        int factor = C1XOptions.LoopUnrollFactor;
+        while (factor > 1 && tripCount % factor != 0) {
+            factor--;
+        }
+        if (factor < 2 || tripCount < factor) {
+            return;
+        }
+
+        List<Instruction> instructions = new ArrayList<Instruction>();
+        for (Instruction i = body.next(); !(i instanceof BlockEnd); i = i.next()) {
+            if (!isCopyable(i)) {
+                return;
+            }
+            instructions.add(i);
+        }
+        if (instructions.size() * factor > C1XOptions.MaximumUnrolledLoopSize) {
+            return;
+        }
+        FrameState backEdgeState = body.end().stateAfter();
+        if (backEdgeState == null || backEdgeState.hasVirtualObjects()) {
+            return;
+        }
+
+        final List<Phi> phis = new ArrayList<Phi>();
+        header.stateBefore().forEachPhi(header, new PhiProcedure() {
+            public boolean doPhi(Phi phi) {
+                phis.add(phi);
+                return true;
+            }
+        });
+
+        Instruction last = body.end().prev(body);
+        IdentityHashMap<Value, Value> map = new IdentityHashMap<Value, Value>();
+        for (int k = 1; k < factor; k++) {
+            // maps the values of one iteration to the values of the next iteration
+            IdentityHashMap<Value, Value> next = new IdentityHashMap<Value, Value>();
+            for (Phi phi : phis) {
+                next.put(phi, lookup(map, phi.inputIn(backEdgeState)));
+            }
+            for (Instruction i : instructions) {
+                Instruction copy = copy(i, next);
+                if (copy != null) {
+                    last.setNext(copy, i.bci());
+                    last = copy;
+                    next.put(i, copy);
+                }
+            }
+            map = next;
+        }
+        last.setNext(body.end(), body.end().bci());
+        body.end().setStateAfter(copyState(backEdgeState, map));
+
+        C1XMetrics.LoopsUnrolled++;
+        if (C1XOptions.PrintLoopOptimizations) {
+            TTY.println("Unrolled loop B" + header.blockID + " " + factor + " times in " + ir.compilation.method);
+        }
+    }
+
+    private static Value lookup(IdentityHashMap<Value, Value> map, Value value) {
+        Value result = map.get(value);
+        return result == null ? value : result;
+    }
+
+    private static boolean isCopyable(Instruction i) {
+        if (!i.exceptionHandlers().isEmpty()) {
+            return false;
+        }
+        FrameState state = i.stateBefore();
+        if (state != null && state.hasVirtualObjects()) {
+            return false;
+        }
+        return i instanceof Constant || (i instanceof ArithmeticOp && !i.canTrap()) || i instanceof LogicOp ||
+               i instanceof ShiftOp || i instanceof Convert || i instanceof NegateOp ||
+               i instanceof ArrayLength || i instanceof LoadIndexed || i instanceof StoreIndexed;
+    }
+
+    /**
+     * Creates a copy of an instruction for the next iteration of an unrolled loop.
+     *
+     * @param map the values of the next iteration
+     * @return the copy or {@code null} if the instruction can be shared between iterations
+     */
+    private static Instruction copy(Instruction i, final IdentityHashMap<Value, Value> map) {
+        Instruction copy;
+        if (i instanceof Constant) {
+            return null;
+        } else if (i instanceof ArithmeticOp) {
+            ArithmeticOp op = (ArithmeticOp) i;
+            copy = new ArithmeticOp(op.opcode, op.kind, op.x(), op.y(), op.isStrictFP(), null);
+        } else if (i instanceof LogicOp) {
+            LogicOp op = (LogicOp) i;
+            copy = new LogicOp(op.kind, op.opcode, op.x(), op.y());
+        } else if (i instanceof ShiftOp) {
+            ShiftOp op = (ShiftOp) i;
+            copy = new ShiftOp(op.opcode, op.x(), op.y());
+        } else if (i instanceof Convert) {
+            Convert op = (Convert) i;
+            copy = new Convert(op.opcode, op.value(), op.kind);
+        } else if (i instanceof NegateOp) {
+            copy = new NegateOp(((NegateOp) i).x());
+        } else if (i instanceof ArrayLength) {
+            copy = new ArrayLength(((ArrayLength) i).array(), copyState(i.stateBefore(), map));
+        } else if (i instanceof LoadIndexed) {
+            LoadIndexed load = (LoadIndexed) i;
+            copy = new LoadIndexed(load.array(), load.index(), load.elementKind(), copyState(i.stateBefore(), map));
+        } else {
+            StoreIndexed store = (StoreIndexed) i;
+            copy = new StoreIndexed(store.array(), store.index(), store.elementKind(), store.value(), copyState(i.stateBefore(), map));
+        }
+        copy.inputValuesDo(new ValueClosure() {
+            public Value apply(Value value) {
+                return lookup(map, value);
+            }
+        });
+        for (Value.Flag flag : COPIED_FLAGS) {
+            if (i.checkFlag(flag)) {
+                copy.setFlag(flag);
+            }
+        }
+        return copy;
+    }
+
+    private static FrameState copyState(FrameState state, final IdentityHashMap<Value, Value> map) {
+        if (state == null) {
+            return null;
+        }
+        FrameState copy = state.copy();
+        copy.valuesDo(new ValueClosure() {
+            public Value apply(Value value) {
+                return lookup(map, value);
+            }
+        });
+        return copy;
+    }
+}
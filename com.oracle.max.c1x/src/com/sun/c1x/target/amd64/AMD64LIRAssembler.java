@@ -74,9 +74,52 @@ public final class AMD64LIRAssembler extends LIRAssembler {
         return compilation.frameMap().toStackAddress((CiStackSlot) value);
     }
 
+    /**
+     * Emits the on-stack-replacement entry point. The code at this entry point is reached with the OSR buffer
+     * in {@link AMD64LIRGenerator#osrBufferPointer()} and the return address on top of the stack, just as for
+     * the standard entry point. It builds the same frame as the method prologue before the OSR entry block
+     * loads the locals from the buffer.
+     */
     @Override
     protected void emitOsrEntry() {
-        throw Util.unimplemented();
+        tasm.targetMethod.setOsrEntryOffset(masm.codeBuffer.position());
+        emitPushFrame();
+        emitStackOverflowCheck();
+    }
+
+    /**
+     * Allocates the frame of the method and saves the callee-saved registers.
+     */
+    private void emitPushFrame() {
+        int frameSize = initialFrameSizeInBytes();
+        masm.decrementq(AMD64.rsp, frameSize); // does not emit code for frameSize == 0
+        if (C1XOptions.ZapStackOnMethodEntry) {
+            final int intSize = 4;
+            for (int i = 0; i < frameSize / intSize; ++i) {
+                masm.movl(new CiAddress(CiKind.Int, AMD64.rsp.asValue(), i * intSize), 0xC1C1C1C1);
+            }
+        }
+        CiCalleeSaveLayout csl = compilation.registerConfig.getCalleeSaveLayout();
+        if (csl != null && csl.size != 0) {
+            int frameToCSA = frameMap.offsetToCalleeSaveAreaStart();
+            assert frameToCSA >= 0;
+            masm.save(csl, frameToCSA);
+        }
+
+        if (C1XOptions.DebugMethods) {
+            masm.movl(compilation.registerConfig.getScratchRegister(), methodID);
+        }
+    }
+
+    private void emitStackOverflowCheck() {
+        int frameSize = initialFrameSizeInBytes();
+        int lastFramePage = frameSize / target.pageSize;
+        // emit multiple stack bangs for methods with frames larger than a page
+        for (int i = 0; i <= lastFramePage; i++) {
+            int offset = (i + C1XOptions.StackShadowPages) * target.pageSize;
+            // Deduct 'frameSize' to handle frames larger than the shadow
+            bangStackWithOffset(offset - frameSize);
+        }
     }
 
     @Override
@@ -2000,34 +2043,12 @@ public final class AMD64LIRAssembler extends LIRAssembler {
                     break;
                 }
                 case StackOverflowCheck: {
-                    int frameSize = initialFrameSizeInBytes();
-                    int lastFramePage = frameSize / target.pageSize;
-                    // emit multiple stack bangs for methods with frames larger than a page
-                    for (int i = 0; i <= lastFramePage; i++) {
-                        int offset = (i + C1XOptions.StackShadowPages) * target.pageSize;
-                        // Deduct 'frameSize' to handle frames larger than the shadow
-                        bangStackWithOffset(offset - frameSize);
-                    }
+                    emitStackOverflowCheck();
                     break;
                 }
                 case PushFrame: {
-                    int frameSize = initialFrameSizeInBytes();
-                    masm.decrementq(AMD64.rsp, frameSize); // does not emit code for frameSize == 0
-                    if (C1XOptions.ZapStackOnMethodEntry) {
-                        final int intSize = 4;
-                        for (int i = 0; i < frameSize / intSize; ++i) {
-                            masm.movl(new CiAddress(CiKind.Int, AMD64.rsp.asValue(), i * intSize), 0xC1C1C1C1);
-                        }
-                    }
-                    CiCalleeSaveLayout csl = compilation.registerConfig.getCalleeSaveLayout();
-                    if (csl != null && csl.size != 0) {
-                        int frameToCSA = frameMap.offsetToCalleeSaveAreaStart();
-                        assert frameToCSA >= 0;
-                        masm.save(csl, frameToCSA);
-                    }
-
+                    emitPushFrame();
                     if (C1XOptions.DebugMethods) {
-                        masm.movl(compilation.registerConfig.getScratchRegister(), methodID);
                         debugMethodWriter.appendDebugMethod(compilation.method.holder() + "." + compilation.method.name() + ";" + compilation.method.signature(), methodID);
                     }
                     break;
@@ -440,10 +440,8 @@ public class AMD64LIRGenerator extends LIRGenerator {
         CiValue newValue = load(x.newValue());
         assert Util.archKindsEqual(newValue.kind, dataKind) : "invalid type";
 
-        if (dataKind.isObject()) { // Write-barrier needed for Object fields.
-            // Do the pre-write barrier : if any.
-            preGCWriteBarrier(addr, false, null);
-        }
+        // No pre-write barrier: pointer operations are raw memory accesses. Code comparing and swapping
+        // references through a Reference gets the heap scheme's pre-write barrier from the reference scheme.
 
         CiValue pointer = newVariable(compilation.target.wordKind);
         lir.lea(addr, pointer);
@@ -488,10 +486,6 @@ public class AMD64LIRGenerator extends LIRGenerator {
             addr = new CiAddress(kind, obj.result(), offset.result());
         }
 
-        // Compare operand needs to be in RAX.
-        CiValue cmp = force(x.argumentAt(3), AMD64.rax.asValue(kind));
-        val.loadItem();
-
         CiValue pointer = newVariable(compilation.target.wordKind);
         lir.lea(addr, pointer);
 
@@ -500,6 +494,10 @@ public class AMD64LIRGenerator extends LIRGenerator {
             preGCWriteBarrier(pointer, false, null);
         }
 
+        // Compare operand needs to be in RAX.
+        CiValue cmp = force(x.argumentAt(3), AMD64.rax.asValue(kind));
+        val.loadItem();
+
         if (kind.isObject()) {
             lir.casObj(pointer, cmp, val.result());
         } else if (kind.isInt()) {
@@ -678,9 +676,12 @@ public class AMD64LIRGenerator extends LIRGenerator {
         }
     }
 
+    /**
+     * The OSR buffer is passed in the first integer argument register of the Java calling convention.
+     */
     @Override
     protected CiValue osrBufferPointer() {
-        return Util.nonFatalUnimplemented(null);
+        return compilation.registerConfig.getCallingConventionRegisters(CiCallingConvention.Type.JavaCallee, CiRegister.RegisterFlag.CPU)[0].asValue(CiKind.Long);
     }
 
     @Override
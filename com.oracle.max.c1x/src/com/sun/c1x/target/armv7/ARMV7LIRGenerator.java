@@ -431,10 +431,8 @@ public class ARMV7LIRGenerator extends LIRGenerator {
         CiValue newValue = load(x.newValue());
         assert Util.archKindsEqual(newValue.kind, dataKind) : "invalid type";
 
-        if (dataKind.isObject()) { // Write-barrier needed for Object fields.
-            // Do the pre-write barrier : if any.
-            preGCWriteBarrier(addr, false, null);
-        }
+        // No pre-write barrier: pointer operations are raw memory accesses. Code comparing and swapping
+        // references through a Reference gets the heap scheme's pre-write barrier from the reference scheme.
 
         CiValue pointer = newVariable(compilation.target.wordKind);
         lir.lea(addr, pointer);
@@ -478,10 +476,6 @@ public class ARMV7LIRGenerator extends LIRGenerator {
             addr = new CiAddress(kind, obj.result(), offset.result());
         }
 
-        // Compare operand needs to be in RAX. WAS RAX
-        CiValue cmp = force(x.argumentAt(3), ARMV7.r0.asValue(kind));
-        val.loadItem();
-
         CiValue pointer = newVariable(compilation.target.wordKind);
         lir.lea(addr, pointer);
 
@@ -490,6 +484,10 @@ public class ARMV7LIRGenerator extends LIRGenerator {
             preGCWriteBarrier(pointer, false, null);
         }
 
+        // Compare operand needs to be in RAX. WAS RAX
+        CiValue cmp = force(x.argumentAt(3), ARMV7.r0.asValue(kind));
+        val.loadItem();
+
         if (kind.isObject()) {
             lir.casObj(pointer, cmp, val.result());
         } else if (kind.isInt()) {
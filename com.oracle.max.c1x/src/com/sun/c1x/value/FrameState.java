@@ -74,6 +74,13 @@ public abstract class FrameState {
      */
     protected ArrayList<Value> locks;
 
+    /**
+     * The contents of the {@linkplain VirtualObject virtual objects} referenced by this frame state or its callers
+     * at the point where this frame state is used for debug information. This is {@code null} if the
+     * frame state does not reference any virtual objects.
+     */
+    private IdentityHashMap<VirtualObject, Value[]> virtualObjects;
+
     /**
      * The number of minimum stack slots required for doing IR wrangling during
      * {@linkplain GraphBuilder bytecode parsing}. While this may hide stack
@@ -507,6 +514,37 @@ public abstract class FrameState {
         return false;
     }
 
+    /**
+     * Records the contents of a virtual object referenced by this frame state or its callers.
+     *
+     * @param object a virtual object
+     * @param entries the values of {@code object}'s fields (or elements) at the point described by this frame state
+     */
+    public void setVirtualObjectValues(VirtualObject object, Value[] entries) {
+        assert entries.length == object.entryCount();
+        if (virtualObjects == null) {
+            virtualObjects = new IdentityHashMap<VirtualObject, Value[]>();
+        }
+        virtualObjects.put(object, entries);
+    }
+
+    /**
+     * Determines if the contents of any virtual objects have been recorded in this frame state.
+     */
+    public boolean hasVirtualObjects() {
+        return virtualObjects != null;
+    }
+
+    /**
+     * Gets the contents of a virtual object referenced by this frame state or its callers.
+     *
+     * @return the values recorded by {@link #setVirtualObjectValues(VirtualObject, Value[])} for {@code object}
+     *         or {@code null} if there are none
+     */
+    public Value[] virtualObjectValues(VirtualObject object) {
+        return virtualObjects == null ? null : virtualObjects.get(object);
+    }
+
     /**
      * Iterates over all the values in this frame state and its callers, including the stack, locals, and locks.
      * @param closure the closure to apply to each value
@@ -536,6 +574,13 @@ public abstract class FrameState {
                     }
                 }
             }
+            if (state.virtualObjects != null) {
+                for (Value[] entries : state.virtualObjects.values()) {
+                    for (int i = 0; i < entries.length; i++) {
+                        entries[i] = closure.apply(entries[i]);
+                    }
+                }
+            }
             state = state.callerState();
         } while (state != null);
     }
@@ -548,11 +593,21 @@ public abstract class FrameState {
     }
 
     /**
-     * Traverses all {@linkplain Value#isLive() live values} of this frame state and it's callers.
+     * Traverses all {@linkplain Value#isLive() live values} of this frame state and it's callers,
+     * including the contents of the virtual objects recorded in this frame state.
      *
      * @param proc the call back called to process each live value traversed
      */
     public final void forEachLiveStateValue(ValueProcedure proc) {
+        if (virtualObjects != null) {
+            for (Value[] entries : virtualObjects.values()) {
+                for (Value value : entries) {
+                    if (value.isLive()) {
+                        proc.doValue(value);
+                    }
+                }
+            }
+        }
         FrameState state = this;
         while (state != null) {
             final int max = state.valuesSize();
@@ -345,6 +345,7 @@ public class CiTargetMethod implements Serializable {
     private int frameSize = -1;
     private int customStackAreaOffset = -1;
     private int registerRestoreEpilogueOffset = -1;
+    private int osrEntryOffset = -1;
     private int deoptReturnAddressOffset;
 
     /**
@@ -480,6 +481,17 @@ public class CiTargetMethod implements Serializable {
         this.registerRestoreEpilogueOffset = registerRestoreEpilogueOffset;
     }
 
+    /**
+     * Records the offset of the on-stack-replacement entry point. Must be called iff this is the result of an OSR
+     * compilation.
+     *
+     * @param osrEntryOffset the offset in the machine code where the OSR entry begins
+     */
+    public void setOsrEntryOffset(int osrEntryOffset) {
+        assert this.osrEntryOffset == -1;
+        this.osrEntryOffset = osrEntryOffset;
+    }
+
     /**
      * The frame size of the method in bytes.
      *
@@ -498,6 +510,14 @@ public class CiTargetMethod implements Serializable {
         return registerRestoreEpilogueOffset;
     }
 
+    /**
+     * @return the code offset of the on-stack-replacement entry point, or -1 if this is not the result of an OSR
+     *         compilation
+     */
+    public int osrEntryOffset() {
+        return osrEntryOffset;
+    }
+
     /**
      * Offset in bytes for the custom stack area (relative to sp).
      * @return the offset in bytes
@@ -92,6 +92,15 @@ public final class CiVirtualObject extends CiValue {
 
     @Override
     public boolean equals(Object o) {
+        return equals(o, false);
+    }
+
+    @Override
+    public boolean equalsIgnoringKind(CiValue o) {
+        return equals(o, true);
+    }
+
+    private boolean equals(Object o, boolean ignoreKinds) {
         if (o == this) {
             return true;
         }
@@ -101,7 +110,9 @@ public final class CiVirtualObject extends CiValue {
                 return false;
             }
             for (int i = 0; i < values.length; i++) {
-                if (values[i] != l.values[i]) {
+                CiValue x = values[i];
+                CiValue y = l.values[i];
+                if (x != y && (ignoreKinds ? !x.equalsIgnoringKind(y) : !x.equals(y))) {
                     return false;
                 }
             }
@@ -110,11 +121,6 @@ public final class CiVirtualObject extends CiValue {
         return false;
     }
 
-    @Override
-    public boolean equalsIgnoringKind(CiValue o) {
-        return equals(o);
-    }
-
     /**
      * This is a helper class used to create virtual objects for a number of different JDK classes.
      */
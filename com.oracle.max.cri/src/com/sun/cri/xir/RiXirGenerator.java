@@ -93,6 +93,15 @@ public interface RiXirGenerator {
 
     XirSnippet genWriteBarrier(XirArgument object);
 
+    /**
+     * Generates the barrier required before a reference is stored at an address computed by the compiler
+     * (e.g. by an intrinsic for {@code sun.misc.Unsafe}).
+     *
+     * @param address the address of the reference about to be overwritten
+     * @return the barrier, or {@code null} if the heap requires none
+     */
+    XirSnippet genPreWriteBarrier(XirArgument address);
+
     XirSnippet genArrayCopy(XirSite site, XirArgument src, XirArgument srcPos, XirArgument dest, XirArgument destPos, XirArgument length, RiType elementType, boolean inputsSame, boolean inputsDifferent);
 
     XirSnippet genCurrentThread(XirSite site);
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package jtt.loop;
+
+/*
+ * Tests on-stack replacement of a long running loop whose locals are of every kind.
+ * @Harness: java
+ * @Runs: 0=109757539L; 10=820538985077502L; 300000=7206367426086865377L
+ */
+public class LoopOSR01 {
+
+    public static long test(int arg) {
+        long l = 1;
+        double d = 0.5;
+        float f = 0.25f;
+        Object o = "start";
+        int k = 0;
+        for (int i = 0; i < arg; i++) {
+            l = l * 31 + i;
+            d += i;
+            f += 1;
+            k ^= i;
+            if ((i & 1023) == 0) {
+                o = Integer.valueOf(i);
+            }
+        }
+        return l + (long) d + (long) f + k + o.hashCode();
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package jtt.loop;
+
+/*
+ * Tests the deoptimization of a method entered by on-stack replacement. The loop loads a subclass of the
+ * receiver type after many iterations, which invalidates code that assumed the receiver type has no subclasses.
+ * @Harness: java
+ * @Runs: 10=45; 300000=-705082704
+ */
+public class LoopOSR02 {
+
+    static class Base {
+        int value(int i) {
+            return i;
+        }
+    }
+
+    static class Sub extends Base {
+        @Override
+        int value(int i) {
+            return -i;
+        }
+    }
+
+    public static int test(int arg) {
+        Base b = new Base();
+        int r = 0;
+        for (int i = 0; i < arg; i++) {
+            if (i == 200000) {
+                b = new Sub();
+            }
+            r += b.value(i);
+        }
+        return r;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package jtt.optimize;
+
+/*
+ * Tests the scalar replacement of constant-length primitive arrays that do not escape the method.
+ * @Harness: java
+ * @Runs: 0=9; 1=14; 10=59
+ */
+public class EA_02 {
+
+    public static int test(int arg) {
+        int[] a = new int[4];
+        a[0] = arg;
+        a[1] = arg + 1;
+        a[2] = arg + 2;
+        a[3] = arg + 3;
+        long[] b = {arg, 2L * arg};
+        return a[0] + a[3] + a.length + (int) (b[0] + b[1]) + b.length;
+    }
+}
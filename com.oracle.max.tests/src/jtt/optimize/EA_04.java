@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package jtt.optimize;
+
+/*
+ * Tests the deoptimization of a method while a scalar replaced object is live and locked. The call in the synchronized
+ * block loads a subclass of the receiver type when the argument is 2, which invalidates code that assumed the receiver
+ * type has no subclasses. The deoptimized frame must see the object's field values and release the re-acquired lock.
+ * @Harness: java
+ * @Runs: 0=101; 1=114; 2=127; 3=140
+ */
+public class EA_04 {
+
+    static class Pair {
+        int a;
+        int b;
+    }
+
+    static class Base {
+        int value(int i) {
+            if (i == 2) {
+                loaded = new Sub();
+            }
+            return i + 100;
+        }
+    }
+
+    static class Sub extends Base {
+        @Override
+        int value(int i) {
+            return -i;
+        }
+    }
+
+    static Base base = new Base();
+    static Base loaded;
+
+    public static int test(int arg) {
+        Pair p = new Pair();
+        p.a = arg;
+        p.b = arg + 1;
+        int r;
+        synchronized (p) {
+            r = base.value(arg);
+            r += p.a * 10 + p.b;
+        }
+        return r + p.a;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package jtt.optimize;
+
+/*
+ * Tests that the bounds check of an access in an exception handler of a loop is not eliminated
+ * when the handler can be entered with the induction variable equal to the limit.
+ * @Harness: java
+ * @Runs: 5=11; 10=!java.lang.ArrayIndexOutOfBoundsException; 20=10
+ */
+public class LoopBCE_01 {
+    public static int test(int arg) {
+        int[] a = new int[10];
+        int i = 0;
+        while (true) {
+            try {
+                bar(i, arg);
+                if (i >= 10) {
+                    break;
+                }
+                a[i] = 1;
+            } catch (IllegalStateException e) {
+                a[i] = 2;
+            }
+            i++;
+        }
+        int r = 0;
+        for (int j = 0; j < a.length; j++) {
+            r += a[j];
+        }
+        return r;
+    }
+
+    private static void bar(int i, int arg) {
+        if (i == arg) {
+            throw new IllegalStateException();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package jtt.optimize;
+
+/*
+ * Tests the inlining of the dominant receiver type recorded by the baseline profile of a call site
+ * whose receiver type has several implementations.
+ * @Harness: java
+ * @Runs: 0=0; 10=90; 100000=1409965408
+ */
+public class ProfileInline_01 {
+
+    abstract static class Shape {
+        abstract int area(int i);
+    }
+
+    static final class Square extends Shape {
+        @Override
+        int area(int i) {
+            return i * 2;
+        }
+    }
+
+    static final class Circle extends Shape {
+        @Override
+        int area(int i) {
+            return i * 3;
+        }
+    }
+
+    static final Shape[] SHAPES = {new Square(), new Circle()};
+
+    public static int test(int arg) {
+        int r = 0;
+        for (int i = 0; i < arg; i++) {
+            r += area(SHAPES[0], i);
+        }
+        return r;
+    }
+
+    private static int area(Shape s, int i) {
+        return s.area(i);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package jtt.optimize;
+
+/*
+ * Tests the devirtualization of an interface call whose implementors share a unique concrete method, and the
+ * invalidation of the devirtualized code when an implementor with another method is loaded after 50000 iterations.
+ * @Harness: java
+ * @Runs: 10=110; 50000=-1794917296; 60000=-144922296
+ */
+public class UniqueConcreteMethod_01 {
+
+    interface Op {
+        int apply(int i);
+    }
+
+    abstract static class AbstractOp implements Op {
+        public int apply(int i) {
+            return i + 1;
+        }
+    }
+
+    static final class Inc extends AbstractOp {
+    }
+
+    static final class OtherInc extends AbstractOp {
+    }
+
+    static final class Twice implements Op {
+        public int apply(int i) {
+            return i * 2;
+        }
+    }
+
+    static final Op INC = new Inc();
+    static final Op OTHER_INC = new OtherInc();
+
+    public static int test(int arg) {
+        Op op = INC;
+        int r = 0;
+        for (int i = 0; i < arg; i++) {
+            if (i == 50000) {
+                op = new Twice();
+            }
+            r += op.apply(i) + OTHER_INC.apply(i);
+        }
+        return r;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+/*
+ * @Harness: java
+ * @Runs: 2 = true; 4 = true
+ */
+package jtt.threads;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * Moves references between the slots of an {@link AtomicReferenceArray} with compare-and-swap
+ * while allocating enough garbage to keep the collector busy. A reference that is swapped out of
+ * a slot not yet visited by a concurrent marker and into a slot already visited is only kept alive
+ * by the pre-write barrier of the swap; a missing barrier shows up as a corrupted node.
+ */
+public final class AtomicReference_gc01 implements Runnable {
+
+    static final int SLOTS = 256;
+    static final int MOVES = 200000;
+
+    static final class Node {
+        final int id;
+        final int[] payload;
+
+        Node(int id) {
+            this.id = id;
+            this.payload = new int[16];
+            for (int i = 0; i < payload.length; i++) {
+                payload[i] = id;
+            }
+        }
+
+        boolean isValid() {
+            for (int i = 0; i < payload.length; i++) {
+                if (payload[i] != id) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final AtomicReferenceArray<Node> slots;
+    private final int seed;
+    private Object garbage;
+
+    private AtomicReference_gc01(AtomicReferenceArray<Node> slots, int seed) {
+        this.slots = slots;
+        this.seed = seed;
+    }
+
+    public static boolean test(int threads) throws InterruptedException {
+        final AtomicReferenceArray<Node> slots = new AtomicReferenceArray<Node>(SLOTS);
+        for (int i = 0; i < SLOTS; i += 2) {
+            slots.set(i, new Node(i));
+        }
+        final Thread[] movers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            movers[i] = new Thread(new AtomicReference_gc01(slots, i + 1));
+            movers[i].start();
+        }
+        for (int i = 0; i < threads; i++) {
+            movers[i].join();
+        }
+        final boolean[] seen = new boolean[SLOTS];
+        int count = 0;
+        for (int i = 0; i < SLOTS; i++) {
+            final Node node = slots.get(i);
+            if (node != null) {
+                if (!node.isValid() || seen[node.id]) {
+                    return false;
+                }
+                seen[node.id] = true;
+                count++;
+            }
+        }
+        return count == SLOTS / 2;
+    }
+
+    public void run() {
+        int random = seed;
+        for (int n = 0; n < MOVES; n++) {
+            random = random * 1103515245 + 12345;
+            final int from = (random >>> 8) % SLOTS;
+            final int to = (random >>> 20) % SLOTS;
+            final Node node = slots.get(from);
+            if (node != null && slots.compareAndSet(from, node, null)) {
+                // at most half the slots are ever occupied, so an empty one is always found
+                int slot = to;
+                while (!slots.compareAndSet(slot, null, node)) {
+                    slot = (slot + 1) % SLOTS;
+                }
+            }
+            garbage = new Object[32];
+        }
+    }
+}
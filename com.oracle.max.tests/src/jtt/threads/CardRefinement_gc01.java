@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+/*
+ * @Harness: java
+ * @Runs: 1 = true; 4 = true
+ */
+package jtt.threads;
+
+/**
+ * Stores young objects into promoted holders while allocating enough garbage to trigger minor collections.
+ * Half of the stores are later overwritten with references to promoted objects, so that many dirty cards hold
+ * no young reference by the time the refinement thread scans them. A young object referenced from a card
+ * cleaned too early isn't evacuated and shows up as a corrupted entry.
+ */
+public final class CardRefinement_gc01 implements Runnable {
+
+    static final int HOLDERS = 8192;
+    static final int ROUNDS = 64;
+    static final int GARBAGE = 512;
+
+    static final class Entry {
+        final int id;
+        final int check;
+
+        Entry(int id) {
+            this.id = id;
+            this.check = ~id;
+        }
+
+        boolean isValid(int expected) {
+            return id == expected && check == ~expected;
+        }
+    }
+
+    static final class Holder {
+        Entry entry;
+    }
+
+    private final int seed;
+    private boolean passed;
+    private Object garbage;
+
+    private CardRefinement_gc01(int seed) {
+        this.seed = seed;
+    }
+
+    public static boolean test(int threads) throws InterruptedException {
+        final CardRefinement_gc01[] mutators = new CardRefinement_gc01[threads];
+        final Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            mutators[i] = new CardRefinement_gc01(i + 1);
+            workers[i] = new Thread(mutators[i]);
+            workers[i].start();
+        }
+        for (int i = 0; i < threads; i++) {
+            workers[i].join();
+        }
+        for (int i = 0; i < threads; i++) {
+            if (!mutators[i].passed) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void run() {
+        final Holder[] holders = new Holder[HOLDERS];
+        final int[] expected = new int[HOLDERS];
+        for (int i = 0; i < HOLDERS; i++) {
+            holders[i] = new Holder();
+            holders[i].entry = new Entry(-1 - i);
+            expected[i] = -1 - i;
+        }
+        final Entry old = new Entry(0);
+        // promote the holders and the old entry
+        allocateGarbage(GARBAGE * 16);
+        int random = seed;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int n = 0; n < HOLDERS / 4; n++) {
+                random = random * 1103515245 + 12345;
+                final int i = (random >>> 8) % HOLDERS;
+                if ((random & 0x100) == 0) {
+                    holders[i].entry = new Entry(round * HOLDERS + n);
+                    expected[i] = round * HOLDERS + n;
+                } else {
+                    holders[i].entry = new Entry(round * HOLDERS + n);
+                    holders[i].entry = old;
+                    expected[i] = 0;
+                }
+            }
+            allocateGarbage(GARBAGE);
+            for (int i = 0; i < HOLDERS; i++) {
+                if (!holders[i].entry.isValid(expected[i])) {
+                    return;
+                }
+            }
+        }
+        passed = true;
+    }
+
+    private void allocateGarbage(int kilobytes) {
+        for (int i = 0; i < kilobytes; i++) {
+            garbage = new byte[1024];
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+/*
+ * @Harness: java
+ * @Runs: 1 = true; 2 = true
+ */
+package jtt.threads;
+
+/**
+ * Leaves one object alive out of every eight allocated, so that full collections find sparse regions to compact,
+ * then checks that the survivors kept their contents, the references between them, their identity hash codes and
+ * their monitors after being relocated.
+ */
+public final class Compaction_gc01 implements Runnable {
+
+    static final int CELLS = 65536;
+    static final int KEPT = CELLS / 8;
+    static final int COLLECTIONS = 4;
+
+    static final class Cell {
+        final int id;
+        final int[] data;
+        Cell partner;
+
+        Cell(int id) {
+            this.id = id;
+            this.data = new int[8];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = id + i;
+            }
+        }
+
+        boolean isValid() {
+            for (int i = 0; i < data.length; i++) {
+                if (data[i] != id + i) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private boolean passed;
+
+    private Compaction_gc01() {
+    }
+
+    public static boolean test(int threads) throws InterruptedException {
+        final Compaction_gc01[] mutators = new Compaction_gc01[threads];
+        final Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            mutators[i] = new Compaction_gc01();
+            workers[i] = new Thread(mutators[i]);
+            workers[i].start();
+        }
+        for (int i = 0; i < threads; i++) {
+            workers[i].join();
+        }
+        for (int i = 0; i < threads; i++) {
+            if (!mutators[i].passed) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void run() {
+        final Cell[] kept = new Cell[KEPT];
+        final int[] hashCodes = new int[KEPT];
+        for (int i = 0; i < CELLS; i++) {
+            final Cell cell = new Cell(i);
+            if ((i & 7) == 0) {
+                kept[i >> 3] = cell;
+            }
+        }
+        for (int i = 0; i < KEPT; i++) {
+            kept[i].partner = kept[(i * 17 + 5) % KEPT];
+            hashCodes[i] = System.identityHashCode(kept[i]);
+        }
+        for (int n = 0; n < COLLECTIONS; n++) {
+            System.gc();
+            for (int i = 0; i < KEPT; i++) {
+                final Cell cell = kept[i];
+                if (cell.id != i << 3 || !cell.isValid() || cell.partner != kept[(i * 17 + 5) % KEPT] || System.identityHashCode(cell) != hashCodes[i]) {
+                    return;
+                }
+                synchronized (cell) {
+                    if (!Thread.holdsLock(cell)) {
+                        return;
+                    }
+                }
+            }
+        }
+        passed = true;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+/*
+ * @Harness: java
+ * @Runs: 1 = true; 4 = true
+ */
+package jtt.threads;
+
+/**
+ * Keeps a graph of young nodes reachable from a long-lived array while allocating enough garbage to trigger
+ * several minor collections. Each node is referenced from two other nodes, so that GC workers evacuating in
+ * parallel race to forward the same cell. A lost race that isn't undone properly shows up as a corrupted node
+ * or as two copies of the same node.
+ */
+public final class Evacuation_gc01 implements Runnable {
+
+    static final int NODES = 4096;
+    static final int ROUNDS = 32;
+    static final int GARBAGE = 1024;
+
+    static final class Node {
+        final int id;
+        final long[] payload;
+        Node next;
+        Node other;
+
+        Node(int id) {
+            this.id = id;
+            this.payload = new long[4];
+            for (int i = 0; i < payload.length; i++) {
+                payload[i] = id;
+            }
+        }
+
+        boolean isValid() {
+            for (int i = 0; i < payload.length; i++) {
+                if (payload[i] != id) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private boolean passed;
+    private Object garbage;
+
+    private Evacuation_gc01() {
+    }
+
+    public static boolean test(int threads) throws InterruptedException {
+        final Evacuation_gc01[] builders = new Evacuation_gc01[threads];
+        final Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            builders[i] = new Evacuation_gc01();
+            workers[i] = new Thread(builders[i]);
+            workers[i].start();
+        }
+        for (int i = 0; i < threads; i++) {
+            workers[i].join();
+        }
+        for (int i = 0; i < threads; i++) {
+            if (!builders[i].passed) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void run() {
+        final Node[] nodes = new Node[NODES];
+        for (int i = 0; i < NODES; i++) {
+            nodes[i] = new Node(-1 - i);
+        }
+        for (int round = 0; round < ROUNDS; round++) {
+            // replace a quarter of the nodes with young ones, so that the graph mixes young and promoted nodes
+            for (int i = round & 3; i < NODES; i += 4) {
+                nodes[i] = new Node(round * NODES + i);
+            }
+            for (int i = 0; i < NODES; i++) {
+                nodes[i].next = nodes[(i + 1) % NODES];
+                nodes[i].other = nodes[(i * 31 + round) % NODES];
+            }
+            for (int i = 0; i < GARBAGE; i++) {
+                garbage = new byte[1024];
+            }
+            if (!check(nodes, round)) {
+                return;
+            }
+        }
+        passed = true;
+    }
+
+    private static boolean check(Node[] nodes, int round) {
+        for (int i = 0; i < NODES; i++) {
+            final Node node = nodes[i];
+            if (!node.isValid() || node.next != nodes[(i + 1) % NODES] || node.other != nodes[(i * 31 + round) % NODES]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+/*
+ * @Harness: java
+ * @Runs: 1 = true; 4 = true
+ */
+package jtt.threads;
+
+/**
+ * Keeps deep and wide object graphs alive across full collections while mutator threads replace parts of them.
+ * Parallel markers split the graphs between them and steal from each other; a node that no marker visits is
+ * swept and shows up as a corrupted tree.
+ */
+public final class Marking_gc01 implements Runnable {
+
+    static final int DEPTH = 12;
+    static final int WIDTH = 16384;
+    static final int ROUNDS = 8;
+
+    static final class Tree {
+        final int value;
+        final Tree left;
+        final Tree right;
+
+        Tree(int depth, int value) {
+            this.value = value;
+            if (depth > 0) {
+                left = new Tree(depth - 1, value * 2);
+                right = new Tree(depth - 1, value * 2 + 1);
+            } else {
+                left = null;
+                right = null;
+            }
+        }
+
+        boolean isValid(int depth, int expected) {
+            if (value != expected) {
+                return false;
+            }
+            if (depth == 0) {
+                return left == null && right == null;
+            }
+            return left != null && right != null && left.isValid(depth - 1, expected * 2) && right.isValid(depth - 1, expected * 2 + 1);
+        }
+    }
+
+    private final int seed;
+    private boolean passed;
+    private Object garbage;
+
+    private Marking_gc01(int seed) {
+        this.seed = seed;
+    }
+
+    public static boolean test(int threads) throws InterruptedException {
+        final Marking_gc01[] markers = new Marking_gc01[threads];
+        final Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            markers[i] = new Marking_gc01(i + 1);
+            workers[i] = new Thread(markers[i]);
+            workers[i].start();
+        }
+        for (int i = 0; i < threads; i++) {
+            workers[i].join();
+        }
+        for (int i = 0; i < threads; i++) {
+            if (!markers[i].passed) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void run() {
+        final Tree[] trees = new Tree[4];
+        final Integer[] wide = new Integer[WIDTH];
+        for (int i = 0; i < trees.length; i++) {
+            trees[i] = new Tree(DEPTH, 1);
+        }
+        for (int i = 0; i < WIDTH; i++) {
+            wide[i] = new Integer(i);
+        }
+        int random = seed;
+        for (int round = 0; round < ROUNDS; round++) {
+            random = random * 1103515245 + 12345;
+            trees[(random >>> 8) & 3] = new Tree(DEPTH, 1);
+            for (int i = round & 7; i < WIDTH; i += 8) {
+                wide[i] = new Integer(i);
+            }
+            for (int i = 0; i < 256; i++) {
+                garbage = new Object[64];
+            }
+            System.gc();
+            for (int i = 0; i < trees.length; i++) {
+                if (!trees[i].isValid(DEPTH, 1)) {
+                    return;
+                }
+            }
+            for (int i = 0; i < WIDTH; i++) {
+                if (wide[i].intValue() != i) {
+                    return;
+                }
+            }
+        }
+        passed = true;
+    }
+}
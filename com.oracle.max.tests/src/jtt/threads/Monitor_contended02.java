@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+/*
+ * @Harness: java
+ * @Runs: 1 = 20000; 2 = 40000; 4 = 80000
+ */
+package jtt.threads;
+
+/**
+ * Increments a shared counter from several threads under a contended monitor. Most critical sections are short,
+ * so that waiting threads acquire the monitor by spinning; every 64th one yields while holding the monitor, so that
+ * spins fail and waiting threads block. A thread that acquires the monitor while it is held breaks the invariant
+ * between the two fields.
+ */
+public final class Monitor_contended02 implements Runnable {
+
+    static final int INCREMENTS = 20000;
+
+    private static final Object lock = new Object();
+    private static int count;
+    private static int negated;
+    private static boolean broken;
+
+    private Monitor_contended02() {
+    }
+
+    public static int test(int threads) throws InterruptedException {
+        count = 0;
+        negated = 0;
+        broken = false;
+        final Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(new Monitor_contended02());
+            workers[i].start();
+        }
+        for (int i = 0; i < threads; i++) {
+            workers[i].join();
+        }
+        synchronized (lock) {
+            return broken ? -1 : count;
+        }
+    }
+
+    public void run() {
+        for (int i = 0; i < INCREMENTS; i++) {
+            synchronized (lock) {
+                if (count != -negated) {
+                    broken = true;
+                }
+                count++;
+                if ((i & 63) == 0) {
+                    Thread.yield();
+                }
+                negated--;
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2009, 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+/*
+ * @Harness: java
+ * @Runs: 16 = true
+ */
+package test.bench.bytecode;
+
+import test.bench.util.*;
+
+/**
+ * A microbenchmark for the allocation of a primitive array; the {@code newarray} bytecode.
+ * The allocated array is published to a field so that it cannot be scalar replaced.
+ */
+public class NewArray extends RunBench {
+
+    protected NewArray(int length) {
+        super(new Bench(length));
+    }
+
+    public static boolean test(int length) {
+        return new NewArray(length).runBench();
+    }
+
+    static class Bench extends MicroBenchmark {
+        int length;
+        int[] last;
+
+        Bench(int length) {
+            this.length = length;
+        }
+
+        @Override
+        public long run() {
+            last = new int[length];
+            return defaultResult;
+        }
+    }
+
+    public static void main(String[] args) {
+        int length = 16;
+        if (args.length > 0) {
+            length = Integer.parseInt(args[0]);
+        }
+        test(length);
+    }
+
+}
@@ -57,7 +57,7 @@ import com.sun.max.vm.thread.*;
 /**
  * Integration of the C1X compiler into Maxine's compilation framework.
  */
-public class C1X extends RuntimeCompiler.DefaultNameAdapter implements RuntimeCompiler {
+public class C1X extends RuntimeCompiler.DefaultNameAdapter implements RuntimeCompiler, RuntimeCompiler.OSRCompiler {
 
     /**
      * The Maxine specific implementation of the {@linkplain RiRuntime runtime interface} needed by C1X.
@@ -251,10 +251,22 @@ public class C1X extends RuntimeCompiler.DefaultNameAdapter implements RuntimeCo
     }
 
     public TargetMethod compile(final ClassMethodActor method, boolean isDeopt, boolean install, CiStatistics stats) {
+        return compile(method, -1, install, stats);
+    }
+
+    public TargetMethod compileOSR(ClassMethodActor method, int osrBCI) {
+        try {
+            return compile(method, osrBCI, true, null);
+        } catch (CiBailout bailout) {
+            return null;
+        }
+    }
+
+    private TargetMethod compile(final ClassMethodActor method, int osrBCI, boolean install, CiStatistics stats) {
         CiTargetMethod compiledMethod;
         do {
             DebugInfoLevel debugInfoLevel = method.isTemplate() ? DebugInfoLevel.REF_MAPS : DebugInfoLevel.FULL;
-            compiledMethod = compiler().compileMethod(method, -1, stats, debugInfoLevel).targetMethod();
+            compiledMethod = compiler().compileMethod(method, osrBCI, stats, debugInfoLevel).targetMethod();
 
             Dependencies deps = Dependencies.validateDependencies(compiledMethod.assumptions());
             if (deps != Dependencies.INVALID) {
@@ -525,6 +525,13 @@ public final class DebugInfo {
             }
         } else if (value.isIllegal()) {
             value = WordUtil.ZERO;
+        } else if (value instanceof CiVirtualObject) {
+            CiVirtualObject object = (CiVirtualObject) value;
+            CiValue[] values = object.values().clone();
+            for (int i = 0; i < values.length; i++) {
+                values[i] = toLiveSlot(fa, values[i]);
+            }
+            value = CiVirtualObject.get(object.type(), values, object.id());
         } else {
             assert value.isConstant();
         }
@@ -443,7 +443,7 @@ public class MaxTargetMethod extends TargetMethod implements Cloneable {
             }
         }
 
-        int safepointIndex = findSafepointIndex(current.vmIP());
+        int safepointIndex = StackReferenceMapCache.safepointIndexFor(this, current.vmIP());
         if (safepointIndex < 0) {
             // this is very bad.
             Log.print(posFor(current.vmIP()));
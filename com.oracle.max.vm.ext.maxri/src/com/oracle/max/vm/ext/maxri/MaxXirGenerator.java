@@ -81,6 +81,9 @@ public class MaxXirGenerator implements RiXirGenerator {
             public XirWriteBarrierGenerator barrierGenerator(IntBitSet<WriteBarrierSpecification.WriteBarrierSpec> writeBarrierSpec) {
                 return XirWriteBarrierSpecification.NULL_WRITE_BARRIER_GEN;
             }
+
+            public void setRuntimeCallGenerator(XirRuntimeCallGenerator runtimeCallGenerator) {
+            }
         };
     }
 
@@ -140,6 +143,7 @@ public class MaxXirGenerator implements RiXirGenerator {
 
     private XirTemplate safepointTemplate;
     private XirTemplate arraylengthTemplate;
+    private XirTemplate preWriteBarrierTemplate;
     private XirTemplate monitorEnterTemplate;
     private XirTemplate monitorExitTemplate;
     private XirTemplate[] resolveClassTemplates;
@@ -194,6 +198,16 @@ public class MaxXirGenerator implements RiXirGenerator {
         return vmConfig().heapScheme().objectAlignment() - 1;
     }
 
+    /**
+     * Gets the largest array length for which the inline TLAB allocation sequence computes the cell size.
+     * The size is computed in a 32-bit register, so longer arrays are handed to the runtime allocator
+     * instead of risking an overflow that would otherwise look like a small allocation that fits in the TLAB.
+     */
+    @HOSTED_ONLY
+    int maxInlineArrayLength(CiKind kind) {
+        return (Integer.MAX_VALUE - arrayLayout().headerSize() - minObjectAlignmentMask()) / target().sizeInBytes(kind);
+    }
+
     public final boolean printXirTemplates;
 
     public MaxXirGenerator(boolean printXirTemplates) {
@@ -218,6 +232,19 @@ public class MaxXirGenerator implements RiXirGenerator {
         CiKind[] kinds = CiKind.values();
         this.asm = asm;
 
+        writeBarrierSpecification().setRuntimeCallGenerator(new XirWriteBarrierSpecification.XirRuntimeCallGenerator() {
+            public void genRuntimeCall(CiXirAssembler barrierAsm, Class<?> holder, String method, XirOperand result, XirOperand... args) {
+                XirTemplate stub = runtimeCallStubs.get(method);
+                if (stub == null) {
+                    stub = addCallRuntimeThroughStub(stubs, holder, runtimeCallStubs, barrierAsm, method, result, args);
+                }
+                if (stub == null) {
+                    throw ProgramError.unexpected("could not find runtime call: " + holder.getName() + "." + method);
+                }
+                barrierAsm.callStub(stub, result, args);
+            }
+        });
+
         epilogueTemplate = buildEpilogue();
 
         putFieldTemplates = new XirPair[kinds.length];
@@ -283,6 +310,9 @@ public class MaxXirGenerator implements RiXirGenerator {
 
         safepointTemplate = buildSafepoint();
         arraylengthTemplate = buildArrayLength();
+        if (VMConfiguration.vmConfig().heapScheme().needsBarrier(WriteBarrierSpecification.REF_ADDR_PRE_BARRIER)) {
+            preWriteBarrierTemplate = buildPreWriteBarrier();
+        }
         monitorEnterTemplate = buildMonitorEnter();
         monitorExitTemplate = buildMonitorExit();
 
@@ -486,8 +516,8 @@ public class MaxXirGenerator implements RiXirGenerator {
             // The XIR for TLAB allocation does not handle this (yet)
             return false;
         }
-        // TODO: second clause in each of the two conditions below should disappear. This is just to evaluate the impact of
-        // inlined tlab allocation on performance.
+        // Inline allocation is the default whenever the heap scheme allocates from TLABs. The second clause
+        // of each condition below only exists so that the runtime call path can be selected for comparison.
         if (MaxineVM.isHosted()) {
             return vmConfig().heapScheme() instanceof HeapSchemeWithTLAB && Heap.genInlinedTLAB;
         }
@@ -740,6 +770,14 @@ public class MaxXirGenerator implements RiXirGenerator {
         return finishTemplate(asm, "arraylength");
     }
 
+    @HOSTED_ONLY
+    private XirTemplate buildPreWriteBarrier() {
+        asm.restart(CiKind.Void);
+        XirParameter address = asm.createInputParameter("address", WordUtil.archKind());
+        writeBarrierSpecification().barrierGenerator(WriteBarrierSpecification.REF_ADDR_PRE_BARRIER).genWriteBarrier(asm, address);
+        return finishTemplate(asm, "preWriteBarrier");
+    }
+
     @HOSTED_ONLY
     private XirTemplate buildArrayStore(CiKind kind, CiXirAssembler asm, boolean genBoundsCheck, boolean genStoreCheck, boolean genWriteBarrier) {
         XirWriteBarrierSpecification writeBarrierSpecification = writeBarrierSpecification();
@@ -955,7 +993,9 @@ public class MaxXirGenerator implements RiXirGenerator {
 
         XirLabel done = asm.createInlineLabel("done");
         XirLabel ok = asm.createInlineLabel("ok");
+        XirLabel formatted = asm.createInlineLabel("formatted");
         XirLabel reportNegativeIndexError = asm.createOutOfLineLabel("indexError");
+        XirLabel largeArray = asm.createOutOfLineLabel("largeArray");
 
         XirOperand tla = asm.createRegisterTemp("TLA", WordUtil.archKind(), LATCH_REGISTER);
         XirOperand etla = asm.createTemp("ETLA", WordUtil.archKind());
@@ -966,6 +1006,7 @@ public class MaxXirGenerator implements RiXirGenerator {
         XirConstant offsetToTLABEnd = asm.i(HeapSchemeWithTLAB.TLAB_TOP.offset);
 
         asm.jlt(reportNegativeIndexError, length, asm.i(0));
+        asm.jgt(largeArray, length, asm.i(maxInlineArrayLength(kind)));
         asm.pload(WordUtil.archKind(), etla, tla, asm.i(VmThreadLocal.ETLA.offset), false);
 
         int elemSize = target().sizeInBytes(kind);
@@ -1014,10 +1055,15 @@ public class MaxXirGenerator implements RiXirGenerator {
         asm.pstore(CiKind.Object, cell, asm.i(hubOffset()), hub, false);
         asm.pstore(CiKind.Int, cell, asm.i(arrayLayout().arrayLengthOffset()), length, false);
         asm.mov(result, cell);
+        asm.bindInline(formatted);
 
         asm.bindOutOfLine(reportNegativeIndexError);
         callRuntimeThroughStub(asm, "throwNegativeArraySizeException", null, length);
 
+        asm.bindOutOfLine(largeArray);
+        callRuntimeThroughStub(asm, kind.isObject() ? "allocateObjectArray" : "allocatePrimitiveArray", result, hub, length);
+        asm.jmp(formatted);
+
         return finishTemplate(asm, (kind.isObject() ? "a" : "") + "newarray<" + kind + ">");
     }
 
@@ -1028,8 +1074,10 @@ public class MaxXirGenerator implements RiXirGenerator {
         XirOperand cell = asm.createTemp("cell",  WordUtil.archKind());
 
         XirLabel done = asm.createInlineLabel("done");
+        XirLabel formatted = asm.createInlineLabel("formatted");
         XirLabel slowPath = asm.createOutOfLineLabel("slowPath");
         XirLabel reportNegativeIndexError = asm.createOutOfLineLabel("indexError");
+        XirLabel largeArray = asm.createOutOfLineLabel("largeArray");
 
         XirOperand tla = asm.createRegisterTemp("TLA", WordUtil.archKind(), this.LATCH_REGISTER);
         XirOperand etla = asm.createTemp("ETLA", WordUtil.archKind());
@@ -1040,6 +1088,7 @@ public class MaxXirGenerator implements RiXirGenerator {
         XirConstant offsetToTLABEnd = asm.i(HeapSchemeWithTLAB.TLAB_TOP.offset);
 
         asm.jlt(reportNegativeIndexError, length, asm.i(0));
+        asm.jgt(largeArray, length, asm.i(maxInlineArrayLength(kind)));
         asm.pload(WordUtil.archKind(), etla, tla, asm.i(VmThreadLocal.ETLA.offset), false);
 
         int elemSize = target().sizeInBytes(kind);
@@ -1084,10 +1133,15 @@ public class MaxXirGenerator implements RiXirGenerator {
         asm.pstore(CiKind.Object, cell, asm.i(hubOffset()), hub, false);
         asm.pstore(CiKind.Int, cell, asm.i(arrayLayout().arrayLengthOffset()), length, false);
         asm.mov(result, cell);
+        asm.bindInline(formatted);
 
         asm.bindOutOfLine(reportNegativeIndexError);
         callRuntimeThroughStub(asm, "throwNegativeArraySizeException", null, length);
 
+        asm.bindOutOfLine(largeArray);
+        callRuntimeThroughStub(asm, kind.isObject() ? "allocateObjectArray" : "allocatePrimitiveArray", result, hub, length);
+        asm.jmp(formatted);
+
         asm.bindOutOfLine(slowPath);
         callRuntimeThroughStub(asm, "slowPathAllocate", cell, arraySize, etla);
         asm.jmp(done);
@@ -1384,11 +1438,11 @@ public class MaxXirGenerator implements RiXirGenerator {
             XirParameter value = asm.createInputParameter("value", kind);
             XirParameter fieldOffset = asm.createConstantInputParameter("fieldOffset", CiKind.Int);
             if (genWriteBarrier) {
-                writeBarrierSpecification.barrierGenerator(WriteBarrierSpecification.TUPLE_PRE_BARRIER).genWriteBarrier(asm, object);
+                writeBarrierSpecification.barrierGenerator(WriteBarrierSpecification.TUPLE_PRE_BARRIER).genWriteBarrier(asm, object, fieldOffset);
             }
             asm.pstore(kind, object, fieldOffset, value, true);
             if (genWriteBarrier) {
-                writeBarrierSpecification.barrierGenerator(WriteBarrierSpecification.TUPLE_POST_BARRIER).genWriteBarrier(asm, object);
+                writeBarrierSpecification.barrierGenerator(WriteBarrierSpecification.TUPLE_POST_BARRIER).genWriteBarrier(asm, object, fieldOffset);
             }
             xirTemplate = finishTemplate(asm, "putfield<" + kind + ", " + genWriteBarrier + ">");
         } else {
@@ -1403,9 +1457,12 @@ public class MaxXirGenerator implements RiXirGenerator {
             } else {
                 callRuntimeThroughStub(asm, "resolvePutField", fieldOffset, guard);
             }
+            if (genWriteBarrier) {
+                writeBarrierSpecification.barrierGenerator(WriteBarrierSpecification.TUPLE_PRE_BARRIER).genWriteBarrier(asm, object, fieldOffset);
+            }
             asm.pstore(kind, object, fieldOffset, value, true);
             if (genWriteBarrier) {
-                writeBarrier(asm, object, null, value);
+                writeBarrierSpecification.barrierGenerator(WriteBarrierSpecification.TUPLE_POST_BARRIER).genWriteBarrier(asm, object, fieldOffset);
             }
             xirTemplate = finishTemplate(asm, "putfield<" + kind + ", " + genWriteBarrier + ">-unresolved");
         }
@@ -1775,10 +1832,6 @@ public class MaxXirGenerator implements RiXirGenerator {
         return template;
     }
 
-    private void writeBarrier(CiXirAssembler asm, XirOperand object, XirOperand fieldOffset, XirOperand value) {
-        // XXX: add write barrier mechanism
-    }
-
     @HOSTED_ONLY
     private void callRuntimeThroughStub(CiXirAssembler asm, String method, XirOperand result, XirOperand... args) {
         XirTemplate stub = runtimeCallStubs.get(method);
@@ -1871,6 +1924,14 @@ public class MaxXirGenerator implements RiXirGenerator {
         return null;
     }
 
+    @Override
+    public XirSnippet genPreWriteBarrier(XirArgument address) {
+        if (preWriteBarrierTemplate == null) {
+            return null;
+        }
+        return new XirSnippet(preWriteBarrierTemplate, address);
+    }
+
     @Override
     public XirSnippet genArrayCopy(XirSite site, XirArgument src, XirArgument srcPos, XirArgument dest, XirArgument destPos, XirArgument length, RiType elementType, boolean inputsDifferent, boolean inputsSame) {
         return null;
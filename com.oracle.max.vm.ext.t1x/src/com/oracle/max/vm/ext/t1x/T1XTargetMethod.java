@@ -804,7 +804,7 @@ public class T1XTargetMethod extends TargetMethod {
         if (Code.getCodeManager().getRuntimeBaselineCodeRegion().isInFromSpace(cip.toAddress())) {
             cip = relocateIP(cip);
         }
-        int safepointIndex = findSafepointIndex(cip);
+        int safepointIndex = StackReferenceMapCache.safepointIndexFor(this, cip);
         if (safepointIndex < 0) {
             // this is very bad.
             throw FatalError.unexpected("could not find safepoint index");
@@ -38,6 +38,16 @@
 #include <sys/sysctl.h>
 #endif
 
+#if os_LINUX
+#include <stdio.h>
+#include <sys/syscall.h>
+/* Memory policy of mbind(2). Defined here to avoid depending on libnuma's headers. */
+#   ifndef MPOL_BIND
+#       define MPOL_BIND        2
+#   endif
+#   define MAX_NUMA_NODES       64
+#endif
+
 /* There is a problem binding these identifiers in RedHat's include files, so we fake them: */
 #if os_LINUX
 #   ifndef MAP_ANONYMOUS
@@ -303,6 +313,87 @@ Size virtualMemory_getPhysicalMemorySize(void) {
     return physicalMemory;
 }
 
+static jint numberOfNUMANodes = 0;
+
+/*
+ * Returns the number of NUMA nodes of the machine, or 1 if the platform doesn't support NUMA.
+ * The online nodes are read from a list of ranges such as "0-3" or "0,2-3". Callers number nodes
+ * densely from 0, so a machine whose online nodes are not numbered 0 to n - 1 is reported as having a single node.
+ */
+jint virtualMemory_numberOfNUMANodes(void) {
+    if (numberOfNUMANodes == 0) {
+        jint n = 0;
+#if os_LINUX
+        FILE *online = fopen("/sys/devices/system/node/online", "r");
+        if (online != NULL) {
+            int first;
+            int last;
+            int c;
+            while (fscanf(online, "%d", &first) == 1) {
+                last = first;
+                c = fgetc(online);
+                if (c == '-') {
+                    if (fscanf(online, "%d", &last) != 1) {
+                        break;
+                    }
+                    c = fgetc(online);
+                }
+                if (first != n || last < first) {
+                    /* Not numbered densely from 0. */
+                    n = 0;
+                    break;
+                }
+                n = last + 1;
+                if (c != ',') {
+                    break;
+                }
+            }
+            fclose(online);
+        }
+#endif
+        numberOfNUMANodes = n > 0 ? n : 1;
+    }
+    return numberOfNUMANodes;
+}
+
+/*
+ * Returns the NUMA node of the CPU the current thread runs on, or 0 if unknown.
+ */
+jint virtualMemory_currentNUMANode(void) {
+#if os_LINUX && defined(SYS_getcpu)
+    unsigned int cpu = 0;
+    unsigned int node = 0;
+    if (syscall(SYS_getcpu, &cpu, &node, NULL) == 0) {
+        return (jint) node;
+    }
+#endif
+    return 0;
+}
+
+/*
+ * Binds the physical pages backing a range of virtual memory to a NUMA node.
+ * Must be called after the range is mapped, as re-mapping the range discards its memory policy.
+ */
+jboolean virtualMemory_bindToNUMANode(Address address, Size size, jint node) {
+#if os_LINUX && defined(SYS_mbind)
+    unsigned long nodeMask[MAX_NUMA_NODES / (8 * sizeof(unsigned long))];
+    memset(nodeMask, 0, sizeof(nodeMask));
+    if (node < 0 || node >= MAX_NUMA_NODES) {
+        return JNI_FALSE;
+    }
+    nodeMask[node / (8 * sizeof(unsigned long))] = 1UL << (node % (8 * sizeof(unsigned long)));
+    if (syscall(SYS_mbind, (void *) address, (unsigned long) size, MPOL_BIND, nodeMask, (unsigned long) MAX_NUMA_NODES + 1, 0) != 0) {
+#if log_MMAP
+        log_println("virtualMemory_bindToNUMANode(address=%p, size=%p, node=%d) failed: %s", address, size, node, strerror(errno));
+#endif
+        return JNI_FALSE;
+    }
+    return JNI_TRUE;
+#else
+    return JNI_FALSE;
+#endif
+}
+
 /*
  * Aligns a given address up to the next page-aligned address if it is not already page-aligned.
  */
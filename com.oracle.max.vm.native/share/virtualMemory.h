@@ -49,6 +49,10 @@ extern Size virtualMemory_getPhysicalMemorySize(void);
 
 extern Address virtualMemory_pageAlign(Address address);
 
+extern jint virtualMemory_numberOfNUMANodes(void);
+extern jint virtualMemory_currentNUMANode(void);
+extern jboolean virtualMemory_bindToNUMANode(Address address, Size size, jint node);
+
 extern void virtualMemory_protectPages(Address address, int count);
 extern void virtualMemory_unprotectPages(Address address, int count);
 #endif /*__virtualMemory_h__*/
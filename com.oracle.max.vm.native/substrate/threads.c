@@ -43,6 +43,12 @@
 #include "threadLocals.h"
 #include <sys/mman.h>
 
+#if os_LINUX
+#   include <linux/futex.h>
+#   include <sys/syscall.h>
+#   include <sys/time.h>
+#endif
+
 #if (os_DARWIN || os_LINUX)
 #   include <pthread.h>
 #   include <errno.h>
@@ -536,6 +542,66 @@ Java_com_sun_max_vm_thread_VmThread_nativeSleep(JNIEnv *env, jclass c, jlong num
     return thread_sleep(numberOfMilliSeconds);
 }
 
+/*
+ * A park event is the low 32 bits of the PARK_EVENT thread local of a thread (see VmThreadLocal.java).
+ * Its value is 1 if a permit is available, 0 if not and -1 if the thread is parked on it.
+ */
+
+JNIEXPORT void JNICALL
+Java_com_sun_max_vm_thread_VmThread_nativePark(JNIEnv *env, jclass c, Address parkEvent, jlong time, jboolean isAbsolute) {
+#if os_LINUX
+    volatile int *event = (volatile int *) parkEvent;
+    if (__sync_fetch_and_sub(event, 1) == 1) {
+        // consumed an available permit
+        return;
+    }
+    struct timespec timeout;
+    struct timespec *ptimeout = NULL;
+    if (isAbsolute || time > 0) {
+        jlong nanos = time;
+        if (isAbsolute) {
+            struct timeval now;
+            gettimeofday(&now, NULL);
+            nanos = (time - (((jlong) now.tv_sec) * 1000 + now.tv_usec / 1000)) * 1000000;
+        }
+        if (nanos <= 0) {
+            __sync_fetch_and_and(event, 0);
+            return;
+        }
+        timeout.tv_sec = nanos / 1000000000;
+        timeout.tv_nsec = nanos % 1000000000;
+        ptimeout = &timeout;
+    }
+    // Returns immediately if the event is no longer -1, i.e. an unpark has already happened.
+    // Spurious wake ups (EINTR, EAGAIN, ETIMEDOUT) are permitted by the semantics of park.
+    syscall(SYS_futex, event, FUTEX_WAIT_PRIVATE, -1, ptimeout, NULL, 0);
+    __sync_fetch_and_and(event, 0);
+#else
+    c_UNIMPLEMENTED();
+#endif
+}
+
+/*
+ * @C_FUNCTION - called from Java
+ */
+jboolean nativeUnpark(Address parkEvent) {
+#if os_LINUX
+    volatile int *event = (volatile int *) parkEvent;
+    int old;
+    do {
+        old = *event;
+    } while (__sync_val_compare_and_swap(event, old, 1) != old);
+    if (old == -1) {
+        syscall(SYS_futex, event, FUTEX_WAKE_PRIVATE, 1, NULL, NULL, 0);
+        return true;
+    }
+    return false;
+#else
+    c_UNIMPLEMENTED();
+    return false;
+#endif
+}
+
 JNIEXPORT void JNICALL
 Java_com_sun_max_vm_thread_VmThread_nativeSetPriority(JNIEnv *env, jclass c, Address nativeThread, jint priority) {
 #if os_SOLARIS
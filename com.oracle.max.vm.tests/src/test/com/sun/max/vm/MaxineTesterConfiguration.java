@@ -300,6 +300,14 @@ public class MaxineTesterConfiguration {
         imageConfig("jtt-mset1xt1x", opt_c1x, "-run=test.com.sun.max.vm.jtrun.all", "-heap=gcx.mse", "-native-tests", joinCompileCommands(testCallerT1X, testCalleeT1X));
         imageConfig("jtt-msec1xc1x", opt_c1x, "-run=test.com.sun.max.vm.jtrun.all", "-heap=gcx.mse", "-native-tests");
 
+        imageConfig("jtt-mse-parallel", opt_c1x, "-run=test.com.sun.max.vm.jtrun.all", "-heap=gcx.mse", "-native-tests",
+                        "--XX:ParallelGCThreads=4", "--XX:+ParallelMarking");
+        imageConfig("jtt-mse-compaction", opt_c1x, "-run=test.com.sun.max.vm.jtrun.all", "-heap=gcx.mse", "-native-tests", "--XX:+RegionCompaction");
+        imageConfig("jtt-gmse-parallel", opt_c1x, "-run=test.com.sun.max.vm.jtrun.all", "-heap=gcx.gen.mse", "-native-tests",
+                        "--XX:ParallelGCThreads=4", "--XX:+ParallelEvacuation");
+        imageConfig("jtt-gmse-refinement", opt_c1x, "-run=test.com.sun.max.vm.jtrun.all", "-heap=gcx.gen.mse", "-native-tests",
+                        "--XX:+CardRefinement", "--XX:CardRefinementIntervalMillis=1");
+
         imageConfig("vm-output", "-run=test.com.sun.max.vm.output");
 
         maxvmConfig("std", "-Xms2g", "-Xmx2g");
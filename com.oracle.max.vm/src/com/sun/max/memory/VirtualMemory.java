@@ -238,6 +238,49 @@ public final class VirtualMemory {
     @C_FUNCTION
     private static native Size virtualMemory_getPhysicalMemorySize();
 
+    /* NUMA methods */
+
+    /**
+     * Return the number of NUMA nodes of the underlying platform.
+     * @return the number of NUMA nodes, 1 if the platform isn't NUMA or NUMA isn't supported
+     */
+    public static int getNumberOfNUMANodes() {
+        return virtualMemory_numberOfNUMANodes();
+    }
+
+    /**
+     * Return the NUMA node of the processor the current thread is running on.
+     * @return a NUMA node number, 0 if unknown
+     */
+    public static int getCurrentNUMANode() {
+        return virtualMemory_currentNUMANode();
+    }
+
+    /**
+     * Binds the physical memory backing a range of committed virtual memory to a NUMA node.
+     * The binding is lost if the range is uncommitted, and must be re-established after the range is committed again.
+     *
+     * @param address page aligned start of the range
+     * @param size size of the range
+     * @param node a NUMA node
+     * @return true if the range was bound to the node, false otherwise
+     */
+    public static boolean bindToNUMANode(Address address, Size size, int node) {
+        if (TraceAnonOperations) {
+            traceRange("bindToNUMANode", address, size);
+        }
+        return virtualMemory_bindToNUMANode(address, size, node);
+    }
+
+    @C_FUNCTION
+    private static native int virtualMemory_numberOfNUMANodes();
+
+    @C_FUNCTION
+    private static native int virtualMemory_currentNUMANode();
+
+    @C_FUNCTION
+    private static native boolean virtualMemory_bindToNUMANode(Address address, Size size, int node);
+
     /* Page protection methods */
 
     /**
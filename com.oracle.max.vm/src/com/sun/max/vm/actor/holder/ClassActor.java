@@ -1746,6 +1746,14 @@ public abstract class ClassActor extends Actor implements RiResolvedType {
     @INSPECTED
     public byte[] classfile;
 
+    /**
+     * A hash of the class file this class was defined from or 0 if it was not defined from a class file.
+     * This is used to detect when information recorded about this class in an earlier VM run is stale.
+     *
+     * @see com.sun.max.vm.classfile.ClassfileReader#classfileHash(byte[], int, int)
+     */
+    public int classfileHash;
+
     public int[] iToV() {
         return iToV;
     }
@@ -1889,6 +1897,7 @@ public abstract class ClassActor extends Actor implements RiResolvedType {
                     return o1.offset() - o2.offset();
                 }
             });
+            sortedFields.addAll(Arrays.asList(fields));
             return sortedFields.toArray(new RiResolvedField[0]);
         }
         return fields;
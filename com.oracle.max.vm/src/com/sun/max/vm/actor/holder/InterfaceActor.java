@@ -22,8 +22,11 @@
  */
 package com.sun.max.vm.actor.holder;
 
+import java.util.*;
+
 import com.sun.max.vm.actor.member.*;
 import com.sun.max.vm.classfile.constant.*;
+import com.sun.max.vm.compiler.deps.*;
 import com.sun.max.vm.layout.*;
 import com.sun.max.vm.type.*;
 
@@ -84,5 +87,40 @@ public final class InterfaceActor extends ClassActor {
         }
     }
 
+    private static final int[] NO_IMPLEMENTORS = {};
+
+    /**
+     * Class ids of the instance classes and interfaces that list this interface among their
+     * {@linkplain #localInterfaceActors() local interfaces}. Updated only by the {@link DependenciesManager}.
+     */
+    private int[] directImplementors = NO_IMPLEMENTORS;
+
+    private int directImplementorCount;
+
+    /**
+     * Records that a class or interface being added to the class hierarchy directly implements or extends this interface.
+     */
+    public void addDirectImplementor(ClassActor classActor) {
+        assert DependenciesManager.classHierarchyLock.isWriteLockedByCurrentThread();
+        if (directImplementorCount == directImplementors.length) {
+            directImplementors = Arrays.copyOf(directImplementors, directImplementorCount * 2 + 2);
+        }
+        directImplementors[directImplementorCount++] = classActor.id;
+    }
+
+    /**
+     * Gets the number of classes and interfaces that directly implement or extend this interface.
+     */
+    public int directImplementorCount() {
+        return directImplementorCount;
+    }
+
+    /**
+     * Gets the class id of the {@code index}'th class or interface that directly implements or extends this interface.
+     */
+    public int directImplementorAt(int index) {
+        return directImplementors[index];
+    }
+
     public static final InterfaceActor[] NONE = {};
 }
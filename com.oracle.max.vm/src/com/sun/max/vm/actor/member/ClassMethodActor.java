@@ -41,6 +41,7 @@ import com.sun.max.vm.compiler.RuntimeCompiler.*;
 import com.sun.max.vm.compiler.target.*;
 import com.sun.max.vm.jni.*;
 import com.sun.max.vm.object.ObjectAccess;
+import com.sun.max.vm.profile.*;
 import com.sun.max.vm.runtime.FatalError;
 import com.sun.max.vm.type.*;
 import com.sun.max.vm.verifier.*;
@@ -214,6 +215,23 @@ public abstract class ClassMethodActor extends MethodActor {
         return 0;
     }
 
+    /**
+     * Gets the receiver types recorded at {@code bci} by the instrumented baseline version of this method.
+     * If it has not recorded any yet, the types recorded by a previous run in the profile cache are used.
+     */
+    @Override
+    public RiTypeProfile typeProfile(int bci) {
+        TargetMethod baseline = Compilations.currentTargetMethod(compiledState, Nature.BASELINE);
+        RiTypeProfile profile = null;
+        if (baseline != null && baseline.profile() != null) {
+            profile = MethodInstrumentation.computeTypeProfile(baseline.profile(), bci);
+        }
+        if (profile == null && !MaxineVM.isHosted()) {
+            profile = vm().compilationBroker.cachedTypeProfile(this, bci);
+        }
+        return profile;
+    }
+
     /**
      * Gets the bytecode that is to be compiled and/or executed for this actor.
      * @return the code attribute
@@ -1622,6 +1622,7 @@ public final class ClassfileReader {
         final ClassfileReader classfileReader = new ClassfileReader(classfileStream, classLoader);
         ClassActor classActor = classfileReader.loadClass(name, source, isRemote);
         classActor.setProtectionDomain(protectionDomain);
+        classActor.classfileHash = classfileHash(bytes, offset, length);
 
         final ClassActor definedClassActor = ClassRegistry.define(classActor);
 
@@ -1633,6 +1634,18 @@ public final class ClassfileReader {
         return definedClassActor;
     }
 
+    /**
+     * Computes a 32-bit FNV-1a hash of some class file bytes. This is computed for every class defined so it must
+     * be cheap and must not depend on any native code.
+     */
+    public static int classfileHash(byte[] bytes, int offset, int length) {
+        int hash = 0x811c9dc5;
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ (bytes[i] & 0xff)) * 0x01000193;
+        }
+        return hash;
+    }
+
     /**
      * This exists (solely) for the purpose of being able to reify generated classes while hosted. These are needed so
      * that the actors for generated stubs can be created.
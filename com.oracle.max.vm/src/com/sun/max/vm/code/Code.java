@@ -88,9 +88,41 @@ public final class Code {
      * @param targetMethod the target method for which the code-related arrays are allocated
      */
     public static void allocate(TargetBundleLayout targetBundleLayout, TargetMethod targetMethod) {
+        if (MaxineVM.isHosted() && hostedAllocationOrder != null) {
+            hostedAllocationOrder.beforeAllocation(targetMethod);
+            try {
+                codeManager.allocate(targetBundleLayout, targetMethod, false, targetMethod.lifespan());
+            } finally {
+                hostedAllocationOrder.afterAllocation(targetMethod);
+            }
+            return;
+        }
         codeManager.allocate(targetBundleLayout, targetMethod, false, targetMethod.lifespan());
     }
 
+    /**
+     * Lets a boot image generator that compiles methods concurrently impose a deterministic order
+     * on the allocation of code in the boot code region.
+     */
+    @HOSTED_ONLY
+    public interface HostedAllocationOrder {
+        /**
+         * Called before code is allocated for {@code targetMethod}. May block until it is the turn of {@code targetMethod}.
+         */
+        void beforeAllocation(TargetMethod targetMethod);
+
+        /**
+         * Called once code has been allocated for {@code targetMethod}.
+         */
+        void afterAllocation(TargetMethod targetMethod);
+    }
+
+    /**
+     * The allocation order imposed while compiling the boot image, or {@code null} if allocations are unordered.
+     */
+    @HOSTED_ONLY
+    public static HostedAllocationOrder hostedAllocationOrder;
+
     /**
      * Allocates space in the heap for the code-related arrays of a given target method
      * and {@linkplain TargetMethod#setCodeArrays(byte[], Pointer, byte[], Object[]) initializes} them.
@@ -86,6 +86,19 @@ public final class CodeCacheMetricsPrinter {
         final CodeManager codeManager = Code.getCodeManager();
         printRegionTo(codeManager.getRuntimeBaselineCodeRegion(), out);
         printRegionTo(codeManager.getRuntimeOptCodeRegion(), out);
+        printEvictionsTo(codeManager, out);
+    }
+
+    void printEvictionsTo(CodeManager codeManager, PrintStream out) {
+        out.println();
+        out.println("========== Code eviction ==========");
+        Table table = new Table("Region", "Evictions", "EvictedMethods", "EvictedCode", "MovedMethods", "MovedBytes", "Reclaimed");
+        table.addRow("------");
+        table.addRow(codeManager.getRuntimeBaselineCodeRegion().regionName(), CodeEviction.evictionCount(), CodeEviction.evictedMethods(),
+                        CodeEviction.evictedBytes(), CodeEviction.survivingMethods(), CodeEviction.survivingBytes(), CodeEviction.evictedBytes());
+        table.addRow(codeManager.getRuntimeOptCodeRegion().regionName(), OptCodeEviction.evictionCount(), OptCodeEviction.evictedMethods(),
+                        OptCodeEviction.evictedBytes(), OptCodeEviction.movedMethods(), OptCodeEviction.movedBytes(), OptCodeEviction.reclaimedBytes());
+        out.println(CiUtil.tabulate(table.cells.toArray(), table.cols, 1, 1));
     }
 
     void printRegionTo(CodeRegion cr, PrintStream out) {
@@ -507,6 +507,39 @@ public final class CodeEviction extends VmOperation {
         return evictionCount;
     }
 
+    private static long evictedMethods;
+    private static long evictedBytes;
+    private static long survivingMethods;
+    private static long survivingBytes;
+
+    /**
+     * The total number of stale methods evicted from the baseline code region.
+     */
+    public static long evictedMethods() {
+        return evictedMethods;
+    }
+
+    /**
+     * The total number of code bytes evicted from the baseline code region.
+     */
+    public static long evictedBytes() {
+        return evictedBytes;
+    }
+
+    /**
+     * The total number of methods copied to to-space, counting a method once per eviction it survived.
+     */
+    public static long survivingMethods() {
+        return survivingMethods;
+    }
+
+    /**
+     * The total number of code bytes copied to to-space.
+     */
+    public static long survivingBytes() {
+        return survivingBytes;
+    }
+
     private static CodeEviction codeEviction = new CodeEviction();
 
     /**
@@ -557,6 +590,11 @@ public final class CodeEviction extends VmOperation {
 
         logStatistics();
 
+        evictedMethods += nStale;
+        evictedBytes += nStaleBytes;
+        survivingMethods += nSurvivors;
+        survivingBytes += nSurvivingBytes;
+
         resetCounters();
 
         // phase 2: compact the baseline code cache and patch all PC values and return addresses
@@ -580,6 +618,8 @@ public final class CodeEviction extends VmOperation {
         }
 
         CodeManager.runtimeBaselineCodeRegion.resetFromSpace();
+        // Baseline code addresses now denote different methods.
+        StackReferenceMapCache.flush();
         if (logging()) {
             codeEvictionLogger.logMove_Progress("FINISHED walking threads");
         }
@@ -61,6 +61,7 @@ public abstract class CodeManager {
     /**
      * VM option for specifying the amount of memory to be reserved for the runtime opt code region cache.
      * Experiments have shown that very little such code is generated, so this region is rather small.
+     * Invalidated code is {@linkplain OptCodeEviction evicted} from it when it runs full.
      */
     public static final VMSizeOption runtimeOptCodeRegionSize =
         register(new VMSizeOption("-XX:ReservedOptCodeCacheSize=", Size.M.times(16),
@@ -246,6 +247,13 @@ public abstract class CodeManager {
                     CodeEviction.codeEvictionLogger.logStats_Surviving(lastSurvivorSize, largestSurvivorSize);
                 }
             }
+
+            // Allocation in the opt code region may take another attempt after invalidated methods have been evicted.
+            if (start.isZero() && currentCodeRegion == runtimeOptCodeRegion && OptCodeEviction.EvictOptCode) {
+                OptCodeEviction.run();
+                assert validateCodeCache();
+                start = currentCodeRegion.allocate(allocationSize, false);
+            }
         }
 
         traceChunkAllocation(allocationTraceDescription, allocationSize, start, inHeap);
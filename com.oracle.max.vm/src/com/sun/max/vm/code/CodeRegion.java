@@ -203,6 +203,25 @@ public class CodeRegion extends LinearAllocatorRegion {
         }
     }
 
+    /**
+     * Removes all {@linkplain TargetMethod#isWiped() wiped} target methods from this region and rebuilds the
+     * {@link #findIndex} for the remaining ones. These may have been moved, but must still be in address order.
+     */
+    public void removeWipedTargetMethods() {
+        int survivors = 0;
+        for (int i = 0; i < length; i++) {
+            if (!targetMethods[i].isWiped()) {
+                targetMethods[survivors++] = targetMethods[i];
+            }
+        }
+        Arrays.fill(targetMethods, survivors, length, null);
+        Arrays.fill(findIndex, 0);
+        length = 0;
+        for (int i = 0; i < survivors; i++) {
+            add(targetMethods[i]);
+        }
+    }
+
     /**
      * Looks up the target method containing a particular address, using the index.
      *
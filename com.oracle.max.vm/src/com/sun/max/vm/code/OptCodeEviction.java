@@ -0,0 +1,559 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.code;
+
+import static com.sun.max.platform.Platform.*;
+
+import com.sun.max.lang.*;
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.compiler.*;
+import com.sun.max.vm.compiler.target.*;
+import com.sun.max.vm.compiler.target.amd64.*;
+import com.sun.max.vm.compiler.target.arm.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.profile.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.stack.*;
+import com.sun.max.vm.thread.*;
+import com.sun.max.vm.ti.*;
+
+/**
+ * Eviction of invalidated code from the {@linkplain CodeManager#runtimeOptCodeRegion opt code region}.
+ * <p>
+ * Unlike the baseline code region, the opt code region is a plain linear allocator whose contents normally stay
+ * around for the lifetime of the VM. Methods that have been {@linkplain TargetMethod#invalidated() invalidated} by
+ * deoptimization are never linked or dispatched to again, but their code stays allocated, as does the code of methods
+ * superseded by a newer compilation. When the region runs full, this operation reclaims the space of all such methods
+ * that are no longer referenced from any stack:
+ * <ol>
+ * <li>All threads are walked. Every opt method that is executing, or that is denoted by a tagged code pointer
+ * in a frame, is marked and will neither be evicted nor moved.</li>
+ * <li>Unmarked methods that are {@linkplain #isEvictable invalidated or unreferenced} are evicted, i.e., their code
+ * is {@linkplain TargetMethod#wipe() wiped}.</li>
+ * <li>If {@link #CompactOptCode} is enabled, surviving methods that are fully installed are slid towards the start
+ * of the region, keeping their relative order. This both reclaims the holes left by evicted methods and keeps the
+ * remaining code dense. Marked methods stay where they are, and the gaps in front of them are filled with dead
+ * objects so that the region remains parsable. Without compaction, only the space after the last surviving method
+ * is reclaimed.</li>
+ * <li>Direct calls in all code regions and all dispatch table entries are fixed: entries denoting an evicted method
+ * are reset to trampolines, and entries denoting a moved method are relocated.</li>
+ * </ol>
+ * During the operation, the {@link TargetMethod#oldStart()} of each method in the region records its start address
+ * prior to compaction.
+ */
+public final class OptCodeEviction extends VmOperation {
+
+    /**
+     * Evict invalidated methods from the opt code region when it is full.
+     */
+    static boolean EvictOptCode = true;
+
+    /**
+     * Compact the opt code region after eviction.
+     */
+    static boolean CompactOptCode = true;
+
+    /**
+     * Trace opt code eviction.
+     */
+    static boolean TraceOptCodeEviction;
+
+    static {
+        VMOptions.addFieldOption("-XX:", "EvictOptCode", OptCodeEviction.class,
+            "Evict invalidated methods that are no longer executing when the opt code region is full.", MaxineVM.Phase.STARTING);
+        VMOptions.addFieldOption("-XX:", "CompactOptCode", OptCodeEviction.class,
+            "Slide surviving methods together after evicting opt code.", MaxineVM.Phase.STARTING);
+        VMOptions.addFieldOption("-XX:", "TraceOptCodeEviction", OptCodeEviction.class,
+            "Trace eviction of opt code.", MaxineVM.Phase.STARTING);
+    }
+
+    /**
+     * Marks all opt methods that are executing on a stack or that are denoted by a code pointer in a frame.
+     */
+    final class LiveMethodsMarker extends RawStackFrameVisitor {
+        @Override
+        public boolean visitFrame(StackFrameCursor current, StackFrameCursor callee) {
+            final TargetMethod tm = current.targetMethod();
+            if (tm != null) {
+                if (cr.contains(tm.start())) {
+                    tm.mark();
+                }
+                tm.prepareReferenceMap(current, callee, codePointerMarker);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Marks opt methods denoted by tagged code pointers in a frame. As with {@link CodeEviction}, this piggybacks
+     * on the stack root scanning logic.
+     */
+    private final class CodePointerMarker extends FrameReferenceMapVisitor {
+
+        @Override
+        public void visitReferenceMapBits(StackFrameCursor cursor, Pointer slotPointer, int refMap, int numBits) {
+            if (refMap == 0) {
+                return; // nothing to do
+            }
+            for (int i = 0; i < numBits; i++) {
+                if (((refMap >> i) & 1) == 1) {
+                    final Address raw = slotPointer.getWord(i).asAddress();
+                    if ((raw.toLong() & 1L) == 1L) { // tagged?
+                        final Address cp = CodePointer.fromTaggedLong(raw.toLong()).toAddress();
+                        if (cr.contains(cp)) {
+                            final TargetMethod tm = cr.find(cp);
+                            if (tm != null) {
+                                tm.mark();
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void logPrepareReferenceMap(TargetMethod targetMethod, int safepointIndex, Pointer refmapFramePointer, String label) {
+            // unimplemented
+        }
+
+        @Override
+        public int referenceMapBitIndex(Address slotAddress) {
+            // unimplemented
+            return -1;
+        }
+
+        @Override
+        public void setBits(int baseSlotIndex, byte referenceMapByte) {
+            // unimplemented
+        }
+
+        @Override
+        public void logReferenceMapByteBefore(int byteIndex, byte referenceMapByte, String referenceMapLabel) {
+            // unimplemented
+        }
+
+        @Override
+        public void logReferenceMapByteAfter(Pointer framePointer, int baseSlotIndex, byte referenceMapByte) {
+            // unimplemented
+        }
+    }
+
+    /**
+     * Fixes the direct calls of a method that either call an evicted or moved method, or that were moved themselves.
+     */
+    final class FixCalls implements TargetMethod.Closure {
+        int fixed;
+
+        @Override
+        public boolean doTargetMethod(TargetMethod targetMethod) {
+            if (targetMethod.isWiped()) {
+                return true;
+            }
+            final Offset delta = cr.contains(targetMethod.start()) ? movedBy(targetMethod) : Offset.zero();
+            final Safepoints safepoints = targetMethod.safepoints();
+            int dcIndex = 0;
+            for (int spi = safepoints.nextDirectCall(0); spi >= 0; spi = safepoints.nextDirectCall(spi + 1), dcIndex++) {
+                final int callPos = safepoints.causePosAt(spi);
+                final CodePointer target;
+                if (platform().isa == ISA.AMD64) {
+                    target = AMD64TargetMethodUtil.readCall32Target(targetMethod, callPos);
+                } else if (platform().isa == ISA.ARM) {
+                    target = ARMTargetMethodUtil.readCall32Target(targetMethod, callPos);
+                } else {
+                    throw FatalError.unimplemented();
+                }
+                // the intended target, as seen from the (old) location of the caller
+                final CodePointer itarget = target.minus(delta);
+                final TargetMethod callee = findOld(itarget.toAddress());
+                if (callee != null && callee.isWiped()) {
+                    targetMethod.resetDirectCall(spi, dcIndex);
+                    ++fixed;
+                } else if (callee != null && !movedBy(callee).isZero()) {
+                    targetMethod.fixupCallSite(callPos, itarget.plus(movedBy(callee)));
+                    ++fixed;
+                } else if (!delta.isZero()) {
+                    targetMethod.fixupCallSite(callPos, itarget);
+                    ++fixed;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Resets vtable and itable entries denoting evicted methods to trampolines, and relocates entries denoting
+     * moved methods.
+     */
+    final class FixDispatchTables implements ClassActor.Closure {
+        int fixed;
+
+        @Override
+        public boolean doClass(ClassActor classActor) {
+            final DynamicHub dhub = classActor.dynamicHub();
+            if (dhub != null) {
+                fixEntries(dhub, Hub.vTableStartIndex(), dhub.iTableStartIndex, false);
+                fixEntries(dhub, dhub.iTableStartIndex, dhub.iTableStartIndex + dhub.iTableLength, true);
+            }
+            final StaticHub shub = classActor.staticHub();
+            if (shub != null) {
+                fixEntries(shub, Hub.vTableStartIndex(), shub.iTableStartIndex, false);
+            }
+            return true;
+        }
+
+        private void fixEntries(Hub hub, int from, int to, boolean itable) {
+            for (int i = from; i < to; i++) {
+                final Address entry = hub.getWord(i).asAddress();
+                final TargetMethod tm = findOld(entry);
+                if (tm == null) {
+                    continue;
+                }
+                if (tm.isWiped()) {
+                    if (itable) {
+                        ((DynamicHub) hub).resetITableEntry(i);
+                    } else {
+                        hub.resetVTableEntry(i);
+                    }
+                    ++fixed;
+                } else {
+                    final Offset delta = movedBy(tm);
+                    if (!delta.isZero()) {
+                        hub.setWord(i, entry.plus(delta));
+                        ++fixed;
+                    }
+                }
+            }
+        }
+    }
+
+    private final CodeRegion cr = CodeManager.runtimeOptCodeRegion;
+
+    private final VmStackFrameWalker walker = new VmStackFrameWalker(Pointer.zero());
+
+    private final LiveMethodsMarker liveMethodsMarker = new LiveMethodsMarker();
+
+    private final CodePointerMarker codePointerMarker = new CodePointerMarker();
+
+    private final FixCalls fixCalls = new FixCalls();
+
+    private final FixDispatchTables fixDispatchTables = new FixDispatchTables();
+
+    /**
+     * The allocation mark of the region prior to the current eviction.
+     */
+    private Address oldMark;
+
+    private int nEvicted;
+    private int nEvictedBytes;
+    private int nMoved;
+    private int nMovedBytes;
+    private int nPinned;
+
+    private static int evictionCount;
+    private static long evictedMethods;
+    private static long evictedBytes;
+    private static long movedMethods;
+    private static long movedBytes;
+    private static long reclaimedBytes;
+
+    private static final OptCodeEviction optCodeEviction = new OptCodeEviction();
+
+    private OptCodeEviction() {
+        super("opt code cache cleaner", null, Mode.Safepoint);
+    }
+
+    /**
+     * Run an opt code eviction operation.
+     */
+    public static void run() {
+        optCodeEviction.submit();
+    }
+
+    /**
+     * The number of opt code evictions run so far.
+     */
+    public static int evictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * The total number of methods evicted from the opt code region.
+     */
+    public static long evictedMethods() {
+        return evictedMethods;
+    }
+
+    /**
+     * The total number of code bytes evicted from the opt code region.
+     */
+    public static long evictedBytes() {
+        return evictedBytes;
+    }
+
+    /**
+     * The total number of methods moved by compaction of the opt code region.
+     */
+    public static long movedMethods() {
+        return movedMethods;
+    }
+
+    /**
+     * The total number of bytes moved by compaction of the opt code region.
+     */
+    public static long movedBytes() {
+        return movedBytes;
+    }
+
+    /**
+     * The total number of bytes returned to the allocator of the opt code region.
+     */
+    public static long reclaimedBytes() {
+        return reclaimedBytes;
+    }
+
+    @Override
+    protected void doIt() {
+        ++evictionCount;
+        nEvicted = 0;
+        nEvictedBytes = 0;
+        nMoved = 0;
+        nMovedBytes = 0;
+        nPinned = 0;
+        oldMark = cr.getAllocationMark();
+
+        // phase 1: mark all methods referenced from stacks
+        doAllThreads();
+
+        CodeManager.Inspect.notifyEvictionStarted(cr);
+
+        // phase 2: evict unmarked invalidated methods and slide the movable survivors together
+        compact();
+
+        // phase 3: fix everything that refers to evicted or moved code
+        fixCalls.fixed = 0;
+        Code.bootCodeRegion().doAllTargetMethods(fixCalls);
+        CodeManager.runtimeBaselineCodeRegion.doAllTargetMethods(fixCalls);
+        cr.doAllTargetMethods(fixCalls);
+        fixDispatchTables.fixed = 0;
+        ClassActor.allClassesDo(fixDispatchTables);
+
+        cr.removeWipedTargetMethods();
+        for (int i = 0; i < cr.length; i++) {
+            cr.targetMethods[i].unmark();
+        }
+        // Opt code addresses now denote different methods.
+        StackReferenceMapCache.flush();
+
+        CodeManager.Inspect.notifyEvictionCompleted(cr);
+
+        final Size reclaimed = oldMark.minus(cr.getAllocationMark()).asSize();
+        evictedMethods += nEvicted;
+        evictedBytes += nEvictedBytes;
+        movedMethods += nMoved;
+        movedBytes += nMovedBytes;
+        reclaimedBytes += reclaimed.toLong();
+
+        if (TraceOptCodeEviction) {
+            final boolean lockDisabledSafepoints = Log.lock();
+            Log.print("Opt code eviction #");
+            Log.print(evictionCount);
+            Log.print(": evicted ");
+            Log.print(nEvicted);
+            Log.print(" methods (");
+            Log.print(nEvictedBytes);
+            Log.print(" code bytes), moved ");
+            Log.print(nMoved);
+            Log.print(" methods (");
+            Log.print(nMovedBytes);
+            Log.print(" bytes), pinned ");
+            Log.print(nPinned);
+            Log.print(", fixed ");
+            Log.print(fixCalls.fixed);
+            Log.print(" call sites and ");
+            Log.print(fixDispatchTables.fixed);
+            Log.print(" dispatch table entries, reclaimed ");
+            Log.print(reclaimed.toLong());
+            Log.println(" bytes");
+            Log.unlock(lockDisabledSafepoints);
+        }
+    }
+
+    @Override
+    protected void doThread(VmThread vmThread, Pointer ip, Pointer sp, Pointer fp) {
+        // bail out if the thread was stopped in native code before invoking any Java method
+        if (ip.isZero() && sp.isZero() && fp.isZero()) {
+            return;
+        }
+        walker.setTLA(vmThread.tla());
+        walker.inspect(ip, sp, fp, liveMethodsMarker);
+    }
+
+    /**
+     * Determines if a method can be evicted. Stubs, adapters and native stubs are never evicted. Other methods that
+     * are not referenced from any stack are evicted if they are invalidated or unreferenced.
+     * <p>
+     * An {@linkplain TargetMethod#isOSRCompilation() OSR compilation} is only referenced by the profile of the
+     * baseline method it replaces. It is only evicted once it is invalidated and no longer recorded in that profile,
+     * which {@link OnStackReplacement} does when it finds the invalidated method.
+     */
+    private static boolean isEvictable(TargetMethod tm) {
+        final ClassMethodActor cma = tm.classMethodActor;
+        if (tm.isMarked() || cma == null || cma.isNative() || tm.isWiped()) {
+            return false;
+        }
+        if (tm.isOSRCompilation()) {
+            if (tm.invalidated() == null) {
+                return false;
+            }
+            final TargetMethod baseline = installedCompilations(cma).baseline;
+            final MethodProfile profile = baseline == null ? null : baseline.profile();
+            return profile == null || !profile.isOSRMethod(tm);
+        }
+        return tm.invalidated() != null || !isInstalled(tm, cma);
+    }
+
+    /**
+     * Determines if a method is installed or about to be installed as the compiled code of its method actor. A method
+     * that is not is unreferenced: it was superseded by a newer compilation or was the dropped result of a
+     * compilation. The remaining direct calls to it and dispatch table entries denoting it are reset to trampolines
+     * when it is evicted.
+     */
+    private static boolean isInstalled(TargetMethod tm, ClassMethodActor cma) {
+        final Object compiledState = cma.compiledState;
+        if (compiledState instanceof Compilation && ((Compilation) compiledState).result == tm) {
+            return true;
+        }
+        final Compilations compilations = installedCompilations(cma);
+        return compilations.baseline == tm || compilations.optimized == tm;
+    }
+
+    /**
+     * Gets the compilations of a method that are installed, including while another compilation of it is pending.
+     */
+    private static Compilations installedCompilations(ClassMethodActor cma) {
+        final Object compiledState = cma.compiledState;
+        if (compiledState instanceof Compilation) {
+            return ((Compilation) compiledState).prevCompilations;
+        }
+        return compiledState instanceof Compilations ? (Compilations) compiledState : Compilations.EMPTY;
+    }
+
+    /**
+     * Determines if a method can be moved. Only methods that are fully installed as the current code of their
+     * (non-native) method actor are moved; anything else may still be referenced by raw addresses held outside the
+     * data structures patched by this operation.
+     */
+    private static boolean isMovable(TargetMethod tm) {
+        return CompactOptCode && !tm.isMarked() && tm.classMethodActor != null && !tm.classMethodActor.isNative() &&
+            tm.classMethodActor.currentTargetMethod() == tm;
+    }
+
+    /**
+     * Evicts and slides the methods of the region in address order. Afterwards, the {@link TargetMethod#oldStart()}
+     * of each method denotes its start prior to this operation.
+     */
+    private void compact() {
+        Pointer cursor = cr.start().asPointer();
+        for (int i = 0; i < cr.length; i++) {
+            final TargetMethod tm = cr.targetMethods[i];
+            final Pointer from = tm.start().asPointer();
+            if (isEvictable(tm)) {
+                ++nEvicted;
+                nEvictedBytes += tm.codeLength();
+                VMTI.handler().methodUnloaded(tm.classMethodActor, tm.codeStart().toPointer());
+                tm.wipe();
+                tm.setOldStart(from);
+                continue;
+            }
+            if (isMovable(tm)) {
+                final Size size = tm.size();
+                if (!cursor.equals(from)) {
+                    ++nMoved;
+                    nMovedBytes += size.toInt();
+                    // sliding towards lower addresses, so a forward copy is fine even if the ranges overlap
+                    Memory.copyBytes(from, cursor, size);
+                    tm.setStart(cursor);
+                    final byte[] code = (byte[]) relocate(from, cursor, tm.code());
+                    final Pointer codeStart = cursor.plus(tm.codeStart().toPointer().minus(from));
+                    final byte[] scalarLiterals = (byte[]) relocate(from, cursor, tm.scalarLiterals());
+                    final Object[] referenceLiterals = (Object[]) relocate(from, cursor, tm.referenceLiterals());
+                    tm.setCodeArrays(code, codeStart, scalarLiterals, referenceLiterals);
+                    VMTI.handler().methodCompiled(tm.classMethodActor);
+                }
+                cursor = cursor.plus(size);
+            } else {
+                ++nPinned;
+                if (cursor.lessThan(from)) {
+                    HeapSchemeAdaptor.fillWithDeadObject(cursor, from);
+                }
+                cursor = tm.end().asPointer();
+            }
+            tm.setOldStart(from);
+        }
+        cr.setMark(cursor);
+    }
+
+    private static Object relocate(Pointer fromBase, Pointer toBase, Object o) {
+        if (o == null) {
+            return null;
+        }
+        final Address offset = Reference.fromJava(o).toOrigin().minus(fromBase);
+        return Reference.fromOrigin(toBase.plus(offset)).toJava();
+    }
+
+    /**
+     * Gets the distance by which a method of this region was moved by the current operation.
+     */
+    private static Offset movedBy(TargetMethod tm) {
+        return tm.start().minus(tm.oldStart()).asOffset();
+    }
+
+    /**
+     * Looks up the method of this region that contained a given address prior to the current operation.
+     */
+    private TargetMethod findOld(Address a) {
+        if (a.lessThan(cr.start()) || a.greaterEqual(oldMark)) {
+            return null;
+        }
+        final TargetMethod[] tms = cr.targetMethods;
+        int lo = 0;
+        int hi = cr.length - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final TargetMethod tm = tms[mid];
+            if (a.lessThan(tm.oldStart())) {
+                hi = mid - 1;
+            } else if (a.greaterEqual(tm.oldStart().plus(tm.size()))) {
+                lo = mid + 1;
+            } else {
+                return tm;
+            }
+        }
+        return null;
+    }
+}
@@ -33,6 +33,7 @@ import static com.sun.max.vm.intrinsics.Infopoints.*;
 import java.util.*;
 
 import com.sun.cri.ci.*;
+import com.sun.cri.ri.*;
 import com.sun.max.annotate.*;
 import com.sun.max.lang.*;
 import com.sun.max.unsafe.*;
@@ -95,6 +96,23 @@ public class CompilationBroker {
     private static boolean offline = false;
     private static boolean simulateAdapter = false;
 
+    /**
+     * Recompile methods whose instrumentation counter overflowed on {@linkplain CompilationThread compilation threads}
+     * instead of on the application thread that overflowed the counter.
+     */
+    private static boolean BackgroundRecompilation = true;
+
+    /**
+     * The number of compilation threads started when {@link #BackgroundRecompilation} is enabled.
+     */
+    private static int CompilerThreads = 2;
+
+    /**
+     * The value an instrumentation counter is reset to while a recompilation of its method is queued. Each subsequent
+     * overflow raises the {@linkplain QueuedRecompilation#hotness hotness} of the queued compilation.
+     */
+    private static final int QUEUED_RECOMPILATION_COUNT = 1000;
+
     static {
         addFieldOption("-X", "opt", CompilationBroker.class, "Select optimizing compiler whenever possible.");
         addFieldOption("-XX:", "RCT", CompilationBroker.class, "Set the recompilation threshold for methods. Use 0 to disable recompilation. (default: " + RCT + ").");
@@ -103,6 +121,8 @@ public class CompilationBroker {
         addFieldOption("-XX:", "PrintCodeCacheMetrics", CompilationBroker.class, "Print code cache metrics (0 = disabled, 1 = summary, 2 = verbose).");
         addFieldOption("-XX:", "VMExtOpt", CompilationBroker.class, "Compile VM extensions with optimizing compiler (default: false");
         addFieldOption("-XX:", "AddCompiler", CompilationBroker.class, "Add a compiler, Name:Class");
+        addFieldOption("-XX:", "BackgroundRecompilation", CompilationBroker.class, "Recompile hot methods on compilation threads while the application keeps running baseline code.");
+        addFieldOption("-XX:", "CompilerThreads", CompilationBroker.class, "Number of compilation threads used for background recompilation (default: " + CompilerThreads + ").");
     }
 
     @RESET
@@ -120,6 +140,20 @@ public class CompilationBroker {
 
     private LinkedHashMap<String, String> compileCommandMap;
 
+    @RESET
+    static String ProfileCacheFile;
+
+    static {
+        VMOptions.addFieldOption("-XX:", "ProfileCacheFile", CompilationBroker.class,
+                "Record the methods recompiled by the optimizing compiler and their receiver type profiles in the given file " +
+                "at exit, and use the file from a previous run to recompile those methods as soon as they are first compiled.");
+    }
+
+    /**
+     * The cache of recompilation decisions made by previous runs, or {@code null} if {@link #ProfileCacheFile} is not set.
+     */
+    private ProfileCache profileCache;
+
     /**
      * Gets the name of the compiler to be used to
      * compile {@code cma} as specified by the {@code -XX:CompileCommand} VM option.
@@ -161,7 +195,10 @@ public class CompilationBroker {
      */
     private RuntimeCompiler defaultCompiler;
 
-    private static final boolean BACKGROUND_COMPILATION = false;
+    /**
+     * Set once the {@linkplain CompilationThread compilation threads} servicing {@link #pending} have been started.
+     */
+    private boolean compilationThreadsStarted;
 
     public boolean needsAdapters() {
         return baselineCompiler != null;
@@ -326,13 +363,9 @@ public class CompilationBroker {
         }
 
         if (isHosted()) {
-            if (BACKGROUND_COMPILATION) {
-                // launch a compiler thread if background compilation is supported (currently no)
-                final CompilationThread compilationThread = new CompilationThread();
-                compilationThread.setDaemon(true);
-                compilationThread.start();
-            }
-        } else if (phase == MaxineVM.Phase.STARTING) {
+            return;
+        }
+        if (phase == MaxineVM.Phase.STARTING) {
             if (opt) {
                 defaultCompiler = optimizingCompiler;
             }
@@ -341,13 +374,27 @@ public class CompilationBroker {
                 MethodInstrumentation.enable(RCT);
             }
 
-            if (BACKGROUND_COMPILATION) {
-                // launch a compiler thread if background compilation is supported (currently no)
-                final CompilationThread compilationThread = new CompilationThread();
-                compilationThread.setDaemon(true);
-                compilationThread.start();
+            if (BackgroundRecompilation && RCT != 0 && baselineCompiler != null) {
+                if (CompilerThreads < 1) {
+                    throw FatalError.unexpected("CompilerThreads must be at least 1");
+                }
+                for (int i = 0; i < CompilerThreads; i++) {
+                    new CompilationThread("compile-" + i).start();
+                }
+                compilationThreadsStarted = true;
             }
         } else if (phase == Phase.RUNNING) {
+            if (ProfileCacheFile != null) {
+                final ProfileCache cache = new ProfileCache(ProfileCacheFile);
+                cache.load();
+                profileCache = cache;
+                Runtime.getRuntime().addShutdownHook(new Thread("ProfileCacheWriter") {
+                    @Override
+                    public void run() {
+                        cache.save();
+                    }
+                });
+            }
             if (PrintCodeCacheMetrics != 0) {
                 Runtime.getRuntime().addShutdownHook(new Thread("CodeCacheMetricsPrinter") {
                     @Override
@@ -468,10 +515,19 @@ public class CompilationBroker {
                 if (doCompile) {
                     TargetMethod tm = compilation.compile();
                     VMTI.handler().methodCompiled(cma);
+                    if (profileCache != null && tm != null && tm.isBaseline()) {
+                        enqueueCachedRecompilation(cma, tm);
+                    }
                     return tm;
                 } else {
                     // return result from other thread (which will have send the VMTI event)
-                    return compilation.get();
+                    TargetMethod tm = compilation.get();
+                    if (tm == null) {
+                        // an abandoned background compilation: try again in this thread
+                        assert compilation.isBackground;
+                        continue;
+                    }
+                    return tm;
                 }
             } catch (Throwable t) {
                 if (VMOptions.verboseOption.verboseCompilation) {
@@ -638,11 +694,20 @@ public class CompilationBroker {
         TargetMethod newMethod = Compilations.currentTargetMethod(cma.compiledState, null);
 
         if (oldMethod == newMethod || newMethod == null) {
+            CompilationBroker broker = vm().compilationBroker;
+            if (broker.compilationThreadsStarted) {
+                // Leave the recompilation to a compilation thread and keep running 'oldMethod' until it is installed
+                logCounterOverflow(mpo, "queued for background recompilation");
+                broker.enqueueRecompilation(mpo, receiver);
+                mpo.entryBackedgeCount = QUEUED_RECOMPILATION_COUNT;
+                return;
+            }
             if (!(cma.compiledState instanceof Compilation)) {
                 // There is no newer compiled version available yet that we could just patch to, so recompile
                 logCounterOverflow(mpo, "");
                 try {
                     newMethod = vm().compilationBroker.compile(cma, Nature.OPT);
+                    vm().compilationBroker.recordRecompilation(cma, 1);
                 } catch (InternalError e) {
                     if (VMOptions.verboseOption.verboseCompilation) {
                         e.printStackTrace(Log.out);
@@ -665,26 +730,7 @@ public class CompilationBroker {
             mpo.entryBackedgeCount = 0;
 
             if (receiver != null) {
-                Address from = oldMethod.getEntryPoint(VTABLE_ENTRY_POINT).toAddress();
-                Address to = newMethod.getEntryPoint(VTABLE_ENTRY_POINT).toAddress();
-
-                // Simply overwrite all vtable slots containing 'oldMethod' with 'newMethod'.
-                // These updates can be made atomically without need for a lock.
-                Hub hub = ObjectAccess.readHub(receiver);
-                for (int i = 0; i < hub.vTableLength(); i++) {
-                    int index = Hub.vTableStartIndex() + i;
-                    if (hub.getWord(index).equals(from)) {
-                        logDispatchTablePatch(cma, from, to, hub, index, "vtable");
-                        hub.setWord(index, to);
-                    }
-                }
-                for (int i = 0; i < hub.iTableLength; i++) {
-                    int index = hub.iTableStartIndex + i;
-                    if (hub.getWord(index).equals(from)) {
-                        logDispatchTablePatch(cma, from, to, hub, index, "itable");
-                        hub.setWord(index, to);
-                    }
-                }
+                patchDispatchTables(cma, oldMethod, newMethod, ObjectAccess.readHub(receiver));
             }
             // Look for a static call to 'oldMethod' and patch it.
             // This occurs even if 'cma' is non-static
@@ -697,6 +743,239 @@ public class CompilationBroker {
         }
     }
 
+    /**
+     * Overwrites all vtable and itable slots of {@code hub} that dispatch to {@code oldMethod} with the corresponding
+     * entry point of {@code newMethod}. These updates can be made atomically without need for a lock.
+     */
+    private static void patchDispatchTables(ClassMethodActor cma, TargetMethod oldMethod, TargetMethod newMethod, Hub hub) {
+        Address from = oldMethod.getEntryPoint(VTABLE_ENTRY_POINT).toAddress();
+        Address to = newMethod.getEntryPoint(VTABLE_ENTRY_POINT).toAddress();
+
+        for (int i = 0; i < hub.vTableLength(); i++) {
+            int index = Hub.vTableStartIndex() + i;
+            if (hub.getWord(index).equals(from)) {
+                logDispatchTablePatch(cma, from, to, hub, index, "vtable");
+                hub.setWord(index, to);
+            }
+        }
+        for (int i = 0; i < hub.iTableLength; i++) {
+            int index = hub.iTableStartIndex + i;
+            if (hub.getWord(index).equals(from)) {
+                logDispatchTablePatch(cma, from, to, hub, index, "itable");
+                hub.setWord(index, to);
+            }
+        }
+    }
+
+    /**
+     * An optimizing recompilation of a method whose instrumentation counter overflowed, performed by a
+     * {@linkplain CompilationThread compilation thread}. It records what is needed to redirect calls
+     * to the recompiled method once it is installed.
+     */
+    static final class QueuedRecompilation extends Compilation {
+
+        /**
+         * The profile whose counter overflowed.
+         */
+        final MethodProfile profile;
+
+        /**
+         * The hub of the receiver of the call that overflowed the counter or {@code null} if the method is static.
+         */
+        final Hub receiverHub;
+
+        /**
+         * The number of counter overflows observed for the method since this compilation was queued.
+         * Hotter compilations are performed first. Only accessed while holding the lock on {@link CompilationBroker#pending}.
+         */
+        int hotness = 1;
+
+        QueuedRecompilation(RuntimeCompiler compiler, MethodProfile profile, Compilations prevCompilations, Hub receiverHub) {
+            super(compiler, profile.method.classMethodActor, prevCompilations, Nature.OPT);
+            this.profile = profile;
+            this.receiverHub = receiverHub;
+        }
+    }
+
+    /**
+     * A compilation of a method with an {@linkplain OnStackReplacement OSR} entry, performed by a
+     * {@linkplain CompilationThread compilation thread}. Its result is recorded in the method's profile
+     * instead of becoming the method's compiled state.
+     */
+    static final class OSRCompilation extends Compilation {
+
+        /**
+         * The profile whose counter overflowed at a backward branch.
+         */
+        final MethodProfile profile;
+
+        /**
+         * The loop header at which the compiled code is entered.
+         */
+        final int osrBCI;
+
+        OSRCompilation(RuntimeCompiler compiler, MethodProfile profile, int osrBCI) {
+            super(compiler, profile.method.classMethodActor, Compilations.EMPTY, Nature.OPT);
+            this.profile = profile;
+            this.osrBCI = osrBCI;
+        }
+
+        @Override
+        public TargetMethod compile() {
+            try {
+                result = ((OSRCompiler) compiler).compileOSR(classMethodActor, osrBCI);
+            } catch (Throwable t) {
+                if (VMOptions.verboseOption.verboseCompilation) {
+                    t.printStackTrace(Log.out);
+                }
+                // stay with the baseline method
+                result = null;
+            }
+            profile.setOSRMethod(osrBCI, result);
+            return result;
+        }
+    }
+
+    /**
+     * Queues the compilation of the method profiled by {@code mpo} with an OSR entry at {@code osrBCI}. The OSR
+     * compilation is queued ahead of all recompilations as a thread is executing the loop in baseline code.
+     * The caller must have {@linkplain MethodProfile#startOSRCompilation started} the OSR compilation.
+     *
+     * @return {@code false} if there are no compilation threads, in which case the caller must perform the compilation
+     */
+    public boolean enqueueOSRCompilation(MethodProfile mpo, int osrBCI) {
+        if (!compilationThreadsStarted) {
+            return false;
+        }
+        OSRCompilation compilation = new OSRCompilation(optimizingCompiler, mpo, osrBCI);
+        synchronized (pending) {
+            pending.addFirst(compilation);
+            pending.notify();
+        }
+        return true;
+    }
+
+    /**
+     * Queues an optimizing recompilation of the method profiled by {@code mpo}. If a compilation of the method
+     * is already queued, its {@linkplain QueuedRecompilation#hotness hotness} is raised instead.
+     */
+    private void enqueueRecompilation(MethodProfile mpo, Object receiver) {
+        ClassMethodActor cma = mpo.method.classMethodActor;
+        QueuedRecompilation compilation;
+        synchronized (cma) {
+            Object compiledState = cma.compiledState;
+            if (compiledState instanceof Compilation) {
+                if (compiledState instanceof QueuedRecompilation) {
+                    compilation = (QueuedRecompilation) compiledState;
+                    synchronized (pending) {
+                        // only requeue if no compilation thread has picked it up yet
+                        if (pending.remove(compilation)) {
+                            compilation.hotness++;
+                            insertPending(compilation);
+                        }
+                    }
+                }
+                return;
+            }
+            Hub hub = receiver == null ? null : ObjectAccess.readHub(receiver);
+            compilation = new QueuedRecompilation(selectCompiler(cma, Nature.OPT, false), mpo, (Compilations) compiledState, hub);
+            cma.compiledState = compilation;
+        }
+        synchronized (pending) {
+            insertPending(compilation);
+            pending.notify();
+        }
+    }
+
+    /**
+     * Queues an optimizing recompilation of a method that was recompiled in a previous run, as recorded in the
+     * {@linkplain #profileCache profile cache}. This is done as soon as the baseline version of the method exists,
+     * so that the application runs the optimized version without first warming up the instrumentation counter.
+     * A method for which {@code -XX:CompileCommand} selects the baseline compiler is not queued.
+     */
+    private void enqueueCachedRecompilation(ClassMethodActor cma, TargetMethod baseline) {
+        ProfileCache.Entry entry = profileCache.match(cma);
+        MethodProfile mpo = baseline.profile();
+        if (entry == null || mpo == null || !compilationThreadsStarted) {
+            return;
+        }
+        String compilerName = compilerFor(cma);
+        if (compilerName != null && baselineCompiler.matches(compilerName)) {
+            return;
+        }
+        QueuedRecompilation compilation;
+        synchronized (cma) {
+            Object compiledState = cma.compiledState;
+            if (compiledState instanceof Compilation) {
+                return;
+            }
+            compilation = new QueuedRecompilation(selectCompiler(cma, Nature.OPT, false), mpo, (Compilations) compiledState, null);
+            compilation.hotness = entry.hotness;
+            cma.compiledState = compilation;
+        }
+        logCounterOverflow(mpo, "queued for background recompilation from the profile cache");
+        mpo.entryBackedgeCount = QUEUED_RECOMPILATION_COUNT;
+        synchronized (pending) {
+            insertPending(compilation);
+            pending.notify();
+        }
+    }
+
+    /**
+     * Records a recompilation in the {@linkplain #profileCache profile cache}, if there is one.
+     */
+    void recordRecompilation(ClassMethodActor cma, int hotness) {
+        if (profileCache != null) {
+            profileCache.recordRecompilation(cma, hotness);
+        }
+    }
+
+    /**
+     * Gets the receiver types recorded at a call site by a previous run, as found in the profile cache.
+     *
+     * @return {@code null} if there is no profile cache or it has no information about the call site
+     */
+    public RiTypeProfile cachedTypeProfile(ClassMethodActor cma, int bci) {
+        return profileCache == null ? null : profileCache.typeProfile(cma, bci);
+    }
+
+    /**
+     * Inserts a compilation into {@link #pending} after all queued compilations that are at least as hot.
+     * Must be called while holding the lock on {@link #pending}.
+     */
+    private void insertPending(QueuedRecompilation compilation) {
+        ListIterator<Compilation> iterator = pending.listIterator();
+        while (iterator.hasNext()) {
+            Compilation c = iterator.next();
+            if (c instanceof QueuedRecompilation && ((QueuedRecompilation) c).hotness < compilation.hotness) {
+                iterator.previous();
+                break;
+            }
+        }
+        iterator.add(compilation);
+    }
+
+    /**
+     * Redirects calls to a method whose background recompilation has been installed. The dispatch tables of the hub
+     * recorded with the compilation are patched here. The instrumentation counter is reset so that the next entry of
+     * the old method patches the dispatch tables of its receiver and any direct call sites in its caller, as
+     * {@link #instrumentationCounterOverflow} does for a method that was already recompiled.
+     */
+    private static void installRecompilation(QueuedRecompilation compilation) {
+        TargetMethod newMethod = compilation.result;
+        ClassMethodActor cma = compilation.classMethodActor;
+        if (newMethod == null || Compilations.currentTargetMethod(cma.compiledState, null) != newMethod) {
+            return;
+        }
+        TargetMethod oldMethod = compilation.profile.method;
+        vm().compilationBroker.recordRecompilation(cma, compilation.hotness);
+        logPatching(cma, oldMethod, newMethod);
+        if (compilation.receiverHub != null) {
+            patchDispatchTables(cma, oldMethod, newMethod, compilation.receiverHub);
+        }
+        compilation.profile.entryBackedgeCount = 0;
+    }
+
     public static void logCounterOverflow(MethodProfile mpo, String msg) {
         if (VMOptions.verboseOption.verboseCompilation) {
             boolean lockDisabledSafepoints = Log.lock();
@@ -777,7 +1056,11 @@ public class CompilationBroker {
     protected class CompilationThread extends Thread {
 
         protected CompilationThread() {
-            super("compile");
+            this("compile");
+        }
+
+        protected CompilationThread(String name) {
+            super(name);
             setDaemon(true);
         }
 
@@ -819,11 +1102,37 @@ public class CompilationBroker {
                     }
                 }
             }
+            if (compilation.isBackground && !(compilation instanceof OSRCompilation)) {
+                ClassMethodActor cma = compilation.classMethodActor;
+                synchronized (cma) {
+                    if (cma.compiledState != compilation) {
+                        // superseded while queued (e.g., by a deoptimization): release any waiters
+                        compilation.done = true;
+                        cma.notifyAll();
+                        compilation = null;
+                        return;
+                    }
+                }
+            }
             compilation.compilingThread = Thread.currentThread();
             if (GCOnRecompilation) {
                 System.gc();
             }
-            compilation.compile();
+            if (compilation instanceof QueuedRecompilation) {
+                QueuedRecompilation recompilation = (QueuedRecompilation) compilation;
+                try {
+                    compilation.compile();
+                } catch (Throwable t) {
+                    if (VMOptions.verboseOption.verboseCompilation) {
+                        t.printStackTrace(Log.out);
+                    }
+                    // Optimization failed - stay with the baseline method and don't see another overflow for a while.
+                    recompilation.profile.entryBackedgeCount = Integer.MAX_VALUE;
+                }
+                installRecompilation(recompilation);
+            } else {
+                compilation.compile();
+            }
             compilation = null;
         }
     }
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.compiler;
+
+import static com.sun.max.platform.Platform.*;
+import static com.sun.max.vm.MaxineVM.*;
+import static com.sun.max.vm.VMOptions.*;
+import static com.sun.max.vm.intrinsics.Infopoints.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.lang.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.compiler.RuntimeCompiler.OSRCompiler;
+import com.sun.max.vm.compiler.target.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.profile.*;
+import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.stack.*;
+import com.sun.max.vm.thread.*;
+
+/**
+ * On-stack replacement (OSR) of a baseline frame executing a hot loop by an optimized frame.
+ * <p>
+ * The backward branches of a baseline method decrement the same {@linkplain MethodProfile#entryBackedgeCount counter}
+ * as its entry. When a backward branch drops the counter to zero, {@link #backedgeCounterOverflow} queues the
+ * compilation of the method with an {@linkplain TargetMethod#osrEntry() OSR entry} at the branch target (the loop
+ * header) on a {@linkplain CompilationBroker#enqueueOSRCompilation compilation thread} and keeps executing the loop in
+ * baseline code. A later overflow at the same loop header finds the OSR method in the {@linkplain MethodProfile
+ * profile}, copies the locals of the baseline frame into an OSR buffer and enters the OSR method with it. An OSR method
+ * that has been {@linkplain TargetMethod#invalidated() invalidated} is dropped and compiled again. The OSR method runs the rest of
+ * the activation as if it had been called by the caller of the baseline frame: its result (or exception) is passed
+ * to that caller by {@linkplain Stubs#unwind unwinding} both the baseline frame and the frame of this class.
+ * <p>
+ * The baseline frame is only abandoned once the OSR method has completed. If the OSR method is deoptimized, the
+ * deoptimized frames return into {@link #enter} as the OSR method would have.
+ */
+public final class OnStackReplacement {
+
+    /**
+     * Enables on-stack replacement.
+     */
+    public static boolean UseOnStackReplacement = true;
+
+    /**
+     * The maximum number of locals of a method that can be entered by OSR. This bounds the size of the OSR buffer.
+     */
+    public static final int MAX_OSR_LOCALS = 256;
+
+    private static final int OSR_BUFFER_SIZE = MAX_OSR_LOCALS * 8;
+
+    /**
+     * The value the backedge counter is reset to while the OSR compilation for a loop is pending on a
+     * {@linkplain CompilationBroker#enqueueOSRCompilation compilation thread}.
+     */
+    private static final int PENDING_OSR_COUNT = 1000;
+
+    static {
+        addFieldOption("-XX:", "UseOnStackReplacement", OnStackReplacement.class, "Transfer hot loops executing in baseline code into optimized code.");
+    }
+
+    private OnStackReplacement() {
+    }
+
+    /**
+     * Handles the overflow of the instrumentation counter at a backward branch of a baseline method. This method
+     * must be called directly from the baseline method on the thread that overflowed the counter. It only returns
+     * if on-stack replacement is not possible, in which case the baseline method continues executing the loop.
+     *
+     * @param mpo the profile of the baseline method
+     * @param osrBCI the target of the backward branch
+     */
+    @NEVER_INLINE
+    public static void backedgeCounterOverflow(MethodProfile mpo, int osrBCI) {
+        if (!UseOnStackReplacement || mpo.compilationDisabled || platform().isa != ISA.AMD64) {
+            return;
+        }
+        if (Heap.isAllocationDisabledForCurrentThread() || Compilation.isCompilationRunningInCurrentThread()) {
+            return;
+        }
+        TargetMethod baselineMethod = mpo.method;
+        ClassMethodActor cma = baselineMethod.classMethodActor;
+        if (!baselineMethod.isBaseline() || cma.isSynchronized() || cma.codeAttribute().maxLocals > MAX_OSR_LOCALS) {
+            return;
+        }
+        RuntimeCompiler compiler = vm().compilationBroker.optimizingCompiler;
+        if (!(compiler instanceof OSRCompiler)) {
+            return;
+        }
+
+        BaselineFrameFinder finder = new BaselineFrameFinder(baselineMethod);
+        new VmStackFrameWalker(VmThread.current().tla()).inspect(Pointer.fromLong(here()),
+                        VMRegister.getCpuStackPointer(),
+                        VMRegister.getCpuFramePointer(),
+                        finder);
+        if (finder.callerSP.isZero()) {
+            return;
+        }
+
+        TargetMethod osrMethod = mpo.osrMethod(osrBCI);
+        if (osrMethod != null && osrMethod.invalidated() != null) {
+            // A dependency of the OSR method was broken or it was deoptimized: compile it again
+            mpo.removeOSRMethod(osrBCI, osrMethod);
+            osrMethod = null;
+        }
+        if (osrMethod == null) {
+            if (mpo.startOSRCompilation(osrBCI)) {
+                if (vm().compilationBroker.enqueueOSRCompilation(mpo, osrBCI)) {
+                    CompilationBroker.logCounterOverflow(mpo, "queued for on-stack replacement");
+                } else {
+                    CompilationBroker.logCounterOverflow(mpo, "compiling for on-stack replacement");
+                    osrMethod = ((OSRCompiler) compiler).compileOSR(cma, osrBCI);
+                    mpo.setOSRMethod(osrBCI, osrMethod);
+                }
+            }
+            if (osrMethod == null || osrMethod.invalidated() != null) {
+                if (mpo.isOSRCompilationPending(osrBCI)) {
+                    // Keep executing the loop in baseline code and look for the OSR method again a little later
+                    mpo.entryBackedgeCount = PENDING_OSR_COUNT;
+                }
+                return;
+            }
+        }
+
+        // The rest of this activation runs in the OSR method: the next entry of the method triggers its recompilation
+        mpo.entryBackedgeCount = 0;
+        enter(osrMethod, baselineMethod, finder.fp, finder.returnAddressSlot, finder.callerSP, finder.callerFP);
+    }
+
+    /**
+     * Copies the locals of the baseline frame into an OSR buffer, runs the OSR method and passes its result to the
+     * caller of the baseline frame. Safepoint polls are disabled as the buffer holds references that are not
+     * covered by any reference map until the OSR method has loaded them.
+     */
+    @NEVER_INLINE
+    @NO_SAFEPOINT_POLLS("OSR buffer holds untracked references")
+    private static void enter(TargetMethod osrMethod, TargetMethod baselineMethod, Pointer baselineFP, Pointer returnAddressSlot, Pointer callerSP, Pointer callerFP) {
+        Pointer buffer = Intrinsics.alloca(OSR_BUFFER_SIZE, false);
+        VMFrameLayout layout = baselineMethod.frameLayout();
+        int maxLocals = baselineMethod.classMethodActor.codeAttribute().maxLocals;
+        for (int i = 0; i < maxLocals; i++) {
+            // a category 2 value fills the whole word; a category 1 value is in its low order bytes
+            buffer.writeWord(i * Word.size(), baselineFP.readWord(layout.localVariableOffset(i) + JVMSFrameLayout.CATEGORY2_OFFSET_WITHIN_WORD));
+        }
+        Address entry = osrMethod.osrEntry().toAddress();
+
+        // Checkstyle: stop
+        try {
+            switch (baselineMethod.classMethodActor.resultKind().stackKind.asEnum) {
+                case VOID:
+                    Stubs.osrEnter(entry, buffer);
+                    Stubs.unwind(returnAddress(returnAddressSlot), callerSP, callerFP);
+                case INT:
+                    int i = Stubs.osrEnterInt(entry, buffer);
+                    Stubs.unwindInt(returnAddress(returnAddressSlot), callerSP, callerFP, i);
+                case FLOAT:
+                    float f = Stubs.osrEnterFloat(entry, buffer);
+                    Stubs.unwindFloat(returnAddress(returnAddressSlot), callerSP, callerFP, f);
+                case LONG:
+                case WORD:
+                    long l = Stubs.osrEnterLong(entry, buffer);
+                    Stubs.unwindLong(returnAddress(returnAddressSlot), callerSP, callerFP, l);
+                case DOUBLE:
+                    double d = Stubs.osrEnterDouble(entry, buffer);
+                    Stubs.unwindDouble(returnAddress(returnAddressSlot), callerSP, callerFP, d);
+                case REFERENCE:
+                    Object o = Stubs.osrEnterObject(entry, buffer);
+                    Stubs.unwindObject(returnAddress(returnAddressSlot), callerSP, callerFP, o);
+                default:
+                    FatalError.unexpected("unexpected return kind: " + baselineMethod.classMethodActor.resultKind());
+            }
+        } catch (Throwable throwable) {
+            // the exception escaped the OSR method and therefore the activation being replaced
+            Throw.raise(throwable, callerSP, callerFP, CodePointer.from(returnAddress(returnAddressSlot)));
+        }
+        // Checkstyle: resume
+    }
+
+    /**
+     * Reads the return address of the baseline frame. This is done after the OSR method has completed as the
+     * return address may have been patched in the meantime (e.g. to deoptimize the caller).
+     */
+    @INLINE
+    private static Address returnAddress(Pointer returnAddressSlot) {
+        return returnAddressSlot.readWord(0).asAddress();
+    }
+
+    /**
+     * Locates the frame of the baseline method that called {@link OnStackReplacement#backedgeCounterOverflow}
+     * and the frame of its caller.
+     */
+    static final class BaselineFrameFinder extends RawStackFrameVisitor {
+
+        /**
+         * The maximum number of frames to search for the baseline frame.
+         */
+        static final int FRAME_SEARCH_LIMIT = 4;
+
+        final TargetMethod baselineMethod;
+        int frameCount;
+        Pointer fp = Pointer.zero();
+        Pointer returnAddressSlot = Pointer.zero();
+        Pointer callerSP = Pointer.zero();
+        Pointer callerFP = Pointer.zero();
+
+        BaselineFrameFinder(TargetMethod baselineMethod) {
+            this.baselineMethod = baselineMethod;
+        }
+
+        @Override
+        public boolean visitFrame(StackFrameCursor current, StackFrameCursor callee) {
+            if (!fp.isZero()) {
+                callerSP = current.sp();
+                callerFP = current.fp();
+                return false;
+            }
+            if (current.targetMethod() == baselineMethod) {
+                fp = current.fp();
+                returnAddressSlot = baselineMethod.returnAddressPointer(current);
+                return true;
+            }
+            return ++frameCount < FRAME_SEARCH_LIMIT;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.compiler;
+
+import static com.sun.max.vm.compiler.RuntimeCompiler.*;
+
+import java.io.*;
+import java.util.*;
+
+import com.sun.cri.bytecode.*;
+import com.sun.cri.ri.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.compiler.target.*;
+import com.sun.max.vm.profile.*;
+import com.sun.max.vm.type.*;
+
+/**
+ * Persists the outcome of adaptive recompilation across VM runs. At exit, the methods that were recompiled by the
+ * optimizing compiler are written to a file in the order they were recompiled, together with their hotness and the
+ * receiver types recorded at their virtual and interface call sites. On the next run, a method listed in the file is
+ * queued for background recompilation as soon as its baseline version has been compiled, instead of waiting for its
+ * instrumentation counter to overflow again, and the recorded receiver types are used until the new baseline
+ * instrumentation has seen some.
+ * <p>
+ * Methods are identified by their {@linkplain MethodActor#toString() name}, which is also the string matched by
+ * {@code -XX:CompileCommand} patterns. An entry is ignored if the class file of the method's holder has changed
+ * since the entry was recorded.
+ * <p>
+ * The file is a sequence of tab separated lines:
+ * <pre>
+ *     method     &lt;hotness&gt; &lt;classfile hash&gt; &lt;method&gt;
+ *     receivers  &lt;bci&gt; &lt;total count&gt; [&lt;type descriptor&gt; &lt;count&gt;]*
+ * </pre>
+ * where each {@code receivers} line belongs to the preceding {@code method} line.
+ */
+final class ProfileCache {
+
+    /**
+     * The receiver types recorded at a call site.
+     */
+    static final class Receivers {
+        final int bci;
+        final int count;
+        final String[] types;
+        final int[] counts;
+
+        Receivers(int bci, int count, String[] types, int[] counts) {
+            this.bci = bci;
+            this.count = count;
+            this.types = types;
+            this.counts = counts;
+        }
+    }
+
+    /**
+     * The information recorded for a recompiled method.
+     */
+    static final class Entry {
+        final String method;
+        final int classfileHash;
+        final int hotness;
+        final ArrayList<Receivers> receivers = new ArrayList<Receivers>();
+
+        Entry(String method, int classfileHash, int hotness) {
+            this.method = method;
+            this.classfileHash = classfileHash;
+            this.hotness = hotness;
+        }
+
+        Receivers receiversAt(int bci) {
+            for (Receivers r : receivers) {
+                if (r.bci == bci) {
+                    return r;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final File file;
+
+    /**
+     * Entries read from {@link #file} that have not yet been matched with a method.
+     */
+    private final HashMap<String, Entry> loaded = new LinkedHashMap<String, Entry>();
+
+    /**
+     * Entries read from {@link #file} that have been matched with a method in this run.
+     */
+    private final HashMap<ClassMethodActor, Entry> matched = new HashMap<ClassMethodActor, Entry>();
+
+    /**
+     * The methods recompiled in this run and their hotness, in order of recompilation.
+     */
+    private final LinkedHashMap<ClassMethodActor, Integer> recompiled = new LinkedHashMap<ClassMethodActor, Integer>();
+
+    ProfileCache(String path) {
+        this.file = new File(path);
+    }
+
+    /**
+     * Reads the entries recorded by a previous run, if any.
+     */
+    synchronized void load() {
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(file));
+            try {
+                Entry entry = null;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.length() == 0 || line.startsWith("#")) {
+                        continue;
+                    }
+                    String[] parts = line.split("\t");
+                    if (parts[0].equals("method") && parts.length == 4) {
+                        entry = new Entry(parts[3], (int) Long.parseLong(parts[2], 16), Integer.parseInt(parts[1]));
+                        loaded.put(entry.method, entry);
+                    } else if (parts[0].equals("receivers") && parts.length >= 3 && parts.length % 2 == 1 && entry != null) {
+                        int types = (parts.length - 3) / 2;
+                        String[] names = new String[types];
+                        int[] counts = new int[types];
+                        for (int i = 0; i < types; i++) {
+                            names[i] = parts[3 + i * 2];
+                            counts[i] = Integer.parseInt(parts[4 + i * 2]);
+                        }
+                        entry.receivers.add(new Receivers(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), names, counts));
+                    } else {
+                        throw new IOException("malformed line: " + line);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            Log.println("Could not read profile cache " + file + ": " + e.getMessage());
+            loaded.clear();
+        } catch (NumberFormatException e) {
+            Log.println("Could not read profile cache " + file + ": " + e.getMessage());
+            loaded.clear();
+        }
+    }
+
+    /**
+     * Gets the entry recorded for a method by a previous run. An entry is only returned the first time this is
+     * called for a method.
+     *
+     * @return {@code null} if there is no entry for {@code cma} or the entry is stale
+     */
+    synchronized Entry match(ClassMethodActor cma) {
+        if (loaded.isEmpty()) {
+            return null;
+        }
+        Entry entry = loaded.remove(cma.toString());
+        if (entry == null) {
+            return null;
+        }
+        if (entry.classfileHash != cma.holder().classfileHash) {
+            if (VMOptions.verboseOption.verboseCompilation) {
+                Log.println("Ignoring stale profile cache entry for " + entry.method);
+            }
+            return null;
+        }
+        matched.put(cma, entry);
+        return entry;
+    }
+
+    /**
+     * Records that a method has been recompiled by the optimizing compiler.
+     */
+    synchronized void recordRecompilation(ClassMethodActor cma, int hotness) {
+        if (!recompiled.containsKey(cma)) {
+            recompiled.put(cma, hotness);
+        }
+    }
+
+    /**
+     * Gets the receiver types recorded at a call site by a previous run. Types that are not loaded in this run
+     * are counted but not included in {@link RiTypeProfile#types}.
+     *
+     * @return {@code null} if there is no information for the call site
+     */
+    RiTypeProfile typeProfile(ClassMethodActor cma, int bci) {
+        Entry entry;
+        synchronized (this) {
+            entry = matched.get(cma);
+        }
+        Receivers receivers = entry == null ? null : entry.receiversAt(bci);
+        if (receivers == null || receivers.count == 0) {
+            return null;
+        }
+        ArrayList<RiResolvedType> types = new ArrayList<RiResolvedType>();
+        ArrayList<Float> probabilities = new ArrayList<Float>();
+        for (int i = 0; i < receivers.types.length; i++) {
+            ClassActor type = ClassRegistry.get(cma.holder().classLoader, JavaTypeDescriptor.parseTypeDescriptor(receivers.types[i]), true);
+            if (type != null) {
+                types.add(type);
+                probabilities.add((float) receivers.counts[i] / receivers.count);
+            }
+        }
+        RiTypeProfile result = new RiTypeProfile();
+        result.count = receivers.count;
+        result.morphism = types.size() == receivers.types.length && !hasOthers(receivers) ? types.size() : types.size() + 1;
+        result.types = types.toArray(new RiResolvedType[types.size()]);
+        result.probabilities = new float[types.size()];
+        for (int i = 0; i < result.probabilities.length; i++) {
+            result.probabilities[i] = probabilities.get(i);
+        }
+        return result;
+    }
+
+    private static boolean hasOthers(Receivers receivers) {
+        int sum = 0;
+        for (int count : receivers.counts) {
+            sum += count;
+        }
+        return sum < receivers.count;
+    }
+
+    /**
+     * Writes the methods recompiled in this run to the cache file, followed by the entries recorded by
+     * previous runs for methods that were not recompiled in this run.
+     */
+    synchronized void save() {
+        try {
+            PrintStream out = new PrintStream(new FileOutputStream(file));
+            try {
+                out.println("# Maxine profile cache");
+                for (Map.Entry<ClassMethodActor, Integer> e : recompiled.entrySet()) {
+                    ClassMethodActor cma = e.getKey();
+                    writeMethod(out, cma.toString(), cma.holder().classfileHash, e.getValue());
+                    TargetMethod baseline = Compilations.currentTargetMethod(cma.compiledState, Nature.BASELINE);
+                    MethodProfile mpo = baseline == null ? null : baseline.profile();
+                    Entry previous = matched.get(cma);
+                    byte[] code = cma.codeAttribute() == null ? null : cma.codeAttribute().code();
+                    if (code == null) {
+                        continue;
+                    }
+                    for (BytecodeStream stream = new BytecodeStream(code); stream.currentBCI() < stream.endBCI(); stream.next()) {
+                        int opcode = stream.currentBC();
+                        if (opcode != Bytecodes.INVOKEVIRTUAL && opcode != Bytecodes.INVOKEINTERFACE) {
+                            continue;
+                        }
+                        int bci = stream.currentBCI();
+                        RiTypeProfile profile = mpo == null ? null : MethodInstrumentation.computeTypeProfile(mpo, bci);
+                        if (profile != null) {
+                            writeReceivers(out, bci, profile);
+                        } else if (previous != null && previous.receiversAt(bci) != null) {
+                            writeReceivers(out, previous.receiversAt(bci));
+                        }
+                    }
+                }
+                for (Entry entry : loaded.values()) {
+                    writeMethod(out, entry.method, entry.classfileHash, entry.hotness);
+                    for (Receivers receivers : entry.receivers) {
+                        writeReceivers(out, receivers);
+                    }
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            Log.println("Could not write profile cache " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static void writeMethod(PrintStream out, String method, int classfileHash, int hotness) {
+        out.println("method\t" + hotness + "\t" + Integer.toHexString(classfileHash) + "\t" + method);
+    }
+
+    private static void writeReceivers(PrintStream out, int bci, RiTypeProfile profile) {
+        StringBuilder sb = new StringBuilder("receivers\t").append(bci).append('\t').append(profile.count);
+        for (int i = 0; i < profile.types.length; i++) {
+            int count = (int) (profile.probabilities[i] * profile.count + 0.5f);
+            sb.append('\t').append(profile.types[i].name()).append('\t').append(count);
+        }
+        out.println(sb);
+    }
+
+    private static void writeReceivers(PrintStream out, Receivers receivers) {
+        StringBuilder sb = new StringBuilder("receivers\t").append(receivers.bci).append('\t').append(receivers.count);
+        for (int i = 0; i < receivers.types.length; i++) {
+            sb.append('\t').append(receivers.types[i]).append('\t').append(receivers.counts[i]);
+        }
+        out.println(sb);
+    }
+}
@@ -128,6 +128,22 @@ public interface RuntimeCompiler {
      */
     String name(ClassMethodActor classMethodActor);
 
+    /**
+     * Implemented by an optimizing compiler that can produce code entered by on-stack replacement
+     * from a baseline frame at a loop header.
+     */
+    public interface OSRCompiler {
+        /**
+         * Compiles {@code classMethodActor} with an additional {@linkplain TargetMethod#osrEntry() OSR entry point}
+         * at {@code osrBCI}. The result is not installed as the method's compiled state.
+         *
+         * @param classMethodActor the method to compile
+         * @param osrBCI the bytecode index of the loop header at which the compiled code is entered
+         * @return the compiled code or {@code null} if the compiler bailed out
+         */
+        TargetMethod compileOSR(ClassMethodActor classMethodActor, int osrBCI);
+    }
+
     public static abstract class DefaultNameAdapter implements RuntimeCompiler {
         public String name(ClassMethodActor classMethodActor) {
             return getClass().getSimpleName();
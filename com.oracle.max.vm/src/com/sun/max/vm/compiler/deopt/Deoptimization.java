@@ -22,6 +22,7 @@
 package com.sun.max.vm.compiler.deopt;
 
 import com.sun.cri.ci.*;
+import com.sun.cri.ri.*;
 import com.sun.max.Utils;
 import com.sun.max.annotate.*;
 import com.sun.max.lang.ISA;
@@ -35,16 +36,22 @@ import com.sun.max.vm.compiler.WordUtil;
 import com.sun.max.vm.compiler.target.*;
 import com.sun.max.vm.compiler.target.TargetMethod.FrameAccess;
 import com.sun.max.vm.compiler.target.amd64.AMD64TargetMethodUtil;
+import com.sun.max.vm.heap.Heap;
 import com.sun.max.vm.log.VMLog.Record;
 import com.sun.max.vm.log.hosted.*;
+import com.sun.max.vm.monitor.Monitor;
 import com.sun.max.vm.object.*;
 import com.sun.max.vm.profile.MethodProfile;
 import com.sun.max.vm.reference.*;
 import com.sun.max.vm.runtime.*;
 import com.sun.max.vm.stack.*;
 import com.sun.max.vm.thread.VmThread;
+import com.sun.max.vm.type.Kind;
+import com.sun.max.vm.value.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 
 import static com.sun.max.platform.Platform.platform;
 import static com.sun.max.vm.MaxineVM.vm;
@@ -750,6 +757,7 @@ public class Deoptimization extends VmOperation {
         CiDebugInfo debugInfo = tm.debugInfoAt(safepointIndex, fa);
         CiFrame topFrame = debugInfo.frame();
         FatalError.check(topFrame != null, "No frame info found at deopt site: " + tm.posFor(ip));
+        materializeVirtualObjects(topFrame, new HashMap<Integer, Object>());
 
         Throwable pendingException = null;
         if (topFrame.rethrowException) {
@@ -883,6 +891,71 @@ public class Deoptimization extends VmOperation {
         return null;
     }
 
+    /**
+     * Allocates the objects that were scalar replaced by the optimizing compiler and replaces the
+     * {@linkplain CiVirtualObject virtual objects} denoting them in a given frame and its callers.
+     * Locks on such objects were elided and so are acquired here for the benefit of the deoptimized frames.
+     *
+     * @param frame the frame in which virtual objects are to be replaced
+     * @param objects the objects already allocated, keyed by {@linkplain CiVirtualObject#id() virtual object id}
+     */
+    private static void materializeVirtualObjects(CiFrame frame, HashMap<Integer, Object> objects) {
+        if (frame.caller() != null) {
+            materializeVirtualObjects(frame.caller(), objects);
+        }
+        CiValue[] values = frame.values;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] instanceof CiVirtualObject) {
+                Object object = materialize((CiVirtualObject) values[i], objects);
+                values[i] = CiConstant.forObject(object);
+                if (i >= frame.numLocals + frame.numStack) {
+                    Monitor.enter(object);
+                }
+            }
+        }
+    }
+
+    private static Object materialize(CiVirtualObject virtualObject, HashMap<Integer, Object> objects) {
+        Object object = objects.get(virtualObject.id());
+        if (object != null) {
+            return object;
+        }
+        ClassActor type = (ClassActor) virtualObject.type();
+        CiValue[] values = virtualObject.values();
+        if (type.isArrayClass()) {
+            Kind componentKind = type.componentClassActor().kind;
+            object = Heap.createArray(type.dynamicHub(), values.length);
+            objects.put(virtualObject.id(), object);
+            for (int i = 0; i < values.length; i++) {
+                componentKind.setErasedValue(object, i, toValue(componentKind, values[i], objects));
+            }
+        } else {
+            object = Heap.createTuple(type.dynamicHub());
+            objects.put(virtualObject.id(), object);
+            ArrayList<RiResolvedField> fields = new ArrayList<RiResolvedField>();
+            for (ClassActor c = type; c != null; c = c.superClassActor) {
+                fields.addAll(0, Arrays.asList(c.declaredFields()));
+            }
+            FatalError.check(fields.size() == values.length, "Field count mismatch materializing " + type);
+            for (int i = 0; i < values.length; i++) {
+                FieldActor fieldActor = (FieldActor) fields.get(i);
+                fieldActor.writeValue(object, toValue(fieldActor.kind, values[i], objects));
+            }
+        }
+        return object;
+    }
+
+    private static Value toValue(Kind kind, CiValue value, HashMap<Integer, Object> objects) {
+        if (value instanceof CiVirtualObject) {
+            return ReferenceValue.from(materialize((CiVirtualObject) value, objects));
+        }
+        CiConstant c = (CiConstant) value;
+        if (c.kind.isObject()) {
+            return ReferenceValue.from(c.asObject());
+        }
+        return kind.convert(Value.fromBoxedJavaValue(c.boxedValue()));
+    }
+
     /**
      * Finds the frame containing a handler for an exception thrown at the current BCI of the frame and empties its stack.
      *
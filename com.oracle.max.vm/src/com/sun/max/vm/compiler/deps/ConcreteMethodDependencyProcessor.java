@@ -172,9 +172,12 @@ public class ConcreteMethodDependencyProcessor extends DependencyProcessor {
             assert root.firstSubclassActorId != NULL_CLASS_ID : "must have at least one sub-class";
             assert firstConcreteMethod == null || !hasMoreThanOne;
 
-            setConcreteMethod((MethodActor) root.resolveMethodImpl(method));
-            if (hasMoreThanOne) {
-                return;
+            if (!root.isAbstract()) {
+                // An abstract class has no instances: only the implementations used by its concrete sub-types matter
+                setConcreteMethod((MethodActor) root.resolveMethodImpl(method));
+                if (hasMoreThanOne) {
+                    return;
+                }
             }
             int classId = root.firstSubclassActorId;
             do {
@@ -190,6 +193,29 @@ public class ConcreteMethodDependencyProcessor extends DependencyProcessor {
             } while(classId != NULL_CLASS_ID);
         }
 
+        /**
+         * Search the classes implementing the specified interface for concrete implementations of the specified
+         * method. Sub-interfaces are searched recursively. A class may be reached more than once (e.g., if it
+         * implements both an interface and one of its sub-interfaces), which doesn't affect the result.
+         *
+         * @param root an interface with more than one concrete sub-type
+         * @param method the method concrete implementation of are being searched
+         */
+        private void searchImplementors(InterfaceActor root, MethodActor method) {
+            for (int i = 0; i < root.directImplementorCount(); i++) {
+                ClassActor implementor = ClassIDManager.toClassActor(root.directImplementorAt(i));
+                if (implementor.isInterface()) {
+                    searchImplementors((InterfaceActor) implementor, method);
+                } else if (shouldSearchSubTypes(implementor, method)) {
+                    searchInstanceClassTree(implementor, method);
+                }
+                if (hasMoreThanOne) {
+                    // no need to search further.
+                    return;
+                }
+            }
+        }
+
         MethodActor uniqueConcreteMethod() {
             return hasMoreThanOne ? null : firstConcreteMethod;
         }
@@ -200,11 +226,10 @@ public class ConcreteMethodDependencyProcessor extends DependencyProcessor {
             firstConcreteMethod = null;
             if (shouldSearchSubTypes(root, method)) {
                 if (root.isInterface()) {
-                    // Don't bother for now. Assume can't find concrete method implementation.
-                    // TODO this really needs implementing!
-                    return null;
+                    searchImplementors((InterfaceActor) root, method);
+                } else {
+                    searchInstanceClassTree(root, method);
                 }
-                searchInstanceClassTree(root, method);
             }
             return uniqueConcreteMethod();
         }
@@ -142,6 +142,11 @@ public final class DependenciesManager {
         classHierarchyLock.writeLock().lock();
         try {
             classActor.prependToSiblingList();
+            if (classActor.isInstanceClass() || classActor.isInterface()) {
+                for (InterfaceActor iface : classActor.localInterfaceActors()) {
+                    iface.addDirectImplementor(classActor);
+                }
+            }
             ArrayList<Dependencies> invalidated = ConcreteTypeDependencyProcessor.recordUniqueConcreteSubtype(classActor);
             ConcreteTypeDependencyProcessor.invalidateDependencies(invalidated, classActor);
             refreshTables = true;
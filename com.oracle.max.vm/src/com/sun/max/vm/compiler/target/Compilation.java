@@ -110,6 +110,14 @@ public class Compilation {
     public TargetMethod result;
     public final boolean isDeopt;
 
+    /**
+     * Denotes a compilation queued for a compilation thread by a thread that doesn't wait for its result.
+     * The result of a background compilation is only installed if the compilation is still the
+     * {@linkplain ClassMethodActor#compiledState compiled state} of the method when it completes,
+     * and a failed background compilation is abandoned.
+     */
+    public final boolean isBackground;
+
     /**
      * State of this compilation. If {@code true}, then this compilation has finished and the target
      * method is available.
@@ -131,6 +139,7 @@ public class Compilation {
         this.compilingThread = compilingThread;
         this.nature = nature;
         this.isDeopt = isDeopt;
+        this.isBackground = false;
 
         for (Compilation scope = parent; scope != null; scope = scope.parent) {
             if (scope.classMethodActor.equals(classMethodActor) && scope.compiler == compiler) {
@@ -140,6 +149,25 @@ public class Compilation {
         COMPILATION.set(this);
     }
 
+    /**
+     * Creates a {@linkplain #isBackground background} compilation. Unlike other compilations, it isn't
+     * associated with the creating thread: it becomes the current compilation of the thread that performs it.
+     */
+    protected Compilation(RuntimeCompiler compiler,
+                          ClassMethodActor classMethodActor,
+                          Compilations prevCompilations,
+                          RuntimeCompiler.Nature nature) {
+        assert prevCompilations != null;
+        this.parent = null;
+        this.compiler = compiler;
+        this.classMethodActor = classMethodActor;
+        this.prevCompilations = prevCompilations;
+        this.compilingThread = null;
+        this.nature = nature;
+        this.isDeopt = false;
+        this.isBackground = true;
+    }
+
     /**
      * Checks if any compilations are currently running in this thread. Useful to avoid recursive calls
      * of the optimizing compiler.
@@ -174,7 +202,7 @@ public class Compilation {
     /**
      * Gets the result of this compilation, blocking if necessary.
      *
-     * @return the target method that resulted from this compilation
+     * @return the target method that resulted from this compilation, or {@code null} if this is a failed {@linkplain #isBackground background} compilation
      */
     public TargetMethod get() {
         synchronized (classMethodActor) {
@@ -197,7 +225,7 @@ public class Compilation {
             if (interrupted) {
                 Thread.currentThread().interrupt();
             }
-            assert result != null;
+            assert result != null || isBackground;
             return result;
         }
     }
@@ -279,6 +307,9 @@ public class Compilation {
         Throwable error = null;
         String methodString = "";
 
+        if (isBackground) {
+            COMPILATION.set(this);
+        }
         try {
             InspectableCompilationInfo.notifyCompilationEvent(classMethodActor, null);
 
@@ -310,7 +341,17 @@ public class Compilation {
             // invariant: (result != null) != (error != null)
             synchronized (classMethodActor) {
                 // update the compilation state of the class method actor
-                if (result != null) {
+                if (isBackground && classMethodActor.compiledState != this) {
+                    // The method's compiled state was changed (e.g., by a deoptimization) while this compilation was in progress.
+                    // Drop the result.
+                    done = true;
+                    classMethodActor.notifyAll();
+                } else if (isBackground && result == null) {
+                    // Abandon the compilation: threads waiting for it will compile the method themselves.
+                    classMethodActor.compiledState = prevCompilations;
+                    done = true;
+                    classMethodActor.notifyAll();
+                } else if (result != null) {
                     assert nature != Nature.BASELINE || result.isBaseline() : "a request for a baseline target method failed to produce one";
                     // compilation succeeded and produced a target method
                     TargetMethod baseline = prevCompilations.baseline;
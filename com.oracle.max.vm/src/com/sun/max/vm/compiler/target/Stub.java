@@ -77,6 +77,11 @@ public final class Stub extends TargetMethod {
 
         UnwindStub,
 
+        /**
+         * Transfers control to the {@linkplain TargetMethod#osrEntry() OSR entry} of an optimized method.
+         */
+        OSREntryStub,
+
         UnrollStub,
 
         UncommonTrapStub,
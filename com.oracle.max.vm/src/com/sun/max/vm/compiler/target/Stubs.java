@@ -263,6 +263,20 @@ public class Stubs {
                     } catch (NoSuchMethodError e) {
                         // No unwind method for this kind
                     }
+
+                    if (platform().isa == ISA.AMD64) {
+                        name = "osrEnter";
+                        if (!kind.isVoid()) {
+                            name = name + kind.name();
+                        }
+                        try {
+                            CriticalMethod osrEnter = new CriticalMethod(Stubs.class, name, null);
+                            CiValue[] osrEnterArgs = registerConfigs.standard.getCallingConvention(JavaCall, CiUtil.signatureToKinds(osrEnter.classMethodActor), target(), false).locations;
+                            osrEnter.classMethodActor.compiledState = new Compilations(null, genOSREnter(name, osrEnterArgs));
+                        } catch (NoSuchMethodError e) {
+                            // No OSR entry method for this kind
+                        }
+                    }
                 }
             }
         }
@@ -840,6 +854,82 @@ public class Stubs {
         FatalError.unexpected("stub should be overwritten");
     }
 
+    /**
+     * Enters an on-stack replacement compilation at its {@linkplain TargetMethod#osrEntry() OSR entry}. The
+     * OSR method executes as if called directly by the caller of this method and its return value is the
+     * return value of this method.
+     * <p/>
+     * The variants of this method further below return a value of the corresponding kind.
+     *
+     * @param entry the OSR entry point
+     * @param buffer the OSR buffer holding the values of the locals of the baseline frame, one word per local
+     */
+    @NEVER_INLINE
+    public static void osrEnter(Address entry, Pointer buffer) {
+        // This is a placeholder method so that the OSR entry stub (which is generated by genOSREnter)
+        // can be called via a normal method call.
+        FatalError.unexpected("stub should be overwritten");
+    }
+
+    @NEVER_INLINE
+    public static Object osrEnterObject(Address entry, Pointer buffer) {
+        throw FatalError.unexpected("stub should be overwritten");
+    }
+
+    @NEVER_INLINE
+    public static int osrEnterInt(Address entry, Pointer buffer) {
+        throw FatalError.unexpected("stub should be overwritten");
+    }
+
+    @NEVER_INLINE
+    public static long osrEnterLong(Address entry, Pointer buffer) {
+        throw FatalError.unexpected("stub should be overwritten");
+    }
+
+    @NEVER_INLINE
+    public static float osrEnterFloat(Address entry, Pointer buffer) {
+        throw FatalError.unexpected("stub should be overwritten");
+    }
+
+    @NEVER_INLINE
+    public static double osrEnterDouble(Address entry, Pointer buffer) {
+        throw FatalError.unexpected("stub should be overwritten");
+    }
+
+    /**
+     * Generates a stub that moves the OSR buffer into the register expected by the OSR entry of a C1X
+     * compilation and then jumps to the entry. The return address of the call to the stub is left on
+     * the stack so that the OSR method returns directly to the caller of the stub.
+     */
+    @HOSTED_ONLY
+    private Stub genOSREnter(String name, CiValue[] osrEnterArgs) {
+        if (platform().isa == ISA.AMD64) {
+            CiRegisterConfig registerConfig = MaxineVM.vm().stubs.registerConfigs.standard;
+            AMD64MacroAssembler asm = new AMD64MacroAssembler(target(), registerConfig);
+            int frameSize = platform().target.alignFrameSize(0);
+
+            for (int i = 0; i < prologueSize; ++i) {
+                asm.nop();
+            }
+
+            CiValue[] args = osrEnterArgs;
+            assert args.length == 2;
+            CiRegister entry = args[0].asRegister();
+            CiRegister buffer = args[1].asRegister();
+            CiRegister osrBuffer = registerConfig.getCallingConventionRegisters(JavaCallee, CiRegister.RegisterFlag.CPU)[0];
+            CiRegister scratch = registerConfig.getScratchRegister();
+
+            asm.movq(scratch, entry);
+            asm.movq(osrBuffer, buffer);
+            asm.jmp(scratch);
+
+            byte[] code = asm.codeBuffer.close(true);
+            return new Stub(OSREntryStub, name + "Stub", frameSize, code, -1, -1, null, -1);
+        } else {
+            throw FatalError.unimplemented();
+        }
+    }
+
     // TODO: Fix ARM version
     @HOSTED_ONLY
     private Stub genUnwind(CiValue[] unwindArgs) {
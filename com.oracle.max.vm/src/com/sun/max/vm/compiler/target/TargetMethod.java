@@ -168,6 +168,12 @@ public abstract class TargetMethod extends MemoryRegion {
      */
     private int registerRestoreEpilogueOffset = -1;
 
+    /**
+     * The offset of the on-stack replacement entry point of this method or {@code -1} if this is
+     * not an OSR compilation.
+     */
+    private int osrEntryOffset = -1;
+
     public TargetMethod(String description, CallEntryPoint callEntryPoint) {
         assert this instanceof Stub || this instanceof Adapter;
         this.classMethodActor = null;
@@ -192,6 +198,27 @@ public abstract class TargetMethod extends MemoryRegion {
         registerRestoreEpilogueOffset = x;
     }
 
+    /**
+     * Gets the address of the on-stack replacement entry point of this method. This entry expects
+     * the address of an OSR buffer holding the values of the interpreter locals in the first
+     * argument register and must be entered with the stack pointer as it was on method entry.
+     *
+     * @return {@link CodePointer#zero()} if this is not an OSR compilation
+     */
+    public final CodePointer osrEntry() {
+        if (osrEntryOffset < 0) {
+            return CodePointer.zero();
+        }
+        return codeAt(osrEntryOffset);
+    }
+
+    /**
+     * Determines if this method is an on-stack replacement compilation, i.e., if it has an {@linkplain #osrEntry() OSR entry}.
+     */
+    public final boolean isOSRCompilation() {
+        return osrEntryOffset >= 0;
+    }
+
     public final ClassMethodActor classMethodActor() {
         return classMethodActor;
     }
@@ -737,6 +764,7 @@ public abstract class TargetMethod extends MemoryRegion {
     protected void initFrameLayout(CiTargetMethod ciTargetMethod) {
         this.setFrameSize(ciTargetMethod.frameSize());
         this.setRegisterRestoreEpilogueOffset(ciTargetMethod.registerRestoreEpilogueOffset());
+        this.osrEntryOffset = ciTargetMethod.osrEntryOffset();
     }
 
     protected CiDebugInfo[] initSafepoints(CiTargetMethod ciTargetMethod) {
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap;
+
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
+
+/**
+ * A TLAB refill policy that sizes the TLABs of each thread after the thread's allocation rate.
+ * <p>
+ * The policy counts the TLAB space a thread consumes between two garbage collections, and maintains an exponential moving average of it.
+ * At every GC (i.e., when the thread's TLAB is reset), the size of the thread's next TLABs is recomputed so that, at this rate, the thread
+ * refills its TLAB about {@link #TLABRefillTarget} times between two collections. TLAB sizes are bounded by {@link #TLABMinSize} and {@link #TLABMaxSize}.
+ * Threads that allocate heavily thus get larger TLABs and take the refill slow path less often, while threads that barely allocate get small
+ * TLABs and waste less space.
+ * <p>
+ * On allocation failure, the TLAB is retired only if the space left in it is below a waste limit, initially {@link #TLABRefillWastePercent} of the TLAB size.
+ * Otherwise, the request is allocated outside of the TLAB and the waste limit is raised by {@link #TLABWasteIncrementPercent} of the TLAB size, so that
+ * a thread repeatedly failing to allocate in its TLAB eventually gets a new one.
+ */
+public class AdaptiveTLABRefillPolicy extends TLABRefillPolicy {
+    static Size TLABMinSize = Size.K.times(8);
+    static Size TLABMaxSize = Size.K.times(512);
+    static int TLABRefillTarget = 50;
+    static int TLABAllocationWeight = 35;
+    static int TLABRefillWastePercent = 2;
+    static int TLABWasteIncrementPercent = 1;
+    static {
+        VMOptions.addFieldOption("-XX:", "TLABMinSize", AdaptiveTLABRefillPolicy.class, "Minimum size of adaptive TLABs", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "TLABMaxSize", AdaptiveTLABRefillPolicy.class, "Maximum size of adaptive TLABs", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "TLABRefillTarget", AdaptiveTLABRefillPolicy.class,
+                        "Number of TLAB refills per thread between two GCs adaptive TLAB sizing aims at", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "TLABAllocationWeight", AdaptiveTLABRefillPolicy.class,
+                        "Weight (in percent) of the last GC interval in the average allocation rate of a thread", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "TLABRefillWastePercent", AdaptiveTLABRefillPolicy.class,
+                        "Space left in a TLAB (in percent of its size) below which the TLAB is retired on allocation failure", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "TLABWasteIncrementPercent", AdaptiveTLABRefillPolicy.class,
+                        "Increment of the TLAB refill waste limit (in percent of the TLAB size) on each allocation failure that doesn't retire the TLAB", Phase.PRISTINE);
+    }
+
+    /**
+     * Alignment of TLAB sizes.
+     */
+    private static final int TLAB_SIZE_ALIGNMENT = 2 * Word.size();
+
+    /**
+     * Size the TLAB should have on next refill.
+     */
+    private Size nextSize;
+
+    /**
+     * Amount of space left in the TLAB below which the TLAB is retired on allocation failure.
+     */
+    private Size refillWasteLimit;
+
+    /**
+     * TLAB space handed to the thread since the last GC.
+     */
+    private long refilledBytes;
+
+    /**
+     * TLAB space retired unused since the last GC.
+     */
+    private long wastedBytes;
+
+    /**
+     * Exponential moving average of the TLAB space consumed by the thread between two GCs.
+     */
+    private long averageAllocatedBytes;
+
+    public AdaptiveTLABRefillPolicy(Size initialTLABSize) {
+        nextSize = clampTlabSize(initialTLABSize.toLong());
+        refillWasteLimit = nextSize.dividedBy(100).times(TLABRefillWastePercent);
+        refilledBytes = initialTLABSize.toLong();
+        averageAllocatedBytes = nextSize.toLong() * TLABRefillTarget;
+    }
+
+    private static Size clampTlabSize(long size) {
+        if (size < TLABMinSize.toLong()) {
+            return TLABMinSize.alignUp(TLAB_SIZE_ALIGNMENT);
+        }
+        if (size > TLABMaxSize.toLong()) {
+            return TLABMaxSize.alignDown(TLAB_SIZE_ALIGNMENT);
+        }
+        return Size.fromLong(size).alignDown(TLAB_SIZE_ALIGNMENT);
+    }
+
+    @Override
+    public boolean shouldRefill(Size size, Pointer allocationMark, Pointer tlabEnd) {
+        if (allocationMark.isZero() || tlabEnd.isZero()) {
+            // No TLAB. Refill whatsoever
+            return true;
+        }
+        if (tlabEnd.minus(allocationMark).lessEqual(refillWasteLimit)) {
+            return true;
+        }
+        // Too much space left in the TLAB to retire it. Allocate the request outside of the TLAB, and be more tolerant next time.
+        refillWasteLimit = refillWasteLimit.plus(nextSize.dividedBy(100).times(TLABWasteIncrementPercent));
+        return false;
+    }
+
+    @Override
+    public Size nextTlabSize() {
+        return nextSize;
+    }
+
+    @Override
+    public void notifyRefill(Size tlabSize, Size leftover) {
+        refilledBytes += tlabSize.toLong();
+        wastedBytes += leftover.toLong();
+        refillWasteLimit = nextSize.dividedBy(100).times(TLABRefillWastePercent);
+    }
+
+    @Override
+    public void notifyReset(Size leftover) {
+        wastedBytes += leftover.toLong();
+        final long allocatedBytes = refilledBytes - wastedBytes;
+        averageAllocatedBytes = (TLABAllocationWeight * allocatedBytes + (100 - TLABAllocationWeight) * averageAllocatedBytes) / 100;
+        nextSize = clampTlabSize(averageAllocatedBytes / TLABRefillTarget);
+        refillWasteLimit = nextSize.dividedBy(100).times(TLABRefillWastePercent);
+        refilledBytes = 0L;
+        wastedBytes = 0L;
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap;
+
+import com.sun.max.annotate.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
+import com.sun.max.vm.monitor.modal.sync.*;
+import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.thread.*;
+
+/**
+ * A GC thread that works on the heap while mutator threads are running, e.g., to mark or sweep the heap concurrently.
+ * <p>
+ * Like the dedicated threads of the {@link GCWorkerGang}, concurrent GC threads are allocated in the {@link ImmortalHeap},
+ * never allocate once started, and their stacks only ever hold references to boot image or immortal objects. They are
+ * never frozen by {@link GCOperation}s, and only their thread locals are scanned for roots.
+ * <p>
+ * Instead, a concurrent GC thread brackets every piece of work that reads or updates the heap with {@link #beginWork()} and
+ * {@link #endWork()}, and regularly calls {@link #yieldPoint()} while working. Before freezing threads for a
+ * {@link VmOperation} that may operate on them, the VM operation thread {@linkplain #suspendAll() suspends} all concurrent
+ * GC threads, which stop at their next yield point or at the end of their current piece of work, and
+ * {@linkplain #resumeAll() resumes} them once the operation is done. Other operations, e.g. deoptimization, then freeze and
+ * walk concurrent GC threads like any other thread.
+ * A concurrent GC thread must therefore never block on a lock a mutator may hold, nor submit a VM operation, while working.
+ */
+public abstract class ConcurrentGCThread extends Thread {
+
+    /**
+     * Maximum number of concurrent GC threads.
+     */
+    public static final int MAX_THREADS = 8;
+
+    static boolean TraceConcurrentGCThreads;
+    static {
+        VMOptions.addFieldOption("-XX:", "TraceConcurrentGCThreads", ConcurrentGCThread.class,
+            "Trace suspension and resumption of concurrent GC threads.", Phase.PRISTINE);
+    }
+
+    /**
+     * Lock protecting the suspension state of the concurrent GC threads.
+     */
+    private static final Object LOCK = JavaMonitorManager.newVmLock("CONCURRENT_GC_THREAD_LOCK");
+
+    /**
+     * Safepoint-enabled thread locals of the registered concurrent GC threads.
+     */
+    private static final Address[] threadTLAs = new Address[MAX_THREADS];
+
+    private static int registeredThreads;
+
+    /**
+     * Set by the VM operation thread when concurrent GC threads must stop working.
+     */
+    private static volatile boolean suspendRequested;
+
+    /**
+     * Number of concurrent GC threads currently working.
+     */
+    private static int workingThreads;
+
+    /**
+     * Number of nested VM operations that suspended the concurrent GC threads. Only accessed by the VM operation thread.
+     */
+    private static int suspensionDepth;
+
+    /**
+     * Creates a concurrent GC thread. The thread object must be allocated in the {@link ImmortalHeap}, and the thread
+     * started at {@link Phase#STARTING}.
+     */
+    protected ConcurrentGCThread(String name) {
+        super(VmThread.systemThreadGroup, name);
+        setDaemon(true);
+    }
+
+    @Override
+    public final void run() {
+        register();
+        Heap.disableAllocationForCurrentThread();
+        try {
+            doRun();
+        } catch (Throwable t) {
+            FatalError.unexpected("Uncaught exception in concurrent GC thread", t);
+        } finally {
+            Heap.enableAllocationForCurrentThread();
+        }
+    }
+
+    /**
+     * Body of the thread. Never returns.
+     */
+    protected abstract void doRun();
+
+    /**
+     * Indicates whether the work currently carried out by this thread was invalidated by a garbage collection that ran
+     * while this thread was suspended.
+     */
+    protected abstract boolean workAborted();
+
+    /**
+     * Registration holds the {@linkplain VmThreadMap#THREAD_LOCK thread lock} so that it cannot
+     * race with the freezing of threads by a {@link VmOperation}.
+     */
+    private void register() {
+        synchronized (VmThreadMap.THREAD_LOCK) {
+            synchronized (LOCK) {
+                FatalError.check(registeredThreads < MAX_THREADS, "Too many concurrent GC threads");
+                threadTLAs[registeredThreads++] = VmThread.current().tla();
+            }
+        }
+    }
+
+    /**
+     * Determines if the thread whose thread locals are specified is a concurrent GC thread.
+     *
+     * @param tla thread locals of a thread
+     */
+    public static boolean isConcurrentGCThread(Pointer tla) {
+        for (int i = 0; i < registeredThreads; i++) {
+            if (threadTLAs[i].equals(tla)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Start a piece of work on the heap. Blocks while concurrent GC threads are suspended.
+     */
+    public final void beginWork() {
+        synchronized (LOCK) {
+            while (suspendRequested) {
+                try {
+                    LOCK.wait();
+                } catch (InterruptedException e) {
+                    Log.println("Caught InterruptedException while waiting for resumption of concurrent GC threads");
+                }
+            }
+            workingThreads++;
+        }
+    }
+
+    /**
+     * End a piece of work on the heap. The VM operation thread may run a garbage collection once all concurrent GC threads
+     * ended their current piece of work.
+     */
+    public final void endWork() {
+        synchronized (LOCK) {
+            if (--workingThreads == 0 && suspendRequested) {
+                LOCK.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Let a pending garbage collection run if the VM operation thread requested it. Must only be called between
+     * a {@link #beginWork()} and an {@link #endWork()}, at a point where this thread holds no address of a heap object.
+     *
+     * @return false if the current work was {@linkplain #workAborted() aborted} by a garbage collection, true otherwise
+     */
+    @INLINE
+    public final boolean yieldPoint() {
+        if (suspendRequested) {
+            endWork();
+            beginWork();
+        }
+        return !workAborted();
+    }
+
+    /**
+     * Suspend all concurrent GC threads, and return once none of them is working.
+     * Called by the VM operation thread before freezing threads. A nested operation finds the threads already
+     * suspended, and must not take the lock a thread frozen by the enclosing operation may hold.
+     */
+    public static void suspendAll() {
+        if (registeredThreads == 0 || suspensionDepth++ > 0) {
+            return;
+        }
+        synchronized (LOCK) {
+            suspendRequested = true;
+            while (workingThreads > 0) {
+                try {
+                    LOCK.wait();
+                } catch (InterruptedException e) {
+                    Log.println("Caught InterruptedException while waiting for suspension of concurrent GC threads");
+                }
+            }
+        }
+        if (TraceConcurrentGCThreads) {
+            Log.println("Concurrent GC threads suspended");
+        }
+    }
+
+    /**
+     * Resume all concurrent GC threads. Called by the VM operation thread after thawing threads.
+     */
+    public static void resumeAll() {
+        if (registeredThreads == 0 || --suspensionDepth > 0) {
+            return;
+        }
+        synchronized (LOCK) {
+            suspendRequested = false;
+            LOCK.notifyAll();
+        }
+        if (TraceConcurrentGCThreads) {
+            Log.println("Concurrent GC threads resumed");
+        }
+    }
+}
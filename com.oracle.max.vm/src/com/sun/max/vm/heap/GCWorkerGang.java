@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap;
+
+import com.sun.max.annotate.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.monitor.modal.sync.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.thread.*;
+
+/**
+ * A gang of GC worker threads that execute {@linkplain GCTask tasks} on behalf of the {@link VmOperationThread} while
+ * mutator threads are frozen for a garbage collection.
+ * <p>
+ * The VM operation thread always takes part in the execution of a task as worker 0. A gang of size {@code n} therefore
+ * only needs {@code n - 1} dedicated worker threads. These are started at {@link Phase#STARTING} by heap schemes that
+ * support parallel tasks, with their {@link Thread} and {@link VmThread} objects allocated in the {@link ImmortalHeap}
+ * so that they never move.
+ * <p>
+ * Worker threads never allocate once started, and their stacks only ever hold references to boot image or immortal
+ * objects. Consequently, {@link GCOperation}s do not freeze them, and only their thread locals are scanned for roots
+ * (see {@link VmThreadLocal#scanReferences(Pointer, PointerIndexVisitor)}).
+ * <p>
+ * If a garbage collection is nested in another VM operation, the worker threads may already be frozen. Tasks are then
+ * run by the VM operation thread alone. Tasks must therefore be written for any number of
+ * {@linkplain #activeWorkers() active workers}.
+ */
+public final class GCWorkerGang {
+
+    /**
+     * Maximum number of workers in the gang, including the VM operation thread.
+     */
+    public static final int MAX_WORKERS = 64;
+
+    static int ParallelGCThreads = 1;
+    static boolean TraceGCWorkers;
+    static {
+        VMOptions.addFieldOption("-XX:", "ParallelGCThreads", GCWorkerGang.class,
+            "Number of threads used by parallel GC tasks, including the VM operation thread (at most " + MAX_WORKERS + ").", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "TraceGCWorkers", GCWorkerGang.class, "Trace start and completion of parallel GC tasks.", Phase.PRISTINE);
+    }
+
+    /**
+     * A unit of parallel GC work. The {@link #run(int)} method is invoked once on each active worker of the gang,
+     * and the task completes when all invocations have returned.
+     */
+    public abstract static class GCTask {
+        /**
+         * Name of the task. For tracing only.
+         */
+        public final String name;
+
+        protected GCTask(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Performs this task's share of work on the current worker.
+         *
+         * @param workerId identifier of the current worker, between 0 and {@link GCWorkerGang#activeWorkers()} exclusive
+         */
+        public abstract void run(int workerId);
+    }
+
+    /**
+     * Distributes the threads of {@link VmThreadMap#ACTIVE} among the workers running a task: each thread is claimed by exactly one worker.
+     * Threads are claimed by {@linkplain VmThread#id() id}. Threads that haven't been assigned thread locals yet are skipped.
+     * The claimer must be {@linkplain #reset() reset} by the VM operation thread before the task is submitted to the gang.
+     */
+    public static final class ThreadClaimer {
+        private volatile int nextID;
+
+        private int idLimit;
+
+        @FOLD
+        private static int nextIDOffset() {
+            return ClassActor.fromJava(ThreadClaimer.class).findLocalInstanceFieldActor("nextID").offset();
+        }
+
+        public void reset() {
+            // Thread id 0 is never assigned.
+            nextID = 1;
+            idLimit = VmThreadMap.ACTIVE.threadIDLimit();
+        }
+
+        /**
+         * Claim the next unclaimed thread.
+         * @return a thread, or null if all threads have been claimed
+         */
+        public VmThread claim() {
+            while (true) {
+                int id;
+                do {
+                    id = nextID;
+                    if (id >= idLimit) {
+                        return null;
+                    }
+                } while (Reference.fromJava(this).toOrigin().compareAndSwapInt(nextIDOffset(), id, id + 1) != id);
+                final VmThread vmThread = VmThreadMap.ACTIVE.getVmThreadForID(id);
+                if (vmThread != null && !vmThread.tla().isZero()) {
+                    return vmThread;
+                }
+            }
+        }
+    }
+
+    /**
+     * Dedicated worker thread of the gang.
+     */
+    static final class GCWorkerThread extends Thread {
+        /**
+         * Identifier of the worker, assigned when the thread registers with the gang.
+         */
+        int workerId;
+
+        /**
+         * Epoch of the last task run (or skipped) by this worker.
+         */
+        int lastTaskEpoch;
+
+        GCWorkerThread(int index) {
+            super(VmThread.systemThreadGroup, "GCWorker-" + index);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            register(this);
+            while (true) {
+                GCTask task;
+                synchronized (LOCK) {
+                    while (taskEpoch == lastTaskEpoch) {
+                        try {
+                            LOCK.wait();
+                        } catch (InterruptedException e) {
+                            Log.println("Caught InterruptedException while waiting for a GC task");
+                        }
+                    }
+                    lastTaskEpoch = taskEpoch;
+                    task = currentTask;
+                }
+                Heap.disableAllocationForCurrentThread();
+                try {
+                    task.run(workerId);
+                } catch (Throwable t) {
+                    FatalError.unexpected("Uncaught exception in GC worker thread", t);
+                } finally {
+                    Heap.enableAllocationForCurrentThread();
+                }
+                synchronized (LOCK) {
+                    if (--pendingWorkers == 0) {
+                        LOCK.notifyAll();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Lock protecting the hand-off of tasks between the VM operation thread and the worker threads.
+     */
+    private static final Object LOCK = JavaMonitorManager.newVmLock("GC_WORKER_GANG_LOCK");
+
+    /**
+     * Lock serializing the discovery of special references by concurrently running workers.
+     */
+    private static final Object DISCOVERY_LOCK = JavaMonitorManager.newVmLock("GC_REFERENCE_DISCOVERY_LOCK");
+
+    /**
+     * Safepoint-enabled thread locals of the dedicated worker threads, indexed by worker identifier.
+     * Entry 0 is never used as it stands for the VM operation thread.
+     */
+    private static final Address[] workerTLAs = new Address[MAX_WORKERS];
+
+    /**
+     * Number of dedicated worker threads registered so far.
+     */
+    private static int registeredWorkers;
+
+    /**
+     * Number of workers, including the VM operation thread, taking part in the current task.
+     */
+    private static int activeWorkers = 1;
+
+    private static int pendingWorkers;
+
+    private static int taskEpoch;
+
+    private static GCTask currentTask;
+
+    /**
+     * Whether the worker threads can be used to run the next tasks.
+     * @see #setWorkersAvailable(boolean)
+     */
+    private static boolean workersAvailable = true;
+
+    private GCWorkerGang() {
+    }
+
+    /**
+     * Size of the gang requested on the command line, bounded by {@link #MAX_WORKERS}.
+     */
+    public static int maxWorkers() {
+        if (ParallelGCThreads < 1) {
+            return 1;
+        }
+        return ParallelGCThreads > MAX_WORKERS ? MAX_WORKERS : ParallelGCThreads;
+    }
+
+    /**
+     * Whether the gang comprises dedicated worker threads besides the VM operation thread.
+     */
+    public static boolean isParallel() {
+        return maxWorkers() > 1;
+    }
+
+    /**
+     * Number of workers running the current task. Only meaningful while a task is running.
+     */
+    @INLINE
+    public static int activeWorkers() {
+        return activeWorkers;
+    }
+
+    /**
+     * Creates and starts the dedicated worker threads of the gang. Must be called once, at {@link Phase#STARTING}.
+     */
+    public static void start() {
+        final int numWorkers = maxWorkers();
+        if (numWorkers == 1) {
+            return;
+        }
+        Heap.enableImmortalMemoryAllocation();
+        try {
+            for (int index = 1; index < numWorkers; index++) {
+                new GCWorkerThread(index).start();
+            }
+        } finally {
+            Heap.disableImmortalMemoryAllocation();
+        }
+    }
+
+    /**
+     * Registers the current thread as a dedicated worker of the gang and assigns it the next worker identifier.
+     * Registration holds the {@linkplain VmThreadMap#THREAD_LOCK thread lock} so that it cannot
+     * race with the freezing of threads by a {@link GCOperation}.
+     */
+    private static void register(GCWorkerThread worker) {
+        synchronized (VmThreadMap.THREAD_LOCK) {
+            synchronized (LOCK) {
+                final int workerId = registeredWorkers + 1;
+                workerTLAs[workerId] = VmThread.current().tla();
+                worker.workerId = workerId;
+                worker.lastTaskEpoch = taskEpoch;
+                registeredWorkers = workerId;
+                if (TraceGCWorkers) {
+                    Log.print("GC worker ");
+                    Log.print(workerId);
+                    Log.println(" registered");
+                }
+            }
+        }
+    }
+
+    /**
+     * Determines if the thread whose thread locals are specified is a dedicated worker of the gang.
+     *
+     * @param tla thread locals of a thread
+     */
+    public static boolean isWorkerThread(Pointer tla) {
+        for (int workerId = 1; workerId <= registeredWorkers; workerId++) {
+            if (workerTLAs[workerId].equals(tla)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Specify whether the dedicated worker threads can be used to run tasks. The worker threads are unavailable when
+     * a garbage collection is nested in another VM operation that may have frozen them.
+     */
+    public static void setWorkersAvailable(boolean available) {
+        workersAvailable = available;
+    }
+
+    /**
+     * Variant of {@link SpecialReferenceManager#discoverSpecialReference(Pointer)} that can be called by
+     * several workers concurrently.
+     *
+     * @param cell a pointer at the origin of the discovered reference
+     */
+    public static void discoverSpecialReference(Pointer cell) {
+        synchronized (DISCOVERY_LOCK) {
+            SpecialReferenceManager.discoverSpecialReference(cell);
+        }
+    }
+
+    /**
+     * Runs a task on all the workers of the gang and returns once every worker completed it. Must be called by the
+     * VM operation thread, which runs the task as worker 0.
+     *
+     * @param task the task to run
+     */
+    public static void runTask(GCTask task) {
+        FatalError.check(VmThread.current().isVmOperationThread(), "GC tasks must be submitted by the VM operation thread");
+        if (!workersAvailable || registeredWorkers == 0) {
+            activeWorkers = 1;
+            task.run(0);
+            return;
+        }
+        if (TraceGCWorkers) {
+            Log.print("Begin GC task ");
+            Log.println(task.name);
+        }
+        synchronized (LOCK) {
+            currentTask = task;
+            activeWorkers = registeredWorkers + 1;
+            pendingWorkers = registeredWorkers;
+            taskEpoch++;
+            LOCK.notifyAll();
+        }
+        task.run(0);
+        synchronized (LOCK) {
+            while (pendingWorkers > 0) {
+                try {
+                    LOCK.wait();
+                } catch (InterruptedException e) {
+                    Log.println("Caught InterruptedException while waiting for completion of a GC task");
+                }
+            }
+            currentTask = null;
+        }
+        if (TraceGCWorkers) {
+            Log.print("End GC task ");
+            Log.println(task.name);
+        }
+    }
+}
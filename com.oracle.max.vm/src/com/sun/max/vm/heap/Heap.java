@@ -58,7 +58,9 @@ public final class Heap {
     @HOSTED_ONLY
     public static boolean useOutOfLineStubs;
 
-    // TODO: clean up. Just for indicating that boot image should be generated with inline TLAB allocation if heap scheme supports TLAB.
+    /**
+     * Indicates that the boot image should be generated with inline TLAB allocation if the heap scheme supports TLABs.
+     */
     @HOSTED_ONLY
     public static boolean genInlinedTLAB;
 
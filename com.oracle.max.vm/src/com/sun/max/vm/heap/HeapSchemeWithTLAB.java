@@ -58,7 +58,11 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
     public static final String TLAB_MARK_THREAD_LOCAL_NAME = "TLAB_MARK";
     public static final String TLAB_DISABLED_THREAD_LOCAL_NAME = "TLAB_DISABLED";
 
-    // TODO: clean this up. Used just for testing with and without inlined XIR tlab allocation.
+    /**
+     * Determines if compiled code allocates from the TLAB with an inline bump-pointer sequence, only calling
+     * into the runtime ({@link #c1xSlowPathAllocate(Size, Pointer)}) when the TLAB needs refilling.
+     * When disabled, every allocation site calls the runtime allocator.
+     */
     public static boolean GenInlinedTLABAlloc = true;
 
     /**
@@ -86,9 +90,8 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
         VMOptions.addFieldOption("-XX:", "PrintTLABStats", Classes.getDeclaredField(HeapSchemeWithTLAB.class, "PrintTLABStats"),
                         "Print TLAB statistics at end of program.", MaxineVM.Phase.PRISTINE);
 
-        // TODO: clean this up. Used just for testing with and without inlined XIR tlab allocation.
         VMOptions.addFieldOption("-XX:", "InlineTLAB", Classes.getDeclaredField(HeapSchemeWithTLAB.class, "GenInlinedTLABAlloc"),
-                        "XIR generate inlined TLAB allocations.", MaxineVM.Phase.PRISTINE);
+                        "Compile TLAB allocation fast paths inline, calling the runtime only to refill the TLAB.", MaxineVM.Phase.PRISTINE);
     }
 
     /**
@@ -99,6 +102,15 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
         VMOptions.addFieldOption("-XX:", "UseTLAB", HeapSchemeWithTLAB.class, "Use thread-local object allocation", MaxineVM.Phase.PRISTINE);
     }
 
+    /**
+     * A VM option for sizing the TLABs of each thread after its allocation rate.
+     */
+    public static boolean AdaptiveTLAB;
+    static {
+        VMOptions.addFieldOption("-XX:", "AdaptiveTLAB", HeapSchemeWithTLAB.class,
+            "Size the TLABs of each thread after its allocation rate (see AdaptiveTLABRefillPolicy)", MaxineVM.Phase.PRISTINE);
+    }
+
     /**
      * A VM option for specifying the size of a TLAB. Default is 64 K.
      */
@@ -158,6 +170,7 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
             final Pointer etla = VmThreadLocal.ETLA.load(tla);
             final Pointer tlabMark = TLAB_MARK.load(etla);
             Pointer tlabTop = TLAB_TOP.load(etla);
+            final TLABRefillPolicy refillPolicy = TLABRefillPolicy.getForCurrentThread(etla);
             if (logTLAB()) {
                 logger.logReset(UnsafeCast.asVmThread(VM_THREAD.loadRef(etla).toJava()), tlabTop, tlabMark);
             }
@@ -166,11 +179,13 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
                 // (1) it has never been filled, in which case it's allocation mark is null too
                 if (tlabMark.equals(Address.zero()))  {
                     // No TLABs, so nothing to reset.
+                    if (refillPolicy != null) {
+                        refillPolicy.notifyReset(Size.zero());
+                    }
                     return;
                 }
                 // (2) allocation has been disabled for the thread.
                 FatalError.check(!ALLOCATION_DISABLED.load(currentTLA()).isZero(), "inconsistent TLAB state");
-                TLABRefillPolicy refillPolicy = TLABRefillPolicy.getForCurrentThread(etla);
                 if (refillPolicy != null) {
                     // Go fetch the actual TLAB top in case the heap scheme needs it for its doBeforeReset handler.
                     tlabTop = refillPolicy.getSavedTlabTop().asPointer();
@@ -178,6 +193,9 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
                     refillPolicy.saveTlabTop(Address.zero());
                 }
             }
+            if (refillPolicy != null) {
+                refillPolicy.notifyReset(tlabTop.greaterThan(tlabMark) ? tlabTop.minus(tlabMark).asSize() : Size.zero());
+            }
             doBeforeReset(etla, tlabMark, tlabTop);
             TLAB_TOP.store(etla, Address.zero());
             TLAB_MARK.store(etla, Address.zero());
@@ -191,7 +209,7 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
      */
     protected static final TLABRefillPolicy NEVER_REFILL_TLAB = new TLABRefillPolicy() {
         @Override
-        public boolean shouldRefill(Size size, Pointer allocationMark) {
+        public boolean shouldRefill(Size size, Pointer allocationMark, Pointer tlabEnd) {
             return false;
         }
 
@@ -236,6 +254,11 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
          */
         volatile long tlabOverflowCount = 0L;
 
+        /**
+         * Count TLAB refills (not including initial fills).
+         */
+        volatile long tlabRefillCount = 0L;
+
         /**
          * Leftover after refill.
          */
@@ -249,6 +272,8 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
             Log.println(runtimeSlowPathAllocateCount);
             Log.print("   tlab overflow count               :");
             Log.println(tlabOverflowCount);
+            Log.print("   tlab refill count                 :");
+            Log.println(tlabRefillCount);
             Log.print("   leftover at TLAB refill           :");
             if (leftover > Size.K.toLong()) {
                 Log.print(Size.K.plus(leftover).unsignedShiftedRight(10).toLong());
@@ -354,6 +379,18 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
         return initialTlabSize;
     }
 
+    /**
+     * Creates the refill policy of a thread's TLABs, called when the thread fills its first TLAB.
+     *
+     * @param tlabSize size of the thread's first TLAB
+     */
+    protected final TLABRefillPolicy newTLABRefillPolicy(Size tlabSize) {
+        if (AdaptiveTLAB) {
+            return new AdaptiveTLABRefillPolicy(tlabSize);
+        }
+        return new SimpleTLABRefillPolicy(tlabSize);
+    }
+
     protected void setInitialTlabSize(Size size) {
         initialTlabSize = size;
     }
@@ -378,7 +415,13 @@ public abstract class HeapSchemeWithTLAB extends HeapSchemeAdaptor {
         final Pointer allocationMark = TLAB_MARK.load(etla);
         if (!allocationMark.isZero()) {
             final Pointer oldTop = TLAB_TOP.load(etla);
-            globalTlabStats.leftover += oldTop.minus(allocationMark).toLong();
+            final Size leftover = oldTop.greaterThan(allocationMark) ? oldTop.minus(allocationMark).asSize() : Size.zero();
+            globalTlabStats.leftover += leftover.toLong();
+            globalTlabStats.tlabRefillCount++;
+            final TLABRefillPolicy refillPolicy = TLABRefillPolicy.getForCurrentThread(etla);
+            if (refillPolicy != null) {
+                refillPolicy.notifyRefill(size, leftover);
+            }
             // It is a refill, not an initial fill. So invoke handler.
             doBeforeTLABRefill(allocationMark, oldTop);
         } else {
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap;
+
+import static com.sun.max.vm.VMConfiguration.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.monitor.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.thread.*;
+
+/**
+ * Scans all GC roots in the VM with the workers of the {@link GCWorkerGang}. Workers {@linkplain GCWorkerGang.ThreadClaimer claim}
+ * the threads of {@link VmThreadMap#ACTIVE} one at a time and scan their thread locals and prepared stack reference maps
+ * concurrently. The references {@linkplain MonitorScheme#scanReferences(PointerIndexVisitor) held} by the monitor scheme are
+ * scanned by the first worker to get to them.
+ * <p>
+ * The scanner must be {@linkplain #reset() reset} by the VM operation thread before submitting the task that runs it.
+ * Each worker then calls {@link #run(PointerIndexVisitor)} with its own visitor, which must tolerate being applied
+ * concurrently with the visitors of the other workers.
+ *
+ * @see SequentialHeapRootsScanner
+ */
+public final class ParallelHeapRootsScanner {
+
+    static boolean ParallelRootScanning = true;
+    static {
+        VMOptions.addFieldOption("-XX:", "ParallelRootScanning", ParallelHeapRootsScanner.class,
+            "Scan thread stacks and prepare their reference maps with the GC worker gang (only when ParallelGCThreads > 1)", Phase.PRISTINE);
+    }
+
+    /**
+     * Whether roots are to be scanned, and stack reference maps to be prepared, by the GC worker gang.
+     */
+    public static boolean isEnabled() {
+        return ParallelRootScanning && GCWorkerGang.isParallel();
+    }
+
+    private final GCWorkerGang.ThreadClaimer threadClaimer = new GCWorkerGang.ThreadClaimer();
+
+    /**
+     * Set to 1 by the worker that claimed the scanning of the monitor scheme's references.
+     */
+    private volatile int monitorsClaimed;
+
+    @FOLD
+    private static int monitorsClaimedOffset() {
+        return ClassActor.fromJava(ParallelHeapRootsScanner.class).findLocalInstanceFieldActor("monitorsClaimed").offset();
+    }
+
+    public void reset() {
+        threadClaimer.reset();
+        monitorsClaimed = 0;
+    }
+
+    private boolean claimMonitors() {
+        return monitorsClaimed == 0 && Reference.fromJava(this).toOrigin().compareAndSwapInt(monitorsClaimedOffset(), 0, 1) == 0;
+    }
+
+    /**
+     * Scan roots with the current worker until all of them have been claimed.
+     *
+     * @param pointerIndexVisitor the visitor of the current worker
+     */
+    public void run(PointerIndexVisitor pointerIndexVisitor) {
+        VmThread vmThread = threadClaimer.claim();
+        while (vmThread != null) {
+            if (Heap.logGCPhases()) {
+                Heap.phaseLogger.logScanningThreadRoots(vmThread);
+            }
+            VmThreadLocal.scanReferences(vmThread.tla(), pointerIndexVisitor);
+            vmThread = threadClaimer.claim();
+        }
+        if (claimMonitors()) {
+            vmConfig().monitorScheme().scanReferences(pointerIndexVisitor);
+        }
+    }
+}
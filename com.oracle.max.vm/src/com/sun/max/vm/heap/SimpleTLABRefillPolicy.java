@@ -72,7 +72,7 @@ public class SimpleTLABRefillPolicy extends TLABRefillPolicy {
     }
 
     @Override
-    public boolean shouldRefill(Size size, Pointer allocationMark) {
+    public boolean shouldRefill(Size size, Pointer allocationMark, Pointer tlabEnd) {
         if (allocationMark.isZero()) {
             // No TLAB. Refill whatsoever
             return true;
@@ -57,14 +57,30 @@ public abstract class TLABRefillPolicy {
      * Return policy decision regarding whether the TLAB for the current thread should be refilled.
      * @param size size of the allocation request that causes the request to refill the TLAB
      * @param allocationMark allocation mark of the TLAB
+     * @param tlabEnd soft limit of the TLAB (zero if the thread has no TLAB)
      */
-    public abstract boolean shouldRefill(Size size, Pointer allocationMark);
+    public abstract boolean shouldRefill(Size size, Pointer allocationMark, Pointer tlabEnd);
 
     /**
      * Returns the size the TLAB should have on next refill.
      */
     public abstract Size nextTlabSize();
 
+    /**
+     * Notifies the policy that the thread's TLAB was refilled. The initial fill of the TLAB isn't notified.
+     * @param tlabSize size of the new TLAB
+     * @param leftover space left unused in the retired TLAB
+     */
+    public void notifyRefill(Size tlabSize, Size leftover) {
+    }
+
+    /**
+     * Notifies the policy that the thread's TLAB was reset, typically before a garbage collection.
+     * @param leftover space left unused in the reset TLAB
+     */
+    public void notifyReset(Size leftover) {
+    }
+
     @INTRINSIC(UNSAFE_CAST)
     private static native TLABRefillPolicy asTLABRefillPolicy(Object object);
 
@@ -51,6 +51,21 @@ public interface XirWriteBarrierSpecification extends WriteBarrierSpecification
         void genWriteBarrier(CiXirAssembler asm, XirOperand ... operands);
     }
 
+    /**
+     * Interface provided by the XIR generator to barrier generators that need a slow path calling into the runtime.
+     */
+    public interface XirRuntimeCallGenerator {
+        /**
+         * Generate XIR assembly code for a call to a public static method through a compiler stub.
+         * @param asm
+         * @param holder class declaring the method
+         * @param method name of the method, which must be unique among runtime calls
+         * @param result operand receiving the result of the call, or null if the method returns void
+         * @param args arguments to the call
+         */
+        void genRuntimeCall(CiXirAssembler asm, Class<?> holder, String method, XirOperand result, XirOperand... args);
+    }
+
     XirWriteBarrierGenerator NULL_WRITE_BARRIER_GEN = new XirWriteBarrierGenerator() {
 
         public void genWriteBarrier(CiXirAssembler asm, XirOperand... operands) {
@@ -63,4 +78,10 @@ public interface XirWriteBarrierSpecification extends WriteBarrierSpecification
      * @param writeBarrierSpec a bit set encoding a write barrier specification.
      */
     XirWriteBarrierGenerator barrierGenerator(IntBitSet<WriteBarrierSpecification.WriteBarrierSpec> writeBarrierSpec);
+
+    /**
+     * Set the runtime call generator barrier generators can use to generate their slow path.
+     * Called by the XIR generator before requesting any barrier generator.
+     */
+    void setRuntimeCallGenerator(XirRuntimeCallGenerator runtimeCallGenerator);
 }
@@ -38,6 +38,13 @@ public final class AtomicPinCounter {
         return ClassActor.fromJava(AtomicPinCounter.class).findLocalInstanceFieldActor("pinnedCounter").offset();
     }
 
+    /**
+     * Indicates whether some pinned requests haven't been matched by an unpin request yet.
+     */
+    public boolean hasPinnedObjects() {
+        return pinnedCounter != 0;
+    }
+
     public void increment() {
         int newValue;
         int oldValue;
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.heap.gcx.rset.ctbl.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.runtime.*;
+import com.sun.max.vm.type.*;
+
+/**
+ * Concurrent GC thread that refines the card table of a generational heap between young collections.
+ * <p>
+ * The thread periodically walks the dirty cards of the old generation and cleans those that don't cover any reference to the
+ * young generation, so that the next young collection only scans the cards that actually hold old-to-young references.
+ * A card is cleaned before its cells are scanned (see {@link CardTableRSet#refineDirtyCards}): a mutator storing a young reference
+ * in the card concurrently dirties it again with its post-write barrier.
+ * <p>
+ * Refinement relies on the old generation being allocated only during garbage collection, so that the cells covered by
+ * the old generation ranges published by the last collection remain parsable until the next one.
+ */
+public final class CardRefinementThread extends ConcurrentGCThread {
+    static int CardRefinementIntervalMillis = 10;
+    static boolean TraceCardRefinement;
+    static {
+        VMOptions.addFieldOption("-XX:", "CardRefinementIntervalMillis", CardRefinementThread.class,
+                        "Delay in milliseconds between two passes of the card refinement thread", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "TraceCardRefinement", CardRefinementThread.class,
+                        "Report the number of cards refined by the card refinement thread at every young collection", Phase.PRISTINE);
+    }
+
+    /**
+     * Visitor setting the {@link #cardMustRemainDirty} flag when the cells of a card hold a reference to the young generation.
+     */
+    private static final class YoungReferenceFinder extends CardTableRSet.RefiningCellVisitor {
+        private final EvacuatingSpace.SpaceBounds youngSpaceBounds;
+
+        private final PointerIndexVisitor referenceChecker = new PointerIndexVisitor() {
+            @Override
+            public void visit(Pointer pointer, int wordIndex) {
+                checkReference(pointer, wordIndex);
+            }
+        };
+
+        YoungReferenceFinder(EvacuatingSpace.SpaceBounds youngSpaceBounds) {
+            this.youngSpaceBounds = youngSpaceBounds;
+        }
+
+        private void checkReference(Pointer refHolderOrigin, int wordIndex) {
+            if (youngSpaceBounds.isIn(refHolderOrigin.getReference(wordIndex).toOrigin())) {
+                cardMustRemainDirty = true;
+            }
+        }
+
+        @Override
+        public Pointer visitCell(Pointer cell, Address start, Address end) {
+            final Pointer origin = Layout.cellToOrigin(cell);
+            if (origin.plus(Layout.hubIndex()).greaterEqual(start)) {
+                checkReference(origin, Layout.hubIndex());
+            }
+            final Hub hub = Layout.getHub(origin);
+            if (hub == HeapFreeChunk.heapFreeChunkHub()) {
+                return cell.plus(HeapFreeChunk.toHeapFreeChunk(origin).size);
+            }
+            final SpecificLayout specificLayout = hub.specificLayout;
+            if (specificLayout == Layout.tupleLayout()) {
+                // The write barrier dirties the card holding the header of a tuple: check all its references.
+                hub.visitMappedReferences(origin, referenceChecker);
+                if (hub.isJLRReference) {
+                    checkReference(origin, SpecialReferenceManager.referentIndex());
+                }
+                return cell.plus(hub.tupleSize);
+            }
+            if (specificLayout == Layout.referenceArrayLayout()) {
+                final int endOfArrayIndex = Layout.readArrayLength(origin) + Layout.firstElementIndex();
+                final Address firstElementAddr = origin.plusWords(Layout.firstElementIndex());
+                final Address endOfArrayAddr = origin.plusWords(endOfArrayIndex);
+                final int firstIndex = start.greaterThan(firstElementAddr) ? start.minus(origin).unsignedShiftedRight(Kind.REFERENCE.width.log2numberOfBytes).toInt() : Layout.firstElementIndex();
+                final int endIndex = endOfArrayAddr.greaterThan(end) ? end.minus(origin).unsignedShiftedRight(Kind.REFERENCE.width.log2numberOfBytes).toInt() : endOfArrayIndex;
+                for (int i = firstIndex; i < endIndex; i++) {
+                    checkReference(origin, i);
+                }
+            } else if (specificLayout == Layout.hybridLayout()) {
+                hub.visitMappedReferences(origin, referenceChecker);
+            }
+            return cell.plus(Layout.size(origin));
+        }
+    }
+
+    private final CardTableRSet cardTableRSet;
+
+    private final YoungReferenceFinder youngReferenceFinder;
+
+    /**
+     * Collects the ranges of the old generation to refine. Ranges are split in chunks of {@link #chunkSize} bytes so that
+     * the thread regularly reaches a yield point.
+     */
+    private final class OldSpaceRangeCollector implements CellRangeVisitor {
+        @Override
+        public void visitCells(Address start, Address end) {
+            Address rangeStart = start;
+            while (rangeStart.lessThan(end)) {
+                Address rangeEnd = rangeStart.plus(chunkSize);
+                if (rangeEnd.greaterThan(end)) {
+                    rangeEnd = end;
+                }
+                addOldSpaceRange(rangeStart, rangeEnd);
+                rangeStart = rangeEnd;
+            }
+        }
+    }
+
+    private final OldSpaceRangeCollector oldSpaceRangeCollector = new OldSpaceRangeCollector();
+
+    private final Size chunkSize;
+
+    /**
+     * Off-heap buffer of pairs of addresses delimiting the ranges of the old generation to refine.
+     */
+    private Pointer oldSpaceRanges = Pointer.zero();
+
+    private int oldSpaceRangesCapacity;
+
+    private int numOldSpaceRanges;
+
+    /**
+     * Set by the garbage collector when it published new old generation ranges, cleared by the refinement thread when it starts a new pass.
+     */
+    private volatile boolean rangesInvalidated;
+
+    public CardRefinementThread(EvacuatingSpace youngSpace, CardTableRSet cardTableRSet, Size chunkSize) {
+        super("CardRefinement");
+        this.cardTableRSet = cardTableRSet;
+        this.chunkSize = chunkSize;
+        youngReferenceFinder = new YoungReferenceFinder(youngSpace.bounds());
+    }
+
+    private void addOldSpaceRange(Address start, Address end) {
+        if (numOldSpaceRanges == oldSpaceRangesCapacity) {
+            final int newCapacity = oldSpaceRangesCapacity == 0 ? 256 : oldSpaceRangesCapacity << 1;
+            final Size size = Size.fromInt(newCapacity << 1).shiftedLeft(Word.widthValue().log2numberOfBytes);
+            final Pointer newOldSpaceRanges = oldSpaceRanges.isZero() ? Memory.allocate(size) : Memory.reallocate(oldSpaceRanges, size);
+            if (newOldSpaceRanges.isZero()) {
+                FatalError.unexpected("Could not allocate buffer for card refinement ranges");
+            }
+            oldSpaceRanges = newOldSpaceRanges;
+            oldSpaceRangesCapacity = newCapacity;
+        }
+        oldSpaceRanges.setWord(numOldSpaceRanges << 1, start);
+        oldSpaceRanges.setWord((numOldSpaceRanges << 1) + 1, end);
+        numOldSpaceRanges++;
+    }
+
+    /**
+     * Publish the ranges of the old generation to refine. Must be called by the garbage collector at the end of every collection,
+     * while the thread is suspended. The refinement pass in progress, if any, is aborted.
+     *
+     * @param oldSpace the old generation
+     */
+    public void publishOldSpaceRanges(HeapSpace oldSpace) {
+        numOldSpaceRanges = 0;
+        oldSpace.visit(oldSpaceRangeCollector);
+        rangesInvalidated = true;
+        if (TraceCardRefinement) {
+            Log.print("Card refinement: ");
+            Log.print(youngReferenceFinder.refinedCards);
+            Log.print(" cards refined, ");
+            Log.print(youngReferenceFinder.retainedCards);
+            Log.println(" cards retained");
+        }
+        youngReferenceFinder.refinedCards = 0L;
+        youngReferenceFinder.retainedCards = 0L;
+    }
+
+    @Override
+    protected boolean workAborted() {
+        return rangesInvalidated;
+    }
+
+    @Override
+    protected void doRun() {
+        while (true) {
+            try {
+                Thread.sleep(CardRefinementIntervalMillis);
+            } catch (InterruptedException e) {
+                Log.println("Caught InterruptedException while waiting for next card refinement pass");
+            }
+            beginWork();
+            // No garbage collection can publish new ranges before the next yield point.
+            rangesInvalidated = false;
+            for (int i = 0; i < numOldSpaceRanges; i++) {
+                final int range = i << 1;
+                cardTableRSet.refineDirtyCards(oldSpaceRanges.getWord(range).asAddress(), oldSpaceRanges.getWord(range + 1).asAddress(), youngReferenceFinder);
+                if (!yieldPoint()) {
+                    break;
+                }
+            }
+            endWork();
+        }
+    }
+}
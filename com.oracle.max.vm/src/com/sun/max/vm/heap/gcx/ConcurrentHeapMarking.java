@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import static com.sun.max.vm.heap.gcx.HeapRegionConstants.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.reference.*;
+
+/**
+ * Tracing of the heap for the {@link TricolorHeapMarker} by a {@link ConcurrentGCThread} while mutator threads are running.
+ * <p>
+ * Roots are marked grey during a stop-the-world initial mark. The concurrent GC thread then repeatedly scans the color map
+ * of the heap regions for grey objects, which it visits as the {@link ParallelHeapMarking} workers do: grey marks are set and
+ * claimed with compare-and-swap, since mutators marking overwritten references grey in their snapshot-at-the-beginning
+ * write barrier update the color map concurrently. A pass that finds no grey object ends the concurrent tracing. Objects
+ * marked grey by mutators after that are traced during the stop-the-world remark.
+ * <p>
+ * Special references aren't discovered: their referents are traced like any other references. Since mutators can obtain
+ * a strong reference to a referent at any time during the marking, clearing references to white referents would otherwise
+ * require a read barrier on {@link java.lang.ref.Reference#get()}. Special references discovered in the boot heap during
+ * root marking are processed with this class as the {@link SpecialReferenceManager.GC}, which marks all their referents grey.
+ * <p>
+ * The GC thread visits one object at a time between {@linkplain ConcurrentGCThread#yieldPoint() yield points} and
+ * gives up as soon as a garbage collection aborted the marking.
+ */
+final class ConcurrentHeapMarking extends PointerIndexVisitor implements SpecialReferenceManager.GC {
+    final TricolorHeapMarker heapMarker;
+
+    /**
+     * Marking stack of the GC thread. Only the owner end of the stack is used.
+     */
+    private final WorkStealingMarkingStack markingStack = new WorkStealingMarkingStack();
+
+    /**
+     * Rightmost object visited or marked grey by the concurrent marking.
+     */
+    Address rightmost;
+
+    /**
+     * Number of objects visited during the last concurrent marking. Statistics only.
+     */
+    long visitedCells;
+
+    /**
+     * Number of passes over the regions during the last concurrent marking.
+     */
+    int numPasses;
+
+    ConcurrentHeapMarking(TricolorHeapMarker heapMarker) {
+        this.heapMarker = heapMarker;
+    }
+
+    /**
+     * Allocate the marking stack. Called at VM startup.
+     */
+    void initialize() {
+        markingStack.initialize();
+    }
+
+    @INLINE
+    private void markObjectGrey(Pointer cell) {
+        if (heapMarker.isCovered(cell) && heapMarker.atomicMarkGreyIfWhite(cell)) {
+            if (cell.greaterThan(rightmost)) {
+                rightmost = cell;
+            }
+            // If the stack is full, the cell is left grey in the color map and will be visited by the next pass.
+            markingStack.push(cell);
+        }
+    }
+
+    @INLINE
+    private void markRefGrey(Reference ref) {
+        markObjectGrey(Layout.originToCell(ref.toOrigin()));
+    }
+
+    @Override
+    public void visit(Pointer pointer, int wordIndex) {
+        markRefGrey(pointer.getReference(wordIndex));
+    }
+
+    public boolean isReachable(Reference ref) {
+        markRefGrey(ref);
+        return true;
+    }
+
+    public Reference preserve(Reference ref) {
+        return ref;
+    }
+
+    public boolean mayRelocateLiveObjects() {
+        return false;
+    }
+
+    private void visitGreyCell(Pointer cell) {
+        if (cell.greaterThan(rightmost)) {
+            rightmost = cell;
+        }
+        final Pointer origin = Layout.cellToOrigin(cell);
+        final Reference hubRef = Layout.readHubReference(origin);
+        markRefGrey(hubRef);
+        final Hub hub = UnsafeCast.asHub(hubRef.toJava());
+        if (MaxineVM.isDebug()) {
+            heapMarker.checkGreyCellHub(origin, hub);
+        }
+        final SpecificLayout specificLayout = hub.specificLayout;
+        if (specificLayout.isTupleLayout()) {
+            TupleReferenceMap.visitReferences(hub, origin, this);
+            if (hub.isJLRReference) {
+                markRefGrey(origin.getReference(SpecialReferenceManager.referentIndex()));
+            }
+        } else if (specificLayout.isReferenceArrayLayout()) {
+            final int length = Layout.readArrayLength(origin);
+            for (int index = 0; index < length; index++) {
+                markRefGrey(Layout.getReference(origin, index));
+            }
+        } else if (specificLayout.isHybridLayout()) {
+            TupleReferenceMap.visitReferences(hub, origin, this);
+        }
+        visitedCells++;
+    }
+
+    /**
+     * Visit the objects on the marking stack.
+     * @return false if the marking was aborted
+     */
+    private boolean drainMarkingStack(ConcurrentGCThread gcThread) {
+        Pointer cell = markingStack.pop();
+        while (!cell.isZero()) {
+            if (heapMarker.atomicMarkBlackFromGrey(heapMarker.bitIndexOf(cell))) {
+                visitGreyCell(cell);
+            }
+            if (!gcThread.yieldPoint()) {
+                return false;
+            }
+            cell = markingStack.pop();
+        }
+        return true;
+    }
+
+    /**
+     * Visit the grey objects of a region, and everything reachable from them.
+     * @return -1 if the marking was aborted, otherwise the number of grey objects found in the region
+     */
+    private int visitGreyObjects(Address regionStart, ConcurrentGCThread gcThread) {
+        Address regionEnd = regionStart.plus(regionSizeInBytes);
+        if (regionEnd.greaterThan(heapMarker.coveredAreaEnd)) {
+            regionEnd = heapMarker.coveredAreaEnd;
+        }
+        final int endBitIndex = heapMarker.bitIndexOf(regionEnd);
+        int numGreyObjects = 0;
+        int bitIndex = heapMarker.firstGreyMark(heapMarker.bitIndexOf(regionStart), endBitIndex);
+        while (bitIndex >= 0) {
+            if (heapMarker.atomicMarkBlackFromGrey(bitIndex)) {
+                numGreyObjects++;
+                visitGreyCell(heapMarker.addressOf(bitIndex).asPointer());
+                if (!drainMarkingStack(gcThread)) {
+                    return -1;
+                }
+            }
+            bitIndex = heapMarker.firstGreyMark(bitIndex + 2, endBitIndex);
+        }
+        return numGreyObjects;
+    }
+
+    /**
+     * Trace the heap from the grey objects of the area covered by the heap marker until a pass over the area finds no grey object.
+     * The area is scanned one region at a time, independently of the lists the regions are on as these are updated by mutators.
+     * Must be called by the concurrent GC thread between a {@link ConcurrentGCThread#beginWork()} and an {@link ConcurrentGCThread#endWork()}.
+     *
+     * @param gcThread the calling thread
+     * @return true if the tracing completed, false if it was aborted by a garbage collection
+     */
+    boolean visitGreyObjects(ConcurrentGCThread gcThread) {
+        markingStack.reset();
+        visitedCells = 0L;
+        numPasses = 0;
+        int numGreyObjects;
+        do {
+            numPasses++;
+            numGreyObjects = 0;
+            Address regionStart = heapMarker.coveredAreaStart;
+            while (regionStart.lessThan(heapMarker.coveredAreaEnd)) {
+                final int n = visitGreyObjects(regionStart, gcThread);
+                if (n < 0) {
+                    return false;
+                }
+                numGreyObjects += n;
+                if (!gcThread.yieldPoint()) {
+                    return false;
+                }
+                regionStart = regionStart.plus(regionSizeInBytes);
+            }
+        } while (numGreyObjects > 0);
+        return true;
+    }
+}
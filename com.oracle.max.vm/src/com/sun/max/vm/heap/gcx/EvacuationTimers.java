@@ -51,6 +51,14 @@ public final class EvacuationTimers {
         trackTime = Heap.logGCTime();
     }
 
+    /**
+     * Reset time tracking, forcing it on if the caller needs the timings regardless of GC time logging (e.g., for heap sizing decisions).
+     * @param alwaysTrack if true, track time even if GC time logging is off
+     */
+    public void resetTrackTime(boolean alwaysTrack) {
+        trackTime = alwaysTrack || Heap.logGCTime();
+    }
+
     @INLINE
     public TimerMetric get(TIMED_OPERATION timedOp) {
         return timedOp.timer;
@@ -0,0 +1,414 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import static com.sun.max.vm.heap.HeapSchemeAdaptor.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.heap.gcx.rset.ctbl.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.runtime.*;
+
+/**
+ * Evacuator used by one GC worker of a {@link ParallelNurseryEvacuator}.
+ * <p>
+ * Each worker evacuates cells into its own evacuation buffer (ELAB), refilled from the shared {@link EvacuationBufferProvider}.
+ * The survivor ranges it allocates are pushed on its {@link WorkStealingMarkingStack stack of ranges}, from which idle workers steal;
+ * ranges that don't fit on the stack go to a private queue. Several workers may race to evacuate the same cell: each copies the cell in its ELAB,
+ * then tries to install a forwarding reference with a compare-and-swap on the cell's header. The loser undoes its copy.
+ * <p>
+ * While {@link #recordEvacuatedRefLocations} is set, the worker doesn't evacuate anything, but records the locations of the
+ * references to the evacuated area it comes across. This lets the worker scan dirty cards of the to-space while no one allocates
+ * in it.
+ */
+final class EvacuationWorker extends Evacuator {
+    @FOLD
+    private static Size evacuationBufferHeadroom() {
+        return minObjectSize();
+    }
+
+    private static final int INITIAL_REF_LOCATIONS_CAPACITY = 1024;
+
+    /**
+     * Closure for recording references to the evacuated area from dirty cards of the boot region.
+     */
+    final class BootRegionDirtyCardClosure extends CardTableRSet.CardRangeVisitor {
+        Address mutableBootReferencesLimit = Address.zero();
+
+        void initialize() {
+            mutableBootReferencesLimit = Heap.bootHeapRegion.lastMutableReferenceAddress().plus(Word.widthValue().numberOfBytes);
+        }
+
+        @Override
+        public void visitCards(Address start, Address end) {
+            if (end.greaterThan(mutableBootReferencesLimit)) {
+                if (start.greaterThan(mutableBootReferencesLimit)) {
+                    return;
+                }
+                end = mutableBootReferencesLimit;
+            }
+            Heap.bootHeapRegion.visitReferences(start, end, EvacuationWorker.this);
+        }
+    }
+
+    private final BootRegionDirtyCardClosure bootRegionDirtyCardClosure = new BootRegionDirtyCardClosure();
+
+    private final EvacuationBufferProvider evacuationBufferProvider;
+
+    private final CardTableRSet rset;
+
+    private final CardFirstObjectTable cfoTable;
+
+    private EvacuatingSpace.SpaceBounds evacuatedAreaBounds;
+
+    private HeapSpace toSpace;
+
+    /**
+     * Threshold below which refills of the ELAB are automatic. Larger requests are allocated directly in the to-space.
+     */
+    private Size minRefillThreshold;
+
+    private SurvivorRangesQueue survivorRanges;
+
+    /**
+     * Survivor ranges that other workers may steal.
+     */
+    final WorkStealingMarkingStack stealableRanges = new WorkStealingMarkingStack(true);
+
+    private Size evacuatedBytes = Size.zero();
+
+    /**
+     * Allocation hand to the worker's ELAB.
+     */
+    private Pointer ptop = Pointer.zero();
+
+    /**
+     * End of the worker's ELAB.
+     */
+    private Pointer pend = Pointer.zero();
+
+    /**
+     * Next free chunk of the worker's ELAB.
+     */
+    private Address pnextChunk = Address.zero();
+
+    /**
+     * Start of the survivor range being allocated in the ELAB.
+     */
+    private Address allocatedRangeStart = Address.zero();
+
+    /**
+     * Off-heap buffer of recorded locations of references to the evacuated area.
+     */
+    private Pointer refLocations = Pointer.zero();
+
+    private int refLocationsCapacity;
+
+    private int numRefLocations;
+
+    EvacuationWorker(EvacuationBufferProvider evacuationBufferProvider, CardTableRSet rset) {
+        this.evacuationBufferProvider = evacuationBufferProvider;
+        this.rset = rset;
+        this.cfoTable = rset.cfoTable;
+    }
+
+    void initialize(int maxSurvivorRanges, Size minRefillThreshold) {
+        this.survivorRanges = new SurvivorRangesQueue(maxSurvivorRanges);
+        this.stealableRanges.initialize(maxSurvivorRanges);
+        this.minRefillThreshold = minRefillThreshold;
+    }
+
+    void setEvacuationSpace(EvacuatingSpace fromSpace, HeapSpace toSpace) {
+        this.evacuatedAreaBounds = fromSpace.bounds();
+        this.toSpace = toSpace;
+    }
+
+    Size evacuatedBytes() {
+        return evacuatedBytes;
+    }
+
+    int numRefLocations() {
+        return numRefLocations;
+    }
+
+    @INLINE
+    Pointer refLocation(int index) {
+        return refLocations.getWord(index).asPointer();
+    }
+
+    void clearRefLocations() {
+        numRefLocations = 0;
+    }
+
+    @INLINE
+    @Override
+    boolean inEvacuatedArea(Pointer origin) {
+        return evacuatedAreaBounds.isIn(origin);
+    }
+
+    @Override
+    void recordEvacuatedRefLocation(Pointer location) {
+        if (numRefLocations == refLocationsCapacity) {
+            final int newCapacity = refLocationsCapacity == 0 ? INITIAL_REF_LOCATIONS_CAPACITY : refLocationsCapacity << 1;
+            final Size size = Size.fromInt(newCapacity).shiftedLeft(Word.widthValue().log2numberOfBytes);
+            final Pointer newRefLocations = refLocations.isZero() ? Memory.allocate(size) : Memory.reallocate(refLocations, size);
+            if (newRefLocations.isZero()) {
+                FatalError.unexpected("Could not allocate buffer for references to evacuated area");
+            }
+            refLocations = newRefLocations;
+            refLocationsCapacity = newCapacity;
+        }
+        refLocations.setWord(numRefLocations++, location);
+    }
+
+    @Override
+    protected void discoverSpecialReference(Pointer origin) {
+        GCWorkerGang.discoverSpecialReference(origin);
+    }
+
+    /**
+     * Record references to the evacuated area from the dirty cards of the boot region.
+     */
+    void scanBootHeapDirtyCards() {
+        final BootHeapRegion bootHeapRegion = Heap.bootHeapRegion;
+        bootRegionDirtyCardClosure.initialize();
+        rset.cleanAndVisitCards(bootHeapRegion.start(), bootHeapRegion.end(), bootRegionDirtyCardClosure);
+    }
+
+    /**
+     * Record references to the evacuated area from the dirty cards of a range of the to-space.
+     */
+    void scanDirtyCards(Address start, Address end) {
+        rset.cleanAndVisitCards(start, end, this);
+    }
+
+    /**
+     * Evacuate the cells referenced from the recorded reference locations in the specified range.
+     */
+    void evacuateFromRefLocations(EvacuationWorker recorder, int start, int end) {
+        for (int i = start; i < end; i++) {
+            updateEvacuatedRef(recorder.refLocation(i), 0);
+        }
+    }
+
+    @Override
+    protected void doBeforeEvacuation() {
+        evacuatedBytes = Size.zero();
+        if (ptop.isZero()) {
+            refill(evacuationBufferProvider.refillEvacuationBuffer());
+        }
+        allocatedRangeStart = ptop;
+    }
+
+    @Override
+    protected void doAfterEvacuation() {
+        survivorRanges.clear();
+        stealableRanges.reset();
+        if (ptop.isZero()) {
+            return;
+        }
+        final Pointer limit = pend.plus(evacuationBufferHeadroom());
+        final Size spaceLeft = limit.minus(ptop).asSize();
+        if (spaceLeft.greaterEqual(minRefillThreshold)) {
+            HeapFreeChunk.format(ptop, spaceLeft);
+            rset.notifyRetireFreeSpace(ptop, spaceLeft);
+            evacuationBufferProvider.retireEvacuationBuffer(ptop, limit);
+        } else if (!spaceLeft.isZero()) {
+            DarkMatter.format(ptop, spaceLeft);
+            rset.notifyRetireDeadSpace(ptop, spaceLeft);
+        }
+        ptop = Pointer.zero();
+        pend = Pointer.zero();
+        pnextChunk = Address.zero();
+    }
+
+    private void refill(Address chunk) {
+        final Size chunkSize = HeapFreeChunk.getFreechunkSize(chunk);
+        pnextChunk = HeapFreeChunk.getFreeChunkNext(chunk);
+        rset.notifyRefill(chunk, chunkSize);
+        ptop = chunk.asPointer();
+        pend = chunk.plus(chunkSize.minus(evacuationBufferHeadroom())).asPointer();
+    }
+
+    private void recordRange(Address start, Address end) {
+        final Size rangeSize = end.minus(start).asSize();
+        if (rangeSize.isZero()) {
+            return;
+        }
+        evacuatedBytes = evacuatedBytes.plus(rangeSize);
+        if (!stealableRanges.pushRange(start, end)) {
+            survivorRanges.add(start, end);
+        }
+    }
+
+    private void updateSurvivorRanges() {
+        if (ptop.greaterThan(allocatedRangeStart)) {
+            recordRange(allocatedRangeStart, ptop);
+            allocatedRangeStart = ptop;
+        }
+    }
+
+    private Pointer refillOrAllocate(Size size) {
+        if (size.lessThan(minRefillThreshold)) {
+            final Pointer limit = pend.plus(evacuationBufferHeadroom());
+            if (ptop.plus(size).equals(limit)) {
+                final Pointer cell = ptop;
+                ptop = limit;
+                cfoTable.set(cell, limit);
+                return cell;
+            }
+            if (ptop.lessThan(limit)) {
+                cfoTable.set(ptop, limit);
+                evacuationBufferProvider.retireEvacuationBuffer(ptop, limit);
+            }
+            Address chunk = pnextChunk;
+            if (chunk.isZero()) {
+                chunk = evacuationBufferProvider.refillEvacuationBuffer();
+                FatalError.check(!chunk.isZero(), "refill request should always succeed");
+            }
+            recordRange(allocatedRangeStart, ptop);
+            allocatedRangeStart = chunk;
+            refill(chunk);
+            // Return zero to force loop back.
+            return Pointer.zero();
+        }
+        // Overflow allocate. The range is recorded by evacuate() once the cell is copied and forwarded to,
+        // as another worker may steal it as soon as it is recorded.
+        return toSpace.allocate(size);
+    }
+
+    private Pointer allocate(Size size) {
+        Pointer cell = ptop;
+        Pointer newTop = cell.plus(size);
+        while (newTop.greaterThan(pend)) {
+            cell = refillOrAllocate(size);
+            if (!cell.isZero()) {
+                return cell;
+            }
+            cell = ptop;
+            newTop = cell.plus(size);
+        }
+        ptop = newTop;
+        cfoTable.set(cell, newTop);
+        return cell;
+    }
+
+    /**
+     * Tells whether a cell was allocated in the part of the ELAB not yet recorded as a survivor range, as opposed to overflow allocated.
+     */
+    @INLINE
+    private boolean isInELAB(Pointer cell) {
+        return cell.greaterEqual(allocatedRangeStart) && cell.lessThan(ptop);
+    }
+
+    /**
+     * Undo the allocation of a cell that lost the race to evacuate a cell.
+     */
+    private void undoAllocation(Pointer cell, Size size) {
+        if (ptop.equals(cell.plus(size)) && isInELAB(cell)) {
+            // Roll back the FOT entries set by allocate() along with the bump pointer, so that a card scan
+            // never starts at the undone cell.
+            cfoTable.unset(cell, ptop);
+            ptop = cell;
+        } else {
+            // Overflow allocation: leave a dead object in the survivor range.
+            DarkMatter.format(cell, size);
+        }
+    }
+
+    /**
+     * Size of a cell computed from the hub read before evacuation. The cell's own hub word can't be trusted,
+     * as another worker may have installed a forwarding reference in it in the meantime.
+     */
+    @INLINE
+    private static Size cellSize(Pointer origin, Hub hub) {
+        final SpecificLayout specificLayout = hub.specificLayout;
+        if (specificLayout.isTupleLayout()) {
+            return hub.tupleSize;
+        }
+        final int length = Layout.readArrayLength(origin);
+        if (specificLayout.isHybridLayout()) {
+            return Layout.hybridLayout().getArraySize(length);
+        }
+        return Layout.getArraySize(hub.classActor.componentClassActor().kind, length);
+    }
+
+    @Override
+    Pointer evacuate(Pointer fromOrigin) {
+        final Reference hubRef = Layout.readHubReference(fromOrigin);
+        if (hubRef.isMarked()) {
+            // Already evacuated by another worker.
+            return hubRef.unmarked().toOrigin();
+        }
+        final Size size = cellSize(fromOrigin, UnsafeCast.asHub(hubRef.toJava()));
+        final Pointer toCell = allocate(size);
+        Memory.copyBytes(Layout.originToCell(fromOrigin), toCell, size);
+        final Pointer toOrigin = Layout.cellToOrigin(toCell);
+        final Reference witness = Layout.compareAndSwapForwardRef(fromOrigin, hubRef, Reference.fromOrigin(toOrigin));
+        if (witness.toOrigin().equals(hubRef.toOrigin())) {
+            if (!isInELAB(toCell)) {
+                recordRange(toCell, toCell.plus(size));
+            }
+            return toOrigin;
+        }
+        // Lost the race: use the copy of the winner.
+        undoAllocation(toCell, size);
+        return witness.unmarked().toOrigin();
+    }
+
+    /**
+     * Try to steal a survivor range from another worker.
+     *
+     * @param victim the worker to steal from
+     * @return true if a range was stolen, in which case it is on this worker's stack of ranges
+     */
+    boolean stealRange(EvacuationWorker victim) {
+        return victim.stealableRanges.stealRange(stealableRanges);
+    }
+
+    @Override
+    protected void evacuateReachables() {
+        updateSurvivorRanges();
+        while (true) {
+            Pointer start = stealableRanges.popRange();
+            Pointer end;
+            if (!start.isZero()) {
+                end = stealableRanges.poppedRangeEnd().asPointer();
+            } else if (!survivorRanges.isEmpty()) {
+                start = survivorRanges.start();
+                end = survivorRanges.end();
+                survivorRanges.remove();
+            } else {
+                return;
+            }
+            evacuateRange(start, end);
+            updateSurvivorRanges();
+        }
+    }
+}
@@ -96,9 +96,35 @@ public abstract class Evacuator extends PointerIndexVisitor implements CellVisit
         return currentGCOperation;
     }
 
+    /**
+     * When set, references to the evacuated area aren't evacuated, but their locations are passed to {@link #recordEvacuatedRefLocation(Pointer)}.
+     * Used by parallel evacuation to collect references from outside the evacuated area before any evacuation takes place.
+     */
+    boolean recordEvacuatedRefLocations;
+
+    /**
+     * Record the location of a reference to the evacuated area for later evacuation.
+     * Only called when {@link #recordEvacuatedRefLocations} is set.
+     *
+     * @param location address of a reference to a cell in the evacuated area
+     */
+    void recordEvacuatedRefLocation(Pointer location) {
+        FatalError.unexpected("Evacuator doesn't record reference locations");
+    }
+
+    /**
+     * Register a special reference with the {@link SpecialReferenceManager}.
+     * Evacuators running in parallel must override this to serialize the discovery.
+     *
+     * @param origin origin of a special reference
+     */
+    protected void discoverSpecialReference(Pointer origin) {
+        SpecialReferenceManager.discoverSpecialReference(origin);
+    }
+
     private void updateSpecialReference(Pointer origin) {
         if (refDiscoveryEnabled) {
-            SpecialReferenceManager.discoverSpecialReference(origin);
+            discoverSpecialReference(origin);
         } else {
             // Treat referent as strong reference.
             if (traceEvacVisitedCell()) {
@@ -155,6 +181,10 @@ public abstract class Evacuator extends PointerIndexVisitor implements CellVisit
         this.timers = timers;
     }
 
+    final EvacuationTimers timers() {
+        return timers;
+    }
+
     /**
      * Set the phase logger for this evacuator.
      * HeapScheme using multiple evacuator instances might have to share a single phase logger
@@ -269,6 +299,10 @@ public abstract class Evacuator extends PointerIndexVisitor implements CellVisit
         final Reference ref = refHolderOrigin.getReference(wordIndex);
         final Pointer origin = ref.toOrigin();
         if (inEvacuatedArea(origin)) {
+            if (recordEvacuatedRefLocations) {
+                recordEvacuatedRefLocation(refHolderOrigin.plusWords(wordIndex));
+                return;
+            }
             final Reference forwardRef = MaxineVM.isDebug() ? getForwardRef(origin, refHolderOrigin.plusWords(wordIndex)) : getForwardRef(origin);
             refHolderOrigin.setReference(wordIndex, forwardRef);
             updateRSet(refHolderOrigin, wordIndex, forwardRef);
@@ -101,6 +101,27 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
      */
     private Size allocationRegionsFreeSpace;
 
+    /**
+     * Heap marker whose color map is used by the incremental sweeping of the space in progress, or null if no sweeping is in progress.
+     * @see #prepareIncrementalSweep(TricolorHeapMarker, boolean)
+     */
+    private TricolorHeapMarker sweepingHeapMarker;
+
+    /**
+     * Whether the incremental sweeping in progress is imprecise.
+     */
+    private boolean sweepImprecise;
+
+    /**
+     * Free space reclaimed so far by the incremental sweeping in progress.
+     */
+    private Size sweptFreeSpace;
+
+    /**
+     * Free space reclaimed by the last incremental sweeping that ran to completion, or zero if the last incremental sweeping was aborted.
+     */
+    private Size lastSweptFreeSpace = Size.zero();
+
     final private SpaceBounds bounds;
     /**
      * TLAB refill allocator. Can supplies TLAB refill either as a single contiguous chunk,
@@ -108,6 +129,13 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
      */
     final ChunkListAllocator<RegionChunkListRefillManager> tlabAllocator;
 
+    /**
+     * TLAB allocators, one per NUMA node. The first one is the {@link #tlabAllocator}, the others are only created at
+     * {@linkplain #initialize(Size, Size) initialization} when {@link NUMAHeapRegions#isEnabled()}.
+     * Each allocator refills from regions of its node preferably, and serves TLAB requests of threads running on its node.
+     */
+    private ChunkListAllocator<?> [] tlabAllocators;
+
     /**
      * Overflow allocator. Handles direct allocation request and all small overflow of TLABs.
      */
@@ -195,6 +223,10 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
             Log.println(" contiguous regions");
         }
         synchronized (refillLock()) {
+            // Empty regions may be found in regions left to sweep. Since contiguous regions are needed, finish sweeping first.
+            while (sweepingHeapMarker != null) {
+                sweepNextRegionOnAllocation();
+            }
             int gcCount = 0;
             do {
                 regionInfoIterable.initialize(allocationRegions);
@@ -335,7 +367,8 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
         this.regionTag = regionTag;
         this.overflowAllocator = overflowAllocator;
         this.tlabAllocator = tlabAllocator;
-        tlabAllocator.refillManager.setRegionProvider(this);
+        tlabAllocators = new ChunkListAllocator<?>[] {tlabAllocator};
+        tlabRefillManager(0).setRegionProvider(this);
         overflowAllocator.refillManager.setRegionProvider(this);
         regionsRangeIterable = new HeapRegionRangeIterable();
         regionInfoIterable = new HeapRegionInfoIterable();
@@ -404,11 +437,22 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
         // The following two are connected: if you deny refill after overflow, the only solution left is allocating large.
         minLargeObjectSize = regionSize;
         minOverflowRefillSize = regionSize.dividedBy(4);
-        RegionChunkListRefillManager refillManager = tlabAllocator.refillManager();
-        refillManager.setRefillPolicy(minReclaimableSpace);
-        refillManager.setMinChunkSize(minReclaimableSpace);
-        // Initialize the tlab allocator with a first region.
-        tlabAllocator.initialize(regionSize, regionSize);
+        if (NUMAHeapRegions.isEnabled()) {
+            tlabAllocators = new ChunkListAllocator<?>[NUMAHeapRegions.numNodes()];
+            tlabAllocators[0] = tlabAllocator;
+            for (int node = 1; node < tlabAllocators.length; node++) {
+                tlabAllocators[node] = new ChunkListAllocator<RegionChunkListRefillManager>(new RegionChunkListRefillManager(deadSpaceListener));
+                tlabRefillManager(node).setRegionProvider(this);
+                tlabRefillManager(node).setNUMANode(node);
+            }
+        }
+        for (int node = 0; node < NUMAHeapRegions.numNodes(); node++) {
+            RegionChunkListRefillManager refillManager = tlabRefillManager(node);
+            refillManager.setRefillPolicy(minReclaimableSpace);
+            refillManager.setMinChunkSize(minReclaimableSpace);
+            // Initialize the tlab allocator with a first region.
+            tlabAllocators[node].initialize(regionSize, regionSize);
+        }
         overflowAllocator.initialize(Address.zero(), Size.zero(), Size.zero());
     }
 
@@ -419,13 +463,22 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
         return overflowAllocator.allocateCleared(size);
     }
 
+    private RegionChunkListRefillManager tlabRefillManager(int node) {
+        return (RegionChunkListRefillManager) tlabAllocators[node].refillManager();
+    }
+
     public Pointer allocateTLAB(Size size) {
+        if (NUMAHeapRegions.isEnabled()) {
+            return tlabAllocators[NUMAHeapRegions.currentNode()].allocateTLAB(size);
+        }
         return tlabAllocator.allocateTLAB(size);
     }
 
     public void retireTLAB(Pointer start, Size size) {
-        if (tlabAllocator.retireTop(start, size)) {
-            return;
+        for (int node = 0; node < NUMAHeapRegions.numNodes(); node++) {
+            if (tlabAllocators[node].retireTop(start, size)) {
+                return;
+            }
         }
         if (size.lessThan(minRetiredFreeChunkSize())) {
             DarkMatter.format(start, size);
@@ -457,7 +510,11 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
     }
 
     public Size freeSpace() {
-        return allocationRegionsFreeSpace.plus(tlabAllocator.refillManager.freeSpace().plus(tlabAllocator.freeSpace().plus(overflowAllocator.freeSpace())));
+        Size freeSpace = allocationRegionsFreeSpace.plus(overflowAllocator.freeSpace());
+        for (int node = 0; node < NUMAHeapRegions.numNodes(); node++) {
+            freeSpace = freeSpace.plus(tlabRefillManager(node).freeSpace()).plus(tlabAllocators[node].freeSpace());
+        }
+        return freeSpace;
     }
 
     public Size usedSpace() {
@@ -465,9 +522,16 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
     }
 
     public void doBeforeGC() {
+        // Abort sweeping in progress, if any. Regions left in the sweep list are swept again.
+        if (sweepingHeapMarker != null) {
+            sweepingHeapMarker = null;
+            lastSweptFreeSpace = Size.zero();
+        }
         overflowAllocator.doBeforeGC();
-        tlabAllocator.doBeforeGC();
-        FatalError.check(tlabAllocator.refillManager.allocatingRegion() == INVALID_REGION_ID, "TLAB allocating region must have been retired");
+        for (int node = 0; node < NUMAHeapRegions.numNodes(); node++) {
+            tlabAllocators[node].doBeforeGC();
+            FatalError.check(tlabRefillManager(node).allocatingRegion() == INVALID_REGION_ID, "TLAB allocating region must have been retired");
+        }
         // Move all regions to the sweep list. This tracks all the regions used by the space.
         sweepList.appendAndClear(unavailableRegions);
         sweepList.appendAndClear(allocationRegions);
@@ -484,6 +548,15 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
         heapMarker.markAll(regionsRangeIterable);
     }
 
+    /**
+     * Complete a mostly-concurrent marking of the space.
+     * @see TricolorHeapMarker#finishConcurrentMarking(HeapRegionRangeIterable)
+     */
+    public void finishConcurrentMarking(TricolorHeapMarker heapMarker) {
+        regionsRangeIterable.reset();
+        heapMarker.finishConcurrentMarking(regionsRangeIterable);
+    }
+
 
     public void sweep(TricolorHeapMarker heapMarker, boolean doImprecise) {
         if (MaxineVM.isDebug()) {
@@ -495,6 +568,107 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
         FatalError.check(sweepList.isEmpty(), "Sweeping list must be empty");
     }
 
+    /**
+     * Prepare the space for sweeping incrementally, one region at a time, after the stop-the-world pause that completed the marking.
+     * Must be called during that pause, after the space was {@linkplain #doBeforeGC() prepared for GC}. Regions are then swept on demand
+     * by allocators that run out of allocation regions (see {@link #sweepRegionOnDemand()}), and by a concurrent GC thread calling
+     * {@link #sweepNextRegion(ConcurrentGCThread)}, if any.
+     * The regions of the space are marked as {@linkplain HeapRegionInfo#needsSweep() needing sweeping} until swept.
+     *
+     * @param heapMarker the heap marker that marked the space. Its color map must not be modified until sweeping completes.
+     * @param doImprecise whether to sweep imprecisely
+     */
+    public void prepareIncrementalSweep(TricolorHeapMarker heapMarker, boolean doImprecise) {
+        if (MaxineVM.isDebug()) {
+            sweepList.checkIsAddressOrdered();
+        }
+        allocationRegionsFreeSpace = Size.zero();
+        sweptFreeSpace = Size.zero();
+        csrIsLiveMultiRegionObjectTail = false;
+        HeapRegionManager.theHeapRegionManager().markNeedsSweep(sweepList);
+        sweepImprecise = doImprecise;
+        sweepingHeapMarker = heapMarker;
+    }
+
+    /**
+     * Indicates whether the space is being swept incrementally.
+     */
+    public boolean isSweeping() {
+        return sweepingHeapMarker != null;
+    }
+
+    /**
+     * Free space reclaimed by the last incremental sweeping of the space, if it ran to completion before the current GC.
+     * Stands for the free space after GC when sweeping is incremental.
+     * @return a size in bytes, or zero if the last incremental sweeping didn't complete
+     */
+    public Size lastSweptFreeSpace() {
+        return lastSweptFreeSpace;
+    }
+
+    /**
+     * Sweep the next region of the sweep list. Must be called with the refill lock held.
+     * @return true if there are more regions to sweep
+     */
+    private boolean sweepNextRegion() {
+        final Size freeSpaceBefore = allocationRegionsFreeSpace;
+        final boolean moreRegions = sweepingHeapMarker.sweepNextRegion(this, sweepImprecise);
+        sweptFreeSpace = sweptFreeSpace.plus(allocationRegionsFreeSpace.minus(freeSpaceBefore));
+        if (moreRegions) {
+            return true;
+        }
+        sweepingHeapMarker = null;
+        lastSweptFreeSpace = sweptFreeSpace;
+        FatalError.check(sweepList.isEmpty(), "Sweeping list must be empty");
+        return false;
+    }
+
+    /**
+     * Sweep the next region on behalf of a mutator that ran out of allocation regions. Safepoints are disabled so that
+     * a garbage collection cannot start while the region is being swept. Must be called with the refill lock held.
+     */
+    private void sweepNextRegionOnAllocation() {
+        final boolean wasDisabled = SafepointPoll.disable();
+        sweepNextRegion();
+        if (!wasDisabled) {
+            SafepointPoll.enable();
+        }
+    }
+
+    public boolean sweepRegionOnDemand() {
+        if (sweepingHeapMarker == null) {
+            return false;
+        }
+        sweepNextRegionOnAllocation();
+        return true;
+    }
+
+    /**
+     * Complete the incremental sweeping in progress, if any. Must be called during a stop-the-world pause, before
+     * the color map of the heap marker is modified.
+     */
+    public void completeSweep() {
+        while (sweepingHeapMarker != null) {
+            sweepNextRegion();
+        }
+    }
+
+    /**
+     * Sweep the next region of the space on behalf of a concurrent GC thread.
+     *
+     * @param sweeper the calling thread
+     * @return true if there are more regions to sweep, false if sweeping completed or was aborted by a garbage collection
+     */
+    public boolean sweepNextRegion(ConcurrentGCThread sweeper) {
+        // The refill lock must be acquired before beginning work: a mutator may hold the lock while waiting for a garbage collection to complete.
+        synchronized (refillLock()) {
+            sweeper.beginWork();
+            final boolean moreRegions = sweepingHeapMarker != null && sweepNextRegion();
+            sweeper.endWork();
+            return moreRegions;
+        }
+    }
+
     private HeapRegionInfo nextRegionToSweep() {
         return RegionTable.theRegionTable().regionInfo(sweepList.removeHead());
     }
@@ -611,6 +785,7 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
                     allocationRegions.append(csrInfo.toRegionID());
                     allocationRegionsFreeSpace =  allocationRegionsFreeSpace.plus(regionSizeInBytes);
                 } else {
+                    csrInfo.setLiveBytes(liveBytes());
                     if (csrIsLiveMultiRegionObjectTail) {
                         LARGE_TAIL.setState(csrInfo);
                         csrIsLiveMultiRegionObjectTail = false;
@@ -663,8 +838,17 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
         if (numRegions == 0) {
             numRegions = 1;
         }
+        if (numRegions > maxRegionsInSpace - numRegionsInSpace) {
+            numRegions = maxRegionsInSpace - numRegionsInSpace;
+            if (numRegions == 0) {
+                return Size.zero();
+            }
+        }
         int allocated = heapAccount.allocate(numRegions, allocationRegions, false, true, true, regionTag);
-        return Size.fromInt(allocated).shiftedLeft(log2RegionSizeInBytes);
+        final Size growth = Size.fromInt(allocated).shiftedLeft(log2RegionSizeInBytes);
+        numRegionsInSpace += allocated;
+        allocationRegionsFreeSpace = allocationRegionsFreeSpace.plus(growth);
+        return growth;
     }
 
     @Override
@@ -693,7 +877,9 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
     @Override
     public void visit(CellRangeVisitor visitor) {
         // Make allocating regions iterable first.
-        tlabAllocator.unsafeMakeParsable();
+        for (int node = 0; node < NUMAHeapRegions.numNodes(); node++) {
+            tlabAllocators[node].unsafeMakeParsable();
+        }
         overflowAllocator.unsafeMakeParsable();
         regionsRangeIterable.addMatchingFlags(Flag.IS_ALLOCATING);
         iterateRegions(visitor);
@@ -703,7 +889,9 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
 
     private void verifyHeapRegionsBalance() {
         int balance = 0;
-        balance += tlabAllocator.refillManager().allocatingRegion() == INVALID_REGION_ID ? 0 : 1;
+        for (int node = 0; node < NUMAHeapRegions.numNodes(); node++) {
+            balance += tlabRefillManager(node).allocatingRegion() == INVALID_REGION_ID ? 0 : 1;
+        }
         // balance += currentOverflowAllocatingRegion == INVALID_REGION_ID ? 0 : 1;
         balance += overflowAllocator.refillManager().allocatingRegion() == INVALID_REGION_ID ? 0 : 1;
 
@@ -743,6 +931,23 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
         return regionID;
     }
 
+    public int getAllocatingRegion(int numaNode) {
+        final HeapRegionList regionList = tlabAllocationRegionList();
+        int regionID = regionList.head();
+        while (regionID != INVALID_REGION_ID && NUMAHeapRegions.nodeOf(regionID) != numaNode) {
+            regionID = regionList.next(regionID);
+        }
+        if (regionID == INVALID_REGION_ID) {
+            // No region left on that node. Take one from a remote node rather than triggering a GC.
+            return getAllocatingRegion();
+        }
+        regionList.remove(regionID);
+        final HeapRegionInfo regionInfo = fromRegionID(regionID);
+        final int numFreeBytes = regionInfo.isEmpty() ?  regionSizeInBytes : regionInfo.freeBytesInChunks();
+        allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(numFreeBytes);
+        return regionID;
+    }
+
     public int getAllocatingRegion(Size minFreeBytes, int maxFreeChunks) {
         final int minFreeSpace = minFreeBytes.toInt();
         regionInfoIterable.initialize(allocationRegions);
@@ -762,6 +967,170 @@ public final class FirstFitMarkSweepSpace<T extends HeapAccountOwner> extends He
         return INVALID_REGION_ID;
     }
 
+    /**
+     * Insert the regions of a list that have less than the specified amount of live data in an array of candidates sorted by increasing amount of live data.
+     * Once the array is full, a region is only inserted if it is sparser than the last candidate, which is then dropped.
+     * @return the number of candidates in the array
+     */
+    private int addEvacuationCandidates(HeapRegionList regionList, int maxLiveBytes, int [] candidates, int numCandidates) {
+        int regionID = regionList.head();
+        while (regionID != INVALID_REGION_ID) {
+            final HeapRegionInfo regionInfo = fromRegionID(regionID);
+            final int liveBytes = regionInfo.liveBytes();
+            // Only single-region objects are evacuated: large object tails are never candidates.
+            if (FREE_CHUNKS_REGION.isInState(regionInfo) && liveBytes <= maxLiveBytes) {
+                int i = numCandidates;
+                if (i < candidates.length) {
+                    numCandidates++;
+                } else if (liveBytes < fromRegionID(candidates[i - 1]).liveBytes()) {
+                    i--;
+                } else {
+                    i = -1;
+                }
+                if (i >= 0) {
+                    while (i > 0 && fromRegionID(candidates[i - 1]).liveBytes() > liveBytes) {
+                        candidates[i] = candidates[i - 1];
+                        i--;
+                    }
+                    candidates[i] = regionID;
+                }
+            }
+            regionID = regionList.next(regionID);
+        }
+        return numCandidates;
+    }
+
+    /**
+     * Select the sparsest regions of the space for evacuation by a {@link RegionCompactor}, and reserve the empty regions to evacuate their cells to.
+     * Must be called after the space was completely swept by the current GC, as it relies on the live data the sweeper recorded in the regions.
+     * The selected and the reserved regions are removed from the allocation lists until handed back via {@link #retireEvacuationRegion(int, Pointer)}
+     * and {@link #releaseEvacuationRegion(int)}.
+     * <p>
+     * Cells are bump-allocated in the reserved regions: a region is retired when the next evacuated cell doesn't fit, which wastes less than the size of that cell,
+     * itself no larger than the live data of its region. The number of regions reserved is bounded accordingly. Regions are only selected
+     * if evacuating them frees more regions than it consumes.
+     *
+     * @param maxLiveBytes maximum amount of live data in a selected region
+     * @param maxEvacuatedBytes maximum total amount of live data in the selected regions
+     * @param evacuatedRegions array receiving the identifiers of the selected regions. Its length caps the number of regions selected.
+     * @param toRegions array receiving the identifiers of the reserved regions, terminated by {@link HeapRegionConstants#INVALID_REGION_ID}. Must be as long as {@code evacuatedRegions}.
+     * @return the number of selected regions
+     */
+    int selectEvacuationRegions(int maxLiveBytes, Size maxEvacuatedBytes, int [] evacuatedRegions, int [] toRegions) {
+        FatalError.check(sweepingHeapMarker == null, "Space must be swept before selecting regions to evacuate");
+        int numCandidates = addEvacuationCandidates(tlabAllocationRegions, maxLiveBytes, evacuatedRegions, 0);
+        numCandidates = addEvacuationCandidates(allocationRegions, maxLiveBytes, evacuatedRegions, numCandidates);
+
+        int numSelected = 0;
+        long evacuatedBytes = 0L;
+        while (numSelected < numCandidates) {
+            final int liveBytes = fromRegionID(evacuatedRegions[numSelected]).liveBytes();
+            if (evacuatedBytes + liveBytes > maxEvacuatedBytes.toLong()) {
+                break;
+            }
+            evacuatedBytes += liveBytes;
+            numSelected++;
+        }
+
+        int numEmptyRegions = 0;
+        int regionID = allocationRegions.head();
+        while (regionID != INVALID_REGION_ID) {
+            if (fromRegionID(regionID).isEmpty()) {
+                numEmptyRegions++;
+            }
+            regionID = allocationRegions.next(regionID);
+        }
+
+        int numToRegions = 0;
+        while (numSelected > 0) {
+            final int maxWaste = fromRegionID(evacuatedRegions[numSelected - 1]).liveBytes();
+            numToRegions = (int) (evacuatedBytes / (regionSizeInBytes - maxWaste)) + 1;
+            if (numToRegions < numSelected && numToRegions <= numEmptyRegions) {
+                break;
+            }
+            numSelected--;
+            evacuatedBytes -= maxWaste;
+        }
+        if (numSelected == 0) {
+            return 0;
+        }
+
+        for (int i = 0; i < numSelected; i++) {
+            regionID = evacuatedRegions[i];
+            if (allocationRegions.contains(regionID)) {
+                allocationRegions.remove(regionID);
+            } else {
+                tlabAllocationRegions.remove(regionID);
+            }
+            allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(fromRegionID(regionID).freeBytesInChunks());
+        }
+        int numReserved = 0;
+        regionInfoIterable.initialize(allocationRegions);
+        regionInfoIterable.reset();
+        for (HeapRegionInfo regionInfo : regionInfoIterable) {
+            if (regionInfo.isEmpty()) {
+                regionInfoIterable.remove();
+                allocationRegionsFreeSpace = allocationRegionsFreeSpace.minus(regionSizeInBytes);
+                toRegions[numReserved++] = regionInfo.toRegionID();
+                if (numReserved == numToRegions) {
+                    break;
+                }
+            }
+        }
+        toRegions[numReserved] = INVALID_REGION_ID;
+        return numSelected;
+    }
+
+    /**
+     * Hand back to the space a region reserved by {@link #selectEvacuationRegions(int, Size, int[], int[])} that cells were evacuated to.
+     * The space left in the region is made available for allocation, or formatted as dark matter if too small.
+     *
+     * @param regionID a region reserved for evacuation
+     * @param top address of the first byte after the cells evacuated to the region
+     */
+    void retireEvacuationRegion(int regionID, Pointer top) {
+        final HeapRegionInfo regionInfo = fromRegionID(regionID);
+        final Size spaceLeft = regionInfo.regionStart().plus(regionSizeInBytes).minus(top).asSize();
+        if (spaceLeft.greaterEqual(minReclaimableSpace)) {
+            HeapFreeChunk.format(top, spaceLeft);
+            regionInfo.setFreeChunks(top, spaceLeft, 1);
+            FREE_CHUNKS_REGION.setState(regionInfo);
+            allocationRegionsFreeSpace = allocationRegionsFreeSpace.plus(spaceLeft);
+            if (minOverflowRefillSize.lessEqual(spaceLeft)) {
+                allocationRegions.append(regionID);
+            } else {
+                tlabAllocationRegions.append(regionID);
+            }
+        } else {
+            if (spaceLeft.isNotZero()) {
+                DarkMatter.format(top, spaceLeft);
+            }
+            FULL_REGION.setState(regionInfo);
+            unavailableRegions.append(regionID);
+        }
+    }
+
+    /**
+     * Hand back to the space an empty region: either a region whose cells were all evacuated, or a reserved region that wasn't used.
+     * @param regionID a region selected or reserved by {@link #selectEvacuationRegions(int, Size, int[], int[])}
+     */
+    void releaseEvacuationRegion(int regionID) {
+        final HeapRegionInfo regionInfo = fromRegionID(regionID);
+        EMPTY_REGION.setState(regionInfo);
+        regionInfo.resetOccupancy();
+        HeapFreeChunk.format(regionInfo.regionStart(), regionSizeInBytes);
+        allocationRegions.append(regionID);
+        allocationRegionsFreeSpace = allocationRegionsFreeSpace.plus(regionSizeInBytes);
+    }
+
+    /**
+     * Restore the address ordering of the allocation lists after regions were handed back by an evacuation.
+     */
+    void endEvacuation() {
+        allocationRegions.sort();
+        tlabAllocationRegions.sort();
+        unavailableRegions.sort();
+    }
 
     public Size minRetiredFreeChunkSize() {
         return minReclaimableSpace;
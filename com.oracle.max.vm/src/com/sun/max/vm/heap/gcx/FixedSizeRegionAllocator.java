@@ -418,6 +418,10 @@ class FixedSizeRegionAllocator {
         if (VirtualMemory.commitMemory(regionStart(firstRegionId), size, VirtualMemory.Type.HEAP)) {
             committed.set(firstRegionId, firstRegionId + numRegions);
             committedSize += numRegions;
+            if (NUMAHeapRegions.isEnabled()) {
+                // Committing re-maps the range, which discards previous bindings.
+                NUMAHeapRegions.bind(this, firstRegionId, numRegions);
+            }
             return true;
         }
         return false;
@@ -325,11 +325,11 @@ public class HeapAccount<T extends HeapAccountOwner>{
         int rangeHead = regionsRange.firstRegion();
         int numRegions = regionsRange.numRegions();
         if (numRegions == 1) {
-            commit(rangeHead);
+            uncommit(rangeHead);
             return;
         }
         int rangeTail = rangeHead +  numRegions - 1;
-        FatalError.check(uncommitted.containsRange(rangeHead, rangeTail), "The regions range must be allocated to this account");
+        FatalError.check(committed.containsRange(rangeHead, rangeTail), "The regions range must be allocated and committed to this account");
         theHeapRegionManager.regionAllocator().uncommit(regionsRange.firstRegion(), numRegions);
         committed.removeRange(rangeHead, rangeTail);
         addRange(rangeHead, rangeTail, uncommitted);
@@ -68,7 +68,12 @@ public class HeapRegionInfo {
         /**
          * Region is the last region of a multi-regions object. Space after the end of the large object may be used for allocation.
          */
-        IS_TAIL;
+        IS_TAIL,
+        /**
+         * Region was marked by the last GC but hasn't been swept yet. The other flags describe the state of the region before the GC.
+         * The flag is cleared when the region is swept, which resets the state of the region.
+         */
+        NEEDS_SWEEP;
 
         private final int mask = 1 << ordinal();
 
@@ -204,6 +209,10 @@ public class HeapRegionInfo {
         return IS_TAIL.isSet(flags);
     }
 
+    public final boolean needsSweep() {
+        return NEEDS_SWEEP.isSet(flags);
+    }
+
     HeapRegionInfo() {
         // Not a class one can allocate. Allocation is the responsibility of the region table.
     }
@@ -295,6 +304,14 @@ public class HeapRegionInfo {
         setFreeChunks(firstChunkAddress, numBytes.toInt(),  numChunks);
     }
 
+    /**
+     * Record the amount of live data found in the region by the sweeper.
+     * @param numBytes a number of bytes, multiple of the word size
+     */
+    final void setLiveBytes(int numBytes) {
+        liveData = numBytes >> Word.widthValue().log2numberOfBytes;
+    }
+
     final void clearFreeChunks() {
         firstFreeChunkOffset = 0;
         numFreeChunks = 0;
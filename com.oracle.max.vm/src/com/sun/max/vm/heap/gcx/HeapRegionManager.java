@@ -206,6 +206,7 @@ public final class HeapRegionManager implements HeapAccountOwner {
         // The size of regions is computed from the requested heap size so as to keep the region table bounded and adapt region size to the heap size
         // (in particular, very large heap command large region size).
         HeapRegionConstants.initializeConstants(heapSpaceSize);
+        NUMAHeapRegions.initialize();
         // Adjust reserved space to region boundaries.
         final Address startOfManagedSpace = reservedSpace.alignUp(regionSizeInBytes);
         final Address endOfManagedSpace = startOfManagedSpace.plus(heapSpaceSize).alignUp(regionSizeInBytes);
@@ -337,6 +338,19 @@ public final class HeapRegionManager implements HeapAccountOwner {
         regionAllocator.uncommit(firstRegionId, numRegions);
     }
 
+    /**
+     * Mark all the regions of a list as needing sweeping. Used by spaces that sweep their regions lazily after marking.
+     * @param regions a list of regions
+     * @see HeapRegionInfo#needsSweep()
+     */
+    void markNeedsSweep(HeapRegionList regions) {
+        int regionID = regions.head();
+        while (regionID != INVALID_REGION_ID) {
+            HeapRegionState.toNeedsSweepState(HeapRegionInfo.fromRegionID(regionID));
+            regionID = regions.next(regionID);
+        }
+    }
+
     /**
      * Verifies, in debug mode only (@see {@link MaxineVM#isDebug()}), that no references from this heap region manager's heap account escape.
      */
@@ -97,7 +97,8 @@ public enum HeapRegionState {
     }
 
     private static void checkStateTransition(HeapRegionInfo rinfo, HeapRegionState to) {
-        HeapRegionState from = toHeapRegionState(rinfo.flags);
+        // A region that needs sweeping is in the state it was before the GC that marked it.
+        HeapRegionState from = toHeapRegionState(NEEDS_SWEEP.clear(rinfo.flags));
         FatalError.check(from != null && to != null, "invalid heap state(s)");
         if (!validStateTransitions[from.ordinal()][to.ordinal()]) {
             Log.print("Region #");
@@ -131,6 +132,13 @@ public enum HeapRegionState {
         rinfo.flags = flags;
     }
 
+    /**
+     * Mark a region as needing sweeping. The region keeps its state until swept.
+     */
+    public static void toNeedsSweepState(HeapRegionInfo rinfo) {
+        rinfo.flags = NEEDS_SWEEP.or(rinfo.flags);
+    }
+
     public static void toFreeChunkState(HeapRegionInfo rinfo) {
         int flags = IS_ITERABLE.or(HAS_FREE_CHUNK.or(IS_ALLOCATING.clear(rinfo.flags)));
         if (MaxineVM.isDebug()) {
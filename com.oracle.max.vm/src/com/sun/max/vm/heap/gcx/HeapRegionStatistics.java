@@ -54,6 +54,17 @@ public final class HeapRegionStatistics {
      */
     final int [] regionsFragmentation;
 
+    /**
+     * Number of regions per NUMA node. Only the first entry is used when NUMA support is disabled.
+     * @see NUMAHeapRegions
+     */
+    final int [] nodeRegions;
+
+    /**
+     * Free space (in bytes) in the regions of each NUMA node.
+     */
+    final long [] nodeFreeBytes;
+
     /**
      * Private region info iterator.
      */
@@ -78,6 +89,8 @@ public final class HeapRegionStatistics {
         fragmentSizes = new int[log2LargestChunkSize + 1];
         freeSpaceSizes = new int[log2LargestChunkSize + 1];
         regionsFragmentation = new int[maxFragmentation + 1];
+        nodeRegions = new int[NUMAHeapRegions.MAX_NUMA_NODES];
+        nodeFreeBytes = new long[NUMAHeapRegions.MAX_NUMA_NODES];
     }
 
     public void clear() {
@@ -88,6 +101,10 @@ public final class HeapRegionStatistics {
         for (int i = 0; i < regionsFragmentation.length; i++) {
             regionsFragmentation[i] = 0;
         }
+        for (int i = 0; i < nodeRegions.length; i++) {
+            nodeRegions[i] = 0;
+            nodeFreeBytes[i] = 0L;
+        }
     }
 
     /**
@@ -99,10 +116,14 @@ public final class HeapRegionStatistics {
             FatalError.check(rinfo.hasFreeChunks() || (rinfo.isEmpty() && rinfo.freeBytesInChunks() == 0) || (rinfo.isFull() && rinfo.freeBytesInChunks() == 0), "Invalid RegionInfo");
         }
         regionsFragmentation[rinfo.numFreeChunks()]++;
+        final int node = NUMAHeapRegions.nodeOf(rinfo.toRegionID());
+        nodeRegions[node]++;
         if (rinfo.hasFreeChunks()) {
             freeSpaceSizes[sizeBin(rinfo.freeBytesInChunks())]++;
+            nodeFreeBytes[node] += rinfo.freeBytesInChunks();
         } else if (rinfo.isEmpty()) {
             freeSpaceSizes[log2LargestChunkSize]++;
+            nodeFreeBytes[node] += HeapRegionConstants.regionSizeInBytes;
         } else {
             freeSpaceSizes[0]++;
         }
@@ -160,6 +181,16 @@ public final class HeapRegionStatistics {
                 Log.print(i); Log.print(" : "); Log.println(numRegions);
             }
         }
+        if (NUMAHeapRegions.isEnabled()) {
+            Log.println(" NUMA node : # regions   free bytes   used bytes");
+            for (int node = 0; node < NUMAHeapRegions.numNodes(); node++) {
+                final long totalBytes = (long) nodeRegions[node] << HeapRegionConstants.log2RegionSizeInBytes;
+                Log.print(node); Log.print(" : ");
+                Log.print(nodeRegions[node]); Log.print("   ");
+                Log.print(nodeFreeBytes[node]); Log.print("   ");
+                Log.println(totalBytes - nodeFreeBytes[node]);
+            }
+        }
     }
 
     public void reportStats(HeapAccount<? extends HeapAccountOwner>heapAccount) {
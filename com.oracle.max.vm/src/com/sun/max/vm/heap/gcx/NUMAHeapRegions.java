@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import static com.sun.max.vm.heap.gcx.HeapRegionConstants.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
+
+/**
+ * Static mapping of heap regions to NUMA nodes.
+ * When enabled, the regions of the heap region manager are bound to NUMA nodes in stripes of {@link #NUMARegionStripe} contiguous regions,
+ * assigned to nodes round-robin. The binding is established when regions are committed, so that the physical pages backing a region
+ * are allocated on the node the region is mapped to regardless of the first thread touching them.
+ * Region-based spaces can then hand out to a thread regions backed by the memory of the node it runs on.
+ */
+public final class NUMAHeapRegions {
+    /**
+     * Maximum number of NUMA nodes region-based spaces keep separate allocators for.
+     */
+    public static final int MAX_NUMA_NODES = 4;
+
+    static boolean UseNUMA;
+    static int NUMARegionStripe = 16;
+    static boolean TraceNUMA;
+    static {
+        VMOptions.addFieldOption("-XX:", "UseNUMA", NUMAHeapRegions.class,
+                        "Bind heap regions to NUMA nodes and refill TLABs from regions of the allocating thread's node", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "NUMARegionStripe", NUMAHeapRegions.class,
+                        "Number of contiguous heap regions bound to the same NUMA node", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "TraceNUMA", NUMAHeapRegions.class, "Trace the binding of heap regions to NUMA nodes", Phase.PRISTINE);
+    }
+
+    /**
+     * Number of NUMA nodes heap regions are spread over. 1 if NUMA support is disabled.
+     */
+    @CONSTANT_WHEN_NOT_ZERO
+    private static int numNodes;
+
+    private NUMAHeapRegions() {
+    }
+
+    /**
+     * Initialize the mapping. Called by the heap region manager at VM startup.
+     * The mapping is disabled if the machine has more nodes than {@link #MAX_NUMA_NODES}, as threads running on
+     * the nodes that have no allocator would otherwise allocate from regions bound to a remote node.
+     */
+    static void initialize() {
+        numNodes = 1;
+        if (UseNUMA) {
+            final int n = VirtualMemory.getNumberOfNUMANodes();
+            if (n > MAX_NUMA_NODES) {
+                if (TraceNUMA) {
+                    Log.print("NUMA heap regions disabled: ");
+                    Log.print(n);
+                    Log.print(" nodes, at most ");
+                    Log.print(MAX_NUMA_NODES);
+                    Log.println(" supported");
+                }
+            } else if (n > 1 && NUMARegionStripe > 0) {
+                numNodes = n;
+            }
+            if (TraceNUMA) {
+                Log.print("NUMA heap regions over ");
+                Log.print(numNodes);
+                Log.println(" nodes");
+            }
+        }
+    }
+
+    @INLINE
+    public static boolean isEnabled() {
+        return numNodes > 1;
+    }
+
+    /**
+     * Number of NUMA nodes heap regions are mapped to.
+     */
+    public static int numNodes() {
+        return numNodes;
+    }
+
+    /**
+     * NUMA node a region is mapped to.
+     * @param regionID a region identifier
+     */
+    public static int nodeOf(int regionID) {
+        return isEnabled() ? (regionID / NUMARegionStripe) % numNodes : 0;
+    }
+
+    /**
+     * NUMA node of the processor the current thread runs on.
+     */
+    public static int currentNode() {
+        if (isEnabled()) {
+            final int node = VirtualMemory.getCurrentNUMANode();
+            // Guard against a node that came online after initialization.
+            return node < numNodes ? node : 0;
+        }
+        return 0;
+    }
+
+    /**
+     * Bind a range of committed regions to the NUMA nodes they are mapped to.
+     * @param regionAllocator the allocator the regions belong to
+     * @param firstRegionID first region of the range
+     * @param numRegions number of regions in the range
+     */
+    static void bind(FixedSizeRegionAllocator regionAllocator, int firstRegionID, int numRegions) {
+        final int end = firstRegionID + numRegions;
+        int stripeStart = firstRegionID;
+        while (stripeStart < end) {
+            int stripeEnd = (stripeStart / NUMARegionStripe + 1) * NUMARegionStripe;
+            if (stripeEnd > end) {
+                stripeEnd = end;
+            }
+            final Size size = Size.fromInt(stripeEnd - stripeStart).shiftedLeft(log2RegionSizeInBytes);
+            if (!VirtualMemory.bindToNUMANode(regionAllocator.regionStart(stripeStart), size, nodeOf(stripeStart))) {
+                // Not fatal: the regions are just not guaranteed to be local to their node.
+                if (TraceNUMA) {
+                    Log.print("Failed to bind regions ");
+                    Log.print(stripeStart);
+                    Log.print(" to ");
+                    Log.print(stripeEnd - 1);
+                    Log.print(" to NUMA node ");
+                    Log.println(nodeOf(stripeStart));
+                }
+            }
+            stripeStart = stripeEnd;
+        }
+    }
+}
@@ -130,18 +130,51 @@ public final class NoAgingRegionalizedNursery implements HeapSpace {
         return allocator.allocateCleared(size);
     }
 
+    /**
+     * Grow the nursery by committing regions from its reserved but uncommitted tail.
+     * Must only be called when the nursery is empty, i.e., after a minor collection.
+     *
+     * @param delta number of bytes to grow the nursery with, rounded up to an integral number of regions
+     * @return the number of bytes the nursery actually grew by
+     */
     @Override
     public Size increaseSize(Size delta) {
-        // TODO
-        FatalError.unimplemented();
-        return Size.zero();
+        int numRegions = Math.min(HeapRegionConstants.numberOfRegions(delta), uncommitedNurseryRegionsList.size());
+        if (numRegions == 0) {
+            return Size.zero();
+        }
+        final int firstRegion = uncommitedNurseryRegionsList.head();
+        heapAccount.commit(RegionRange.from(firstRegion, numRegions));
+        for (int i = 0; i < numRegions; i++) {
+            nurseryRegionsList.append(uncommitedNurseryRegionsList.removeHead());
+        }
+        final Size growth = Size.fromInt(numRegions).shiftedLeft(HeapRegionConstants.log2RegionSizeInBytes);
+        allocator.grow(growth);
+        return growth;
     }
 
+    /**
+     * Shrink the nursery by uncommitting regions at its end. The nursery always keeps at least one region.
+     * Must only be called when the nursery is empty, i.e., after a minor collection.
+     *
+     * @param delta number of bytes to shrink the nursery with, rounded down to an integral number of regions
+     * @return the number of bytes the nursery actually shrunk by
+     */
     @Override
     public Size decreaseSize(Size delta) {
-        // TODO
-        FatalError.unimplemented();
-        return Size.zero();
+        int numRegions = Math.min(delta.unsignedShiftedRight(HeapRegionConstants.log2RegionSizeInBytes).toInt(), nurseryRegionsList.size() - 1);
+        if (numRegions <= 0) {
+            return Size.zero();
+        }
+        final Size shrinkage = Size.fromInt(numRegions).shiftedLeft(HeapRegionConstants.log2RegionSizeInBytes);
+        if (!allocator.shrink(shrinkage)) {
+            return Size.zero();
+        }
+        for (int i = 0; i < numRegions; i++) {
+            uncommitedNurseryRegionsList.prepend(nurseryRegionsList.removeTail());
+        }
+        heapAccount.uncommit(RegionRange.from(uncommitedNurseryRegionsList.head(), numRegions));
+        return shrinkage;
     }
 
     @Override
@@ -0,0 +1,369 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import static com.sun.max.vm.heap.gcx.HeapRegionConstants.*;
+
+import com.oracle.max.cri.intrinsics.*;
+import com.sun.max.annotate.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.reference.*;
+
+/**
+ * Parallel tracing of the heap for the {@link TricolorHeapMarker}, executed by the {@link GCWorkerGang} once roots have been marked grey.
+ * <p>
+ * Each worker owns a {@link WorkStealingMarkingStack}. Workers first claim heap regions one at a time and visit the grey objects found in the
+ * color map of the claimed region. References to white objects are marked grey with a compare-and-swap and pushed on the worker's stack,
+ * which the worker drains before looking for more grey marks. Once all regions are claimed, workers with an empty stack steal from
+ * other workers until all of them run out of work.
+ * <p>
+ * A grey object is claimed by atomically clearing its grey bit, so that each object is visited exactly once, whether it is found
+ * in the color map, popped from its worker's stack or stolen from another worker's stack.
+ * <p>
+ * Marking stacks have a fixed size. When a worker's stack is full, the newly greyed object is simply left grey in the color map
+ * and the pass is flagged as overflowed. Recovering from overflow just means running another pass over the regions, which
+ * picks up all the grey marks left behind. This replaces the sequential {@link TricolorHeapMarker#recoverFromOverflow()}.
+ */
+final class ParallelHeapMarking extends GCWorkerGang.GCTask {
+
+    /**
+     * Per-worker state of the parallel marking.
+     */
+    static final class MarkingWorker extends PointerIndexVisitor {
+        final ParallelHeapMarking marking;
+        final WorkStealingMarkingStack markingStack = new WorkStealingMarkingStack();
+
+        /**
+         * Rightmost object marked grey by this worker.
+         */
+        Address rightmost;
+
+        /**
+         * Number of objects visited by this worker during the last marking. Statistics only.
+         */
+        long visitedCells;
+
+        MarkingWorker(ParallelHeapMarking marking) {
+            this.marking = marking;
+        }
+
+        @INLINE
+        private void markObjectGrey(Pointer cell) {
+            final TricolorHeapMarker heapMarker = marking.heapMarker;
+            if (heapMarker.isCovered(cell) && heapMarker.atomicMarkGreyIfWhite(cell)) {
+                if (cell.greaterThan(rightmost)) {
+                    rightmost = cell;
+                }
+                if (!markingStack.push(cell)) {
+                    // The cell is left grey in the color map. It will be visited by the next pass.
+                    marking.overflowed = true;
+                }
+            }
+        }
+
+        @INLINE
+        private void markRefGrey(Reference ref) {
+            markObjectGrey(Layout.originToCell(ref.toOrigin()));
+        }
+
+        @Override
+        public void visit(Pointer pointer, int wordIndex) {
+            markRefGrey(pointer.getReference(wordIndex));
+        }
+
+        private void visitArrayReferences(Pointer origin) {
+            final int length = Layout.readArrayLength(origin);
+            for (int index = 0; index < length; index++) {
+                markRefGrey(Layout.getReference(origin, index));
+            }
+        }
+
+        /**
+         * Visit the references of a grey cell this worker has claimed.
+         */
+        private void visitGreyCell(Pointer cell) {
+            if (cell.greaterThan(rightmost)) {
+                // The cell may have been marked grey by a write barrier.
+                rightmost = cell;
+            }
+            final Pointer origin = Layout.cellToOrigin(cell);
+            final Reference hubRef = Layout.readHubReference(origin);
+            markRefGrey(hubRef);
+            final Hub hub = UnsafeCast.asHub(hubRef.toJava());
+            if (MaxineVM.isDebug()) {
+                marking.heapMarker.checkGreyCellHub(origin, hub);
+            }
+            final SpecificLayout specificLayout = hub.specificLayout;
+            if (specificLayout.isTupleLayout()) {
+                TupleReferenceMap.visitReferences(hub, origin, this);
+                if (hub.isJLRReference) {
+                    if (marking.referencesAreStrong) {
+                        markRefGrey(origin.getReference(SpecialReferenceManager.referentIndex()));
+                    } else {
+                        GCWorkerGang.discoverSpecialReference(cell);
+                    }
+                }
+            } else if (specificLayout.isReferenceArrayLayout()) {
+                visitArrayReferences(origin);
+            } else if (specificLayout.isHybridLayout()) {
+                TupleReferenceMap.visitReferences(hub, origin, this);
+            }
+            visitedCells++;
+        }
+
+        /**
+         * Claim and visit a cell popped or stolen from a marking stack, unless another worker already claimed it.
+         */
+        @INLINE
+        private void claimAndVisit(Pointer cell) {
+            if (marking.heapMarker.atomicMarkBlackFromGrey(marking.heapMarker.bitIndexOf(cell))) {
+                visitGreyCell(cell);
+            }
+        }
+
+        private void drainMarkingStack() {
+            Pointer cell = markingStack.pop();
+            while (!cell.isZero()) {
+                claimAndVisit(cell);
+                cell = markingStack.pop();
+            }
+        }
+
+        /**
+         * Visit all the grey objects of a region, and everything reachable from them that fits on the marking stack.
+         */
+        private void visitGreyObjects(int regionID) {
+            final TricolorHeapMarker heapMarker = marking.heapMarker;
+            final Address regionStart = heapMarker.coveredAreaStart.plus(Address.fromInt(regionID).shiftedLeft(log2RegionSizeInBytes));
+            final int endBitIndex = heapMarker.bitIndexOf(regionStart.plus(regionSizeInBytes));
+            int bitIndex = heapMarker.firstGreyMark(heapMarker.bitIndexOf(regionStart), endBitIndex);
+            while (bitIndex >= 0) {
+                if (heapMarker.atomicMarkBlackFromGrey(bitIndex)) {
+                    visitGreyCell(heapMarker.addressOf(bitIndex).asPointer());
+                    drainMarkingStack();
+                }
+                bitIndex = heapMarker.firstGreyMark(bitIndex + 2, endBitIndex);
+            }
+        }
+
+        /**
+         * Try to steal a cell from another worker, starting with the worker next to this one.
+         * @return true if a cell was stolen and visited
+         */
+        private boolean steal(int workerId, int numWorkers) {
+            for (int i = 1; i < numWorkers; i++) {
+                int victim = workerId + i;
+                if (victim >= numWorkers) {
+                    victim -= numWorkers;
+                }
+                final Pointer cell = marking.workers[victim].markingStack.steal();
+                if (!cell.isZero()) {
+                    claimAndVisit(cell);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void run(int workerId) {
+            int regionID = marking.claimRegion();
+            while (regionID != INVALID_REGION_ID) {
+                visitGreyObjects(regionID);
+                regionID = marking.claimRegion();
+            }
+            final int numWorkers = GCWorkerGang.activeWorkers();
+            while (true) {
+                drainMarkingStack();
+                if (steal(workerId, numWorkers)) {
+                    continue;
+                }
+                if (marking.offerTermination(numWorkers)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    final TricolorHeapMarker heapMarker;
+
+    final MarkingWorker[] workers = new MarkingWorker[GCWorkerGang.MAX_WORKERS];
+
+    /**
+     * Next region to be claimed by a worker, or {@link HeapRegionConstants#INVALID_REGION_ID} when all regions of the current pass have been claimed.
+     * Updated by compare-and-swap.
+     */
+    private volatile int regionCursor;
+
+    /**
+     * Number of workers that found no work to do. Updated by compare-and-swap.
+     */
+    private volatile int idleWorkers;
+
+    /**
+     * Indicates that at least one worker's marking stack overflowed during the current pass.
+     */
+    volatile boolean overflowed;
+
+    /**
+     * List of the regions to trace.
+     */
+    private HeapRegionList regionList;
+
+    /**
+     * Number of passes over the regions during the last marking, i.e., 1 + the number of overflow recoveries.
+     */
+    int numPasses;
+
+    /**
+     * Indicates that the referents of special references are traced like any other references instead of being
+     * discovered. Used to complete a concurrent marking, which doesn't process special references.
+     */
+    boolean referencesAreStrong;
+
+    ParallelHeapMarking(TricolorHeapMarker heapMarker) {
+        super("Parallel marking");
+        this.heapMarker = heapMarker;
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new MarkingWorker(this);
+        }
+    }
+
+    /**
+     * Allocate the workers' marking stacks. Called at VM startup.
+     */
+    void initialize() {
+        final int numWorkers = GCWorkerGang.maxWorkers();
+        for (int i = 0; i < numWorkers; i++) {
+            workers[i].markingStack.initialize();
+        }
+    }
+
+    @FOLD
+    private static int regionCursorOffset() {
+        return ClassActor.fromJava(ParallelHeapMarking.class).findLocalInstanceFieldActor("regionCursor").offset();
+    }
+
+    @FOLD
+    private static int idleWorkersOffset() {
+        return ClassActor.fromJava(ParallelHeapMarking.class).findLocalInstanceFieldActor("idleWorkers").offset();
+    }
+
+    @INLINE
+    private boolean casInt(int offset, int expectedValue, int newValue) {
+        return Reference.fromJava(this).toOrigin().compareAndSwapInt(offset, expectedValue, newValue) == expectedValue;
+    }
+
+    private void addToIdleWorkers(int delta) {
+        int idle;
+        do {
+            idle = idleWorkers;
+        } while (!casInt(idleWorkersOffset(), idle, idle + delta));
+    }
+
+    /**
+     * Claim the next region of the current pass.
+     * @return a region identifier, or {@link HeapRegionConstants#INVALID_REGION_ID} if all regions have been claimed
+     */
+    int claimRegion() {
+        int regionID;
+        do {
+            regionID = regionCursor;
+            if (regionID == INVALID_REGION_ID) {
+                return INVALID_REGION_ID;
+            }
+        } while (!casInt(regionCursorOffset(), regionID, regionList.next(regionID)));
+        return regionID;
+    }
+
+    private boolean hasStealableWork(int numWorkers) {
+        for (int i = 0; i < numWorkers; i++) {
+            if (!workers[i].markingStack.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Called by a worker that ran out of work. Waits until either all workers are out of work, or some worker has
+     * cells that can be stolen.
+     *
+     * @return true if all workers are out of work, false if the caller should try stealing again
+     */
+    boolean offerTermination(int numWorkers) {
+        addToIdleWorkers(1);
+        while (true) {
+            if (idleWorkers == numWorkers) {
+                return true;
+            }
+            if (hasStealableWork(numWorkers)) {
+                addToIdleWorkers(-1);
+                return false;
+            }
+            Intrinsics.pause();
+        }
+    }
+
+    @Override
+    public void run(int workerId) {
+        workers[workerId].run(workerId);
+    }
+
+    /**
+     * Visit all objects marked grey during root marking that reside in the specified list of regions, and all objects reachable from them.
+     *
+     * @param regionsRanges regions holding the objects to trace
+     * @param rootsRightmost rightmost object marked grey during root marking
+     * @return the rightmost object marked
+     */
+    Address visitGreyObjects(HeapRegionRangeIterable regionsRanges, Address rootsRightmost) {
+        regionList = regionsRanges.regionList;
+        final int maxWorkers = GCWorkerGang.maxWorkers();
+        for (int i = 0; i < maxWorkers; i++) {
+            final MarkingWorker worker = workers[i];
+            worker.markingStack.reset();
+            worker.rightmost = rootsRightmost;
+            worker.visitedCells = 0L;
+        }
+        numPasses = 0;
+        do {
+            overflowed = false;
+            idleWorkers = 0;
+            regionCursor = regionList.head();
+            numPasses++;
+            GCWorkerGang.runTask(this);
+        } while (overflowed);
+
+        Address rightmost = rootsRightmost;
+        for (int i = 0; i < maxWorkers; i++) {
+            if (workers[i].rightmost.greaterThan(rightmost)) {
+                rightmost = workers[i].rightmost;
+            }
+        }
+        return rightmost;
+    }
+}
@@ -0,0 +1,485 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import static com.sun.max.vm.heap.gcx.EvacuationTimers.TIMED_OPERATION.*;
+import static com.sun.max.vm.heap.gcx.HeapRegionConstants.*;
+
+import com.oracle.max.cri.intrinsics.*;
+import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.heap.gcx.rset.ctbl.*;
+import com.sun.max.vm.log.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.runtime.*;
+
+/**
+ * Parallel evacuation of a nursery into a card-table covered old space, executed by the {@link GCWorkerGang}.
+ * <p>
+ * Evacuation runs in two parallel tasks. The first one scans all the roots of the nursery (thread roots, dirty cards of the boot region and of
+ * the old space, code and immortal heap) and only records the locations of the references to the nursery. Nothing is allocated in the old
+ * space during that task, so workers can safely walk its dirty cards while other workers scan other parts of it.
+ * The second task evacuates the cells referenced from the recorded locations. Each {@link EvacuationWorker} copies cells into its own evacuation buffer,
+ * installing forwarding references with a compare-and-swap, and publishes the survivor ranges it allocates on its work-stealing stack of ranges.
+ * Recorded locations are handed out to workers in blocks, which balances the evacuation of the nursery's direct roots across workers.
+ * The transitive closure is balanced by work stealing: a worker that runs out of survivor ranges to scan steals ranges from other workers
+ * until all of them are out of work.
+ * <p>
+ * Special references discovered during evacuation are processed sequentially by worker 0 once both tasks are complete.
+ */
+public final class ParallelNurseryEvacuator extends GCWorkerGang.GCTask {
+    /**
+     * Enables parallel nursery evacuation when more than one GC worker is available.
+     */
+    static boolean ParallelEvacuation = true;
+
+    /**
+     * Number of cards of the old space claimed at once by a worker scanning dirty cards.
+     */
+    static int CardScanChunkSize = 128;
+    static {
+        VMOptions.addFieldOption("-XX:", "ParallelEvacuation", ParallelNurseryEvacuator.class,
+                        "Evacuate the young generation with the GC worker gang (only when ParallelGCThreads > 1)", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "CardScanChunkSize", ParallelNurseryEvacuator.class,
+                        "Number of cards of the old generation claimed at once by a GC worker scanning dirty cards", Phase.PRISTINE);
+    }
+
+    /**
+     * Number of recorded reference locations claimed at once by a worker.
+     */
+    private static final int LOCATIONS_BLOCK_SIZE = 256;
+
+    /**
+     * Scan units that aren't old space ranges. The roots of the threads are always scanned by worker 0.
+     */
+    private static final int BOOT_HEAP_UNIT = 0;
+    private static final int CODE_UNIT = 1;
+    private static final int IMMORTAL_HEAP_UNIT = 2;
+    private static final int FIRST_OLD_SPACE_UNIT = 3;
+
+    public static boolean isEnabled() {
+        return ParallelEvacuation && GCWorkerGang.isParallel();
+    }
+
+    /**
+     * Collects the ranges of the old space to scan for dirty cards, split in chunks of {@link #CardScanChunkSize} cards
+     * that never cross a region boundary. Workers claim chunks one at a time, so that the scanning of regions with many dirty cards
+     * is spread over several workers.
+     */
+    private final class OldSpaceRangeCollector implements CellRangeVisitor {
+        @Override
+        public void visitCells(Address start, Address end) {
+            final Size chunkSize = Size.fromInt(Math.max(CardScanChunkSize, 1)).shiftedLeft(CardTableRSet.LOG2_CARD_SIZE);
+            Address rangeStart = start;
+            while (rangeStart.lessThan(end)) {
+                Address regionEnd = rangeStart.alignUp(regionSizeInBytes);
+                if (regionEnd.equals(rangeStart)) {
+                    regionEnd = rangeStart.plus(regionSizeInBytes);
+                }
+                Address rangeEnd = rangeStart.plus(chunkSize);
+                if (rangeEnd.greaterThan(regionEnd)) {
+                    rangeEnd = regionEnd;
+                }
+                if (rangeEnd.greaterThan(end)) {
+                    rangeEnd = end;
+                }
+                addOldSpaceRange(rangeStart, rangeEnd);
+                rangeStart = rangeEnd;
+            }
+        }
+    }
+
+    private final OldSpaceRangeCollector oldSpaceRangeCollector = new OldSpaceRangeCollector();
+
+    private final EvacuationWorker[] workers = new EvacuationWorker[GCWorkerGang.MAX_WORKERS];
+
+    private final EvacuatingSpace fromSpace;
+
+    private final HeapSpace toSpace;
+
+    private EvacuationTimers timers;
+
+    private Evacuator.PhaseLogger phaseLogger;
+
+    /**
+     * Off-heap buffer of the old space ranges to scan, as pairs of start and end addresses.
+     */
+    private Pointer oldSpaceRanges = Pointer.zero();
+
+    private int oldSpaceRangesCapacity;
+
+    private int numOldSpaceRanges;
+
+    /**
+     * Indicates which of the two tasks the workers run.
+     */
+    private boolean scanning;
+
+    /**
+     * Distributes the thread stacks among the workers when {@linkplain ParallelHeapRootsScanner#isEnabled() parallel root scanning} is enabled.
+     * Otherwise, worker 0 scans all of them.
+     */
+    private final ParallelHeapRootsScanner rootsScanner = new ParallelHeapRootsScanner();
+
+    /**
+     * Next scan unit to be claimed. Updated by compare-and-swap.
+     */
+    private volatile int scanUnitCursor;
+
+    /**
+     * Next recorded location to be claimed, indexed across the buffers of all workers. Updated by compare-and-swap.
+     */
+    private volatile int locationCursor;
+
+    /**
+     * Number of workers that found no survivor range to scan. Updated by compare-and-swap.
+     */
+    private volatile int idleWorkers;
+
+    /**
+     * Index of the first location recorded by each worker, across the buffers of all workers.
+     */
+    private final int[] firstLocationIndex = new int[GCWorkerGang.MAX_WORKERS + 1];
+
+    private int numUsedWorkers;
+
+    private Size evacuatedBytes = Size.zero();
+
+    @HOSTED_ONLY
+    public ParallelNurseryEvacuator(EvacuatingSpace fromSpace, HeapSpace toSpace, EvacuationBufferProvider evacuationBufferProvider, CardTableRSet rset) {
+        super("Parallel nursery evacuation");
+        this.fromSpace = fromSpace;
+        this.toSpace = toSpace;
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new EvacuationWorker(evacuationBufferProvider, rset);
+        }
+    }
+
+    /**
+     * Initialize the evacuation workers. Called at VM startup.
+     *
+     * @param maxSurvivorRanges maximum number of discontinuous range of survivors a worker may have to keep track of during evacuation
+     * @param minRefillThreshold allocation requests larger than this are allocated directly in the to-space instead of the worker's evacuation buffer
+     */
+    public void initialize(int maxSurvivorRanges, Size minRefillThreshold) {
+        final int maxWorkers = GCWorkerGang.maxWorkers();
+        for (int i = 0; i < maxWorkers; i++) {
+            final EvacuationWorker worker = workers[i];
+            worker.initialize(maxSurvivorRanges, minRefillThreshold);
+            worker.setEvacuationSpace(fromSpace, toSpace);
+            worker.setTimers(timers);
+            worker.setPhaseLogger(phaseLogger);
+        }
+    }
+
+    public void setTimers(EvacuationTimers timers) {
+        this.timers = timers;
+    }
+
+    public void setPhaseLogger(Evacuator.PhaseLogger phaseLogger) {
+        this.phaseLogger = phaseLogger;
+    }
+
+    public void setGCOperation(GCOperation gcOperation) {
+        final int maxWorkers = GCWorkerGang.maxWorkers();
+        for (int i = 0; i < maxWorkers; i++) {
+            workers[i].setGCOperation(gcOperation);
+        }
+    }
+
+    /**
+     * Number of bytes evacuated in the last evacuation.
+     * @return a number of bytes
+     */
+    public Size evacuatedBytes() {
+        return evacuatedBytes;
+    }
+
+    private void addOldSpaceRange(Address start, Address end) {
+        if (numOldSpaceRanges == oldSpaceRangesCapacity) {
+            final int newCapacity = oldSpaceRangesCapacity == 0 ? 256 : oldSpaceRangesCapacity << 1;
+            final Size size = Size.fromInt(newCapacity << 1).shiftedLeft(Word.widthValue().log2numberOfBytes);
+            final Pointer newOldSpaceRanges = oldSpaceRanges.isZero() ? Memory.allocate(size) : Memory.reallocate(oldSpaceRanges, size);
+            if (newOldSpaceRanges.isZero()) {
+                FatalError.unexpected("Could not allocate buffer for old space ranges");
+            }
+            oldSpaceRanges = newOldSpaceRanges;
+            oldSpaceRangesCapacity = newCapacity;
+        }
+        oldSpaceRanges.setWord(numOldSpaceRanges << 1, start);
+        oldSpaceRanges.setWord((numOldSpaceRanges << 1) + 1, end);
+        numOldSpaceRanges++;
+    }
+
+    @FOLD
+    private static int scanUnitCursorOffset() {
+        return ClassActor.fromJava(ParallelNurseryEvacuator.class).findLocalInstanceFieldActor("scanUnitCursor").offset();
+    }
+
+    @FOLD
+    private static int locationCursorOffset() {
+        return ClassActor.fromJava(ParallelNurseryEvacuator.class).findLocalInstanceFieldActor("locationCursor").offset();
+    }
+
+    @FOLD
+    private static int idleWorkersOffset() {
+        return ClassActor.fromJava(ParallelNurseryEvacuator.class).findLocalInstanceFieldActor("idleWorkers").offset();
+    }
+
+    @INLINE
+    private boolean casInt(int offset, int expectedValue, int newValue) {
+        return Reference.fromJava(this).toOrigin().compareAndSwapInt(offset, expectedValue, newValue) == expectedValue;
+    }
+
+    /**
+     * Claim the next scan unit.
+     * @return a scan unit, or -1 if all have been claimed
+     */
+    private int claimScanUnit() {
+        final int numUnits = FIRST_OLD_SPACE_UNIT + numOldSpaceRanges;
+        int unit;
+        do {
+            unit = scanUnitCursor;
+            if (unit >= numUnits) {
+                return -1;
+            }
+        } while (!casInt(scanUnitCursorOffset(), unit, unit + 1));
+        return unit;
+    }
+
+    /**
+     * Claim the next block of recorded reference locations.
+     * @return index of the first location of the block, or -1 if all have been claimed
+     */
+    private int claimLocations() {
+        final int numLocations = firstLocationIndex[numUsedWorkers];
+        int index;
+        do {
+            index = locationCursor;
+            if (index >= numLocations) {
+                return -1;
+            }
+        } while (!casInt(locationCursorOffset(), index, index + LOCATIONS_BLOCK_SIZE));
+        return index;
+    }
+
+    private void scan(EvacuationWorker worker, int workerId) {
+        worker.recordEvacuatedRefLocations = true;
+        if (ParallelHeapRootsScanner.isEnabled()) {
+            rootsScanner.run(worker);
+        } else if (workerId == 0) {
+            worker.evacuateFromRoots();
+        }
+        int unit = claimScanUnit();
+        while (unit >= 0) {
+            switch (unit) {
+                case BOOT_HEAP_UNIT:
+                    worker.scanBootHeapDirtyCards();
+                    break;
+                case CODE_UNIT:
+                    worker.evacuateFromCode();
+                    break;
+                case IMMORTAL_HEAP_UNIT:
+                    worker.evacuateFromImmortalHeap();
+                    break;
+                default:
+                    final int range = (unit - FIRST_OLD_SPACE_UNIT) << 1;
+                    worker.scanDirtyCards(oldSpaceRanges.getWord(range).asAddress(), oldSpaceRanges.getWord(range + 1).asAddress());
+            }
+            unit = claimScanUnit();
+        }
+        worker.recordEvacuatedRefLocations = false;
+    }
+
+    private void addToIdleWorkers(int delta) {
+        int idle;
+        do {
+            idle = idleWorkers;
+        } while (!casInt(idleWorkersOffset(), idle, idle + delta));
+    }
+
+    private boolean hasStealableWork(int numWorkers) {
+        for (int i = 0; i < numWorkers; i++) {
+            if (!workers[i].stealableRanges.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Try to steal a survivor range from another worker, starting with the worker next to this one.
+     * @return true if a range was stolen
+     */
+    private boolean steal(EvacuationWorker worker, int workerId, int numWorkers) {
+        for (int i = 1; i < numWorkers; i++) {
+            int victim = workerId + i;
+            if (victim >= numWorkers) {
+                victim -= numWorkers;
+            }
+            if (worker.stealRange(workers[victim])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Called by a worker that ran out of survivor ranges to scan. Waits until either all workers are out of work, or some worker
+     * has ranges that can be stolen.
+     *
+     * @return true if all workers are out of work, false if the caller should try stealing again
+     */
+    private boolean offerTermination(int numWorkers) {
+        addToIdleWorkers(1);
+        while (true) {
+            if (idleWorkers == numWorkers) {
+                return true;
+            }
+            if (hasStealableWork(numWorkers)) {
+                addToIdleWorkers(-1);
+                return false;
+            }
+            Intrinsics.pause();
+        }
+    }
+
+    private void copy(EvacuationWorker worker, int workerId) {
+        worker.doBeforeEvacuation();
+        int index = claimLocations();
+        while (index >= 0) {
+            final int end = Math.min(index + LOCATIONS_BLOCK_SIZE, firstLocationIndex[numUsedWorkers]);
+            // The block may span the buffers of several workers.
+            int recorder = 0;
+            while (index < end) {
+                while (index >= firstLocationIndex[recorder + 1]) {
+                    recorder++;
+                }
+                final int first = firstLocationIndex[recorder];
+                final int last = Math.min(end, firstLocationIndex[recorder + 1]);
+                worker.evacuateFromRefLocations(workers[recorder], index - first, last - first);
+                index = last;
+            }
+            index = claimLocations();
+        }
+        final int numWorkers = GCWorkerGang.activeWorkers();
+        while (true) {
+            worker.evacuateReachables();
+            if (steal(worker, workerId, numWorkers)) {
+                continue;
+            }
+            if (offerTermination(numWorkers)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void run(int workerId) {
+        final EvacuationWorker worker = workers[workerId];
+        if (scanning) {
+            scan(worker, workerId);
+        } else {
+            copy(worker, workerId);
+        }
+    }
+
+    /**
+     * Evacuate all cells of the nursery reachable from its roots.
+     *
+     * @param logPhases log the phases of the evacuation
+     */
+    public void evacuate(boolean logPhases) {
+        final EvacuationWorker mainWorker = workers[0];
+        timers.start(PROLOGUE);
+        fromSpace.doBeforeGC();
+        Heap.bootHeapRegion.discoverSpecialReference();
+        // Collecting the ranges also makes the old space iterable.
+        numOldSpaceRanges = 0;
+        toSpace.visit(oldSpaceRangeCollector);
+        timers.stop(PROLOGUE);
+
+        if (logPhases) {
+            phaseLogger.logScanningRoots(VMLogger.Interval.BEGIN);
+        }
+        // All roots, including the remembered set, are scanned by the same parallel task and timed as ROOT_SCAN.
+        timers.start(ROOT_SCAN);
+        scanning = true;
+        scanUnitCursor = 0;
+        rootsScanner.reset();
+        GCWorkerGang.runTask(this);
+        numUsedWorkers = GCWorkerGang.activeWorkers();
+        timers.stop(ROOT_SCAN);
+        if (logPhases) {
+            phaseLogger.logScanningRoots(VMLogger.Interval.END);
+        }
+
+        if (logPhases) {
+            phaseLogger.logEvacuating(VMLogger.Interval.BEGIN);
+        }
+        timers.start(COPY);
+        firstLocationIndex[0] = 0;
+        for (int i = 0; i < numUsedWorkers; i++) {
+            firstLocationIndex[i + 1] = firstLocationIndex[i] + workers[i].numRefLocations();
+        }
+        scanning = false;
+        locationCursor = 0;
+        idleWorkers = 0;
+        GCWorkerGang.runTask(this);
+        for (int i = 0; i < numUsedWorkers; i++) {
+            workers[i].clearRefLocations();
+        }
+        timers.stop(COPY);
+        if (logPhases) {
+            phaseLogger.logEvacuating(VMLogger.Interval.END);
+        }
+
+        if (logPhases) {
+            phaseLogger.logProcessingSpecialReferences(VMLogger.Interval.BEGIN);
+        }
+        timers.start(WEAK_REF);
+        mainWorker.disableSpecialRefDiscovery();
+        SpecialReferenceManager.processDiscoveredSpecialReferences(mainWorker);
+        mainWorker.evacuateReachables();
+        mainWorker.enableSpecialRefDiscovery();
+        timers.stop(WEAK_REF);
+        if (logPhases) {
+            phaseLogger.logProcessingSpecialReferences(VMLogger.Interval.END);
+        }
+
+        timers.start(EPILOGUE);
+        evacuatedBytes = Size.zero();
+        for (int i = 0; i < numUsedWorkers; i++) {
+            final EvacuationWorker worker = workers[i];
+            evacuatedBytes = evacuatedBytes.plus(worker.evacuatedBytes());
+            worker.doAfterEvacuation();
+        }
+        fromSpace.doAfterGC();
+        timers.stop(EPILOGUE);
+    }
+}
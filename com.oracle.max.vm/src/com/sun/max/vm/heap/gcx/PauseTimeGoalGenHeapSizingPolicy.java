@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import com.sun.max.profile.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.runtime.*;
+
+/**
+ * Heap sizing policy for a generational heap with a non-aging nursery that resizes the generations to meet a maximum pause time goal
+ * and a maximum share of time spent in garbage collection.
+ *
+ * Initial sizes are computed as for the {@link FixedRatioGenHeapSizingPolicy}. The young generation may thereafter range from a single
+ * {@link #unitSize} to {@link #MaxYoungGenHeapPercent} of the maximum heap size. The heap scheme reports the duration of every
+ * collection pause, as measured by its {@link EvacuationTimers}, and asks the policy for the desired size of the young generation
+ * after every minor collection. The policy maintains decaying averages of minor pauses, full pauses, and of the mutator time between collections,
+ * and applies the following rules, in order:
+ * <ul>
+ * <li>If the average minor pause exceeds {@link #MaxGCPauseMillis}, the young generation is shrunk in proportion to the excess (at most halved).</li>
+ * <li>Otherwise, if the share of time spent in collections exceeds {@link #GCTimePercent}, the young generation is grown in proportion to the excess
+ * (at most doubled), as long as the pause predicted for the larger young generation remains within the goal.</li>
+ * </ul>
+ * The old generation is grown whenever its free space doesn't cover the worst case evacuation of the young generation, and after a
+ * full collection when full collections alone exceed the GC time share. The sum of the generations never exceeds the maximum heap size.
+ * Shrinking the old generation isn't supported.
+ */
+public class PauseTimeGoalGenHeapSizingPolicy extends FixedRatioGenHeapSizingPolicy {
+    /**
+     * Target for the maximum duration of a minor collection pause, in milliseconds.
+     */
+    static int MaxGCPauseMillis = 100;
+    /**
+     * Target for the maximum percentage of time spent in garbage collection.
+     */
+    static int GCTimePercent = 5;
+    /**
+     * Upper bound for the young generation, as a percentage of the maximum heap size.
+     */
+    static int MaxYoungGenHeapPercent = 60;
+    /**
+     * Weight, in percent, given to the latest sample when updating the decaying averages.
+     */
+    static int GCTimeSampleWeight = 30;
+    static boolean TraceGenHeapSizing;
+
+    static {
+        VMOptions.addFieldOption("-XX:", "MaxGCPauseMillis", PauseTimeGoalGenHeapSizingPolicy.class, "Pause time goal for minor collections, in milliseconds", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "GCTimePercent", PauseTimeGoalGenHeapSizingPolicy.class, "Goal for the maximum percentage of time spent in garbage collection", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "MaxYoungGenHeapPercent", PauseTimeGoalGenHeapSizingPolicy.class, "Maximum percentage of heap size the young gen may grow to", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "GCTimeSampleWeight", PauseTimeGoalGenHeapSizingPolicy.class, "Weight (in percent) of the last sample in the decaying averages of GC and mutator times", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "TraceGenHeapSizing", PauseTimeGoalGenHeapSizingPolicy.class, "Trace the resizing decisions of the pause time goal heap sizing policy", Phase.PRISTINE);
+    }
+
+    private static final Clock clock = HeapScheme.GC_TIMING_CLOCK;
+
+    /**
+     * Decaying average of minor collection pauses, in milliseconds.
+     */
+    private double avgMinorPause;
+    /**
+     * Decaying average of full collection pauses (including the minor collection preceding them), in milliseconds.
+     */
+    private double avgFullPause;
+    /**
+     * Decaying average of the total time spent in collections per mutator interval, in milliseconds. Full collections contribute to it.
+     */
+    private double avgGCTime;
+    /**
+     * Decaying average of the part of {@link #avgGCTime} spent in old generation collections.
+     */
+    private double avgFullGCTime;
+    /**
+     * Decaying average of mutator time between two collections, in milliseconds.
+     */
+    private double avgMutatorTime;
+    /**
+     * Clock ticks at the end of the last recorded collection.
+     */
+    private long lastCollectionEnd;
+
+    private final Size maxYoungGenSize;
+
+    public PauseTimeGoalGenHeapSizingPolicy(Size initHeapSize, Size maxHeapSize, int youngGenHeapPercentage, int log2Alignment) {
+        super(initHeapSize, maxHeapSize, youngGenHeapPercentage, log2Alignment);
+        FatalError.check(MaxYoungGenHeapPercent > 0 && MaxYoungGenHeapPercent < 100, "Not a valid maximum percentage of heap size for young gen");
+        FatalError.check(GCTimePercent > 0 && GCTimePercent < 100, "Not a valid GC time percentage");
+        FatalError.check(GCTimeSampleWeight > 0 && GCTimeSampleWeight <= 100, "Not a valid sample weight");
+        Size maxYoung = alignUp(this.maxHeapSize.times(MaxYoungGenHeapPercent).dividedBy(100));
+        Size initialYoung = super.initialYoungGenSize();
+        maxYoungGenSize = maxYoung.lessThan(initialYoung) ? initialYoung : maxYoung;
+        lastCollectionEnd = clock.getTicks();
+    }
+
+    @Override
+    public Size maxYoungGenSize() {
+        return maxYoungGenSize;
+    }
+
+    /**
+     * The old generation may grow to the whole heap but the smallest young generation.
+     */
+    @Override
+    public Size maxOldGenSize() {
+        return maxHeapSize.minus(unitSize);
+    }
+
+    private static double decay(double average, double sample) {
+        return (average * (100 - GCTimeSampleWeight) + sample * GCTimeSampleWeight) / 100;
+    }
+
+    /**
+     * Record the duration of a collection pause. The mutator interval preceding the pause is computed from the time the previous pause ended.
+     *
+     * @param pauseTime duration of the pause, in milliseconds (see {@link HeapScheme#GC_TIMING_CLOCK})
+     * @param fullCollection true if the pause included a collection of the old generation
+     */
+    public void recordPause(long pauseTime, boolean fullCollection) {
+        final long now = clock.getTicks();
+        final long mutatorTime = Math.max(0L, now - pauseTime - lastCollectionEnd);
+        lastCollectionEnd = now;
+        avgMutatorTime = decay(avgMutatorTime, mutatorTime);
+        avgGCTime = decay(avgGCTime, pauseTime);
+        if (fullCollection) {
+            avgFullPause = decay(avgFullPause, pauseTime);
+            avgFullGCTime = decay(avgFullGCTime, pauseTime);
+        } else {
+            avgMinorPause = decay(avgMinorPause, pauseTime);
+            avgFullGCTime = decay(avgFullGCTime, 0);
+        }
+    }
+
+    /**
+     * Percentage of time currently spent in garbage collection, based on the decaying averages.
+     */
+    private double gcTimePercent(double gcTime) {
+        final double total = gcTime + avgMutatorTime;
+        return total == 0 ? 0 : (gcTime * 100) / total;
+    }
+
+    /**
+     * Compute the size the young generation should have to meet the pause time and GC time share goals.
+     *
+     * @param youngSize current size of the young generation
+     * @param oldSize current size of the old generation
+     * @return aligned desired size of the young generation
+     */
+    public Size desiredYoungGenSize(Size youngSize, Size oldSize) {
+        double ratio = 1.0;
+        final double gcTimePercent = gcTimePercent(avgGCTime);
+        if (avgMinorPause > MaxGCPauseMillis) {
+            ratio = Math.max(0.5, MaxGCPauseMillis / avgMinorPause);
+        } else if (gcTimePercent > GCTimePercent) {
+            ratio = Math.min(2.0, gcTimePercent / GCTimePercent);
+            if (avgMinorPause > 0) {
+                // Don't grow beyond the size predicted to exceed the pause time goal.
+                ratio = Math.min(ratio, MaxGCPauseMillis / avgMinorPause);
+            }
+        }
+        Size desired = alignUp(Size.fromLong((long) (youngSize.toLong() * ratio)));
+        final Size maxAvailable = alignDown(maxHeapSize.minus(oldSize));
+        if (desired.greaterThan(maxAvailable)) {
+            desired = maxAvailable;
+        }
+        if (desired.greaterThan(maxYoungGenSize)) {
+            desired = maxYoungGenSize;
+        }
+        if (desired.lessThan(unitSize)) {
+            desired = unitSize;
+        }
+        if (TraceGenHeapSizing) {
+            Log.print("Heap sizing: avg minor pause ");
+            Log.print((long) avgMinorPause);
+            Log.print(" ms, avg full pause ");
+            Log.print((long) avgFullPause);
+            Log.print(" ms, GC time ");
+            Log.print((long) gcTimePercent);
+            Log.print("%, young gen ");
+            Log.print(youngSize.toLong());
+            Log.print(" -> ");
+            Log.println(desired.toLong());
+        }
+        return desired;
+    }
+
+    /**
+     * Compute how much the old generation should grow after a collection. The old generation must at least be able to absorb the worst case
+     * evacuation of the young generation. After a full collection, it is further grown in proportion to the excess of GC time spent in full collections.
+     *
+     * @param youngSize size of the young generation, i.e., the worst case evacuation
+     * @param oldSize current size of the old generation
+     * @param oldFreeSpace current free space in the old generation
+     * @param fullCollection true if the old generation was just collected
+     * @return aligned size to grow the old generation by (zero if none)
+     */
+    public Size oldGenGrowth(Size youngSize, Size oldSize, Size oldFreeSpace, boolean fullCollection) {
+        Size growth = Size.zero();
+        if (youngSize.greaterThan(oldFreeSpace)) {
+            growth = youngSize.minus(oldFreeSpace);
+        }
+        if (fullCollection) {
+            final double fullGCTimePercent = gcTimePercent(avgFullGCTime);
+            if (fullGCTimePercent > GCTimePercent) {
+                final double ratio = Math.min(2.0, fullGCTimePercent / GCTimePercent);
+                final Size proportionalGrowth = Size.fromLong((long) (oldSize.toLong() * (ratio - 1.0)));
+                if (proportionalGrowth.greaterThan(growth)) {
+                    growth = proportionalGrowth;
+                }
+            }
+        }
+        growth = alignUp(growth);
+        final Size heapSize = oldSize.plus(youngSize);
+        final Size maxGrowth = heapSize.lessThan(maxHeapSize) ? alignDown(maxHeapSize.minus(heapSize)) : Size.zero();
+        if (growth.greaterThan(maxGrowth)) {
+            growth = maxGrowth;
+        }
+        if (TraceGenHeapSizing && !growth.isZero()) {
+            Log.print("Heap sizing: old gen ");
+            Log.print(oldSize.toLong());
+            Log.print(" grows by ");
+            Log.println(growth.toLong());
+        }
+        return growth;
+    }
+}
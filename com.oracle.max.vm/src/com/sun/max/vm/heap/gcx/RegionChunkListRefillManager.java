@@ -78,10 +78,23 @@ public final class RegionChunkListRefillManager extends ChunkListRefillManager {
 
     private static final OutOfMemoryError outOfMemoryError = new OutOfMemoryError();
 
+    /**
+     * NUMA node the allocating regions are preferably taken from when {@link NUMAHeapRegions#isEnabled()}.
+     */
+    private int numaNode;
+
     public void setRegionProvider(RegionProvider regionProvider) {
         this.regionProvider = regionProvider;
     }
 
+    void setNUMANode(int numaNode) {
+        this.numaNode = numaNode;
+    }
+
+    private int nextAllocatingRegion() {
+        return NUMAHeapRegions.isEnabled() ? regionProvider.getAllocatingRegion(numaNode) : regionProvider.getAllocatingRegion();
+    }
+
     public Object refillLock() {
         return regionProvider;
     }
@@ -133,7 +146,11 @@ public final class RegionChunkListRefillManager extends ChunkListRefillManager {
             int gcCount = 0;
             retireCurrentAllocatingRegion();
             do {
-                allocatingRegion = regionProvider.getAllocatingRegion();
+                allocatingRegion = nextAllocatingRegion();
+                while (allocatingRegion == INVALID_REGION_ID && regionProvider.sweepRegionOnDemand()) {
+                    // Some regions haven't been swept since the last GC. Try them before collecting.
+                    allocatingRegion = nextAllocatingRegion();
+                }
                 if (allocatingRegion != INVALID_REGION_ID) {
                     if (allocatingRegion == DebuggedRegion) {
                         TLABLog.TraceTLABAllocation = true;
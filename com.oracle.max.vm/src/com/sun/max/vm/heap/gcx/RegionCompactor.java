@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import static com.sun.max.vm.heap.gcx.HeapRegionConstants.*;
+
+import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.util.timer.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.layout.*;
+import com.sun.max.vm.runtime.*;
+
+/**
+ * Evacuator defragmenting a {@link FirstFitMarkSweepSpace} at the end of a stop-the-world mark-sweep collection.
+ * <p>
+ * The live cells of the sparsest regions of the space are evacuated to empty regions of the same space, and the evacuated regions
+ * are handed back to the space as empty regions. Regions are selected by increasing amount of live data, as recorded by the sweeper
+ * in their {@link HeapRegionInfo}. The total amount of live data evacuated by a collection is capped by an allowance adjusted after
+ * each compaction to keep its duration within a pause time budget.
+ * <p>
+ * The space has no remembered set: references to the evacuated regions are found by scanning the roots, the boot heap, the code and immortal
+ * regions, and the live cells of the regions of the space that aren't evacuated. Cells are evacuated when a reference to them is found.
+ * Cells evacuated to the destination regions are then scanned in allocation order until no more cells are evacuated.
+ * Evacuated cells are marked black so that the color map of the heap marker remains consistent with the heap after compaction.
+ * <p>
+ * Compaction relocates objects: the heap scheme must not compact while objects are pinned.
+ */
+public final class RegionCompactor extends Evacuator {
+    static int CompactionLiveThresholdPercent = 50;
+    static int CompactionPauseBudgetMillis = 20;
+    static int MaxCompactedRegions = 64;
+    static boolean TraceRegionCompaction = false;
+    static {
+        VMOptions.addFieldOption("-XX:", "CompactionLiveThresholdPercent", RegionCompactor.class,
+                        "Maximum percentage of live data in a region evacuated by heap compaction", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "CompactionPauseBudgetMillis", RegionCompactor.class,
+                        "Target duration in milliseconds of the heap compaction performed at the end of a collection", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "MaxCompactedRegions", RegionCompactor.class,
+                        "Maximum number of regions evacuated by heap compaction at a collection", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "TraceRegionCompaction", RegionCompactor.class, "Trace heap compaction", Phase.PRISTINE);
+    }
+
+    /**
+     * Roles of the regions during a compaction.
+     */
+    private static final byte NOT_COMPACTED = 0;
+    private static final byte EVACUATED_REGION = 1;
+    private static final byte TO_REGION = 2;
+
+    /**
+     * Scan the live cells of the regions of the space that take no part in the compaction.
+     * Regions are walked cell by cell, skipping dead cells and free chunks, which are white.
+     * Evacuated regions and destination regions are skipped altogether: they only hold cells that don't cross region boundaries.
+     */
+    final class NotCompactedRegionsScanner implements CellRangeVisitor {
+        @Override
+        public void visitCells(Address start, Address end) {
+            final RegionTable regionTable = RegionTable.theRegionTable();
+            Pointer cell = start.asPointer();
+            while (cell.lessThan(end)) {
+                if (cell.and(regionAlignmentMask).isZero() && regionRoles[regionTable.regionID(cell)] != NOT_COMPACTED) {
+                    cell = cell.plus(regionSizeInBytes);
+                } else if (heapMarker.isWhite(cell)) {
+                    final Pointer origin = Layout.cellToOrigin(cell);
+                    cell = cell.plus(HeapFreeChunk.isHeapFreeChunkOrigin(origin) ? HeapFreeChunk.getFreechunkSize(cell) : Layout.size(origin));
+                } else {
+                    cell = scanCellForEvacuatees(cell);
+                }
+            }
+        }
+    }
+
+    private final FirstFitMarkSweepSpace<?> space;
+
+    private final TricolorHeapMarker heapMarker;
+
+    private final NotCompactedRegionsScanner notCompactedRegionsScanner = new NotCompactedRegionsScanner();
+
+    private final TimerMetric compactionTimer = new TimerMetric(new SingleUseTimer(HeapScheme.GC_TIMING_CLOCK));
+
+    /**
+     * Role of each region of the heap during the compaction in progress, indexed by region identifier.
+     */
+    private byte [] regionRoles;
+
+    /**
+     * Regions selected for evacuation.
+     */
+    private int [] evacuatedRegions;
+
+    private int numEvacuatedRegions;
+
+    /**
+     * Empty regions reserved to evacuate cells to, in allocation order. Terminated by {@link HeapRegionConstants#INVALID_REGION_ID}.
+     */
+    private int [] toRegions;
+
+    /**
+     * Index in {@link #toRegions} of the region cells are currently evacuated to.
+     */
+    private int toRegionIndex;
+
+    /**
+     * Allocation mark in the current destination region.
+     */
+    private Pointer top;
+
+    /**
+     * End of the current destination region.
+     */
+    private Pointer end;
+
+    /**
+     * Index in {@link #toRegions} of the region currently scanned for references to the evacuated regions.
+     */
+    private int scanRegionIndex;
+
+    /**
+     * Next cell to scan in the region currently scanned.
+     */
+    private Pointer scanPointer;
+
+    /**
+     * Maximum amount of live data evacuated by the next compaction.
+     */
+    private Size evacuationAllowance;
+
+    /**
+     * Number of bytes evacuated by the compaction in progress.
+     */
+    private long evacuatedBytes;
+
+    @HOSTED_ONLY
+    public RegionCompactor(FirstFitMarkSweepSpace<?> space, TricolorHeapMarker heapMarker) {
+        this.space = space;
+        this.heapMarker = heapMarker;
+    }
+
+    /**
+     * Initialize the compactor. Must be called with the heap region manager's allocator enabled.
+     * @param numRegions number of regions of the heap
+     */
+    public void initialize(int numRegions) {
+        regionRoles = new byte[numRegions];
+        evacuatedRegions = new int[MaxCompactedRegions];
+        toRegions = new int[MaxCompactedRegions];
+        // Start with a modest allowance. It grows while compactions complete well within the pause time budget.
+        evacuationAllowance = Size.fromInt(regionSizeInBytes).times(Math.min(4, MaxCompactedRegions));
+    }
+
+    /**
+     * Evacuate the sparsest regions of the space. Must be called during a stop-the-world collection, once the space was completely swept.
+     * @param gcOperation the GC operation performing the compaction
+     * @return the number of regions evacuated
+     */
+    public int compact(GCOperation gcOperation) {
+        final int maxLiveBytes = (int) ((long) regionSizeInBytes * CompactionLiveThresholdPercent / 100);
+        numEvacuatedRegions = space.selectEvacuationRegions(maxLiveBytes, evacuationAllowance, evacuatedRegions, toRegions);
+        if (numEvacuatedRegions == 0) {
+            return 0;
+        }
+        compactionTimer.start();
+        setGCOperation(gcOperation);
+        evacuate(Heap.logGCPhases());
+        setGCOperation(null);
+        compactionTimer.stop();
+        final int numToRegions = toRegionIndex + 1;
+        adjustEvacuationAllowance(compactionTimer.getLastElapsedTime());
+        if (TraceRegionCompaction) {
+            final boolean lockDisabledSafepoints = Log.lock();
+            Log.print("Compaction: evacuated ");
+            Log.print(evacuatedBytes);
+            Log.print(" bytes from ");
+            Log.print(numEvacuatedRegions);
+            Log.print(" regions to ");
+            Log.print(numToRegions);
+            Log.print(" regions in ");
+            Log.print(compactionTimer.getLastElapsedTime());
+            Log.print(" ms, next allowance ");
+            Log.print(evacuationAllowance.toLong());
+            Log.println(" bytes");
+            Log.unlock(lockDisabledSafepoints);
+        }
+        return numEvacuatedRegions;
+    }
+
+    /**
+     * Halve the evacuation allowance if the last compaction exceeded the pause time budget, and grow it by half if the compaction took less than half of the budget.
+     */
+    private void adjustEvacuationAllowance(long elapsedMillis) {
+        final long minAllowance = regionSizeInBytes;
+        final long maxAllowance = (long) regionSizeInBytes * MaxCompactedRegions;
+        long allowance = evacuationAllowance.toLong();
+        if (elapsedMillis > CompactionPauseBudgetMillis) {
+            allowance = Math.max(minAllowance, allowance >> 1);
+        } else if (elapsedMillis < CompactionPauseBudgetMillis >> 1) {
+            allowance = Math.min(maxAllowance, allowance + (allowance >> 1));
+        }
+        evacuationAllowance = Size.fromLong(allowance);
+    }
+
+    @INLINE
+    private static Pointer regionStart(int regionID) {
+        return RegionTable.theRegionTable().regionAddress(regionID).asPointer();
+    }
+
+    @Override
+    boolean inEvacuatedArea(Pointer origin) {
+        final int regionID = RegionTable.theRegionTable().regionID(origin);
+        return regionID != INVALID_REGION_ID && regionRoles[regionID] == EVACUATED_REGION;
+    }
+
+    /**
+     * Retire the current destination region and start evacuating to the next reserved region.
+     */
+    private void nextToRegion() {
+        space.retireEvacuationRegion(toRegions[toRegionIndex], top);
+        toRegionIndex++;
+        final int regionID = toRegions[toRegionIndex];
+        FatalError.check(regionID != INVALID_REGION_ID, "Compaction ran out of regions to evacuate to");
+        top = regionStart(regionID);
+        end = top.plus(regionSizeInBytes);
+    }
+
+    @Override
+    Pointer evacuate(Pointer fromOrigin) {
+        final Pointer fromCell = Layout.originToCell(fromOrigin);
+        final Size size = Layout.size(fromOrigin);
+        if (top.plus(size).greaterThan(end)) {
+            nextToRegion();
+        }
+        final Pointer toCell = top;
+        top = top.plus(size);
+        Memory.copyBytes(fromCell, toCell, size);
+        heapMarker.markBlackFromWhite(toCell);
+        evacuatedBytes += size.toLong();
+        return Layout.cellToOrigin(toCell);
+    }
+
+    @Override
+    protected void evacuateFromRSets() {
+        space.visit(notCompactedRegionsScanner);
+    }
+
+    @Override
+    protected void evacuateReachables() {
+        while (true) {
+            while (scanRegionIndex == toRegionIndex && scanPointer.lessThan(top)) {
+                scanPointer = scanCellForEvacuatees(scanPointer);
+            }
+            if (scanRegionIndex == toRegionIndex) {
+                return;
+            }
+            // The scanned region was retired: scan it up to its end, then move to the next one.
+            final Pointer scanEnd = regionStart(toRegions[scanRegionIndex]).plus(regionSizeInBytes);
+            while (scanPointer.lessThan(scanEnd)) {
+                scanPointer = scanCellForEvacuatees(scanPointer);
+            }
+            scanRegionIndex++;
+            scanPointer = regionStart(toRegions[scanRegionIndex]);
+        }
+    }
+
+    @Override
+    protected void doBeforeEvacuation() {
+        for (int i = 0; i < numEvacuatedRegions; i++) {
+            regionRoles[evacuatedRegions[i]] = EVACUATED_REGION;
+        }
+        for (int i = 0; toRegions[i] != INVALID_REGION_ID; i++) {
+            regionRoles[toRegions[i]] = TO_REGION;
+        }
+        // Special references were processed by the marking. Their referents are treated as strong references.
+        disableSpecialRefDiscovery();
+        evacuatedBytes = 0L;
+        toRegionIndex = 0;
+        top = regionStart(toRegions[0]);
+        end = top.plus(regionSizeInBytes);
+        scanRegionIndex = 0;
+        scanPointer = top;
+    }
+
+    @Override
+    protected void doAfterEvacuation() {
+        final int lastToRegion = toRegions[toRegionIndex];
+        if (top.equals(regionStart(lastToRegion))) {
+            space.releaseEvacuationRegion(lastToRegion);
+        } else {
+            space.retireEvacuationRegion(lastToRegion, top);
+        }
+        for (int i = 0; toRegions[i] != INVALID_REGION_ID; i++) {
+            if (i > toRegionIndex) {
+                space.releaseEvacuationRegion(toRegions[i]);
+            }
+            regionRoles[toRegions[i]] = NOT_COMPACTED;
+        }
+        for (int i = 0; i < numEvacuatedRegions; i++) {
+            final int regionID = evacuatedRegions[i];
+            final Pointer start = regionStart(regionID);
+            heapMarker.clearColorMap(start, start.plus(regionSizeInBytes));
+            space.releaseEvacuationRegion(regionID);
+            regionRoles[regionID] = NOT_COMPACTED;
+        }
+        space.endEvacuation();
+    }
+}
@@ -204,6 +204,10 @@ final public class RegionOverflowAllocatorRefiller extends Refiller {
         int gcCount = 0;
         do {
             allocatingRegion = regionProvider.getAllocatingRegion(minRefillSize, 1);
+            while (allocatingRegion == INVALID_REGION_ID && regionProvider.sweepRegionOnDemand()) {
+                // Some regions haven't been swept since the last GC. Try them before collecting.
+                allocatingRegion = regionProvider.getAllocatingRegion(minRefillSize, 1);
+            }
             if (allocatingRegion != INVALID_REGION_ID) {
                 if (traceRefill()) {
                     Log.print("Refill overflow allocator w/ region #");
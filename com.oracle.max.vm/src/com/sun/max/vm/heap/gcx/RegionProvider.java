@@ -43,6 +43,14 @@ public interface RegionProvider {
      */
     int getAllocatingRegion();
 
+    /**
+     * Obtain a region with free space from the region provider, preferably one bound to the specified NUMA node.
+     * @param numaNode a NUMA node
+     * @return an region identifier, or {@link HeapRegionConstants#INVALID_REGION_ID} if free space is exhausted.
+     * @see NUMAHeapRegions
+     */
+    int getAllocatingRegion(int numaNode);
+
     /**
      * Obtain a region with at least the specified amount of free space, and at most the specified number of chunks.
      * @param minFreeBytes
@@ -51,6 +59,13 @@ public interface RegionProvider {
      */
     int getAllocatingRegion(Size minFreeBytes, int maxFreeChunks);
 
+    /**
+     * Sweep one more region of the region provider, if any region is left to sweep since the last GC.
+     * Called with the refill lock held by refill managers that failed to obtain an allocating region, before resorting to a GC.
+     * @return true if a region was swept, false if all regions are already swept
+     */
+    boolean sweepRegionOnDemand();
+
     /**
      * Minimum size of free chunks in regions being retired. Free space smaller than dead must be turned into dead objects as they will not be reused for allocation by
      * the region provider. Free chunks available for allocation should be appended to the retiring region's list of free chunks.
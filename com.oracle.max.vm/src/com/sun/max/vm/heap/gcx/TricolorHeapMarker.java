@@ -180,6 +180,11 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
      * A ready-to-use option to try new code.
      */
     static boolean UseNewCode = false;
+
+    /**
+     * Trace the heap in parallel with the {@link GCWorkerGang} when marking a list of heap regions.
+     */
+    static boolean ParallelMarking = true;
     static {
         VMOptions.addFieldOption("-XX:", "TraceMarking", TricolorHeapMarker.class, "Trace each mark update (Debug mode only)", Phase.PRISTINE);
         VMOptions.addFieldOption("-XX:", "UseRescanMap", TricolorHeapMarker.class, "Use a rescan map when recovering from mark stack overflow", Phase.PRISTINE);
@@ -188,6 +193,8 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         VMOptions.addFieldOption("-XX:", "VerifyGreyLessAreas", TricolorHeapMarker.class, "Verify absence of grey bits in areas that shouldn't have any grey objects", Phase.PRISTINE);
 
         VMOptions.addFieldOption("-XX:", "UseNewCode", TricolorHeapMarker.class, "Use new refactored code)", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "ParallelMarking", TricolorHeapMarker.class,
+            "Trace heap regions in parallel when -XX:ParallelGCThreads is greater than 1", Phase.PRISTINE);
     }
 
     private static enum MARK_PHASE {
@@ -524,6 +531,8 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         heapRootsScanner = null;
         overflowLinearScanState = null;
         overflowScanWithRescanMapState = null;
+        parallelMarking = null;
+        concurrentMarking = null;
         initialize(start, end, bitmapStorage, bitmapSize);
     }
 
@@ -544,6 +553,8 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         heapRootsScanner = new SequentialHeapRootsScanner(rootCellVisitor);
         overflowLinearScanState = new OverflowLinearScanState(this);
         overflowScanWithRescanMapState = new OverflowScanWithRescanMapState(this);
+        parallelMarking = new ParallelHeapMarking(this);
+        concurrentMarking = new ConcurrentHeapMarking(this);
     }
 
     @FOLD
@@ -583,6 +594,9 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
                 overflowScanState = overflowLinearScanState;
             }
             overflowScanState.initialize();
+            if (useParallelMarking()) {
+                parallelMarking.initialize();
+            }
         }
     }
 
@@ -744,6 +758,137 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         markBlackFromGrey(bitIndex);
     }
 
+    /**
+     * Paint black a white cell. Used to mark live cells relocated after marking completed (see {@link RegionCompactor}).
+     * Black only sets the first bit of the color, so the color cannot span words.
+     * @param cell a white cell of the covered area
+     */
+    final void markBlackFromWhite(Address cell) {
+        final int bitIndex = bitIndexOf(cell);
+        traceBlackMark(cell, bitIndex);
+        final Pointer basePointer = base.asPointer();
+        final int wordIndex = bitmapWordIndex(bitIndex);
+        basePointer.setLong(wordIndex, basePointer.getLong(wordIndex) | bitmaskFor(bitIndex));
+    }
+
+    /**
+     * Clear the colors of a range of the covered area. The range must be aligned to the bytes covered by a word of the color map
+     * (e.g., a range of heap regions).
+     * @param start start of the range
+     * @param end end of the range
+     */
+    final void clearColorMap(Address start, Address end) {
+        final int firstWordIndex = bitmapWordIndex(start);
+        final int numWords = bitmapWordIndex(end) - firstWordIndex;
+        Memory.clearWords(base.asPointer().plus(firstWordIndex << Word.widthValue().log2numberOfBytes), numWords);
+    }
+
+    /**
+     * Atomically set a bit of the color map. Used by parallel marking, wherein several GC workers may update the same word of the color map.
+     *
+     * @param bitIndex a bit index
+     * @return true if the bit was set by the caller, false if it was already set
+     */
+    private boolean atomicSetBit(int bitIndex) {
+        final Pointer basePointer = base.asPointer();
+        final int wordIndex = bitmapWordIndex(bitIndex);
+        final int offset = wordIndex << Word.widthValue().log2numberOfBytes;
+        final long bitmask = bitmaskFor(bitIndex);
+        long bitmapWord;
+        do {
+            bitmapWord = basePointer.getLong(wordIndex);
+            if ((bitmapWord & bitmask) != 0L) {
+                return false;
+            }
+        } while (basePointer.compareAndSwapLong(offset, bitmapWord, bitmapWord | bitmask) != bitmapWord);
+        return true;
+    }
+
+    /**
+     * Atomically clear a bit of the color map.
+     *
+     * @param bitIndex a bit index
+     * @return true if the bit was cleared by the caller, false if it was already clear
+     */
+    private boolean atomicClearBit(int bitIndex) {
+        final Pointer basePointer = base.asPointer();
+        final int wordIndex = bitmapWordIndex(bitIndex);
+        final int offset = wordIndex << Word.widthValue().log2numberOfBytes;
+        final long bitmask = bitmaskFor(bitIndex);
+        long bitmapWord;
+        do {
+            bitmapWord = basePointer.getLong(wordIndex);
+            if ((bitmapWord & bitmask) == 0L) {
+                return false;
+            }
+        } while (basePointer.compareAndSwapLong(offset, bitmapWord, bitmapWord & ~bitmask) != bitmapWord);
+        return true;
+    }
+
+    /**
+     * Atomic variant of {@link #markGreyIfWhite(Pointer)} for parallel marking.
+     * The black bit is set first with a compare-and-swap, which elects the single worker responsible for the cell.
+     * Until that worker sets the grey bit, other workers see the cell black and leave it alone.
+     *
+     * @param cell a cell in the covered area
+     * @return true if the cell was white and the caller marked it grey
+     */
+    @INLINE
+    final boolean atomicMarkGreyIfWhite(Pointer cell) {
+        final int bitIndex = bitIndexOf(cell);
+        if (!isWhite(bitIndex) || !atomicSetBit(bitIndex)) {
+            return false;
+        }
+        traceGreyMark(cell, bitIndex);
+        atomicSetBit(bitIndex + 1);
+        return true;
+    }
+
+    /**
+     * Atomic variant of {@link #markBlackFromGrey(int)} for parallel marking.
+     * Clearing the grey bit claims the cell: only the worker that succeeds visits it.
+     *
+     * @param bitIndex bit index of a cell in the color map
+     * @return true if the cell was grey and the caller marked it black
+     */
+    @INLINE
+    final boolean atomicMarkBlackFromGrey(int bitIndex) {
+        return atomicClearBit(bitIndex + 1);
+    }
+
+    /**
+     * Find the first grey mark in the specified range of the color map.
+     *
+     * @param firstBitIndex index in the color map of the first bit of the range to scan
+     * @param endBitIndex index in the color map of the bit immediately after the range to scan
+     * @return bit index in the color map of the first grey mark, or -1 if there is no grey mark in the range
+     */
+    final int firstGreyMark(int firstBitIndex, int endBitIndex) {
+        final Pointer colorMapBase = base.asPointer();
+        final int lastBitmapWordIndex = bitmapWordIndex(endBitIndex - 1);
+        int bitmapWordIndex = bitmapWordIndex(firstBitIndex);
+        long mask = -1L << bitIndexInWord(firstBitIndex);
+        while (bitmapWordIndex <= lastBitmapWordIndex) {
+            final long bitmapWord = colorMapBase.getLong(bitmapWordIndex) & mask;
+            if (bitmapWord != 0L) {
+                final long greyMarksInWord = bitmapWord & (bitmapWord >>> 1);
+                int bitIndexOfGreyCell = -1;
+                if (greyMarksInWord != 0L) {
+                    bitIndexOfGreyCell = (bitmapWordIndex << Word.widthValue().log2numberOfBits) + Pointer.fromLong(greyMarksInWord).leastSignificantBitSet();
+                } else if ((bitmapWord >>> LAST_BIT_INDEX_IN_WORD) == 1L && (colorMapBase.getLong(bitmapWordIndex + 1) & 1L) != 0L) {
+                    // Mark spans two words and is grey.
+                    bitIndexOfGreyCell = (bitmapWordIndex << Word.widthValue().log2numberOfBits) + LAST_BIT_INDEX_IN_WORD;
+                }
+                if (bitIndexOfGreyCell >= 0) {
+                    return bitIndexOfGreyCell < endBitIndex ? bitIndexOfGreyCell : -1;
+                }
+            }
+            mask = -1L;
+            bitmapWordIndex++;
+        }
+        return -1;
+    }
+
     final boolean isGrey(int bitIndex) {
         int bitIndexInWord = bitIndexInWord(bitIndex);
         if (bitIndexInWord == LAST_BIT_INDEX_IN_WORD) {
@@ -1253,6 +1398,18 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
     private final OverflowLinearScanState overflowLinearScanState;
     private final OverflowScanWithRescanMapState overflowScanWithRescanMapState;
 
+    /**
+     * Parallel tracing of heap regions.
+     * @see #useParallelMarking()
+     */
+    private final ParallelHeapMarking parallelMarking;
+
+    /**
+     * Tracing of the heap by a concurrent GC thread.
+     * @see #visitGreyObjectsConcurrently(ConcurrentGCThread)
+     */
+    private final ConcurrentHeapMarking concurrentMarking;
+
     /**
      * Indicates whether we're recovering from a marking stack overflow
      * (i.e., a scan of the marking stack in recovery mode is initiated).
@@ -1510,6 +1667,28 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         visitGreyObjects();
     }
 
+    private static boolean useParallelMarking() {
+        return ParallelMarking && GCWorkerGang.isParallel();
+    }
+
+    /**
+     * Parallel variant of {@link #visitGreyObjectsAfterRootMarking(HeapRegionRangeIterable)}.
+     * On return, the forward scan state is left as if it had completed a sequential scan, with
+     * both its finger and its rightmost set to the rightmost marked object. Special references can then be processed
+     * sequentially.
+     *
+     * @param regionsRanges an enumeration of the heap region ranges holding objects to trace.
+     */
+    private void parallelVisitGreyObjectsAfterRootMarking(HeapRegionRangeIterable regionsRanges) {
+        initAfterRootMarking();
+        currentScanState = forwardScanState;
+        overflowScanState.markingStackFlusher().setScanState(currentScanState);
+        final Address rightmost = parallelMarking.visitGreyObjects(regionsRanges, rootCellVisitor.rightmost);
+        forwardScanState.rightmost = rightmost;
+        forwardScanState.finger = rightmost;
+        forwardScanState.numMarkinkgStackOverflow = parallelMarking.numPasses - 1;
+    }
+
 
     /**
      * Find the first black mark in the specified range of the color map.
@@ -1837,7 +2016,11 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         markPhase = MARK_PHASE.VISIT_GREY_FORWARD;
         markPhase.traceBegin(traceGCPhases);
         startTimer(heapMarkingTimer);
-        visitGreyObjectsAfterRootMarking(regionsRanges);
+        if (useParallelMarking()) {
+            parallelVisitGreyObjectsAfterRootMarking(regionsRanges);
+        } else {
+            visitGreyObjectsAfterRootMarking(regionsRanges);
+        }
         stopTimer(heapMarkingTimer);
         markPhase.traceEnd(traceGCPhases);
 
@@ -1911,6 +2094,163 @@ public class TricolorHeapMarker implements MarkingStack.OverflowHandler, HeapMan
         markPhase = MARK_PHASE.DONE;
     }
 
+    /**
+     * Allocate the data structures needed by mostly-concurrent marking. Must be called at VM startup, after
+     * {@link #initialize(Address, Address, Address, Size)}, by heap schemes that use mostly-concurrent marking.
+     * Mostly-concurrent marking completes with a stop-the-world {@linkplain #finishConcurrentMarking(HeapRegionRangeIterable) remark}
+     * that uses the parallel marking support, whether or not parallel marking is enabled.
+     */
+    public void initializeConcurrentMarking() {
+        if (!useParallelMarking()) {
+            parallelMarking.initialize();
+        }
+        concurrentMarking.initialize();
+    }
+
+    /**
+     * Initial mark of a mostly-concurrent marking. Clears the color map and marks grey all the objects directly reachable from roots.
+     * Must be called while mutator threads are stopped. Tracing of the heap from the grey objects is then performed by
+     * {@link #visitGreyObjectsConcurrently(ConcurrentGCThread)} while mutators run. Mutators must mark grey, with
+     * {@link #markGreyConcurrently(Pointer)}, any reference they overwrite until the
+     * {@linkplain #finishConcurrentMarking(HeapRegionRangeIterable) remark}.
+     */
+    public void markRootsForConcurrentMarking() {
+        final boolean traceGCPhases = Heap.logGCPhases();
+        traceGCTimes = Heap.logGCTime();
+        markingStack.reset();
+        clearColorMap();
+        markRoots();
+        concurrentMarking.rightmost = rootCellVisitor.rightmost;
+        // Special references in the boot heap were discovered by the root marking. Their referents are treated as strong references.
+        SpecialReferenceManager.processDiscoveredSpecialReferences(concurrentMarking);
+        markPhase = MARK_PHASE.VISIT_GREY_FORWARD;
+        if (traceGCPhases) {
+            Log.println("BEGIN: Concurrent marking");
+        }
+    }
+
+    /**
+     * Trace the heap from the objects marked grey by {@link #markRootsForConcurrentMarking()} while mutator threads are running.
+     * Must be called by the concurrent GC thread between a {@link ConcurrentGCThread#beginWork()} and an {@link ConcurrentGCThread#endWork()}.
+     *
+     * @param gcThread the calling thread
+     * @return true if the tracing completed, false if it was aborted by a garbage collection
+     */
+    public boolean visitGreyObjectsConcurrently(ConcurrentGCThread gcThread) {
+        final boolean completed = concurrentMarking.visitGreyObjects(gcThread);
+        if (completed && Heap.logGCPhases()) {
+            Log.print("END: Concurrent marking, visited cells: ");
+            Log.print(concurrentMarking.visitedCells);
+            Log.print(", passes: ");
+            Log.println(concurrentMarking.numPasses);
+        }
+        return completed;
+    }
+
+    /**
+     * Snapshot-at-the-beginning write barrier support. Mark grey the specified object if it is white.
+     * Called by mutator threads on every reference they overwrite while a mostly-concurrent marking is in progress.
+     *
+     * @param cell a cell, which may be outside of the covered area
+     */
+    public void markGreyConcurrently(Pointer cell) {
+        if (isCovered(cell)) {
+            atomicMarkGreyIfWhite(cell);
+        }
+    }
+
+    /**
+     * Mark black all the objects of a range of the heap. Used at remark to mark live the objects allocated while a mostly-concurrent
+     * marking was in progress. The range must be parsable. Free chunks and dark matter in the range are left unmarked.
+     * Objects already marked are left as is.
+     *
+     * @param start start of the range
+     * @param end end of the range
+     */
+    public void markLive(Address start, Address end) {
+        Pointer cell = start.asPointer();
+        while (cell.lessThan(end)) {
+            final Pointer origin = Layout.cellToOrigin(cell);
+            if (HeapFreeChunk.isHeapFreeChunkOrigin(origin)) {
+                cell = cell.plus(HeapFreeChunk.getFreechunkSize(cell));
+                continue;
+            }
+            final Pointer nextCell = cell.plus(Layout.size(origin));
+            if (!DarkMatter.isDarkMatterHub(origin.readWord(Layout.hubIndex()))) {
+                markLiveCell(cell);
+            }
+            cell = nextCell;
+        }
+    }
+
+    /**
+     * Mark black a single object allocated while a mostly-concurrent marking was in progress.
+     * @param cell a cell in the covered area
+     * @see #markLive(Address, Address)
+     */
+    public void markLiveCell(Pointer cell) {
+        final int bitIndex = bitIndexOf(cell);
+        if (isWhite(bitIndex)) {
+            traceBlackMark(cell, bitIndex);
+            atomicSetBit(bitIndex);
+            if (cell.greaterThan(concurrentMarking.rightmost)) {
+                concurrentMarking.rightmost = cell;
+            }
+        }
+    }
+
+    /**
+     * Remark of a mostly-concurrent marking. Trace the objects marked grey by mutators since the concurrent tracing completed (or all the objects
+     * left grey if the concurrent tracing was aborted). Special references discovered during the remark are treated as strong references, as they
+     * are during the concurrent tracing. Must be called while mutator threads are stopped, after the objects allocated during the marking
+     * have been {@linkplain #markLive(Address, Address) marked live}. The heap can then be swept as after a {@link #markAll(HeapRegionRangeIterable)}.
+     *
+     * @param regionsRanges enumerate ranges of heap regions holding objects to trace
+     */
+    public void finishConcurrentMarking(HeapRegionRangeIterable regionsRanges) {
+        final boolean traceGCPhases = Heap.logGCPhases();
+        markPhase.traceBegin(traceGCPhases);
+        startTimer(heapMarkingTimer);
+        parallelMarking.referencesAreStrong = true;
+        final Address rightmost = parallelMarking.visitGreyObjects(regionsRanges, concurrentMarking.rightmost);
+        parallelMarking.referencesAreStrong = false;
+        forwardScanState.rightmost = rightmost;
+        forwardScanState.finger = rightmost;
+        stopTimer(heapMarkingTimer);
+        markPhase.traceEnd(traceGCPhases);
+        if (VerifyAfterMarking || VerifyGreyLessAreas) {
+            regionsRanges.reset();
+            verifyHasNoGreyMarks(regionsRanges, forwardScanState.endOfRightmostVisitedObject());
+        }
+        markPhase = MARK_PHASE.DONE;
+    }
+
+    /**
+     * Incremental variant of {@link #sweep(HeapRegionSweeper, boolean)}. Sweep the next region of the heap region sweeper.
+     * Sweeping completes when the region holding the rightmost live object has been swept, at which point
+     * the sweeper is notified that it has {@linkplain HeapRegionSweeper#reachedRightmostLiveRegion() reached the rightmost live region}.
+     *
+     * @param regionsSweeper the heap region sweeper
+     * @param doImprecise whether to sweep imprecisely
+     * @return true if there are more regions to sweep, false if sweeping completed
+     */
+    public boolean sweepNextRegion(HeapRegionSweeper regionsSweeper, boolean doImprecise) {
+        if (regionsSweeper.hasNextSweepingRegion()) {
+            regionsSweeper.beginSweep();
+            if (doImprecise) {
+                impreciseRegionSweep(regionsSweeper);
+            } else {
+                preciseRegionSweep(regionsSweeper);
+            }
+            regionsSweeper.endSweep();
+            if (regionsSweeper.endOfSweepingRegion().lessThan(endOfCell(forwardScanState.rightmost))) {
+                return true;
+            }
+        }
+        regionsSweeper.reachedRightmostLiveRegion();
+        return false;
+    }
+
     /**
      * Contiguous region of memory used by the heap marker for the color map.
      * @return a non-null {@link MemoryRegion}
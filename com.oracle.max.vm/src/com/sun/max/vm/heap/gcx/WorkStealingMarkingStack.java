@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx;
+
+import static com.sun.max.vm.VMOptions.*;
+
+import com.oracle.max.cri.intrinsics.*;
+import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.reference.*;
+
+/**
+ * Fixed size marking stack for parallel heap tracing.
+ * Each GC worker owns one such stack. The owner pushes and pops cells at the bottom end of the stack without
+ * synchronization, whereas workers running out of work steal cells from the top end with a compare-and-swap.
+ * The implementation follows the non-blocking work-stealing deque of Arora, Blumofe and Plaxton (SPAA'98):
+ * the top index is paired with a tag in a single word ({@link #age}) so that a thief can't be fooled when the owner
+ * empties and refills the stack between the thief's read of the top and its compare-and-swap.
+ *
+ * Unlike the {@link MarkingStack}, this stack never drains itself: {@link #push(Pointer)} just fails when the stack
+ * is full, and the caller is responsible for keeping track of the cell otherwise (see {@link ParallelHeapMarking}).
+ *
+ * A stack created with {@link #WorkStealingMarkingStack(boolean)} holds ranges of cells instead of single cells (see
+ * {@link ParallelNurseryEvacuator}). Each entry then takes two words, and is pushed, popped and stolen with the
+ * {@linkplain #pushRange(Address, Address) range variants} of the stack operations.
+ */
+final class WorkStealingMarkingStack {
+    private static final VMIntOption parallelMarkingStackSizeOption =
+        register(new VMIntOption("-XX:ParallelMarkingStackSize=", 8 * 1024, "Size of the marking stack of each GC worker, in number of references."),
+                        MaxineVM.Phase.PRISTINE);
+
+    private static final long TOP_MASK = 0xFFFFFFFFL;
+    private static final int TAG_SHIFT = 32;
+
+    private Address base;
+    private int capacity;
+
+    /**
+     * Log2 of the number of words of an entry: 0 for a stack of cells, 1 for a stack of ranges.
+     */
+    private final int entryShift;
+
+    /**
+     * End of the range last returned by {@link #popRange()}. Only used by the owner of the stack.
+     */
+    private Address poppedRangeEnd = Address.zero();
+
+    /**
+     * Index of the next free slot. Only updated by the owner of the stack.
+     */
+    private volatile int bottom;
+
+    /**
+     * Index of the oldest cell on the stack (low 32 bits) and a tag incremented every time the owner resets an emptied stack (high 32 bits).
+     * Updated by compare-and-swap only, except by the owner when resetting an empty stack.
+     */
+    private volatile long age;
+
+    @FOLD
+    private static int ageOffset() {
+        return ClassActor.fromJava(WorkStealingMarkingStack.class).findLocalInstanceFieldActor("age").offset();
+    }
+
+    @INLINE
+    private static int top(long age) {
+        return (int) (age & TOP_MASK);
+    }
+
+    @INLINE
+    private boolean casAge(long expectedAge, long newAge) {
+        return Reference.fromJava(this).toOrigin().compareAndSwapLong(ageOffset(), expectedAge, newAge) == expectedAge;
+    }
+
+    WorkStealingMarkingStack() {
+        this(false);
+    }
+
+    /**
+     * Creates a stack of cells or a stack of ranges of cells.
+     *
+     * @param holdsRanges true if the stack's entries are ranges of cells
+     */
+    WorkStealingMarkingStack(boolean holdsRanges) {
+        entryShift = holdsRanges ? 1 : 0;
+    }
+
+    void initialize() {
+        initialize(parallelMarkingStackSizeOption.getValue());
+    }
+
+    /**
+     * Allocates the backing storage of the stack.
+     *
+     * @param capacity maximum number of entries the stack can hold
+     */
+    void initialize(int capacity) {
+        this.capacity = capacity;
+        final Size size = Size.fromInt(capacity).shiftedLeft(Word.widthValue().log2numberOfBytes + entryShift);
+        base = Memory.allocate(size);
+        if (base.isZero()) {
+            MaxineVM.reportPristineMemoryFailure("parallel marking stack", "allocate", size);
+        }
+        reset();
+    }
+
+    /**
+     * Empties the stack. Must only be called when no other worker may steal from the stack.
+     */
+    void reset() {
+        bottom = 0;
+        age = 0L;
+    }
+
+    /**
+     * Indicates whether the stack looks empty. The answer may be stale by the time it is used, unless the caller is the owner
+     * of the stack and no other worker has work.
+     */
+    @INLINE
+    boolean isEmpty() {
+        return bottom <= top(age);
+    }
+
+    /**
+     * Pushes a cell at the bottom of the stack. Must only be called by the owner of the stack.
+     *
+     * @param cell a grey cell
+     * @return false if the stack is full, true otherwise
+     */
+    boolean push(Pointer cell) {
+        final int b = bottom;
+        if (b == capacity) {
+            return false;
+        }
+        base.asPointer().setWord(b, cell);
+        // The cell must be visible to thieves before the new bottom.
+        MemoryBarriers.barrier(MemoryBarriers.STORE_STORE);
+        bottom = b + 1;
+        return true;
+    }
+
+    /**
+     * Pushes a range of cells at the bottom of a stack of ranges. Must only be called by the owner of the stack.
+     *
+     * @param start start of the range
+     * @param end end of the range
+     * @return false if the stack is full, true otherwise
+     */
+    boolean pushRange(Address start, Address end) {
+        final int b = bottom;
+        if (b == capacity) {
+            return false;
+        }
+        base.asPointer().setWord(b << 1, start);
+        base.asPointer().setWord((b << 1) + 1, end);
+        // The range must be visible to thieves before the new bottom.
+        MemoryBarriers.barrier(MemoryBarriers.STORE_STORE);
+        bottom = b + 1;
+        return true;
+    }
+
+    /**
+     * Pops a cell from the bottom of the stack. Must only be called by the owner of the stack.
+     *
+     * @return a cell, or zero if the stack is empty
+     */
+    Pointer pop() {
+        final int index = popIndex();
+        if (index < 0) {
+            return Pointer.zero();
+        }
+        return base.asPointer().getWord(index).asPointer();
+    }
+
+    /**
+     * Pops a range from the bottom of a stack of ranges. Must only be called by the owner of the stack.
+     *
+     * @return the start of the range, or zero if the stack is empty. The end of the range is then available from {@link #poppedRangeEnd()}.
+     */
+    Pointer popRange() {
+        final int index = popIndex();
+        if (index < 0) {
+            return Pointer.zero();
+        }
+        poppedRangeEnd = base.asPointer().getWord((index << 1) + 1).asAddress();
+        return base.asPointer().getWord(index << 1).asPointer();
+    }
+
+    /**
+     * End of the range last returned by {@link #popRange()}.
+     */
+    Address poppedRangeEnd() {
+        return poppedRangeEnd;
+    }
+
+    /**
+     * Removes the bottom entry of the stack.
+     * Only the owner of the stack writes entries, so the entry can be read once removed.
+     *
+     * @return the index of the removed entry, or -1 if the stack is empty
+     */
+    private int popIndex() {
+        int b = bottom;
+        if (b == 0) {
+            return -1;
+        }
+        b--;
+        bottom = b;
+        // The new bottom must be visible to thieves before reading the age.
+        MemoryBarriers.barrier(MemoryBarriers.STORE_LOAD);
+        final long oldAge = age;
+        final int top = top(oldAge);
+        if (b > top) {
+            return b;
+        }
+        // At most one entry left, possibly being stolen. Reset the stack and bump the tag
+        // so that any thief in-flight fails its compare-and-swap.
+        bottom = 0;
+        final long newAge = ((oldAge >>> TAG_SHIFT) + 1) << TAG_SHIFT;
+        if (b == top && casAge(oldAge, newAge)) {
+            // Won the race for the last entry.
+            return b;
+        }
+        age = newAge;
+        return -1;
+    }
+
+    /**
+     * Steals a cell from the top of the stack. May be called by any worker.
+     *
+     * @return a cell, or zero if the stack was empty or if another worker took the cell first.
+     */
+    Pointer steal() {
+        final long oldAge = age;
+        MemoryBarriers.barrier(MemoryBarriers.LOAD_LOAD);
+        final int b = bottom;
+        final int top = top(oldAge);
+        if (b <= top) {
+            return Pointer.zero();
+        }
+        final Pointer cell = base.asPointer().getWord(top).asPointer();
+        if (casAge(oldAge, oldAge + 1)) {
+            return cell;
+        }
+        return Pointer.zero();
+    }
+
+    /**
+     * Steals a range from the top of a stack of ranges and pushes it on the thief's own stack, which must be empty.
+     * May be called by any worker.
+     *
+     * @param thief the stack of ranges of the calling worker
+     * @return true if a range was stolen, false if the stack was empty or if another worker took the range first.
+     */
+    boolean stealRange(WorkStealingMarkingStack thief) {
+        final long oldAge = age;
+        MemoryBarriers.barrier(MemoryBarriers.LOAD_LOAD);
+        final int b = bottom;
+        final int top = top(oldAge);
+        if (b <= top) {
+            return false;
+        }
+        // Read the range before claiming it: the owner may overwrite the entry as soon as it is claimed.
+        final Address start = base.asPointer().getWord(top << 1).asAddress();
+        final Address end = base.asPointer().getWord((top << 1) + 1).asAddress();
+        if (casAge(oldAge, oldAge + 1)) {
+            thief.pushRange(start, end);
+            return true;
+        }
+        return false;
+    }
+}
@@ -22,6 +22,7 @@
  */
 package com.sun.max.vm.heap.gcx.gen.mse;
 import static com.sun.max.vm.VMConfiguration.*;
+import static com.sun.max.vm.heap.gcx.EvacuationTimers.TIMED_OPERATION.*;
 import static com.sun.max.vm.heap.gcx.HeapRegionConstants.*;
 import static com.sun.max.vm.heap.gcx.HeapRegionManager.*;
 import static com.sun.max.vm.heap.gcx.gen.mse.GenMSEHeapScheme.GenMSEHeapRegionTag.*;
@@ -57,9 +58,17 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
      */
     static int YoungGenHeapPercent = 30;
     static Size ELABSize = Size.K.times(64);
+    static boolean CardRefinement;
+    /**
+     * Knob for sizing the generations to meet a pause time goal instead of a fixed ratio.
+     * @see PauseTimeGoalGenHeapSizingPolicy
+     */
+    static boolean PauseTimeGoalHeapSizing;
     static {
         VMOptions.addFieldOption("-XX:", "YoungGenHeapPercent", GenMSEHeapScheme.class, "Fixed percentage of heap size that must be used by young gen", Phase.PRISTINE);
-        VMOptions.addFieldOption("-XX:", "ELABSize", GenMSEHeapScheme.class, "Size of evacuation buffers for young gen evacuation to old gen", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "ELABSize", GenMSEHeapScheme.class, "Size of the evacuation buffers of each GC worker for young gen evacuation to old gen", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "CardRefinement", GenMSEHeapScheme.class, "Clean the dirty cards of the old gen that hold no young references concurrently with mutators", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "PauseTimeGoalHeapSizing", GenMSEHeapScheme.class, "Resize young and old gen to meet pause time and GC time goals (-XX:MaxGCPauseMillis, -XX:GCTimePercent)", Phase.PRISTINE);
     }
 
     public enum GenMSEHeapRegionTag {
@@ -94,6 +103,11 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
      */
     private GenHeapSizingPolicy heapResizingPolicy;
 
+    /**
+     * Same as {@link #heapResizingPolicy} when {@link #PauseTimeGoalHeapSizing} is enabled, null otherwise.
+     */
+    private PauseTimeGoalGenHeapSizingPolicy pauseTimeGoalPolicy;
+
     /**
      * Card-table based remembered set for the nursery.
      */
@@ -104,6 +118,21 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
      */
     private final NoAgingNurseryEvacuator youngSpaceEvacuator;
 
+    /**
+     * Parallel implementation of young space evacuation. Used instead of {@link #youngSpaceEvacuator} when
+     * {@link ParallelNurseryEvacuator#isEnabled()}.
+     */
+    private final ParallelNurseryEvacuator parallelYoungSpaceEvacuator;
+
+    /**
+     * Thread refining the card table between young collections when {@link #CardRefinement} is enabled.
+     */
+    private CardRefinementThread cardRefinementThread;
+
+    private final EvacuationTimers evacTimers = new EvacuationTimers();
+
+    private final Evacuator.PhaseLogger evacPhaseLogger = new Evacuator.PhaseLogger();
+
     /**
      * Operation to submit to the {@link VmOperationThread} to perform a generational collection.
      */
@@ -134,6 +163,11 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
 
         oldSpace = new FirstFitMarkSweepSpace<GenMSEHeapScheme>(heapAccount, tlabAllocator, overflowAllocator, true, cardTableRSet, OLD.tag());
         youngSpaceEvacuator = new NoAgingNurseryEvacuator(youngSpace, oldSpace, this, cardTableRSet, "Young");
+        youngSpaceEvacuator.setTimers(evacTimers);
+        youngSpaceEvacuator.setPhaseLogger(evacPhaseLogger);
+        parallelYoungSpaceEvacuator = new ParallelNurseryEvacuator(youngSpace, oldSpace, this, cardTableRSet);
+        parallelYoungSpaceEvacuator.setTimers(evacTimers);
+        parallelYoungSpaceEvacuator.setPhaseLogger(evacPhaseLogger);
         noYoungReferencesVerifier = new NoEvacuatedSpaceReferenceVerifier(cardTableRSet, youngSpace);
         fotVerifier = new FOTVerifier(cardTableRSet);
         genCollection = new GenCollection();
@@ -143,6 +177,18 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
     public void initialize(MaxineVM.Phase phase) {
         super.initialize(phase);
         cardTableRSet.initialize(phase);
+        if (phase == MaxineVM.Phase.STARTING) {
+            GCWorkerGang.start();
+            if (CardRefinement) {
+                Heap.enableImmortalMemoryAllocation();
+                try {
+                    cardRefinementThread = new CardRefinementThread(youngSpace, cardTableRSet, Size.fromInt(regionSizeInBytes));
+                } finally {
+                    Heap.disableImmortalMemoryAllocation();
+                }
+                cardRefinementThread.start();
+            }
+        }
     }
 
     /**
@@ -232,7 +278,12 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
                 MaxineVM.reportPristineMemoryFailure("reserved space leftover", "deallocate", leftoverSize);
             }
 
-            heapResizingPolicy = new FixedRatioGenHeapSizingPolicy(initSize, maxSize, YoungGenHeapPercent, log2RegionSizeInBytes);
+            if (PauseTimeGoalHeapSizing) {
+                pauseTimeGoalPolicy = new PauseTimeGoalGenHeapSizingPolicy(initSize, maxSize, YoungGenHeapPercent, log2RegionSizeInBytes);
+                heapResizingPolicy = pauseTimeGoalPolicy;
+            } else {
+                heapResizingPolicy = new FixedRatioGenHeapSizingPolicy(initSize, maxSize, YoungGenHeapPercent, log2RegionSizeInBytes);
+            }
             if (!heapAccount().open(numberOfRegions(applicationHeapMaxSize))) {
                 FatalError.unexpected("Failed to create application heap");
             }
@@ -243,6 +294,9 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
             // worst case evacuation and the number of fragments of old space available for allocation.
             // Same with the lab size. In non parallel evacuators, this should be all the space available for allocation in a region.
             youngSpaceEvacuator.initialize(1000, false, oldSpace.minReclaimableSpace(), false);
+            if (ParallelNurseryEvacuator.isEnabled()) {
+                parallelYoungSpaceEvacuator.initialize(1000, oldSpace.minReclaimableSpace());
+            }
 
             if (HeapRangeDumper.DumpOnError) {
                 MemoryRegion dumpingCoverage = new MemoryRegion();
@@ -281,6 +335,10 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
     final class GenCollection extends GCOperation {
         HeapRegionRangeIterable regionsRangeIterable;
         int fullCollectionCount = 0;
+        /**
+         * Set when the last collection couldn't leave enough free space in the old generation to cover the worst case evacuation of the young generation.
+         */
+        boolean outOfMemory;
         GenCollection() {
             super("GenCollection");
             regionsRangeIterable = new HeapRegionRangeIterable();
@@ -312,6 +370,66 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
             HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.MUTATING);
         }
 
+        /**
+         * Resize the generations so that the old generation's free space covers the worst case evacuation of the young generation.
+         * The old generation is grown first, within the limits of the maximum heap size. The young generation is shrunk to
+         * whatever free space is left in the old generation otherwise.
+         *
+         * @return true if the old generation can absorb the worst case evacuation of the young generation after resizing
+         */
+        private boolean resizeForWorstCaseEvacuation() {
+            Size worstCaseEvac = youngSpace.totalSpace();
+            Size freeSpace = oldSpace.freeSpace();
+            final Size oldGenMaxGrowth = heapResizingPolicy.maxOldGenSize().minus(oldSpace.totalSpace());
+            Size growth = worstCaseEvac.minus(freeSpace);
+            if (growth.greaterThan(oldGenMaxGrowth)) {
+                growth = oldGenMaxGrowth;
+            }
+            if (!growth.isZero()) {
+                freeSpace = freeSpace.plus(oldSpace.increaseSize(growth));
+            }
+            if (worstCaseEvac.greaterThan(freeSpace)) {
+                // Shrink the young gen down to what the old gen can absorb. The nursery always keeps at least one region.
+                youngSpace.decreaseSize(worstCaseEvac.minus(freeSpace).alignUp(regionSizeInBytes));
+                worstCaseEvac = youngSpace.totalSpace();
+            }
+            if (Heap.verbose()) {
+                Log.print("--Resized for worst case evacuation: young gen ");
+                Log.print(worstCaseEvac.toLong());
+                Log.print(" bytes, old gen free space ");
+                Log.print(freeSpace.toLong());
+                Log.println(" bytes");
+            }
+            return !worstCaseEvac.greaterThan(freeSpace);
+        }
+
+        /**
+         * Resize the generations according to the {@link PauseTimeGoalGenHeapSizingPolicy}.
+         * This takes place after the nursery was evacuated, so the young gen can be freely resized.
+         *
+         * @param fullCollection true if the old gen was collected during this collection
+         */
+        private void resizeToPauseTimeGoal(boolean fullCollection) {
+            final Size youngSize = youngSpace.totalSpace();
+            final Size desiredYoungSize = pauseTimeGoalPolicy.desiredYoungGenSize(youngSize, oldSpace.totalSpace());
+            if (desiredYoungSize.lessThan(youngSize)) {
+                youngSpace.decreaseSize(youngSize.minus(desiredYoungSize));
+            } else if (desiredYoungSize.greaterThan(youngSize)) {
+                // Grow the old gen first so that it keeps covering the worst case evacuation of the larger young gen.
+                final Size oldGrowth = pauseTimeGoalPolicy.oldGenGrowth(desiredYoungSize, oldSpace.totalSpace(), oldSpace.freeSpace(), false);
+                if (!oldGrowth.isZero()) {
+                    oldSpace.increaseSize(oldGrowth);
+                }
+                if (!desiredYoungSize.greaterThan(oldSpace.freeSpace())) {
+                    youngSpace.increaseSize(desiredYoungSize.minus(youngSize));
+                }
+            }
+            final Size oldGrowth = pauseTimeGoalPolicy.oldGenGrowth(youngSpace.totalSpace(), oldSpace.totalSpace(), oldSpace.freeSpace(), fullCollection);
+            if (!oldGrowth.isZero()) {
+                oldSpace.increaseSize(oldGrowth);
+            }
+        }
+
         @Override
         protected void collect(int invocationCount) {
             // Collector proceeds as follows:
@@ -324,16 +442,26 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
             // This requires evacuating all of its objects somehow. Rather that doing a full GC covering both
             // the old and young gen and somehow reclaim enough regions for a fresh nursery, we just perform a nursery evacuation.
             // The full GC is thereafter just a old gen GC with an empty young gen.
+            evacTimers.resetTrackTime(pauseTimeGoalPolicy != null);
+            evacTimers.start(TOTAL);
             VmThreadMap.ACTIVE.forAllThreadLocals(null, tlabFiller);
             vmConfig().monitorScheme().beforeGarbageCollection();
             if (Heap.verbose()) {
                 Log.println("--Begin nursery evacuation");
             }
-            youngSpaceEvacuator.setGCOperation(this);
-            HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.ANALYZING);
-            youngSpaceEvacuator.evacuate(Heap.logGCPhases());
-            HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.RECLAIMING);
-            youngSpaceEvacuator.setGCOperation(null);
+            if (ParallelNurseryEvacuator.isEnabled()) {
+                parallelYoungSpaceEvacuator.setGCOperation(this);
+                HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.ANALYZING);
+                parallelYoungSpaceEvacuator.evacuate(Heap.logGCPhases());
+                HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.RECLAIMING);
+                parallelYoungSpaceEvacuator.setGCOperation(null);
+            } else {
+                youngSpaceEvacuator.setGCOperation(this);
+                HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.ANALYZING);
+                youngSpaceEvacuator.evacuate(Heap.logGCPhases());
+                HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.RECLAIMING);
+                youngSpaceEvacuator.setGCOperation(null);
+            }
             if (Heap.verbose()) {
                 Log.println("--End nursery evacuation");
             }
@@ -342,8 +470,11 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
             }
             Size worstCaseEvac = youngSpace.totalSpace();
             Size freeSpace = oldSpace.freeSpace();
+            boolean fullCollection = false;
+            outOfMemory = false;
             HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.MUTATING);
             if (worstCaseEvac.greaterThan(freeSpace)) {
+                fullCollection = true;
                 if (Heap.verbose()) {
                     Log.println("--Begin old geneneration collection");
                 }
@@ -357,10 +488,19 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
                 }
                 freeSpace = oldSpace.freeSpace();
                 if (worstCaseEvac.greaterThan(freeSpace)) {
-                    // TODO: 3 and 4.
-                    FatalError.unimplemented();
+                    // 3. grow the old gen if the heap isn't at its maximum size yet, then shrink the young gen to what's left.
+                    // 4. if no young gen can be evacuated in what's left, we're out of memory.
+                    outOfMemory = !resizeForWorstCaseEvacuation();
                 }
             }
+            evacTimers.stop(TOTAL);
+            if (pauseTimeGoalPolicy != null && !outOfMemory) {
+                pauseTimeGoalPolicy.recordPause(evacTimers.get(TOTAL).getLastElapsedTime(), fullCollection);
+                resizeToPauseTimeGoal(fullCollection);
+            }
+            if (cardRefinementThread != null) {
+                cardRefinementThread.publishOldSpaceRanges(oldSpace);
+            }
             final GCRequest gcRequest = callingThread().gcRequest;
             gcRequest.lastInvocationCount = invocationCount;
         }
@@ -374,7 +514,7 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
     @Override
     public boolean collectGarbage() {
         genCollection.submit();
-        return true;
+        return !genCollection.outOfMemory;
     }
 
     @Override
@@ -444,7 +584,7 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
             allocateAndRefillTLAB(etla, tlabSize);
             // Let's do a bit of meta-circularity. The TLAB is refilled, and no-one except the current thread can use it.
             // So the TLAB allocation is going to succeed here
-            TLABRefillPolicy.setForCurrentThread(etla, new SimpleTLABRefillPolicy(tlabSize));
+            TLABRefillPolicy.setForCurrentThread(etla, newTLABRefillPolicy(tlabSize));
             // Now, address the initial request. Note that we may recurse down to handleTLABOverflow again here if the
             // request is larger than the TLAB size. However, this second call will succeed and allocate outside of the TLAB.
             return tlabAllocate(size);
@@ -456,7 +596,7 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
             // always return zero for the next TLAB size.
             return youngSpace.allocate(size);
         }
-        if (!refillPolicy.shouldRefill(size, tlabMark)) {
+        if (!refillPolicy.shouldRefill(size, tlabMark, tlabEnd)) {
             // Size would fit in a new tlab, but the policy says we shouldn't refill the TLAB yet, so allocate directly in the young generation.
             return youngSpace.allocate(size);
         }
@@ -495,6 +635,11 @@ final public class GenMSEHeapScheme extends HeapSchemeWithTLABAdaptor  implement
         return XirWriteBarrierSpecification.NULL_WRITE_BARRIER_GEN;
     }
 
+    @HOSTED_ONLY
+    public void setRuntimeCallGenerator(XirRuntimeCallGenerator runtimeCallGenerator) {
+        // Card marking never calls into the runtime.
+    }
+
     @Override
     public PhaseLogger phaseLogger() {
         return HeapSchemeLoggerAdaptor.phaseLogger;
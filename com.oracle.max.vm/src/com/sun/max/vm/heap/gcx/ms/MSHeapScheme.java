@@ -400,7 +400,7 @@ public final class MSHeapScheme extends HeapSchemeWithTLABAdaptor {
             allocateAndRefillTLAB(etla, tlabSize);
             // Let's do a bit of dirty meta-circularity. The TLAB is refilled, and no-one except the current thread can use it.
             // So the tlab allocation is going to succeed here
-            TLABRefillPolicy.setForCurrentThread(etla, new SimpleTLABRefillPolicy(tlabSize));
+            TLABRefillPolicy.setForCurrentThread(etla, newTLABRefillPolicy(tlabSize));
             // Now, address the initial request. Note that we may recurse down to handleTLABOverflow again here if the
             // request is larger than the TLAB size. However, this second call will succeed and allocate outside of the tlab.
             return tlabAllocate(size);
@@ -433,7 +433,7 @@ public final class MSHeapScheme extends HeapSchemeWithTLABAdaptor {
                 return changeTLABChunkOrAllocate(etla, tlabMark, hardLimit, nextChunk, size);
             }
 
-            if (!refillPolicy.shouldRefill(size, tlabMark)) {
+            if (!refillPolicy.shouldRefill(size, tlabMark, tlabEnd)) {
                 // Size would fit in a new tlab, but the policy says we shouldn't refill the tlab yet, so allocate directly in the heap.
                 return objectSpace.allocate(size);
             }
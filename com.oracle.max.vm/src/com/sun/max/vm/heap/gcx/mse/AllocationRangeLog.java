@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx.mse;
+
+import com.sun.max.annotate.*;
+import com.sun.max.memory.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.heap.gcx.*;
+import com.sun.max.vm.reference.*;
+
+/**
+ * Log of the ranges of heap memory allocated by mutators while a mostly-concurrent marking is in progress.
+ * Objects allocated during the marking aren't traced: at remark, every object in a logged range is marked live.
+ * Logged ranges are either TLAB chunks, which are parsed at remark, or single cells allocated directly in the heap, which are logged
+ * with a zero end.
+ * <p>
+ * Mutators claim log entries with a compare-and-swap. The log is off-heap and has a fixed capacity. When it overflows,
+ * the objects allocated during the marking cannot be accounted for and the concurrent cycle must be abandoned
+ * in favor of a stop-the-world collection.
+ */
+final class AllocationRangeLog {
+    /**
+     * Off-heap storage of the log. Each entry comprises two words: the start and end of a range.
+     */
+    private Pointer ranges = Pointer.zero();
+
+    /**
+     * Maximum number of entries in the log.
+     */
+    private int capacity;
+
+    /**
+     * Number of entries claimed so far.
+     */
+    private volatile int numRanges;
+
+    /**
+     * Whether allocations are logged.
+     */
+    private volatile boolean enabled;
+
+    /**
+     * Whether more ranges were allocated than the log can hold since the log was last enabled.
+     */
+    private boolean overflowed;
+
+    @FOLD
+    private static int numRangesOffset() {
+        return ClassActor.fromJava(AllocationRangeLog.class).findLocalInstanceFieldActor("numRanges").offset();
+    }
+
+    @INLINE
+    private boolean casNumRanges(int expectedValue, int newValue) {
+        return Reference.fromJava(this).toOrigin().compareAndSwapInt(numRangesOffset(), expectedValue, newValue) == expectedValue;
+    }
+
+    AllocationRangeLog() {
+    }
+
+    /**
+     * Allocate the storage of the log. Called at VM startup.
+     * @param capacity maximum number of ranges the log can hold
+     */
+    void initialize(int capacity) {
+        this.capacity = capacity;
+        final Size size = Size.fromInt(capacity).shiftedLeft(Word.widthValue().log2numberOfBytes + 1);
+        ranges = Memory.allocate(size);
+        if (ranges.isZero()) {
+            MaxineVM.reportPristineMemoryFailure("allocation range log", "allocate", size);
+        }
+    }
+
+    /**
+     * Empty the log and start logging allocations. Must be called during a stop-the-world pause.
+     */
+    void enable() {
+        Memory.clearWords(ranges, numRanges << 1);
+        numRanges = 0;
+        overflowed = false;
+        enabled = true;
+    }
+
+    /**
+     * Stop logging allocations. Must be called during a stop-the-world pause.
+     */
+    void disable() {
+        enabled = false;
+    }
+
+    @INLINE
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    boolean overflowed() {
+        return overflowed;
+    }
+
+    /**
+     * Log a range of freshly allocated memory, if logging is enabled.
+     * @param start start of the range
+     * @param end end of the range
+     */
+    void record(Address start, Address end) {
+        if (!enabled) {
+            return;
+        }
+        int index;
+        do {
+            index = numRanges;
+            if (index >= capacity) {
+                overflowed = true;
+                return;
+            }
+        } while (!casNumRanges(index, index + 1));
+        final int wordIndex = index << 1;
+        ranges.setWord(wordIndex + 1, end);
+        ranges.setWord(wordIndex, start);
+    }
+
+    /**
+     * Log a cell allocated directly in the heap, if logging is enabled.
+     * @param cell the allocated cell
+     */
+    void recordCell(Address cell) {
+        record(cell, Address.zero());
+    }
+
+    /**
+     * Mark live all the objects in the logged ranges. Must be called during a stop-the-world pause, once the logged ranges are parsable.
+     * @param heapMarker the heap marker performing the marking
+     */
+    void markLive(TricolorHeapMarker heapMarker) {
+        final int n = numRanges;
+        for (int i = 0; i < n; i++) {
+            final int wordIndex = i << 1;
+            final Address start = ranges.getWord(wordIndex).asAddress();
+            if (start.isZero()) {
+                // Entry claimed by a mutator that hasn't filled it yet.
+                continue;
+            }
+            final Address end = ranges.getWord(wordIndex + 1).asAddress();
+            if (end.isZero()) {
+                heapMarker.markLiveCell(start.asPointer());
+            } else {
+                heapMarker.markLive(start, end);
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.heap.gcx.mse;
+
+import com.sun.max.vm.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.monitor.modal.sync.*;
+
+/**
+ * Thread running the concurrent phases of the mostly-concurrent mark-sweep cycles of a {@link MSEHeapScheme}.
+ * The thread waits for a mutator to request a cycle, then runs the initial mark, traces the heap concurrently,
+ * runs the remark and sweeps the heap concurrently.
+ */
+final class ConcurrentMarkSweepThread extends ConcurrentGCThread {
+    private static final Object LOCK = JavaMonitorManager.newVmLock("CONCURRENT_MARK_SWEEP_LOCK");
+
+    private final MSEHeapScheme heapScheme;
+
+    /**
+     * Set when a cycle is requested, cleared when the cycle completes.
+     */
+    private volatile boolean cycleRequested;
+
+    /**
+     * Set by a stop-the-world collection that aborted the concurrent marking in progress, cleared by the initial mark.
+     */
+    volatile boolean cycleAborted;
+
+    ConcurrentMarkSweepThread(MSEHeapScheme heapScheme) {
+        super("ConcurrentMarkSweep");
+        this.heapScheme = heapScheme;
+    }
+
+    boolean isIdle() {
+        return !cycleRequested;
+    }
+
+    void requestCycle() {
+        synchronized (LOCK) {
+            if (!cycleRequested) {
+                cycleRequested = true;
+                LOCK.notify();
+            }
+        }
+    }
+
+    @Override
+    protected boolean workAborted() {
+        return cycleAborted;
+    }
+
+    private void waitForRequest() {
+        synchronized (LOCK) {
+            while (!cycleRequested) {
+                try {
+                    LOCK.wait();
+                } catch (InterruptedException e) {
+                    Log.println("Caught InterruptedException while waiting for a concurrent mark-sweep cycle request");
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void doRun() {
+        while (true) {
+            waitForRequest();
+            heapScheme.initialMark.submit();
+            if (!cycleAborted) {
+                beginWork();
+                final boolean completed = heapScheme.markConcurrently(this);
+                endWork();
+                if (completed) {
+                    heapScheme.remark.submit();
+                    while (heapScheme.sweepNextRegion(this)) {
+                        // Keep sweeping until the heap is fully swept or sweeping is aborted by a stop-the-world collection.
+                    }
+                }
+            }
+            cycleRequested = false;
+        }
+    }
+}
@@ -26,16 +26,23 @@ import static com.sun.max.vm.VMConfiguration.*;
 import static com.sun.max.vm.heap.gcx.HeapRegionManager.*;
 import static com.sun.max.vm.intrinsics.MaxineIntrinsicIDs.*;
 
+import com.sun.cri.ci.*;
+import com.sun.cri.xir.*;
+import com.sun.cri.xir.CiXirAssembler.XirLabel;
+import com.sun.cri.xir.CiXirAssembler.XirOperand;
 import com.sun.max.annotate.*;
 import com.sun.max.memory.*;
 import com.sun.max.platform.*;
 import com.sun.max.program.*;
 import com.sun.max.unsafe.*;
+import com.sun.max.util.*;
 import com.sun.max.util.timer.*;
 import com.sun.max.vm.*;
 import com.sun.max.vm.MaxineVM.Phase;
+import com.sun.max.vm.actor.holder.*;
 import com.sun.max.vm.code.*;
 import com.sun.max.vm.heap.*;
+import com.sun.max.vm.heap.debug.*;
 import com.sun.max.vm.heap.gcx.*;
 import com.sun.max.vm.heap.gcx.rset.*;
 import com.sun.max.vm.layout.*;
@@ -46,18 +53,75 @@ import com.sun.max.vm.thread.*;
 /**
  * Region-based Mark Sweep + Evacuation-based defragmentation Heap Scheme.
  * Used for testing region-based support.
+ * <p>
+ * With the {@code -XX:+ConcurrentMarkSweep} option, the heap scheme additionally runs mostly-concurrent mark-sweep cycles, initiated
+ * when the occupancy of the heap reaches a threshold. A cycle proceeds as follows:
+ * <ul>
+ * <li>A short stop-the-world initial mark marks grey the objects directly reachable from roots, and turns on a snapshot-at-the-beginning
+ * write barrier that marks grey every reference overwritten by mutators. Mutators also start logging the memory they allocate.</li>
+ * <li>A {@link ConcurrentMarkSweepThread} traces the heap while mutators run.</li>
+ * <li>A stop-the-world remark marks live the objects allocated during the cycle, traces the objects marked grey by the write barrier since the
+ * concurrent tracing completed, and turns the write barrier off. Roots don't need to be rescanned.</li>
+ * <li>The heap is swept one region at a time by the concurrent thread and by mutators that run out of allocation regions.</li>
+ * </ul>
+ * Referents of special references are treated as strong references by concurrent cycles: special references are only processed by
+ * stop-the-world collections. A stop-the-world collection aborts the cycle in progress, if any.
+ * <p>
+ * The write barrier is compiled in whether or not concurrent cycles are enabled: its fast path tests a flag.
+ * <p>
+ * With the {@code -XX:+LazySweep} option, stop-the-world collections don't sweep the heap. Instead, regions are marked as needing sweeping
+ * and are swept one at a time by allocators that run out of allocation regions.
+ * <p>
+ * With the {@code -XX:+RegionCompaction} option, stop-the-world collections that sweep the heap evacuate the live objects of the sparsest regions
+ * to empty regions (see {@link RegionCompactor}), within a pause time budget. Compaction is skipped while objects are pinned.
  */
-public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements HeapAccountOwner {
+public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements HeapAccountOwner, XirWriteBarrierSpecification {
     private static final int WORDS_COVERED_PER_BIT = 1;
     static boolean DumpFragStatsAfterGC = false;
     static boolean DumpFragStatsAtGCFailure = false;
     static boolean DoImpreciseSweep = false;
+    static boolean LazySweep = false;
+    static boolean ConcurrentMarkSweep = false;
+    static int ConcurrentMarkInitiatingPercent = 70;
+    static int ConcurrentMarkAllocationLogSize = 16 * 1024;
+    static boolean TraceConcurrentMarkSweep = false;
+    static boolean RegionCompaction = false;
     static {
         VMOptions.addFieldOption("-XX:", "DumpFragStatsAfterGC", MSEHeapScheme.class, "Dump region fragmentation stats after GC", Phase.PRISTINE);
         VMOptions.addFieldOption("-XX:", "DumpFragStatsAtGCFailure", MSEHeapScheme.class, "Dump region fragmentation when GC failed to reclaim enough space", Phase.PRISTINE);
         VMOptions.addFieldOption("-XX:", "DoImpreciseSweep", MSEHeapScheme.class, "Control whether to do precise or imprecise sweep", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "LazySweep", MSEHeapScheme.class,
+            "Sweep heap regions on demand after GC, when allocators run out of regions, instead of during the GC pause", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "ConcurrentMarkSweep", MSEHeapScheme.class, "Run mostly-concurrent mark-sweep cycles", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "ConcurrentMarkInitiatingPercent", MSEHeapScheme.class,
+            "Percentage of heap occupancy that initiates a mostly-concurrent mark-sweep cycle", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "ConcurrentMarkAllocationLogSize", MSEHeapScheme.class,
+            "Maximum number of TLABs and direct allocations during a concurrent marking (the cycle is abandoned if exceeded)", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "TraceConcurrentMarkSweep", MSEHeapScheme.class, "Trace mostly-concurrent mark-sweep cycles", Phase.PRISTINE);
+        VMOptions.addFieldOption("-XX:", "RegionCompaction", MSEHeapScheme.class,
+            "Evacuate the sparsest heap regions at the end of stop-the-world collections to limit fragmentation", Phase.PRISTINE);
     }
 
+    /**
+     * State of the snapshot-at-the-beginning write barrier. Held by a boot image object so that compiled code can test it with a single load.
+     */
+    static final class SATBBarrierState {
+        /**
+         * Non-zero while a mostly-concurrent marking is in progress.
+         */
+        volatile int active;
+    }
+
+    private static final SATBBarrierState satbBarrierState = new SATBBarrierState();
+
+    /**
+     * The heap marker of the heap scheme, for use by the static slow paths of the write barrier.
+     */
+    private static TricolorHeapMarker satbHeapMarker;
+
+    @HOSTED_ONLY
+    private XirRuntimeCallGenerator runtimeCallGenerator;
+
     /**
      * Marking algorithm used to trace the heap.
      */
@@ -68,10 +132,38 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
      */
     private final FirstFitMarkSweepSpace<MSEHeapScheme> markSweepSpace;
 
-    private final AtomicPinCounter pinnedCounter = MaxineVM.isDebug() ? new AtomicPinCounter() : null;
+    /**
+     * Count of pinned objects. Maintained in debug mode, or when compaction is enabled as it must not relocate pinned objects.
+     */
+    private final AtomicPinCounter pinnedCounter = new AtomicPinCounter();
+
+    /**
+     * Evacuator compacting the heap at the end of stop-the-world collections when {@link #RegionCompaction} is enabled.
+     */
+    private final RegionCompactor regionCompactor;
+
+    private final EvacuationTimers compactionTimers = new EvacuationTimers();
+
+    private final Evacuator.PhaseLogger compactionPhaseLogger = new Evacuator.PhaseLogger();
+
+    private final DebugHeap.DetailLogger compactionDetailLogger = new DebugHeap.DetailLogger();
 
     final MarkSweepCollection collect = new MarkSweepCollection();
 
+    final ConcurrentMarkSweepInitialMark initialMark = new ConcurrentMarkSweepInitialMark();
+
+    final ConcurrentMarkSweepRemark remark = new ConcurrentMarkSweepRemark();
+
+    /**
+     * Log of the memory allocated while a concurrent marking is in progress.
+     */
+    private final AllocationRangeLog allocationLog = new AllocationRangeLog();
+
+    /**
+     * Thread running the concurrent phases of mostly-concurrent mark-sweep cycles, or null if these are disabled.
+     */
+    private ConcurrentMarkSweepThread concurrentMarkSweepThread;
+
     /**
      * An instance of an after mark sweep verifier to use for heap verification after a mark sweep.
      * @see Sweeper
@@ -95,13 +187,30 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
             new AtomicBumpPointerAllocator<RegionOverflowAllocatorRefiller>(new RegionOverflowAllocatorRefiller());
         markSweepSpace = new FirstFitMarkSweepSpace<MSEHeapScheme>(heapAccount, tlabAllocator, overflowAllocator, false, NullDeadSpaceListener.nullDeadSpaceListener(), 0);
         heapMarker = new TricolorHeapMarker(WORDS_COVERED_PER_BIT, new HeapAccounRootCellVisitor(this));
+        satbHeapMarker = heapMarker;
         afterGCVerifier = new AfterMarkSweepVerifier(heapMarker, markSweepSpace, AfterMarkSweepBootHeapVerifier.makeVerifier(heapMarker, this));
+        regionCompactor = new RegionCompactor(markSweepSpace, heapMarker);
+        regionCompactor.setTimers(compactionTimers);
+        regionCompactor.setPhaseLogger(compactionPhaseLogger);
+        regionCompactor.setDetailLogger(compactionDetailLogger);
         pinningSupportFlags = PIN_SUPPORT_FLAG.makePinSupportFlags(true, false, true);
     }
 
     @Override
     public void initialize(MaxineVM.Phase phase) {
         super.initialize(phase);
+        if (phase == MaxineVM.Phase.STARTING) {
+            GCWorkerGang.start();
+            if (ConcurrentMarkSweep) {
+                Heap.enableImmortalMemoryAllocation();
+                try {
+                    concurrentMarkSweepThread = new ConcurrentMarkSweepThread(this);
+                } finally {
+                    Heap.disableImmortalMemoryAllocation();
+                }
+                concurrentMarkSweepThread.start();
+            }
+        }
     }
 
     /**
@@ -154,7 +263,14 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
                 MaxineVM.reportPristineMemoryFailure("heapMarkerDataStart", "commit", heapMarkerDatasize);
             }
             heapMarker.initialize(heapBounds.start(), heapBounds.end(), heapMarkerDataStart, heapMarkerDatasize);
+            if (ConcurrentMarkSweep) {
+                heapMarker.initializeConcurrentMarking();
+                allocationLog.initialize(ConcurrentMarkAllocationLogSize);
+            }
 
+            if (RegionCompaction) {
+                regionCompactor.initialize(HeapRegionConstants.numberOfRegions(heapBounds.size()));
+            }
             if (DumpFragStatsAfterGC || DumpFragStatsAtGCFailure) {
                 fragmentationStats = new HeapRegionStatistics(markSweepSpace.minReclaimableSpace());
             }
@@ -243,8 +359,8 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
 
     @INLINE
     public boolean pin(Object object) {
-        // Objects never relocate. So this is always safe.
-        if (MaxineVM.isDebug()) {
+        // Objects only relocate when the heap is compacted, which doesn't take place while objects are pinned. So this is always safe.
+        if (MaxineVM.isDebug() || RegionCompaction) {
             pinnedCounter.increment();
         }
         return true;
@@ -252,7 +368,7 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
 
     @INLINE
     public void unpin(Object object) {
-        if (MaxineVM.isDebug()) {
+        if (MaxineVM.isDebug() || RegionCompaction) {
             pinnedCounter.decrement();
         }
     }
@@ -261,6 +377,222 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
     public void writeBarrier(Reference from, Reference to) {
     }
 
+    @Override
+    public boolean needsBarrier(IntBitSet<WriteBarrierSpecification.WriteBarrierSpec> writeBarrierSpec) {
+        return writeBarrierSpec.isSet(WriteBarrierSpec.PRE_WRITE);
+    }
+
+    @INLINE
+    @Override
+    public void preWriteBarrier(Reference ref, Offset offset, Reference value) {
+        if (satbBarrierState.active != 0) {
+            satbPreWriteBarrier(ref.readReference(offset));
+        }
+    }
+
+    @INLINE
+    @Override
+    public void preWriteBarrier(Reference ref,  int displacement, int index, Reference value) {
+        if (satbBarrierState.active != 0) {
+            satbPreWriteBarrier(ref.getReference(displacement, index));
+        }
+    }
+
+    /**
+     * Slow path of the snapshot-at-the-beginning write barrier: mark grey the reference about to be overwritten.
+     * @param oldValue the reference about to be overwritten
+     */
+    @NEVER_INLINE
+    private static void satbPreWriteBarrier(Reference oldValue) {
+        if (!oldValue.isZero()) {
+            satbHeapMarker.markGreyConcurrently(Layout.originToCell(oldValue.toOrigin()));
+        }
+    }
+
+    /**
+     * Slow path of the write barrier compiled for stores to a reference field. Called through a compiler stub.
+     */
+    public static void satbTuplePreWriteBarrier(Object object, int offset) {
+        satbPreWriteBarrier(Reference.fromJava(object).readReference(offset));
+    }
+
+    /**
+     * Slow path of the write barrier compiled for stores to a reference array. Called through a compiler stub.
+     */
+    public static void satbArrayPreWriteBarrier(Object array, int index) {
+        satbPreWriteBarrier(Layout.getReference(Reference.fromJava(array), index));
+    }
+
+    /**
+     * Slow path of the write barrier compiled for stores to a reference at a computed address (e.g., by {@code sun.misc.Unsafe}
+     * intrinsics). Called through a compiler stub.
+     */
+    public static void satbAddressPreWriteBarrier(Pointer address) {
+        satbPreWriteBarrier(address.readReference(0));
+    }
+
+    @HOSTED_ONLY
+    private void genSATBPreWriteBarrier(CiXirAssembler asm, String runtimeCall, XirOperand... args) {
+        final int activeOffset = ClassActor.fromJava(SATBBarrierState.class).findLocalInstanceFieldActor("active").offset();
+        final XirOperand state = asm.createTemp("satbState", CiKind.Object);
+        final XirOperand active = asm.createTemp("satbActive", CiKind.Int);
+        final XirLabel slowPath = asm.createOutOfLineLabel("satbSlowPath");
+        final XirLabel done = asm.createInlineLabel("satbDone");
+        asm.mov(state, asm.o(satbBarrierState));
+        asm.pload(CiKind.Int, active, state, asm.i(activeOffset), false);
+        asm.jneq(slowPath, active, asm.i(0));
+        asm.bindOutOfLine(slowPath);
+        runtimeCallGenerator.genRuntimeCall(asm, MSEHeapScheme.class, runtimeCall, null, args);
+        asm.jmp(done);
+        // Binding the inline label switches back to the inline code, which the rest of the template is appended to.
+        asm.bindInline(done);
+    }
+
+    @HOSTED_ONLY
+    public XirWriteBarrierGenerator barrierGenerator(IntBitSet<WriteBarrierSpecification.WriteBarrierSpec> writeBarrierSpec) {
+        if (writeBarrierSpec.equals(TUPLE_PRE_BARRIER)) {
+            return new XirWriteBarrierGenerator() {
+                @Override
+                public void genWriteBarrier(CiXirAssembler asm, XirOperand ... operands) {
+                    genSATBPreWriteBarrier(asm, "satbTuplePreWriteBarrier", operands[0], operands[1]);
+                }
+            };
+        } else if (writeBarrierSpec.equals(ARRAY_PRE_BARRIER)) {
+            return new XirWriteBarrierGenerator() {
+                @Override
+                public void genWriteBarrier(CiXirAssembler asm, XirOperand ... operands) {
+                    genSATBPreWriteBarrier(asm, "satbArrayPreWriteBarrier", operands[0], operands[1]);
+                }
+            };
+        } else if (writeBarrierSpec.equals(REF_ADDR_PRE_BARRIER)) {
+            return new XirWriteBarrierGenerator() {
+                @Override
+                public void genWriteBarrier(CiXirAssembler asm, XirOperand ... operands) {
+                    genSATBPreWriteBarrier(asm, "satbAddressPreWriteBarrier", operands[0]);
+                }
+            };
+        }
+        return XirWriteBarrierSpecification.NULL_WRITE_BARRIER_GEN;
+    }
+
+    @HOSTED_ONLY
+    public void setRuntimeCallGenerator(XirRuntimeCallGenerator runtimeCallGenerator) {
+        this.runtimeCallGenerator = runtimeCallGenerator;
+    }
+
+    /**
+     * Abort the mostly-concurrent marking in progress, if any. Called at the beginning of a stop-the-world collection.
+     */
+    private void abortConcurrentMarking() {
+        if (satbBarrierState.active == 0) {
+            return;
+        }
+        satbBarrierState.active = 0;
+        allocationLog.disable();
+        concurrentMarkSweepThread.cycleAborted = true;
+        if (TraceConcurrentMarkSweep) {
+            Log.println("Concurrent marking aborted");
+        }
+    }
+
+    /**
+     * Request a mostly-concurrent mark-sweep cycle if none is in progress and heap occupancy reached the initiating threshold.
+     * Called by mutators after refilling their TLAB.
+     */
+    private void checkConcurrentCycleInitiation() {
+        if (concurrentMarkSweepThread != null && concurrentMarkSweepThread.isIdle()) {
+            final Size threshold = markSweepSpace.totalSpace().dividedBy(100).times(ConcurrentMarkInitiatingPercent);
+            if (markSweepSpace.usedSpace().greaterThan(threshold)) {
+                concurrentMarkSweepThread.requestCycle();
+            }
+        }
+    }
+
+    /**
+     * Concurrent tracing of the heap. Called by the concurrent mark-sweep thread between the initial mark and the remark.
+     * @return true if the tracing completed, false if it was aborted by a stop-the-world collection
+     */
+    boolean markConcurrently(ConcurrentGCThread gcThread) {
+        return heapMarker.visitGreyObjectsConcurrently(gcThread);
+    }
+
+    /**
+     * Concurrent sweeping of the heap. Called by the concurrent mark-sweep thread after the remark.
+     * @return true if there are more regions to sweep
+     */
+    boolean sweepNextRegion(ConcurrentGCThread gcThread) {
+        return markSweepSpace.sweepNextRegion(gcThread);
+    }
+
+    /**
+     * Initial mark of a mostly-concurrent mark-sweep cycle.
+     */
+    final class ConcurrentMarkSweepInitialMark extends GCOperation {
+        public ConcurrentMarkSweepInitialMark() {
+            super("ConcurrentMarkSweepInitialMark");
+        }
+
+        @Override
+        protected void collect(int invocationCount) {
+            if (TraceConcurrentMarkSweep) {
+                Log.println("BEGIN: Concurrent mark-sweep initial mark");
+            }
+            // Retire all TLABs so that all memory allocated from now on is logged.
+            VmThreadMap.ACTIVE.forAllThreadLocals(null, tlabFiller);
+            // Regions left to sweep since the last GC must be swept before the color map is cleared.
+            markSweepSpace.completeSweep();
+            heapMarker.markRootsForConcurrentMarking();
+            allocationLog.enable();
+            concurrentMarkSweepThread.cycleAborted = false;
+            satbBarrierState.active = 1;
+            if (TraceConcurrentMarkSweep) {
+                Log.println("END: Concurrent mark-sweep initial mark");
+            }
+        }
+    }
+
+    /**
+     * Remark of a mostly-concurrent mark-sweep cycle. Completes the marking and hands over the sweeping of the heap
+     * to the concurrent mark-sweep thread.
+     */
+    final class ConcurrentMarkSweepRemark extends GCOperation {
+        public ConcurrentMarkSweepRemark() {
+            super("ConcurrentMarkSweepRemark");
+        }
+
+        @Override
+        protected void collect(int invocationCount) {
+            if (satbBarrierState.active == 0) {
+                // The cycle was aborted by a stop-the-world collection.
+                return;
+            }
+            if (TraceConcurrentMarkSweep) {
+                Log.println("BEGIN: Concurrent mark-sweep remark");
+            }
+            // Make TLABs parsable.
+            VmThreadMap.ACTIVE.forAllThreadLocals(null, tlabFiller);
+            satbBarrierState.active = 0;
+            allocationLog.disable();
+            if (allocationLog.overflowed()) {
+                concurrentMarkSweepThread.cycleAborted = true;
+                // Not all objects allocated during the marking can be found. Abandon the cycle and leave reclamation to the next stop-the-world collection.
+                if (TraceConcurrentMarkSweep) {
+                    Log.println("END: Concurrent mark-sweep remark, allocation log overflow: cycle abandoned");
+                }
+                return;
+            }
+            HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.ANALYZING);
+            markSweepSpace.doBeforeGC();
+            allocationLog.markLive(heapMarker);
+            markSweepSpace.finishConcurrentMarking(heapMarker);
+            markSweepSpace.prepareIncrementalSweep(heapMarker, DoImpreciseSweep);
+            HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.MUTATING);
+            if (TraceConcurrentMarkSweep) {
+                Log.println("END: Concurrent mark-sweep remark");
+            }
+        }
+    }
+
     /**
      * Class implementing the garbage collection routine.
      * This is the {@link VmOperationThread}'s entry point to garbage collection.
@@ -314,6 +646,7 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
             traceGCTimes = Heap.logGCTime();
             startTimer(totalPauseTime);
             VmThreadMap.ACTIVE.forAllThreadLocals(null, tlabFiller);
+            abortConcurrentMarking();
 
             HeapScheme.Inspect.notifyHeapPhaseChange(HeapPhase.ANALYZING);
 
@@ -331,19 +664,43 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
                 Log.println("BEGIN: Sweeping");
             }
             startTimer(reclaimTimer);
-            markSweepSpace.sweep(heapMarker, DoImpreciseSweep);
-            Size freeSpaceAfterGC = markSweepSpace.freeSpace();
+            Size freeSpaceAfterGC;
+            boolean resizeHeap = true;
+            if (LazySweep && !VerifyAfterGC) {
+                // The free space left after this GC is only known once sweeping completes.
+                // Size the heap with the free space left by the previous GC instead, if its sweeping completed.
+                freeSpaceAfterGC = markSweepSpace.lastSweptFreeSpace();
+                resizeHeap = !freeSpaceAfterGC.isZero();
+                markSweepSpace.prepareIncrementalSweep(heapMarker, DoImpreciseSweep);
+            } else {
+                markSweepSpace.sweep(heapMarker, DoImpreciseSweep);
+                freeSpaceAfterGC = markSweepSpace.freeSpace();
+            }
             stopTimer(reclaimTimer);
             if (traceGCPhases) {
                 Log.println("END: Sweeping");
             }
 
+            if (RegionCompaction && !markSweepSpace.isSweeping() && !pinnedCounter.hasPinnedObjects()) {
+                if (traceGCPhases) {
+                    Log.println("BEGIN: Compaction");
+                }
+                if (regionCompactor.compact(this) > 0) {
+                    freeSpaceAfterGC = markSweepSpace.freeSpace();
+                }
+                if (traceGCPhases) {
+                    Log.println("END: Compaction");
+                }
+            }
+
             if (VerifyAfterGC) {
                 afterGCVerifier.run();
             }
             vmConfig().monitorScheme().afterGarbageCollection();
 
-            heapResizingPolicy.resizeAfterCollection(freeSpaceAfterGC, markSweepSpace);
+            if (resizeHeap) {
+                heapResizingPolicy.resizeAfterCollection(freeSpaceAfterGC, markSweepSpace);
+            }
             markSweepSpace.doAfterGC();
 
             final GCRequest gcRequest = callingThread().gcRequest;
@@ -393,7 +750,7 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
         Size chunkSize =  HeapFreeChunk.getFreechunkSize(chunk);
         if (size.greaterThan(chunkSize.minus(minObjectSize())))  {
             // Don't bother with searching another TLAB chunk that fits. Allocate directly in the heap.
-            return markSweepSpace.allocate(size);
+            return directAllocate(size);
         }
         // Otherwise, the chunk can accommodate the request AND
         // we'll have enough room left in the chunk to format a dead object or to store the next chunk pointer.
@@ -408,6 +765,32 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
         return tlabAllocate(size);
     }
 
+    /**
+     * Allocate directly in the heap, outside of TLABs.
+     */
+    private Pointer directAllocate(Size size) {
+        final Pointer cell = markSweepSpace.allocate(size);
+        if (allocationLog.isEnabled()) {
+            allocationLog.recordCell(cell);
+        }
+        return cell;
+    }
+
+    /**
+     * Log the chunks of a freshly refilled TLAB.
+     * @param tlab first chunk of the TLAB
+     * @param effectiveSize size of the first chunk, minus the headroom holding the address of the next chunk
+     */
+    private void logTLABChunks(Pointer tlab, Size effectiveSize) {
+        final Pointer firstChunkEnd = tlab.plus(effectiveSize);
+        allocationLog.record(tlab, firstChunkEnd.plus(tlabHeadroom()));
+        Address chunk = firstChunkEnd.getWord().asAddress();
+        while (!chunk.isZero()) {
+            allocationLog.record(chunk, chunk.plus(HeapFreeChunk.getFreechunkSize(chunk)));
+            chunk = HeapFreeChunk.getFreeChunkNext(chunk);
+        }
+    }
+
     @Override
     protected boolean logTLABEvents(Address tlabStart) {
         return RegionTable.inDebuggedRegion(tlabStart);
@@ -425,6 +808,10 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
         }
         Size effectiveSize = setNextTLABChunk(tlab);
         refillTLAB(etla, tlab, effectiveSize);
+        if (allocationLog.isEnabled()) {
+            logTLABChunks(tlab, effectiveSize);
+        }
+        checkConcurrentCycleInitiation();
     }
 
     @Override
@@ -442,14 +829,14 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
             if (!usesTLAB()) {
                 // We're not using TLAB. So let's assign the never refill tlab policy.
                 TLABRefillPolicy.setForCurrentThread(etla, NEVER_REFILL_TLAB);
-                return markSweepSpace.allocate(size);
+                return directAllocate(size);
             }
             // Allocate an initial TLAB and a refill policy. For simplicity, this one is allocated from the TLAB (see comment below).
             final Size tlabSize = initialTlabSize();
             allocateAndRefillTLAB(etla, tlabSize);
             // Let's do a bit of dirty meta-circularity. The TLAB is refilled, and no-one except the current thread can use it.
             // So the tlab allocation is going to succeed here
-            TLABRefillPolicy.setForCurrentThread(etla, new SimpleTLABRefillPolicy(tlabSize));
+            TLABRefillPolicy.setForCurrentThread(etla, newTLABRefillPolicy(tlabSize));
             // Now, address the initial request. Note that we may recurse down to handleTLABOverflow again here if the
             // request is larger than the TLAB size. However, this second call will succeed and allocate outside of the tlab.
             return tlabAllocate(size);
@@ -458,7 +845,7 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
         final Size nextTLABSize = refillPolicy.nextTlabSize();
         if (size.greaterThan(nextTLABSize)) {
             // This couldn't be allocated in a TLAB, so go directly to direct allocation routine.
-            return markSweepSpace.allocate(size);
+            return directAllocate(size);
         }
         // TLAB may have been wiped out by a previous direct allocation routine.
         if (!tlabEnd.isZero()) {
@@ -483,9 +870,9 @@ public final class MSEHeapScheme extends HeapSchemeWithTLABAdaptor implements He
                 return changeTLABChunkOrAllocate(etla, tlabMark, hardLimit, nextChunk, size);
             }
 
-            if (!refillPolicy.shouldRefill(size, tlabMark)) {
+            if (!refillPolicy.shouldRefill(size, tlabMark, tlabEnd)) {
                 // Size would fit in a new tlab, but the policy says we shouldn't refill the tlab yet, so allocate directly in the heap.
-                return markSweepSpace.allocate(size);
+                return directAllocate(size);
             }
         }
         if (MaxineVM.isDebug() && RegionTable.inDebuggedRegion(tlabMark)) {
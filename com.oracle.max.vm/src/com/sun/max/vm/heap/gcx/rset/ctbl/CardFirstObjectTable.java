@@ -197,6 +197,21 @@ public final class CardFirstObjectTable extends Log2RegionToByteMapTable {
         }
     }
 
+    /**
+     * Reset the entries of the FOT previously set by {@link #set(Address, Address)} for the specified cell.
+     * This is used to undo the update of the FOT for a cell whose allocation is undone.
+     *
+     * @param cell start of the cell
+     * @param cellEnd end of the cell
+     */
+    public void unset(Address cell, Address cellEnd) {
+        final int firstCard = tableEntryIndex(cell);
+        final int lastCard = tableEntryIndex(cellEnd.minus(Word.size()));
+        if (lastCard > firstCard) {
+            clear(firstCard + 1, lastCard + 1);
+        }
+    }
+
     public boolean isFirstCellOfCard(Address cell) {
         int card = tableEntryIndex(cell);
         if (alignDownToCard(cell) == cell) {
@@ -24,6 +24,7 @@ import static com.sun.max.vm.heap.HeapSchemeAdaptor.*;
 
 import java.util.*;
 
+import com.oracle.max.cri.intrinsics.*;
 import com.sun.cri.ci.CiAddress.Scale;
 import com.sun.cri.ci.*;
 import com.sun.cri.xir.*;
@@ -431,6 +432,55 @@ public final class CardTableRSet extends DeadSpaceListener implements HeapManage
         }
     }
 
+    /**
+     * Visitor of the cells overlapping a dirty card being refined. See {@link CardTableRSet#refineDirtyCards(Address, Address, RefiningCellVisitor)}.
+     */
+    public static abstract class RefiningCellVisitor implements OverlappingCellVisitor {
+        /**
+         * Set by the visitor if the visited cells hold a reference the remembered set must keep track of.
+         */
+        protected boolean cardMustRemainDirty;
+
+        /**
+         * Number of dirty cards cleaned by refinement.
+         */
+        public long refinedCards;
+
+        /**
+         * Number of dirty cards left dirty by refinement.
+         */
+        public long retainedCards;
+    }
+
+    /**
+     * Refine the dirty cards of a range of the covered area, one card at a time. Each dirty card is cleaned, then the cells overlapping it are
+     * visited, and the card is dirtied again if the visitor found a reference the remembered set must keep track of.
+     * This may run concurrently with mutators, provided no cells are allocated in the range: a mutator updating a reference after its card
+     * was cleaned dirties the card again.
+     *
+     * @param start start of the range (must be card aligned)
+     * @param end end of the range (must be card aligned)
+     * @param cellVisitor visitor of the cells overlapping a dirty card
+     */
+    public void refineDirtyCards(Address start, Address end, RefiningCellVisitor cellVisitor) {
+        final int endOfRange = cardTable.tableEntryIndex(end);
+        int cardIndex = cardTable.first(cardTable.tableEntryIndex(start), endOfRange, CardState.DIRTY_CARD);
+        while (cardIndex < endOfRange) {
+            cardTable.clean(cardIndex);
+            // The card must be seen clean by mutators before the references of the cells overlapping it are read.
+            MemoryBarriers.barrier(MemoryBarriers.STORE_LOAD);
+            cellVisitor.cardMustRemainDirty = false;
+            visitCard(cardIndex, cellVisitor);
+            if (cellVisitor.cardMustRemainDirty) {
+                cardTable.dirty(cardIndex);
+                cellVisitor.retainedCards++;
+            } else {
+                cellVisitor.refinedCards++;
+            }
+            cardIndex = cardTable.first(cardIndex + 1, endOfRange, CardState.DIRTY_CARD);
+        }
+    }
+
     /**
      * Returns the amount of memory needed by the card table to cover a contiguous range of memory of the specified size.
      * @param maxCoveredAreaSize the size of the contiguous range of memory that the card table should cover
@@ -1021,7 +1021,7 @@ public final class GenSSHeapScheme extends HeapSchemeWithTLABAdaptor implements
             allocateAndRefillTLAB(etla, tlabSize);
             // Let's do a bit of meta-circularity. The TLAB is refilled, and no-one except the current thread can use it.
             // So the TLAB allocation is going to succeed here
-            TLABRefillPolicy.setForCurrentThread(etla, new SimpleTLABRefillPolicy(tlabSize));
+            TLABRefillPolicy.setForCurrentThread(etla, newTLABRefillPolicy(tlabSize));
             // Now, address the initial request. Note that we may recurse down to handleTLABOverflow again here if the
             // request is larger than the TLAB size. However, this second call will succeed and allocate outside of the TLAB.
             return tlabAllocate(size);
@@ -1033,7 +1033,7 @@ public final class GenSSHeapScheme extends HeapSchemeWithTLABAdaptor implements
             // always return zero for the next TLAB size.
             return youngSpace.allocate(size);
         }
-        if (!refillPolicy.shouldRefill(size, tlabMark)) {
+        if (!refillPolicy.shouldRefill(size, tlabMark, tlabEnd)) {
             // Size would fit in a new tlab, but the policy says we shouldn't refill the TLAB yet, so allocate directly in the young generation.
             return youngSpace.allocate(size);
         }
@@ -1093,6 +1093,11 @@ public final class GenSSHeapScheme extends HeapSchemeWithTLABAdaptor implements
         return XirWriteBarrierSpecification.NULL_WRITE_BARRIER_GEN;
     }
 
+    @HOSTED_ONLY
+    public void setRuntimeCallGenerator(XirRuntimeCallGenerator runtimeCallGenerator) {
+        // Card marking never calls into the runtime.
+    }
+
     @Override
     public GarbageCollectorMXBean getGarbageCollectorMXBean() {
         return new GenSSGarbageCollectorMXBean();
@@ -87,7 +87,6 @@ public final class BootImageGenerator {
     private static final Option<Boolean> debugClassIDOption = options.newBooleanOption("debug-classid", false,
             "Trace array class id creation and prints reserved class id without array class actors.");
 
-    // TODO: clean this up. Just for getting perf numbers.
     private static final Option<Boolean> inlinedTLABOption = options.newBooleanOption("inline-tlabs", true,
             "Generate inline TLAB allocation code in boot image.");
     // TODO: clean this up. Just for getting perf numbers.
@@ -241,7 +240,7 @@ public final class BootImageGenerator {
             // Initialize the Java prototype
             JavaPrototype.initialize(prototypeGenerator.threadsOption.getValue(), checkGeneratedCodeOption.getValue());
 
-            Heap.genInlinedTLAB = inlinedTLABOption.getValue(); // TODO: cleanup. Just for evaluating impact on performance of inlined tlab alloc.
+            Heap.genInlinedTLAB = inlinedTLABOption.getValue();
             Heap.useOutOfLineStubs = useOutOfLineStubs.getValue(); // TODO: cleanup.
             DataPrototype dataPrototype = prototypeGenerator.createDataPrototype(treeOption.getValue());
 
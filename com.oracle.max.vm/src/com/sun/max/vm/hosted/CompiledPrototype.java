@@ -61,9 +61,9 @@ public class CompiledPrototype extends Prototype {
             this.classActor = classActor;
         }
         final ClassActor classActor;
-        final HashSet<MethodActor> indirectCalls = new HashSet<MethodActor>();
-        final HashSet<ClassActor> subClasses = new HashSet<ClassActor>();
-        final HashSet<ClassActor> implementors = new HashSet<ClassActor>();
+        final LinkedHashSet<MethodActor> indirectCalls = new LinkedHashSet<MethodActor>();
+        final LinkedHashSet<ClassActor> subClasses = new LinkedHashSet<ClassActor>();
+        final LinkedHashSet<ClassActor> implementors = new LinkedHashSet<ClassActor>();
         @Override
         public String toString() {
             return classActor.toString();
@@ -73,9 +73,9 @@ public class CompiledPrototype extends Prototype {
     private final HashMap<ClassActor, ClassInfo> classActorInfo = new HashMap<ClassActor, ClassInfo>();
     private final HashMap<MethodActor, Set<ClassActor>> anonymousClasses = new HashMap<MethodActor, Set<ClassActor>>();
 
-    private final HashMap<MethodActor, Link> methodActors = new HashMap<MethodActor, Link>();
+    private final LinkedHashMap<MethodActor, Link> methodActors = new LinkedHashMap<MethodActor, Link>();
     private final HashSet<MethodActor> methodActorsWithInlining = new HashSet<MethodActor>();
-    private final HashMap<String, Link> stubs = new HashMap<String, Link>();
+    private final LinkedHashMap<String, Link> stubs = new LinkedHashMap<String, Link>();
     private final Queue<MethodActor> worklist = new ConcurrentLinkedQueue<MethodActor>();
 
     /**
@@ -171,7 +171,7 @@ public class CompiledPrototype extends Prototype {
     private Set<ClassActor> getAnonymousClasses(MethodActor actor) {
         Set<ClassActor> anonymousClasses = this.anonymousClasses.get(actor);
         if (anonymousClasses == null) {
-            anonymousClasses = new HashSet<ClassActor>();
+            anonymousClasses = new LinkedHashSet<ClassActor>();
             this.anonymousClasses.put(actor, anonymousClasses);
         }
         return anonymousClasses;
@@ -301,10 +301,10 @@ public class CompiledPrototype extends Prototype {
                 }
             }
         }
-        final Set<MethodActor> directCalls = new HashSet<MethodActor>();
-        final Set<MethodActor> virtualCalls = new HashSet<MethodActor>();
-        final Set<MethodActor> interfaceCalls = new HashSet<MethodActor>();
-        final Set<MethodActor> inlinedMethods = new HashSet<MethodActor>();
+        final Set<MethodActor> directCalls = new LinkedHashSet<MethodActor>();
+        final Set<MethodActor> virtualCalls = new LinkedHashSet<MethodActor>();
+        final Set<MethodActor> interfaceCalls = new LinkedHashSet<MethodActor>();
+        final Set<MethodActor> inlinedMethods = new LinkedHashSet<MethodActor>();
         // gather all direct, virtual, and interface calls and add them
         targetMethod.gatherCalls(directCalls, virtualCalls, interfaceCalls, inlinedMethods);
         addMethods(targetMethod, directCalls, Relationship.DIRECT_CALL);
@@ -559,85 +559,40 @@ public class CompiledPrototype extends Prototype {
 
     private int totalCompilations;
 
+    /**
+     * Compiles the methods on the worklist until it is empty. The worklist is processed in rounds: all methods on the
+     * worklist at the start of a round are compiled, on a fork-join pool if more than one compiler thread is used,
+     * and the resulting target methods are then processed in worklist order, which adds the methods they reference
+     * to the worklist for the next round. Together with the {@link #installationOrder}, this makes the contents and
+     * layout of the boot code region independent of the number of compiler threads.
+     */
     private boolean compileWorklist() {
         Trace.begin(1, "compile: " + worklist.size() + " new methods");
         final CodeRegion region = Code.bootCodeRegion();
         final Address oldMark = region.getAllocationMark();
         final int initialNumberOfCompilations = totalCompilations;
-        final CompilationBroker cb = vm().compilationBroker;
-
-        if (numberOfCompilerThreads == 1) {
-            while (!worklist.isEmpty() || !invalidatedTargetMethods.isEmpty()) {
-                processInvalidatedTargetMethods();
-                final MethodActor methodActor = worklist.poll();
-                if (needsCompilation(methodActor)) {
-                    TargetMethod targetMethod = null;
-                    try {
-                        targetMethod = cb.compile((ClassMethodActor) methodActor, null);
-                    } catch (Throwable error) {
-//                        throw reportCompilationError(methodActor, error);
-                        try {
-                            reportCompilationError(methodActor, error);
-                        } catch (ProgramError | FatalError ex) {
-                            continue;
-                        }
-                    }
-                    assert targetMethod != null;
-                    processNewTargetMethod(targetMethod);
-                    ++totalCompilations;
-                    if (totalCompilations % 200 == 0) {
-                        Trace.line(1, "compiled: " + totalCompilations + " (" + methodActors.size() + " methods)");
-                    }
-                }
-            }
-        } else {
-            int submittedCompilations = totalCompilations;
-
-            final ExecutorService compilationService = Executors.newFixedThreadPool(numberOfCompilerThreads);
-            final CompletionService<TargetMethod> compilationCompletionService = new ExecutorCompletionService<TargetMethod>(compilationService);
 
+        final ForkJoinPool compilationPool = numberOfCompilerThreads == 1 ? null : new ForkJoinPool(numberOfCompilerThreads);
+        Code.hostedAllocationOrder = installationOrder;
+        try {
             while (true) {
-                while (!worklist.isEmpty() || !invalidatedTargetMethods.isEmpty()) {
-                    processInvalidatedTargetMethods();
-                    final MethodActor methodActor = worklist.poll();
-                    if (methodActor != null && needsCompilation(methodActor)) {
-                        ++submittedCompilations;
-                        compilationCompletionService.submit(new Callable<TargetMethod>() {
-                            public TargetMethod call() throws Exception {
-                                try {
-                                    TargetMethod result = cb.compile((ClassMethodActor) methodActor, null);
-                                    assert result != null;
-                                    return result;
-                                } catch (Throwable error) {
-                                    throw reportCompilationError(methodActor, error);
-                                }
-                            }
-                        });
+                processInvalidatedTargetMethods();
+                final ArrayList<ClassMethodActor> round = new ArrayList<ClassMethodActor>(worklist.size());
+                for (MethodActor methodActor = worklist.poll(); methodActor != null; methodActor = worklist.poll()) {
+                    if (needsCompilation(methodActor)) {
+                        round.add((ClassMethodActor) methodActor);
                     }
                 }
-                if (totalCompilations >= submittedCompilations) {
-                    if (!worklist.isEmpty()) {
-                        continue;
-                    }
+                if (round.isEmpty()) {
                     break;
                 }
-                try {
-                    final TargetMethod targetMethod = compilationCompletionService.take().get();
-                    assert targetMethod != null;
-                    processNewTargetMethod(targetMethod);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                } catch (ExecutionException executionException) {
-                    compilationService.shutdownNow();
-                    throw ProgramError.unexpected(executionException.getCause());
-                }
-                ++totalCompilations;
-                if (totalCompilations % 200 == 0) {
-                    Trace.line(1, "compiled: " + totalCompilations + " (" + methodActors.size() + " methods)");
-                }
+                compileRound(round, compilationPool);
+            }
+        } finally {
+            Code.hostedAllocationOrder = null;
+            if (compilationPool != null) {
+                compilationPool.shutdown();
             }
-
-            compilationService.shutdown();
         }
 
         final int newCompilations = totalCompilations - initialNumberOfCompilations;
@@ -648,6 +603,175 @@ public class CompiledPrototype extends Prototype {
         return newCompilations > 0;
     }
 
+    private void compileRound(final ArrayList<ClassMethodActor> round, ForkJoinPool compilationPool) {
+        // Adapters and trampolines are shared between methods. Creating them up front in worklist
+        // order stops the compiler threads from racing to allocate them.
+        for (ClassMethodActor methodActor : round) {
+            makeAdapter(methodActor);
+        }
+        makeTrampolines();
+
+        installationOrder.reset();
+        final TargetMethod[] targetMethods = new TargetMethod[round.size()];
+        if (compilationPool == null) {
+            for (int i = 0; i < targetMethods.length; i++) {
+                targetMethods[i] = compile(round.get(i), i);
+            }
+        } else {
+            final ArrayList<ForkJoinTask<TargetMethod>> tasks = new ArrayList<ForkJoinTask<TargetMethod>>(round.size());
+            for (int i = 0; i < targetMethods.length; i++) {
+                final ClassMethodActor methodActor = round.get(i);
+                final int ticket = i;
+                tasks.add(compilationPool.submit(new Callable<TargetMethod>() {
+                    public TargetMethod call() {
+                        return compile(methodActor, ticket);
+                    }
+                }));
+            }
+            for (int i = 0; i < targetMethods.length; i++) {
+                targetMethods[i] = tasks.get(i).join();
+            }
+        }
+
+        for (TargetMethod targetMethod : targetMethods) {
+            processNewTargetMethod(targetMethod);
+            ++totalCompilations;
+            if (totalCompilations % 200 == 0) {
+                Trace.line(1, "compiled: " + totalCompilations + " (" + methodActors.size() + " methods)");
+            }
+        }
+    }
+
+    /**
+     * Compiles a method of the current round.
+     *
+     * @param ticket the position of {@code methodActor} in the current round
+     */
+    private TargetMethod compile(ClassMethodActor methodActor, int ticket) {
+        installationOrder.begin(ticket);
+        try {
+            final TargetMethod targetMethod = vm().compilationBroker.compile(methodActor, null);
+            assert targetMethod != null;
+            return targetMethod;
+        } catch (Throwable error) {
+            throw reportCompilationError(methodActor, error);
+        } finally {
+            installationOrder.end(ticket);
+        }
+    }
+
+    /**
+     * Creates the adapter called by the prologue of {@code methodActor} when compiled by the optimizing compiler.
+     */
+    private static void makeAdapter(ClassMethodActor methodActor) {
+        if (!methodActor.isTemplate()) {
+            final AdapterGenerator generator = AdapterGenerator.forCallee(methodActor, OPTIMIZED_ENTRY_POINT);
+            if (generator != null) {
+                generator.make(methodActor);
+            }
+        }
+    }
+
+    /**
+     * Creates the vtable and itable trampolines for every dispatch table index of the classes loaded so far. The
+     * trampolines are otherwise created on demand, which happens on a compiler thread when compiling a method
+     * initializes a hub or resets a dispatch table entry.
+     */
+    private static void makeTrampolines() {
+        int maxVTableIndex = -1;
+        int maxITableIndex = -1;
+        for (ClassActor classActor : ClassRegistry.allBootImageClasses()) {
+            final DynamicHub hub = classActor.dynamicHub();
+            if (hub != null) {
+                maxVTableIndex = Math.max(maxVTableIndex, Hub.vTableStartIndex() + hub.vTableLength() - 1);
+                maxITableIndex = Math.max(maxITableIndex, hub.iTableLength - 1);
+            }
+        }
+        if (maxVTableIndex >= Hub.vTableStartIndex()) {
+            vm().stubs.virtualTrampoline(maxVTableIndex);
+        }
+        if (maxITableIndex >= 0) {
+            vm().stubs.interfaceTrampoline(maxITableIndex);
+        }
+    }
+
+    /**
+     * Orders the allocation of code in the boot code region by concurrently compiled methods. Each method of a round
+     * is compiled under a ticket denoting its position in the round. The code of a method is only allocated once all
+     * methods with a lower ticket have either allocated their code or finished compiling. Stubs and adapters are not
+     * ordered; they are created ahead of each round instead.
+     */
+    private static final class InstallationOrder implements Code.HostedAllocationOrder {
+        private final ThreadLocal<Integer> ticket = new ThreadLocal<Integer>();
+        private final BitSet released = new BitSet();
+
+        /**
+         * The lowest ticket that has not been released.
+         */
+        private int next;
+
+        synchronized void reset() {
+            released.clear();
+            next = 0;
+        }
+
+        void begin(int t) {
+            ticket.set(t);
+        }
+
+        void end(int t) {
+            ticket.remove();
+            release(t);
+        }
+
+        private synchronized void release(int t) {
+            released.set(t);
+            next = released.nextClearBit(next);
+            notifyAll();
+        }
+
+        private synchronized boolean isTurn(int t) {
+            return next >= t;
+        }
+
+        @Override
+        public void beforeAllocation(TargetMethod targetMethod) {
+            final Integer t = ticket.get();
+            if (t == null || targetMethod.classMethodActor == null) {
+                return;
+            }
+            try {
+                ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                    public boolean block() throws InterruptedException {
+                        synchronized (InstallationOrder.this) {
+                            while (next < t) {
+                                InstallationOrder.this.wait();
+                            }
+                        }
+                        return true;
+                    }
+
+                    public boolean isReleasable() {
+                        return isTurn(t);
+                    }
+                });
+            } catch (InterruptedException e) {
+                throw ProgramError.unexpected(e);
+            }
+        }
+
+        @Override
+        public void afterAllocation(TargetMethod targetMethod) {
+            final Integer t = ticket.get();
+            if (t != null && targetMethod.classMethodActor != null) {
+                ticket.remove();
+                release(t);
+            }
+        }
+    }
+
+    private final InstallationOrder installationOrder = new InstallationOrder();
+
     private ProgramError reportCompilationError(final MethodActor classMethodActor, Throwable error) throws ProgramError {
         System.err.println("Error occurred while compiling " + classMethodActor + ": " + error);
         printParentChain(classMethodActor);
@@ -737,7 +861,14 @@ public class CompiledPrototype extends Prototype {
     private void processInvalidatedTargetMethods() {
         synchronized (invalidatedTargetMethods) {
             if (!invalidatedTargetMethods.isEmpty()) {
-                for (TargetMethod targetMethod : invalidatedTargetMethods) {
+                // methods may be invalidated by concurrent compilations, so requeue them in a fixed order
+                final TargetMethod[] invalidated = invalidatedTargetMethods.toArray(new TargetMethod[invalidatedTargetMethods.size()]);
+                Arrays.sort(invalidated, new Comparator<TargetMethod>() {
+                    public int compare(TargetMethod o1, TargetMethod o2) {
+                        return o1.classMethodActor.format("%H.%n(%p)").compareTo(o2.classMethodActor.format("%H.%n(%p)"));
+                    }
+                });
+                for (TargetMethod targetMethod : invalidated) {
                     final ClassMethodActor methodActor = targetMethod.classMethodActor;
                     assert methodActors.containsKey(methodActor);
                     assert methodActor.compiledState instanceof Compilations;
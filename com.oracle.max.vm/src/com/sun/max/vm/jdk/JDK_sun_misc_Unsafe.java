@@ -1177,11 +1177,7 @@ final class JDK_sun_misc_Unsafe {
     public void park(boolean isAbsolute, long time) {
         final VmThread thread = VmThread.current();
         try {
-            if (!isAbsolute) {
-                thread.park(time);
-            } else {
-                thread.park();
-            }
+            thread.park(isAbsolute, time);
         } catch (InterruptedException e) {
             thread.setInterrupted();
         }
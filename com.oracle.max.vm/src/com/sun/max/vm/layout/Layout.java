@@ -482,6 +482,20 @@ public final class Layout {
         generalLayout().writeForwardRef(origin, forwardRef);
     }
 
+    /**
+     * Atomically installs a forwarding reference in an object if its header still holds the specified value.
+     *
+     * @param origin location of an object
+     * @param suspectedRef the value expected in the word holding the forwarding reference (typically, the hub reference)
+     * @param forwardRef the forwarding reference to install
+     * @return the value of the word before the operation; equal to {@code suspectedRef} if the forwarding reference was installed
+     */
+    @ACCESSOR(Pointer.class)
+    @INLINE
+    public static Reference compareAndSwapForwardRef(Pointer origin, Reference suspectedRef, Reference forwardRef) {
+        return generalLayout().compareAndSwapForwardRef(origin, suspectedRef, forwardRef);
+    }
+
     /**
      * Access to <strong>byte array object</strong> layout information in the
      * context of the current {@linkplain VMConfiguration VM configuration}.
@@ -177,6 +177,11 @@ public abstract class AbstractModeHandler implements ModeHandler {
         ModalLockword64 prepareModalLockword(Object object, ModalLockword64 currentLockword);
         ModalLockword64 reprepareModalLockword(ModalLockword64 preparedLockword, ModalLockword64 currentLockword, ModalLockword64 hash);
         void cancelPreparedModalLockword(ModalLockword64 preparedLockword);
+        /**
+         * Determines if {@link #prepareModalLockword} binds a monitor. Binding a monitor may block, so such a
+         * delegate must not be asked to prepare a lockword by a thread that must not block.
+         */
+        boolean preparesWithMonitor();
         boolean delegateMonitorEnter(Object object, ModalLockword64 lockword, int lockwordThreadID);
         void delegateMonitorExit(Object object, ModalLockword64 lockword);
         void delegateMonitorNotify(Object object, boolean all, ModalLockword64 lockword);
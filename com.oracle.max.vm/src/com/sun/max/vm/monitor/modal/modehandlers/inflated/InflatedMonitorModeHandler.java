@@ -324,6 +324,10 @@ public abstract class InflatedMonitorModeHandler extends AbstractModeHandler {
             super(unboundMiscWordWriter);
         }
 
+        public boolean preparesWithMonitor() {
+            return true;
+        }
+
         public int delegateMakeHashcode(Object object, ModalLockword64 lockword) {
             final InflatedMonitorLockword64 inflatedLockword = readMiscAndProtectBinding(object);
             if (inflatedLockword.isBound()) {
@@ -109,7 +109,41 @@ public abstract class BiasedLockModeHandler extends AbstractModeHandler implemen
         }
     }
 
+    /**
+     * Revokes a bias on the bias owner. Only used if the delegate prepares the revoked lockword without binding a monitor.
+     */
+    class RevokeBiasHandshake extends Handshake {
+        final Object object;
+        ModalLockword64 newLockword;
+        RevokeBiasHandshake(Object object) {
+            super("RevokeBias");
+            this.object = object;
+        }
+        @Override
+        protected void doThread(VmThread vmThread, Pointer ip, Pointer sp, Pointer fp) {
+            newLockword = revokeBias(object);
+        }
+    }
+
+    /**
+     * Revokes the bias of {@code object} while its bias owner is stopped at a safepoint. The owner is first asked to
+     * revoke the bias itself via a {@linkplain Handshake handshake}, which leaves all other threads running. If that
+     * is not possible (e.g. the owner is in native code), a single thread {@link VmOperation} is used instead. The
+     * {@link VmOperation} is also used if the delegate {@linkplain ModeDelegate#preparesWithMonitor() binds a monitor}
+     * for the revoked lockword, as binding a monitor may block, which a handshake must not do.
+     */
     protected ModalLockword64 revokeWithOwnerSafepointed(final Object object, int vmThreadMapThreadID, BiasedLockword64 biasedLockword) {
+        VmThread owner;
+        synchronized (VmThreadMap.THREAD_LOCK) {
+            owner = VmThreadMap.ACTIVE.getVmThreadForID(vmThreadMapThreadID);
+        }
+        if (owner != null && !delegate().preparesWithMonitor()) {
+            // THREAD_LOCK must not be held while waiting for the owner, as the owner may need it to reach a safepoint
+            final RevokeBiasHandshake handshake = new RevokeBiasHandshake(object);
+            if (handshake.submit(owner)) {
+                return handshake.newLockword;
+            }
+        }
         synchronized (VmThreadMap.THREAD_LOCK) {
             final VmThread biasOwnerThread = VmThreadMap.ACTIVE.getVmThreadForID(vmThreadMapThreadID);
             if (biasOwnerThread == null) {
@@ -397,8 +431,9 @@ public abstract class BiasedLockModeHandler extends AbstractModeHandler implemen
                     // We lock as normal. When the lock is released, the object will be rebiased.
                     ObjectAccess.writeMisc(object, biasedLockword.incrementCount());
                     return;
-                } else if (biasedLockword.equals(biasedLockword.asAnonBiased()) || !biasedLockword.getEpoch().equals(classEpoch)) {
-                    // Object is not biased or it's bias is not in the current epoch. Try to get the bias.
+                } else if (biasedLockword.equals(biasedLockword.asAnonBiased()) || (!biasedLockword.getEpoch().equals(classEpoch) && biasedLockword.countUnderflow())) {
+                    // Object is not biased or it's bias is not in the current epoch and it is not locked. Try to get the bias.
+                    // (An object locked by another thread in a previous epoch still needs its bias revoked.)
                     final BiasedLockword64 newBiasedLockword = biasedLockword.asBiasedAndLockedOnceBy(lockwordThreadID, classEpoch);
                     currentLockword = ModalLockword64.from(ObjectAccess.compareAndSwapMisc(object, biasedLockword, newBiasedLockword));
                     if (currentLockword.equals(biasedLockword)) {
@@ -448,21 +483,20 @@ public abstract class BiasedLockModeHandler extends AbstractModeHandler implemen
                         return newHashcode;
                     }
                 }
-                if (biasedLockword.equals(biasedLockword.asAnonBiased()) || !biasedLockword.getEpoch().equals(classEpoch)) {
+                if (biasedLockword.equals(biasedLockword.asAnonBiased()) || (!biasedLockword.getEpoch().equals(classEpoch) && biasedLockword.countUnderflow())) {
                     lockword = ModalLockword64.from(ObjectAccess.compareAndSwapMisc(object, biasedLockword, biasedLockword.setHashcode(newHashcode)));
                     if (lockword.equals(biasedLockword)) {
                         return newHashcode;
                     }
                 } else {
                     // We have to revoke to set the hashcode...
-                    final int vmThreadMapThreadID = decodeLockwordThreadID(biasedLockword.getBiasOwnerID());
-                    lockword = revokeWithOwnerSafepointed(object, vmThreadMapThreadID, biasedLockword);
                     if (Monitor.TraceMonitors) {
                         final boolean lockDisabledSafepoints = Log.lock();
                         Log.print("Safepointed revoke for hashcode: ");
                         Log.println(object.getClass().getName());
                         Log.unlock(lockDisabledSafepoints);
                     }
+                    lockword = performRevocation(object, biasedLockword);
                 }
             }
             // Not a biased lock; delegate.
@@ -484,26 +518,16 @@ public abstract class BiasedLockModeHandler extends AbstractModeHandler implemen
         private ModalLockword64 performRevocation(Object object, BiasedLockword64 lockword) {
             final BiasedLockRevocationHeuristics revocationHeuristics = getHeuristics(object);
             final RevocationType type = revocationHeuristics.notifyContentionRevocationRequest();
+            if (Monitor.TraceMonitors) {
+                traceRevocation(object, type, revocationHeuristics);
+            }
             ModalLockword64 postRevokeLockword = ModalLockword64.from(Word.zero());
             switch (type) {
                 case SINGLE_OBJECT_REVOCATION: {
-                    if (Monitor.TraceMonitors) {
-                        final boolean lockDisabledSafepoints = Log.lock();
-                        Log.print("SINGLE_OBJECT_REVOCATION: ");
-                        Log.println(object.getClass().getName());
-                        Log.unlock(lockDisabledSafepoints);
-                    }
                     postRevokeLockword = revokeWithOwnerSafepointed(object, decodeLockwordThreadID(lockword.getBiasOwnerID()), lockword);
                     break;
                 }
                 case BULK_REBIAS: {
-                    if (Monitor.TraceMonitors) {
-                        final boolean lockDisabledSafepoints = Log.lock();
-                        Log.print("BULK_REBIAS: ");
-                        Log.println(object.getClass().getName());
-                        Log.unlock(lockDisabledSafepoints);
-                    }
-
                     BulkRebiasOperation operation = new BulkRebiasOperation(object);
                     operation.submit();
                     postRevokeLockword = operation.postRebiasLockword;
@@ -511,13 +535,6 @@ public abstract class BiasedLockModeHandler extends AbstractModeHandler implemen
                     break;
                 }
                 case BULK_REVOCATION: {
-                    if (Monitor.TraceMonitors) {
-                        final boolean lockDisabledSafepoints = Log.lock();
-                        Log.print("BULK_REVOCATION: ");
-                        Log.println(object.getClass().getName());
-                        Log.unlock(lockDisabledSafepoints);
-                    }
-
                     BulkRevokeOperation operation = new BulkRevokeOperation(object);
                     operation.submit();
                     postRevokeLockword = operation.postRevokeLockword;
@@ -527,6 +544,18 @@ public abstract class BiasedLockModeHandler extends AbstractModeHandler implemen
             return postRevokeLockword;
         }
 
+        private void traceRevocation(Object object, RevocationType type, BiasedLockRevocationHeuristics revocationHeuristics) {
+            final boolean lockDisabledSafepoints = Log.lock();
+            Log.print(type.name());
+            Log.print(": ");
+            Log.print(object.getClass().getName());
+            Log.print(" revocations=");
+            Log.print(revocationHeuristics.revocationCount());
+            Log.print(" bulkRebiases=");
+            Log.println(revocationHeuristics.bulkRebiasCount());
+            Log.unlock(lockDisabledSafepoints);
+        }
+
         class BulkRevokeOperation extends VmOperation {
             private final Object object;
             ModalLockword64 postRevokeLockword;
@@ -554,7 +583,13 @@ public abstract class BiasedLockModeHandler extends AbstractModeHandler implemen
                 final Hub hub = ObjectAccess.readHub(object);
                 final BiasedLockEpoch64 epoch = hub.biasedLockEpoch;
                 hub.biasedLockEpoch = epoch.increment();
-                postRebiasLockword = revokeBias(object);
+                final ModalLockword64 lockword = ModalLockword64.from(ObjectAccess.readMisc(object));
+                if (BiasedLockword64.isBiasedLockword(lockword) && BiasedLockword64.from(lockword).countUnderflow()) {
+                    // The object is not locked, so its bias is now stale and can be taken by the requesting thread
+                    postRebiasLockword = lockword;
+                } else {
+                    postRebiasLockword = revokeBias(object);
+                }
             }
         }
 
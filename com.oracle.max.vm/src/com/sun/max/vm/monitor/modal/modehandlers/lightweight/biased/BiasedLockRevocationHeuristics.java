@@ -23,19 +23,33 @@
 package com.sun.max.vm.monitor.modal.modehandlers.lightweight.biased;
 
 import com.sun.max.atomic.*;
+import com.sun.max.vm.*;
 
 /**
+ * Per-class heuristics deciding how a contended bias is revoked. Revocations are counted per {@linkplain
+ * com.sun.max.vm.actor.holder.Hub hub}. Once {@link #BiasedLockingBulkRebiasThreshold} revocations have been seen, all
+ * instances of the class are rebiased at once by bumping the class epoch. If revocations continue up to
+ * {@link #BiasedLockingBulkRevokeThreshold}, biased locking is disabled for the class.
  */
 public class BiasedLockRevocationHeuristics {
 
     enum RevocationType {SINGLE_OBJECT_REVOCATION, BULK_REBIAS, BULK_REVOCATION}
 
-    private static final int BULK_REBIAS_THRESHOLD = 20;
-    private static final int BULK_REVOCATION_THRESHOLD = 40;
-    private static final int BULK_REBIAS_DECAY_TIME = 25000;
+    static int BiasedLockingBulkRebiasThreshold = 20;
+    static int BiasedLockingBulkRevokeThreshold = 40;
+    static int BiasedLockingDecayTime = 25000;
+    static {
+        VMOptions.addFieldOption("-XX:", "BiasedLockingBulkRebiasThreshold", BiasedLockRevocationHeuristics.class,
+            "Number of bias revocations of a class' instances after which they are all rebiased.");
+        VMOptions.addFieldOption("-XX:", "BiasedLockingBulkRevokeThreshold", BiasedLockRevocationHeuristics.class,
+            "Number of bias revocations of a class' instances after which biased locking is disabled for the class.");
+        VMOptions.addFieldOption("-XX:", "BiasedLockingDecayTime", BiasedLockRevocationHeuristics.class,
+            "Time (in ms) since the last bulk rebias of a class after which its revocation count is reset.");
+    }
 
     private final AtomicInteger revocationCount = new AtomicInteger();
     private long lastBulkRebiasTime = 0;
+    private int bulkRebiasCount;
 
     public RevocationType notifyContentionRevocationRequest() {
 
@@ -44,21 +58,21 @@ public class BiasedLockRevocationHeuristics {
         int currentRevocationCount = revocationCount.get();
         final long bulkRebiasTime = lastBulkRebiasTime;
         final long currentTime = System.currentTimeMillis();
-        if (currentRevocationCount >= BULK_REBIAS_THRESHOLD &&
-            currentRevocationCount < BULK_REVOCATION_THRESHOLD &&
+        if (currentRevocationCount >= BiasedLockingBulkRebiasThreshold &&
+            currentRevocationCount < BiasedLockingBulkRevokeThreshold &&
             lastBulkRebiasTime != 0 &&
-            currentTime - bulkRebiasTime > BULK_REBIAS_DECAY_TIME) {
+            currentTime - bulkRebiasTime > BiasedLockingDecayTime) {
             currentRevocationCount = 0;
             revocationCount.set(0);
         }
 
-        if (currentRevocationCount <= BULK_REVOCATION_THRESHOLD) {
+        if (currentRevocationCount <= BiasedLockingBulkRevokeThreshold) {
             currentRevocationCount = revocationCountAtomicInc();
         }
 
-        if (currentRevocationCount == BULK_REBIAS_THRESHOLD) {
+        if (currentRevocationCount == BiasedLockingBulkRebiasThreshold) {
             return RevocationType.BULK_REBIAS;
-        } else if (currentRevocationCount == BULK_REVOCATION_THRESHOLD) {
+        } else if (currentRevocationCount == BiasedLockingBulkRevokeThreshold) {
             return RevocationType.BULK_REVOCATION;
         }
         return RevocationType.SINGLE_OBJECT_REVOCATION;
@@ -66,6 +80,21 @@ public class BiasedLockRevocationHeuristics {
 
     public void notifyBulkRebiasComplete() {
         lastBulkRebiasTime = System.currentTimeMillis();
+        bulkRebiasCount++;
+    }
+
+    /**
+     * Gets the number of revocations counted since the last decay of this class' revocation count.
+     */
+    public int revocationCount() {
+        return revocationCount.get();
+    }
+
+    /**
+     * Gets the number of times the instances of this class have been bulk rebiased.
+     */
+    public int bulkRebiasCount() {
+        return bulkRebiasCount;
     }
 
     private int revocationCountAtomicInc() {
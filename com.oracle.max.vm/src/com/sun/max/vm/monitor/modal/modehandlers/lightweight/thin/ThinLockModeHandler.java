@@ -365,6 +365,10 @@ public abstract class ThinLockModeHandler extends AbstractModeHandler {
             // Nothing to do
         }
 
+        public boolean preparesWithMonitor() {
+            return false;
+        }
+
         public ModalLockword64 reprepareModalLockword(ModalLockword64 preparedLockword, ModalLockword64 currentLockword, ModalLockword64 hash) {
             // TODO Auto-generated method stub
             return ModalLockword64.from(Word.zero());
@@ -43,6 +43,11 @@ import com.sun.max.vm.thread.*;
  * or specialized monitor can be used. If binding is performed at runtime then an unbound monitor is taken from
  * a free list.
  * <p>
+ * Each thread keeps a small magazine of unbound monitors, refilled in batches from the global free list. Binding a
+ * monitor from the magazine, or returning one to it, needs no lock as only the owning thread touches its magazine
+ * outside of global safepoints. The magazines are flushed back to the global list at each global safepoint and
+ * when a thread terminates, so that idle threads do not hoard monitors.
+ * <p>
  * Unbinding is performed at global safepoints. All unowned, unbindable, bound monitors are unbound. Writing of unbound
  * lockwords is delegated to an {@link UnboundMiscWordWriter} object (most likely the inflated mode handler of the ModalMonitorScheme).
  * This allows unbinding to be a transition to any other locking mode.
@@ -63,6 +68,7 @@ public class JavaMonitorManager {
     // Image build time properties
     public static final String UNBOUNDLIST_IMAGE_QTY_PROPERTY = "max.monitor.unboundpool.imagesize";
     public static final String UNBOUNDLIST_GROW_QTY_PROPERTY = "max.monitor.unboundpool.grow";
+    public static final String MAGAZINE_QTY_PROPERTY = "max.monitor.magazine.size";
 
     /**
      * Minimum number of unbound monitors that are kept available to handle synchronization
@@ -81,6 +87,13 @@ public class JavaMonitorManager {
      */
     private static int unboundListGrowQty = 50;
 
+    /**
+     * The maximum number of unbound monitors in a thread's magazine, i.e. the number of monitors moved from the
+     * global list each time a magazine is {@linkplain #refillMagazine(VmThread) refilled}.
+     * This value can be configured via the {@link #MAGAZINE_QTY_PROPERTY} property at boot image build time.
+     */
+    private static int magazineQty = 8;
+
     /**
      * The current number of unbound monitors available.
      */
@@ -146,6 +159,10 @@ public class JavaMonitorManager {
             if (unboundListGrowQtyProperty != null) {
                 unboundListGrowQty = Integer.parseInt(unboundListGrowQtyProperty);
             }
+            final String magazineQtyProperty = System.getProperty(MAGAZINE_QTY_PROPERTY);
+            if (magazineQtyProperty != null) {
+                magazineQty = Integer.parseInt(magazineQtyProperty);
+            }
             for (int i = 0; i < unboundListImageQty; i++) {
                 final ManagedMonitor monitor = newManagedMonitor();
                 addToUnboundList(monitor);
@@ -319,6 +336,72 @@ public class JavaMonitorManager {
         numberOfUnboundMonitors++;
     }
 
+    private static ManagedMonitor takeFromMagazine(VmThread thread) {
+        // No safe points in here, so safe to touch the magazine.
+        final ManagedMonitor monitor = (ManagedMonitor) thread.unboundMonitors;
+        if (monitor != null) {
+            thread.unboundMonitors = monitor.next();
+            thread.numberOfUnboundMonitors--;
+            monitor.setNext(null);
+        }
+        return monitor;
+    }
+
+    private static void addToMagazine(VmThread thread, ManagedMonitor monitor) {
+        // No safe points in here, so safe to touch the magazine.
+        monitor.setNext((ManagedMonitor) thread.unboundMonitors);
+        thread.unboundMonitors = monitor;
+        thread.numberOfUnboundMonitors++;
+    }
+
+    /**
+     * Moves up to {@link #magazineQty} monitors from the global unbound list to a thread's magazine, leaving at least
+     * {@link #UNBOUNDLIST_MIN_QTY} monitors on the global list. Must be called with {@link #LOCK} held.
+     */
+    private static void refillMagazine(VmThread thread) {
+        if (numberOfUnboundMonitors < UNBOUNDLIST_MIN_QTY) {
+            System.gc();
+        }
+
+        // If we didn't free up enough such that we are at least midway between min and hwm, expand
+        if (numberOfUnboundMonitors < (unboundMonitorsHwm + UNBOUNDLIST_MIN_QTY) >> 1) {
+            expandUnboundList();
+        }
+        final int n = Math.max(1, Math.min(magazineQty - thread.numberOfUnboundMonitors, numberOfUnboundMonitors - UNBOUNDLIST_MIN_QTY));
+        // The magazine must not be flushed by a global safepoint while it is being filled.
+        SafepointPoll.disable();
+        for (int i = 0; i < n; i++) {
+            addToMagazine(thread, takeFromUnboundList());
+        }
+        SafepointPoll.enable();
+    }
+
+    /**
+     * Returns the monitors in a thread's magazine to the global unbound list. This is called when
+     * the thread terminates and, for all threads, at global safepoints.
+     *
+     * @param thread the thread whose magazine is to be flushed
+     */
+    public static void flushUnboundMonitors(VmThread thread) {
+        if (inGlobalSafepoint) {
+            flushMagazine(thread);
+        } else {
+            synchronized (LOCK) {
+                SafepointPoll.disable();
+                flushMagazine(thread);
+                SafepointPoll.enable();
+            }
+        }
+    }
+
+    private static void flushMagazine(VmThread thread) {
+        ManagedMonitor monitor = takeFromMagazine(thread);
+        while (monitor != null) {
+            addToUnboundList(monitor);
+            monitor = takeFromMagazine(thread);
+        }
+    }
+
     /**
      * Lock used to synchronize access to the unbound monitor list.
      */
@@ -341,16 +424,14 @@ public class JavaMonitorManager {
         if (inGlobalSafepoint) {
             monitor = takeFromUnboundList();
         } else {
-            synchronized (LOCK) {
-                if (numberOfUnboundMonitors < UNBOUNDLIST_MIN_QTY) {
-                    System.gc();
-                }
-
-                // If we didn't free up enough such that we are at least midway between min and hwm, expand
-                if (numberOfUnboundMonitors < (unboundMonitorsHwm + UNBOUNDLIST_MIN_QTY) >> 1) {
-                    expandUnboundList();
+            final VmThread current = VmThread.current();
+            monitor = takeFromMagazine(current);
+            while (monitor == null) {
+                synchronized (LOCK) {
+                    refillMagazine(current);
                 }
-                monitor = takeFromUnboundList();
+                // A global safepoint may have flushed the magazine again
+                monitor = takeFromMagazine(current);
             }
         }
         monitor.setBoundObject(object);
@@ -365,7 +446,7 @@ public class JavaMonitorManager {
     }
 
     /**
-     * Places the given monitor back into the free list.
+     * Places the given monitor back into the current thread's magazine, or into the free list at a global safepoint.
      * <p>
      * Important: This should only be called for monitors that have
      * failed to be two-way bound to an object.
@@ -379,9 +460,7 @@ public class JavaMonitorManager {
         if (inGlobalSafepoint) {
             addToUnboundList(bindableMonitor);
         } else {
-            synchronized (LOCK) {
-                addToUnboundList(bindableMonitor);
-            }
+            addToMagazine(VmThread.current(), bindableMonitor);
         }
     }
 
@@ -481,6 +560,7 @@ public class JavaMonitorManager {
     private static class ProtectedMonitorGatherer implements Pointer.Procedure {
         public void run(Pointer tla) {
             VmThread thread = VmThread.fromTLA(tla);
+            flushMagazine(thread);
             final JavaMonitor monitor = thread.protectedMonitor;
             if (monitor != null) {
                 final ManagedMonitor managedMonitor = (ManagedMonitor) monitor;
@@ -497,7 +577,7 @@ public class JavaMonitorManager {
      * Must only be called on a global safepoint.
      */
     private static void unbindUnownedMonitors() {
-        // Mark all protected monitors
+        // Mark all protected monitors and flush the magazines
         VmThreadMap.ACTIVE.forAllThreadLocals(null, protectedMonitorGatherer);
         // Deflate all non-protected and non-sticky monitors with no owner
         for (int i = 0; i < numberOfBindableMonitors; i++) {
@@ -55,6 +55,12 @@ import com.sun.max.vm.thread.*;
  * all threads can continue. With this implementation, the notify can hit thread A since it could not re-acquire the
  * lock between the timeout and the notify (remember that thread C holds the lock). So the notify does not wake up
  * thread B, and it sleeps forever - thread B remains blocked forever.
+ * <br>
+ * <br>
+ * A thread that finds the mutex held by another thread spins for a while before blocking on it, since critical
+ * sections are usually short and blocking on a native mutex costs a system call and a context switch. The length of
+ * the spin is learned per monitor: it grows towards twice the length of recent successful spins and is halved each
+ * time a spin fails.
  */
 public class StandardJavaMonitor extends AbstractJavaMonitor {
 
@@ -72,6 +78,42 @@ public class StandardJavaMonitor extends AbstractJavaMonitor {
 
     private int notifiedThreads;
 
+    static boolean MonitorSpinning = true;
+    static int MonitorSpinMinimum = 64;
+    static int MonitorSpinMaximum = 8192;
+    static boolean TraceMonitorContention;
+    static {
+        VMOptions.addFieldOption("-XX:", "MonitorSpinning", StandardJavaMonitor.class, "Spin on a contended inflated monitor before blocking on it.");
+        VMOptions.addFieldOption("-XX:", "MonitorSpinMinimum", StandardJavaMonitor.class, "Minimum number of iterations spun on a contended inflated monitor.");
+        VMOptions.addFieldOption("-XX:", "MonitorSpinMaximum", StandardJavaMonitor.class, "Maximum number of iterations spun on a contended inflated monitor.");
+        VMOptions.addFieldOption("-XX:", "TraceMonitorContention", StandardJavaMonitor.class, "Trace contended acquisitions of inflated monitors.");
+    }
+
+    /**
+     * The number of iterations a thread currently spins on this monitor before blocking.
+     */
+    private int spinLimit = MonitorSpinMinimum;
+
+    /**
+     * Number of (non-recursive) acquisitions of this monitor.
+     */
+    private int acquisitions;
+
+    /**
+     * Number of acquisitions of this monitor that found the mutex held by another thread.
+     */
+    private int contendedAcquisitions;
+
+    /**
+     * Number of contended acquisitions of this monitor that succeeded by spinning.
+     */
+    private int spinAcquisitions;
+
+    /**
+     * Number of contended acquisitions of this monitor that blocked on the mutex.
+     */
+    private int blockingAcquisitions;
+
     public StandardJavaMonitor() {
         mutex = MutexFactory.create();
     }
@@ -95,15 +137,66 @@ public class StandardJavaMonitor extends AbstractJavaMonitor {
             traceEndMonitorEnter(currentThread);
             return;
         }
-        currentThread.setState(Thread.State.BLOCKED);
-        mutex.lock();
-        currentThread.setState(Thread.State.RUNNABLE);
-        ownerThread = currentThread;
+        if (mutex.tryLock()) {
+            ownerThread = currentThread;
+            acquisitions++;
+        } else {
+            int spins = MonitorSpinning ? spinLock() : -1;
+            if (spins < 0) {
+                currentThread.setState(Thread.State.BLOCKED);
+                mutex.lock();
+                currentThread.setState(Thread.State.RUNNABLE);
+                blockingAcquisitions++;
+            } else {
+                spinAcquisitions++;
+            }
+            ownerThread = currentThread;
+            acquisitions++;
+            contendedAcquisitions++;
+            traceContendedMonitorEnter(currentThread, spins);
+        }
         setBindingProtection(BindingProtection.PROTECTED);
         recursionCount = 1;
         traceEndMonitorEnter(currentThread);
     }
 
+    /**
+     * Spins until the mutex is acquired or the {@linkplain #spinLimit spin limit} of this monitor is reached, adapting
+     * the limit to the outcome. The mutex is only polled when it appears to be free, to avoid disturbing the owner.
+     *
+     * @return the number of iterations spun before acquiring the mutex, or -1 if it was not acquired
+     */
+    private int spinLock() {
+        final int limit = spinLimit;
+        for (int spins = 0; spins < limit; spins++) {
+            Intrinsics.pause();
+            if (ownerThread == null && mutex.tryLock()) {
+                // The limit is not updated atomically: a lost update merely delays adaptation.
+                spinLimit = Math.max(MonitorSpinMinimum, Math.min(MonitorSpinMaximum, (limit + 2 * spins) / 2 + 1));
+                return spins;
+            }
+        }
+        spinLimit = Math.max(MonitorSpinMinimum, limit / 2);
+        return -1;
+    }
+
+    private void traceContendedMonitorEnter(VmThread currentThread, int spins) {
+        if (TraceMonitorContention) {
+            final boolean lockDisabledSafepoints = Log.lock();
+            Log.print(currentThread.getName());
+            if (spins < 0) {
+                Log.print(" blocked on contended monitor [");
+            } else {
+                Log.print(" spun ");
+                Log.print(spins);
+                Log.print(" times on contended monitor [");
+            }
+            log();
+            Log.println("]");
+            Log.unlock(lockDisabledSafepoints);
+        }
+    }
+
     @Override
     public void monitorExit() {
         final VmThread currentThread = VmThread.current();
@@ -256,11 +349,31 @@ public class StandardJavaMonitor extends AbstractJavaMonitor {
         mutex.init();
     }
 
+    @Override
+    public void reset() {
+        super.reset();
+        spinLimit = MonitorSpinMinimum;
+        acquisitions = 0;
+        contendedAcquisitions = 0;
+        spinAcquisitions = 0;
+        blockingAcquisitions = 0;
+    }
+
     @Override
     public void log() {
         super.log();
         Log.print(" mutex=");
         Log.print(Address.fromLong(mutex.logId()));
+        Log.print(" acquisitions=");
+        Log.print(acquisitions);
+        Log.print(" contended=");
+        Log.print(contendedAcquisitions);
+        Log.print(" spun=");
+        Log.print(spinAcquisitions);
+        Log.print(" blocked=");
+        Log.print(blockingAcquisitions);
+        Log.print(" spinLimit=");
+        Log.print(spinLimit);
         Log.print(" waiters={");
         VmThread waiter = waitingThreads;
         while (waiter != null) {
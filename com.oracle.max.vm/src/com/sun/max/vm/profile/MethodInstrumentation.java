@@ -21,6 +21,7 @@
  */
 package com.sun.max.vm.profile;
 
+import com.sun.cri.ri.*;
 import com.sun.max.annotate.*;
 import com.sun.max.vm.actor.holder.*;
 import com.sun.max.vm.actor.member.*;
@@ -87,9 +88,18 @@ public class MethodInstrumentation {
         incrementProfileCounterAtIndex(mpo, mpoIndex);
     }
 
+    /**
+     * Records a backward branch. The counter is shared with the method entry so that a hot loop also triggers the
+     * recompilation of the method on its next entry. The branch that drops the counter to zero additionally
+     * attempts {@linkplain OnStackReplacement on-stack replacement} at the loop header.
+     *
+     * @param targetBCI the target of the backward branch
+     */
     @INLINE
-    public static void recordBackwardBranch(MethodProfile mpo) {
-        mpo.entryBackedgeCount--;
+    public static void recordBackwardBranch(MethodProfile mpo, int targetBCI) {
+        if (--mpo.entryBackedgeCount == 0) {
+            OnStackReplacement.backedgeCounterOverflow(mpo, targetBCI);
+        }
     }
 
     @INLINE
@@ -167,6 +177,55 @@ public class MethodInstrumentation {
         return null;
     }
 
+    /**
+     * Converts the receiver types recorded by the instrumentation at a given bytecode index into the form
+     * consumed by an optimizing compiler. The counts of types that did not fit in the profile are included in
+     * {@link RiTypeProfile#count} but not in {@link RiTypeProfile#types}, so the probabilities of the recorded
+     * types may sum to less than 1.
+     *
+     * @return {@code null} if no receiver types have been recorded at {@code bci}
+     */
+    public static RiTypeProfile computeTypeProfile(MethodProfile mpo, int bci) {
+        Integer[] typeProfile = mpo.getTypeProfile(bci);
+        if (typeProfile == null) {
+            return null;
+        }
+        int total = 0;
+        int recorded = 0;
+        boolean others = false;
+        for (int i = 0; i < typeProfile.length; i += 2) {
+            Integer typeId = typeProfile[i];
+            Integer count = typeProfile[i + 1];
+            if (typeId != null && count != null) {
+                total += count;
+                if (typeId != MethodProfile.UNDEFINED_TYPE_ID) {
+                    recorded++;
+                } else {
+                    others = true;
+                }
+            }
+        }
+        if (total == 0) {
+            return null;
+        }
+        RiTypeProfile result = new RiTypeProfile();
+        result.count = total;
+        result.morphism = others ? recorded + 1 : recorded;
+        result.types = new RiResolvedType[recorded];
+        result.probabilities = new float[recorded];
+        int j = 0;
+        for (int i = 0; i < typeProfile.length && j < recorded; i += 2) {
+            Integer typeId = typeProfile[i];
+            Integer count = typeProfile[i + 1];
+            if (typeId != null && count != null && typeId != MethodProfile.UNDEFINED_TYPE_ID) {
+                result.types[j] = ClassIDManager.toClassActor(typeId);
+                result.probabilities[j] = (float) count / total;
+                j++;
+            }
+        }
+        return result;
+    }
+
     private static Hub typeIdToHub(Integer typeId) {
         if (typeId != MethodProfile.UNDEFINED_TYPE_ID) {
             ClassActor classActor = ClassIDManager.toClassActor(typeId);
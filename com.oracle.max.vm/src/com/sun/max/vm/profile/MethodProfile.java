@@ -112,9 +112,89 @@ public class MethodProfile {
      */
     public boolean compilationDisabled;
 
+    /**
+     * The {@linkplain com.sun.max.vm.compiler.OnStackReplacement on-stack replacement} compilations of the method, keyed by the bci of the
+     * loop header at which they are entered. A {@code null} value records a failed OSR compilation. The map is
+     * replaced rather than updated so that it can be read without holding the lock on this profile.
+     */
+    private volatile HashMap<Integer, TargetMethod> osrMethods;
+
+    /**
+     * The loop headers for which an OSR compilation has been started but not yet {@linkplain #setOSRMethod recorded}.
+     */
+    private HashSet<Integer> pendingOSRMethods;
+
     protected MethodProfile() {
     }
 
+    /**
+     * Gets the OSR compilation for a given loop header.
+     *
+     * @return {@code null} if there is no OSR compilation or the OSR compilation failed or is still pending
+     */
+    public synchronized TargetMethod osrMethod(int bci) {
+        return osrMethods == null ? null : osrMethods.get(bci);
+    }
+
+    /**
+     * Records that an OSR compilation for a given loop header is about to be performed. The caller must
+     * {@linkplain #setOSRMethod record} its result.
+     *
+     * @return {@code false} if an OSR compilation for {@code bci} has already been attempted or is pending
+     */
+    public synchronized boolean startOSRCompilation(int bci) {
+        if ((osrMethods != null && osrMethods.containsKey(bci)) || (pendingOSRMethods != null && pendingOSRMethods.contains(bci))) {
+            return false;
+        }
+        if (pendingOSRMethods == null) {
+            pendingOSRMethods = new HashSet<Integer>();
+        }
+        pendingOSRMethods.add(bci);
+        return true;
+    }
+
+    /**
+     * Determines if the OSR compilation for a given loop header is pending.
+     */
+    public synchronized boolean isOSRCompilationPending(int bci) {
+        return pendingOSRMethods != null && pendingOSRMethods.contains(bci);
+    }
+
+    /**
+     * Records the result of the OSR compilation for a given loop header started by {@link #startOSRCompilation}.
+     *
+     * @param osrMethod the OSR compilation or {@code null} if the compilation failed
+     */
+    public synchronized void setOSRMethod(int bci, TargetMethod osrMethod) {
+        HashMap<Integer, TargetMethod> methods = osrMethods == null ? new HashMap<Integer, TargetMethod>() : new HashMap<Integer, TargetMethod>(osrMethods);
+        methods.put(bci, osrMethod);
+        osrMethods = methods;
+        pendingOSRMethods.remove(bci);
+    }
+
+    /**
+     * Removes an OSR compilation for a given loop header so that the next attempt to enter the loop by on-stack
+     * replacement compiles it again. This is done once the OSR compilation has been invalidated.
+     *
+     * @param osrMethod the OSR compilation to remove. Nothing is removed if a different compilation is recorded for {@code bci}.
+     */
+    public synchronized void removeOSRMethod(int bci, TargetMethod osrMethod) {
+        if (osrMethods != null && osrMethod != null && osrMethods.get(bci) == osrMethod) {
+            HashMap<Integer, TargetMethod> methods = new HashMap<Integer, TargetMethod>(osrMethods);
+            methods.remove(bci);
+            osrMethods = methods;
+        }
+    }
+
+    /**
+     * Determines if a given method is recorded as an OSR compilation in this profile. This does not lock the
+     * profile and can therefore be called by a safepoint operation.
+     */
+    public boolean isOSRMethod(TargetMethod tm) {
+        HashMap<Integer, TargetMethod> methods = osrMethods;
+        return methods != null && methods.containsValue(tm);
+    }
+
     /**
      * Increments deoptimization profiling counter for a gived deoptimization reason.
      * @param deoptReasonId deoptimization reason identificator
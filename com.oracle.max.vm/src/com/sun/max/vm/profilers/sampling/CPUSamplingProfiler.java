@@ -100,7 +100,7 @@ public final class CPUSamplingProfiler extends SamplingProfiler {
                     }
                     // section should be synchronized with sorting and dumping
                     synchronized (this) {
-                        stackTraceGatherer.submit();
+                        stackTraceGatherer.sampleThreads();
                         sampleCount++;
                     }
                     if (dumpInterval > 0 && now > lastDump + dumpInterval * 1000000L) {
@@ -124,7 +124,7 @@ public final class CPUSamplingProfiler extends SamplingProfiler {
         }
 
         @Override
-        protected boolean operateOnThread(VmThread thread) {
+        protected boolean sampleThread(VmThread thread) {
             final boolean ignore = thread == theProfiler ||
                     (isSystemThread(thread) && !trackSystemThreads);
             return !ignore;
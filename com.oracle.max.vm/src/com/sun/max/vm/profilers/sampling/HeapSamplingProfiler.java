@@ -224,7 +224,7 @@ public final class HeapSamplingProfiler extends SamplingProfiler {
          * Operate on thread allocating memory.
          */
         @Override
-        protected boolean operateOnThread(VmThread thread) {
+        protected boolean sampleThread(VmThread thread) {
             final boolean operate = thread == sampledThread &&
                     (!isSystemThread(thread) || trackSystemThreads);
             return operate;
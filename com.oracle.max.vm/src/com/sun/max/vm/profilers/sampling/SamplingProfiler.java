@@ -28,9 +28,10 @@ import java.util.*;
 import com.sun.max.annotate.*;
 import com.sun.max.vm.*;
 import com.sun.max.vm.actor.member.*;
+import com.sun.max.vm.heap.*;
 import com.sun.max.vm.runtime.*;
 import com.sun.max.vm.stack.*;
-import com.sun.max.vm.thread.VmThread;
+import com.sun.max.vm.thread.*;
 import com.sun.max.unsafe.*;
 
 /**
@@ -333,15 +334,101 @@ public abstract class SamplingProfiler extends Thread {
 
     /**
      * Encapsulates the basic logic of handling one thread after all threads are frozen at a safepoint.
+     * Alternatively, {@link #sampleThreads()} samples each thread in turn by means of a {@link Handshake},
+     * leaving all other threads running.
      */
     protected abstract class StackTraceGatherer extends VmOperation {
 
         StackTraceGatherer(String name) {
             super(name, null, Mode.Safepoint);
+            this.stackWalkHandshake = new StackWalkHandshake(name);
         }
 
+        /**
+         * Determines if a given thread is to be sampled.
+         */
+        protected abstract boolean sampleThread(VmThread thread);
+
         @Override
-        protected abstract boolean operateOnThread(VmThread thread);
+        protected final boolean operateOnThread(VmThread thread) {
+            if (unsampledThreads > 0) {
+                // only freeze the threads that could not be sampled by a handshake
+                for (int i = 0; i < unsampledThreads; i++) {
+                    if (threads.get(i) == thread) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            return sampleThread(thread);
+        }
+
+        /**
+         * The threads to be sampled by {@link #sampleThreads()}. The first {@link #unsampledThreads} entries are the
+         * threads that must be sampled by freezing them.
+         */
+        private final ArrayList<VmThread> threads = new ArrayList<VmThread>();
+
+        private int unsampledThreads;
+
+        private final Pointer.Procedure addThread = new Pointer.Procedure() {
+            public void run(Pointer tla) {
+                final VmThread vmThread = VmThread.fromTLA(tla);
+                if (vmThread != null && !vmThread.isVmOperationThread() && !ConcurrentGCThread.isConcurrentGCThread(tla) && sampleThread(vmThread)) {
+                    threads.add(vmThread);
+                }
+            }
+        };
+
+        /**
+         * Walks the stack of the current thread when it hits a safepoint.
+         */
+        private final class StackWalkHandshake extends Handshake {
+            SamplingStackTraceVisitor visitor;
+
+            StackWalkHandshake(String name) {
+                super(name);
+            }
+
+            @Override
+            protected void doThread(VmThread vmThread, Pointer ip, Pointer sp, Pointer fp) {
+                walkStack(visitor, vmThread, ip, sp, fp);
+            }
+        }
+
+        private final StackWalkHandshake stackWalkHandshake;
+
+        /**
+         * Takes one sample of every thread selected by {@link #sampleThread(VmThread)}. Each thread walks its own
+         * stack when it reaches its next safepoint, so only the thread being sampled is ever stopped. The
+         * sample is then recorded by the calling thread. Threads that do not reach a safepoint in a timely manner
+         * (e.g. they are in native code) are sampled afterwards by submitting this operation for just those threads.
+         */
+        public void sampleThreads() {
+            threads.clear();
+            synchronized (VmThreadMap.THREAD_LOCK) {
+                VmThreadMap.ACTIVE.forAllThreadLocals(null, addThread);
+            }
+            int unsampled = 0;
+            for (int i = 0; i < threads.size(); i++) {
+                final VmThread vmThread = threads.get(i);
+                stackWalkHandshake.visitor = new SamplingStackTraceVisitor(getStackTraceGatheringStartMarker(vmThread));
+                if (stackWalkHandshake.submit(vmThread)) {
+                    recordSample(vmThread);
+                } else {
+                    threads.set(unsampled++, vmThread);
+                }
+            }
+            if (unsampled > 0) {
+                unsampledThreads = unsampled;
+                try {
+                    submit();
+                } finally {
+                    unsampledThreads = 0;
+                }
+            }
+            threads.clear();
+        }
 
         /**
          * {@link ThreadSample} used to record samples of {@link VmOperation} thread.
@@ -381,7 +468,14 @@ public abstract class SamplingProfiler extends Thread {
         @Override
         public void doThread(VmThread vmThread, Pointer ip, Pointer sp, Pointer fp) {
             ClassMethodActor classActor = getStackTraceGatheringStartMarker(vmThread);
-            SamplingStackTraceVisitor sstv = new SamplingStackTraceVisitor(classActor);
+            walkStack(new SamplingStackTraceVisitor(classActor), vmThread, ip, sp, fp);
+            recordSample(vmThread);
+        }
+
+        /**
+         * Gathers the stack of a stopped thread into {@link SamplingProfiler#workingStackInfo}. This does not allocate.
+         */
+        private void walkStack(SamplingStackTraceVisitor sstv, VmThread vmThread, Pointer ip, Pointer sp, Pointer fp) {
             final VmStackFrameWalker stackFrameWalker = vmThread.samplingProfilerStackFrameWalker();
             workingStackInfo.reset(0);
             workingStackDepth = 0;
@@ -393,6 +487,12 @@ public abstract class SamplingProfiler extends Thread {
                     workingStackInfo.reset(maxStackDepth);
                 }
             }
+        }
+
+        /**
+         * Records the stack gathered by {@link #walkStack} as a sample of a given thread.
+         */
+        private void recordSample(VmThread vmThread) {
             // Have we seen this stack before?
             List<ThreadSample> threadSampleList = stackInfoMap.get(workingStackInfo);
             if (threadSampleList == null) {
@@ -83,7 +83,18 @@ public abstract class GCOperation extends VmOperation {
 
     @Override
     public void doAfterFrozen(VmThread vmThread) {
+        if (!ParallelHeapRootsScanner.isEnabled()) {
+            stackReferenceMapPreparationTime += prepareStackReferenceMap(vmThread);
+        }
+    }
 
+    /**
+     * Prepares the part of the stack reference map of a frozen thread that the thread didn't prepare itself before blocking.
+     *
+     * @param vmThread a thread frozen by this operation
+     * @return the amount of time taken to prepare the reference map
+     */
+    private static long prepareStackReferenceMap(VmThread vmThread) {
         Pointer tla = vmThread.tla();
 
         final boolean threadWasInNative = LOWEST_ACTIVE_STACK_SLOT_ADDRESS.load(tla).isZero();
@@ -94,7 +105,7 @@ public abstract class GCOperation extends VmOperation {
             }
             // Since this thread is in native code it did not get an opportunity to prepare any of its stack reference map,
             // so we will take care of that for it now:
-            stackReferenceMapPreparationTime += VmThreadLocal.prepareStackReferenceMap(tla);
+            return VmThreadLocal.prepareStackReferenceMap(tla);
         } else {
             // Threads that hit a safepoint in Java code have prepared *most* of their stack reference map themselves.
             // The part of the stack between the trap stub frame and the frame of the JNI stub that enters into the
@@ -105,10 +116,68 @@ public abstract class GCOperation extends VmOperation {
             }
             final StackReferenceMapPreparer stackReferenceMapPreparer = vmThread.stackReferenceMapPreparer();
             stackReferenceMapPreparer.completeStackReferenceMap(tla);
-            stackReferenceMapPreparationTime += stackReferenceMapPreparer.preparationTime();
+            return stackReferenceMapPreparer.preparationTime();
         }
     }
 
+    /**
+     * Parallel task preparing the stack reference maps of the threads frozen by this operation. When {@linkplain ParallelHeapRootsScanner#isEnabled()
+     * parallel root scanning} is enabled, the preparation is deferred from {@link #doAfterFrozen(VmThread)} to this task, which runs once all threads are frozen.
+     * Workers claim the threads and prepare their reference maps with the threads' own {@link StackReferenceMapPreparer}s.
+     */
+    final class StackReferenceMapPreparation extends GCWorkerGang.GCTask {
+        final GCWorkerGang.ThreadClaimer threadClaimer = new GCWorkerGang.ThreadClaimer();
+
+        /**
+         * Time spent preparing stack reference maps by each worker.
+         */
+        final long[] preparationTimes = new long[GCWorkerGang.MAX_WORKERS];
+
+        StackReferenceMapPreparation() {
+            super("StackReferenceMapPreparation");
+        }
+
+        @Override
+        public void run(int workerId) {
+            long preparationTime = 0L;
+            VmThread vmThread = threadClaimer.claim();
+            while (vmThread != null) {
+                if (!vmThread.isVmOperationThread() && operateOnThread(vmThread)) {
+                    preparationTime += prepareStackReferenceMap(vmThread);
+                }
+                vmThread = threadClaimer.claim();
+            }
+            preparationTimes[workerId] = preparationTime;
+        }
+
+        /**
+         * Prepare the stack reference maps of all frozen threads with the gang.
+         * @return the total time spent by the workers preparing stack reference maps
+         */
+        long prepare() {
+            threadClaimer.reset();
+            GCWorkerGang.runTask(this);
+            long preparationTime = 0L;
+            for (int workerId = 0; workerId < GCWorkerGang.activeWorkers(); workerId++) {
+                preparationTime += preparationTimes[workerId];
+            }
+            return preparationTime;
+        }
+    }
+
+    private final StackReferenceMapPreparation stackReferenceMapPreparation = new StackReferenceMapPreparation();
+
+    /**
+     * The dedicated threads of the {@link GCWorkerGang} are not frozen: they run parallel tasks on behalf of the
+     * VM operation thread during the collection. Nor are the {@linkplain ConcurrentGCThread concurrent GC threads}:
+     * they were suspended before this operation froze the mutator threads.
+     */
+    @Override
+    protected boolean operateOnThread(VmThread thread) {
+        final Pointer tla = thread.tla();
+        return !GCWorkerGang.isWorkerThread(tla) && !ConcurrentGCThread.isConcurrentGCThread(tla);
+    }
+
     @Override
     protected void doBeforeThawingThread(VmThread thread) {
         // Indicates that the stack reference map for the thread is once-again unprepared.
@@ -156,6 +225,8 @@ public abstract class GCOperation extends VmOperation {
 
     @Override
     public void doIt() {
+        // GC worker threads may have been frozen by an enclosing operation, in which case they cannot take part in this collection.
+        GCWorkerGang.setWorkersAvailable(enclosing == null);
         // The next 2 statements *must* be adjacent as the reference map for this frame must
         // be the same at both calls.
         stackReferenceMapPreparationTime = VmThreadLocal.prepareCurrentStackReferenceMap();
@@ -174,6 +245,9 @@ public abstract class GCOperation extends VmOperation {
         long beforeFree = 0L;
         long beforeUsed = 0L;
         invocationCount++;
+        if (ParallelHeapRootsScanner.isEnabled()) {
+            stackReferenceMapPreparationTime += stackReferenceMapPreparation.prepare();
+        }
         if (Heap.LogGCSuppressionCount > 0) {
             Heap.LogGCSuppressionCount--;
         }
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.runtime;
+
+import static com.sun.max.vm.MaxineVM.*;
+import static com.sun.max.vm.runtime.VmOperation.*;
+import static com.sun.max.vm.runtime.VmOperationThread.*;
+import static com.sun.max.vm.thread.VmThreadLocal.*;
+
+import com.oracle.max.cri.intrinsics.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.actor.holder.*;
+import com.sun.max.vm.heap.*;
+import com.sun.max.vm.reference.*;
+import com.sun.max.vm.thread.*;
+
+/**
+ * An operation performed by a single thread on itself when it next hits a {@linkplain SafepointPoll safepoint}.
+ * Unlike a {@link VmOperation} with a single target thread, a handshake is not run on the
+ * {@linkplain VmOperationThread VM operation thread} and does not take {@link VmThreadMap#THREAD_LOCK}:
+ * only the safepoint latch of the target thread is armed and all other threads keep running.
+ * <p>
+ * A handshake is posted in the {@link VmThreadLocal#HANDSHAKE} thread local of the target thread, independently of
+ * any pending {@link VmOperation}. A thread that traps at a safepoint first takes part in the pending VM operation
+ * (if any) and then claims and performs the pending handshake (if any). Thawing a thread from a VM operation re-arms
+ * its safepoint latch if a handshake is pending.
+ * <p>
+ * A thread executing native code cannot reach a safepoint until it returns. If the target of a handshake stays out of
+ * Java code for too long, the handshake is withdrawn and {@link #submit(VmThread)} returns {@code false}, leaving it
+ * to the caller to fall back to a {@link VmOperation}.
+ * <p>
+ * {@link #doThread(VmThread, Pointer, Pointer, Pointer)} runs on the target thread from within the trap handler,
+ * with safepoints disabled. It must not block.
+ */
+public abstract class Handshake {
+
+    /**
+     * A descriptive name of this handshake. This value is only used for tracing.
+     */
+    public final String name;
+
+    /**
+     * Set by the target thread once it has performed this handshake.
+     */
+    private volatile boolean done;
+
+    protected Handshake(String name) {
+        if (!MaxineVM.isHosted() && !Heap.isInBootImage(ClassActor.fromJava(getClass()))) {
+            // Handshakes are run from the trap handler; see VmOperation(String, VmThread, Mode, boolean)
+            FatalError.unexpected(Handshake.class.getName() + " subclass " + getClass().getName() + " is not in the boot image");
+        }
+        this.name = name;
+    }
+
+    /**
+     * Performs this handshake on the current thread, which has just hit a safepoint.
+     *
+     * @param vmThread the current thread
+     * @param ip instruction pointer at which the thread hit the safepoint
+     * @param sp stack pointer at which the thread hit the safepoint
+     * @param fp frame pointer at which the thread hit the safepoint
+     */
+    protected abstract void doThread(VmThread vmThread, Pointer ip, Pointer sp, Pointer fp);
+
+    /**
+     * Requests {@code target} to perform this handshake at its next safepoint and waits until it has done so.
+     * A handshake can only be pending on one thread at a time.
+     *
+     * @param target the thread to perform this handshake
+     * @return {@code true} if {@code target} performed this handshake, {@code false} if it is the current thread,
+     *         is not running, or did not reach a safepoint in time
+     */
+    public final boolean submit(VmThread target) {
+        if (target == VmThread.current() || target.isVmOperationThread() || target.javaThread() == null) {
+            return false;
+        }
+        // Pinning the thread locals stops the target from detaching and freeing them.
+        if (!target.pinThreadLocals()) {
+            return false;
+        }
+        try {
+            final Pointer tla = target.tla();
+            if (target.state() == Thread.State.TERMINATED || tla.isZero()) {
+                return false;
+            }
+            final Pointer etla = ETLA.load(tla);
+            final Reference self = Reference.fromJava(this);
+
+            done = false;
+            int steps = 0;
+            while (!etla.compareAndSwapReference(HANDSHAKE.offset, Reference.zero(), self).isZero()) {
+                // another handshake is pending on the target
+                pause(steps++);
+            }
+            MemoryBarriers.barrier(MemoryBarriers.STORE_LOAD);
+            SAFEPOINT_LATCH.store(etla, TTLA.load(tla));
+            trace("Posted", target);
+
+            steps = 0;
+            int stepsOutOfJava = 0;
+            while (HANDSHAKE.loadRef(etla).toJava() == this) {
+                // A terminated target is detaching: it reaches no more safepoints and waits for its thread locals to be unpinned
+                boolean withdraw = target.state() == Thread.State.TERMINATED;
+                if (!withdraw) {
+                    if (MUTATOR_STATE.load(etla).equals(THREAD_IN_JAVA)) {
+                        stepsOutOfJava = 0;
+                    } else {
+                        withdraw = ++stepsOutOfJava > SafepointSpinBeforeYield;
+                    }
+                }
+                if (withdraw && etla.compareAndSwapReference(HANDSHAKE.offset, self, Reference.zero()).toJava() == this) {
+                    resetSafepointLatch(etla);
+                    trace("Withdrew", target);
+                    return false;
+                }
+                pause(steps++);
+            }
+            // The target claimed the handshake; wait for it to complete
+            while (!done) {
+                pause(steps++);
+            }
+            trace("Completed", target);
+            return true;
+        } finally {
+            target.unpinThreadLocals();
+        }
+    }
+
+    private static void pause(int steps) {
+        if (steps < SafepointSpinBeforeYield) {
+            Intrinsics.pause();
+        } else {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Disarms the safepoint latch of a thread unless a VM operation or a handshake is still pending for it.
+     */
+    private static void resetSafepointLatch(Pointer etla) {
+        SAFEPOINT_LATCH.store(etla, etla);
+        MemoryBarriers.barrier(MemoryBarriers.STORE_LOAD);
+        if (!VM_OPERATION.loadRef(etla).isZero() || !HANDSHAKE.loadRef(etla).isZero()) {
+            SAFEPOINT_LATCH.store(etla, TTLA.load(etla));
+        }
+    }
+
+    /**
+     * Called by the {@linkplain Trap trap} handler on a thread that hit a safepoint, after it has taken part in any
+     * pending {@link VmOperation}. This is always called with safepoints {@linkplain SafepointPoll#disable() disabled}.
+     *
+     * @param etla the safepoints-enabled thread locals of the current thread
+     * @param trapFrame a pointer to the trap frame
+     */
+    static void doAtSafepoint(Pointer etla, Pointer trapFrame) {
+        final Reference reference = HANDSHAKE.loadRef(etla);
+        if (reference.isZero()) {
+            return;
+        }
+        if (etla.compareAndSwapReference(HANDSHAKE.offset, reference, Reference.zero()).toJava() != reference.toJava()) {
+            // withdrawn by the submitting thread
+            return;
+        }
+        resetSafepointLatch(etla);
+
+        final Handshake handshake = (Handshake) reference.toJava();
+        final TrapFrameAccess tfa = vm().trapFrameAccess;
+        try {
+            handshake.doThread(VmThread.current(), tfa.getPC(trapFrame), tfa.getSP(trapFrame), tfa.getFP(trapFrame));
+        } finally {
+            handshake.done = true;
+        }
+    }
+
+    private void trace(String action, VmThread target) {
+        if (TraceVmOperations) {
+            boolean lockDisabledSafepoints = Log.lock();
+            Log.print("Handshake[");
+            Log.print(name);
+            Log.print("]: ");
+            Log.print(action);
+            Log.print(" for ");
+            Log.printThread(target, true);
+            Log.unlock(lockDisabledSafepoints);
+        }
+    }
+}
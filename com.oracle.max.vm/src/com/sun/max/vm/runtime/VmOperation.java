@@ -310,6 +310,16 @@ public class VmOperation {
     protected void doAtSafepointAfterBlocking(Pointer trapFrame) {
     }
 
+    /**
+     * Re-arms the safepoint latch of a thread being thawed if a {@link Handshake} was posted for it while it was frozen.
+     */
+    static void rearmForHandshake(Pointer etla) {
+        MemoryBarriers.barrier(MemoryBarriers.STORE_LOAD);
+        if (!HANDSHAKE.loadRef(etla).isZero()) {
+            SAFEPOINT_LATCH.store(etla, TTLA.load(etla));
+        }
+    }
+
     /**
      * Encapsulates the procedure run by the VM operation thread to thaw a frozen thread.
      */
@@ -334,6 +344,7 @@ public class VmOperation {
             SAFEPOINT_LATCH.store(etla, ETLA.load(tla));
 
             VM_OPERATION.store(etla, Reference.zero());
+            rearmForHandshake(etla);
 
             if (UseCASBasedThreadFreezing) {
                 MUTATOR_STATE.store(etla, THREAD_IN_NATIVE);
@@ -549,6 +560,13 @@ public class VmOperation {
 
                 tracePhase("-- Begin --");
 
+                // A concurrent GC thread must not be frozen in the middle of a piece of work on the heap,
+                // or a garbage collection nested in this operation could not wait for it to stop working.
+                final boolean suspendConcurrentGCThreads = singleThread == null || ConcurrentGCThread.isConcurrentGCThread(singleThread.tla());
+                if (suspendConcurrentGCThreads) {
+                    ConcurrentGCThread.suspendAll();
+                }
+
                 freeze();
 
                 // Ensures updates to safepoint-related control variables are visible to all threads
@@ -580,6 +598,10 @@ public class VmOperation {
 
                 thaw();
 
+                if (suspendConcurrentGCThreads) {
+                    ConcurrentGCThread.resumeAll();
+                }
+
                 tracePhase("-- End --");
             }
 
@@ -844,6 +866,7 @@ public class VmOperation {
         SAFEPOINT_LATCH.store(etla, ETLA.load(tla));
 
         VM_OPERATION.store(etla, Reference.zero());
+        rearmForHandshake(etla);
 
         if (UseCASBasedThreadFreezing) {
             MUTATOR_STATE.store(etla, THREAD_IN_NATIVE);
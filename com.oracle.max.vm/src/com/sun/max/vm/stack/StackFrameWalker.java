@@ -458,14 +458,17 @@ public abstract class StackFrameWalker {
      * instruction.
      */
     private TargetMethod targetMethodForReturnAddress(Word retAddr) {
+        Pointer ip = retAddr.asPointer();
         if (platform().isa.offsetToReturnPC == 0) {
             // Adjust 'retAddr' to ensure it is within the call instruction.
             // This ensures we will always get the correct method, even if
             // the call instruction was the last instruction in a method.
-            return targetMethodFor(retAddr.asPointer().minus(1));
-        } else {
-            return targetMethodFor(retAddr.asPointer());
+            ip = ip.minus(1);
+        }
+        if (purpose == REFERENCE_MAP_PREPARING && StackReferenceMapCache.isEnabled()) {
+            return StackReferenceMapCache.targetMethodFor(ip, this);
         }
+        return targetMethodFor(ip);
     }
 
     /**
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.sun.max.vm.stack;
+
+import com.sun.max.annotate.*;
+import com.sun.max.unsafe.*;
+import com.sun.max.vm.*;
+import com.sun.max.vm.MaxineVM.Phase;
+import com.sun.max.vm.compiler.target.*;
+
+/**
+ * Caches, per return address, the information needed to locate the reference map of a frame during {@linkplain StackReferenceMapPreparer
+ * stack reference map preparation}: the target method containing the return address and the index of its safepoint at that address.
+ * Threads of long running applications are typically stopped in the same few places at each garbage collection, so most lookups
+ * of the code cache and binary searches of safepoint tables done at every collection can be avoided.
+ * <p>
+ * The caches are direct-mapped tables that may be read and updated concurrently by mutator threads preparing their own reference map
+ * and by the GC workers. No synchronization is used: entries are validated against the target method they refer to on every hit,
+ * so a racy update can only cause a miss. The caches must be {@linkplain #flush() flushed} whenever code is moved or evicted from the code cache.
+ */
+public final class StackReferenceMapCache {
+
+    static boolean CacheStackReferenceMaps = true;
+    static {
+        VMOptions.addFieldOption("-XX:", "CacheStackReferenceMaps", StackReferenceMapCache.class,
+            "Cache the target method and safepoint index of return addresses found during stack reference map preparation", Phase.PRISTINE);
+    }
+
+    /**
+     * Number of entries of each cache. Must be a power of two.
+     */
+    private static final int CACHE_SIZE = 4096;
+
+    /**
+     * Target methods containing a code address, indexed by the hash of the address.
+     */
+    private static final TargetMethod[] targetMethods = new TargetMethod[CACHE_SIZE];
+
+    /**
+     * Target methods whose safepoint index for a code address is recorded in {@link #safepointIndexes}, indexed by the hash of the address.
+     */
+    private static final TargetMethod[] safepointMethods = new TargetMethod[CACHE_SIZE];
+
+    private static final int[] safepointIndexes = new int[CACHE_SIZE];
+
+    private StackReferenceMapCache() {
+    }
+
+    @INLINE
+    public static boolean isEnabled() {
+        return CacheStackReferenceMaps && !MaxineVM.isHosted();
+    }
+
+    @INLINE
+    private static int hash(long address) {
+        return (int) (address ^ (address >>> 12)) & (CACHE_SIZE - 1);
+    }
+
+    /**
+     * Gets the target method containing a code address, from the cache if possible, from the walker's code lookup otherwise.
+     *
+     * @param ip an address in the code of a target method or of a native function
+     * @param walker the stack walker to look up the code cache with on a miss
+     * @return the target method containing {@code ip}, or null if {@code ip} isn't in a target method
+     */
+    public static TargetMethod targetMethodFor(Pointer ip, StackFrameWalker walker) {
+        final int index = hash(ip.toLong());
+        TargetMethod tm = targetMethods[index];
+        if (tm != null) {
+            final int pos = tm.posFor(CodePointer.from(ip));
+            if (pos >= 0 && pos < tm.codeLength()) {
+                return tm;
+            }
+        }
+        tm = walker.targetMethodFor(ip);
+        if (tm != null) {
+            targetMethods[index] = tm;
+        }
+        return tm;
+    }
+
+    /**
+     * Gets the index of the safepoint of a target method at a given instruction pointer, from the cache if possible.
+     *
+     * @param tm the target method containing {@code ip}
+     * @param ip the instruction pointer of a frame of {@code tm}
+     * @return the index of the safepoint at {@code ip}, or -1 if there is none
+     */
+    public static int safepointIndexFor(TargetMethod tm, CodePointer ip) {
+        if (!isEnabled()) {
+            return tm.findSafepointIndex(ip);
+        }
+        final int pos = tm.posFor(ip);
+        final Safepoints safepoints = tm.safepoints();
+        if (pos < 0 || safepoints == null) {
+            return tm.findSafepointIndex(ip);
+        }
+        final int index = hash(ip.toLong());
+        if (safepointMethods[index] == tm) {
+            final int safepointIndex = safepointIndexes[index];
+            // The method and the index of an entry may be from different updates: validate the index against the safepoints of tm.
+            if (safepointIndex >= 0 && safepointIndex < safepoints.size() && safepoints.posAt(safepointIndex) == pos) {
+                return safepointIndex;
+            }
+        }
+        final int safepointIndex = tm.findSafepointIndex(pos);
+        if (safepointIndex >= 0) {
+            safepointIndexes[index] = safepointIndex;
+            safepointMethods[index] = tm;
+        }
+        return safepointIndex;
+    }
+
+    /**
+     * Empties the caches. Must be called when target methods are moved or evicted from the code cache, as their code
+     * addresses may then be reused by other target methods.
+     */
+    public static void flush() {
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            targetMethods[i] = null;
+            safepointMethods[i] = null;
+        }
+    }
+}
@@ -281,6 +281,17 @@ public class VmThread {
 
     public JavaMonitor protectedMonitor;
 
+    /**
+     * The head of this thread's magazine of unbound monitors, from which it binds monitors without taking a global lock.
+     * Managed by {@link JavaMonitorManager}.
+     */
+    public JavaMonitor unboundMonitors;
+
+    /**
+     * The number of monitors in {@link #unboundMonitors}.
+     */
+    public int numberOfUnboundMonitors;
+
     private ConditionVariable waitingCondition = ConditionVariableFactory.create();
 
     public final HeapScheme.GCRequest gcRequest = VMConfiguration.vmConfig().heapScheme().createThreadLocalGCRequest(this);
@@ -290,6 +301,12 @@ public class VmThread {
      */
     public final OSMonitor.SuspendMonitor suspendMonitor = new OSMonitor.SuspendMonitor();
 
+    /**
+     * The number of other threads currently accessing the thread locals of this thread, or {@code -1} once this thread
+     * has detached and its thread locals may be freed. See {@link #pinThreadLocals()}.
+     */
+    private final AtomicInteger threadLocalsPins = new AtomicInteger();
+
     /**
      * Marks this as a JVMTI agent thread. These are not visible to calls like {@link Thread#getThreads}.
      */
@@ -807,11 +824,18 @@ public class VmThread {
             thread.javaThread.notifyAll();
         }
 
+        // Wait for other threads to stop accessing the thread locals, which are freed once this thread has detached
+        while (!thread.threadLocalsPins.compareAndSet(0, -1)) {
+            nativeYield();
+        }
+
         thread.traceThreadAfterTermination();
 
         // GC may now reclaim or prepare any of its resources before the thread vanishes forever.
         vmConfig().heapScheme().notifyCurrentThreadDetach();
 
+        JavaMonitorManager.flushUnboundMonitors(thread);
+
         synchronized (VmThreadMap.THREAD_LOCK) {
             // It is the monitor scheme's responsibility to ensure that this thread isn't
             // reset to RUNNABLE if it blocks here.
@@ -1497,11 +1521,66 @@ public class VmThread {
     protected void terminationPending() {
     }
 
+    /**
+     * Determines if parking is implemented with the {@linkplain VmThreadLocal#PARK_EVENT park event} of a thread.
+     * Otherwise, it is implemented with the monitor of the {@code VmThread}.
+     */
+    @FOLD
+    private static boolean useParkEvent() {
+        return platform().os == OS.LINUX;
+    }
+
+    /**
+     * Blocks the current thread on its park event, unless a permit is available. The permit is consumed on return.
+     *
+     * @param parkEvent the address of the current thread's {@link VmThreadLocal#PARK_EVENT} thread local
+     * @param time the absolute time (in milliseconds) or the relative time (in nanoseconds) at which to stop waiting
+     * @param isAbsolute specifies if {@code time} is absolute
+     */
+    private static native void nativePark(Pointer parkEvent, long time, boolean isAbsolute);
+
+    /**
+     * Makes a permit available on a park event, waking the thread parked on it if there is one.
+     *
+     * @return true if a thread was parked on {@code parkEvent}
+     */
+    @C_FUNCTION
+    private static native boolean nativeUnpark(Pointer parkEvent);
+
+    /**
+     * This method parks the current thread according to the semantics of {@link Unsafe#park(boolean, long)}.
+     * @throws InterruptedException
+     */
+    public final void park(boolean isAbsolute, long time) throws InterruptedException {
+        if (!useParkEvent()) {
+            if (isAbsolute) {
+                final long millis = time - System.currentTimeMillis();
+                if (millis > 0) {
+                    park(millis * 1000000);
+                }
+            } else if (time >= 0) {
+                park(time);
+            }
+            return;
+        }
+        if (time < 0 || (isAbsolute && time == 0) || interrupted) {
+            return;
+        }
+        final Thread.State oldState = state;
+        setState(isAbsolute || time > 0 ? Thread.State.TIMED_WAITING : Thread.State.WAITING);
+        nativePark(PARK_EVENT.addressIn(tla), time, isAbsolute);
+        setState(oldState);
+    }
+
     /**
      * This method parks the current thread according to the semantics of {@link Unsafe#park(boolean, long)}.
      * @throws InterruptedException
      */
     public final void park() throws InterruptedException {
+        if (useParkEvent()) {
+            park(false, 0L);
+            return;
+        }
         synchronized (this) {
             if (parkState == 1) {
                 parkState = 0;
@@ -1517,6 +1596,10 @@ public class VmThread {
      * @throws InterruptedException
      */
     public final void park(long wait) throws InterruptedException {
+        if (useParkEvent()) {
+            park(false, wait);
+            return;
+        }
         synchronized (this) {
             if (parkState == 1) {
                 parkState = 0;
@@ -1531,6 +1614,10 @@ public class VmThread {
      * This method unparks the current thread according to the semantics of {@link Unsafe#unpark(Object)}.
      */
     public final void unpark() {
+        if (useParkEvent()) {
+            unparkEvent();
+            return;
+        }
         synchronized (this) {
             if (parkState == 2) {
                 parkState = 1;
@@ -1541,12 +1628,62 @@ public class VmThread {
         }
     }
 
+    /**
+     * Makes a permit available on the park event of this thread.
+     *
+     * @return true if this thread was parked
+     */
+    private boolean unparkEvent() {
+        // The park event is in the thread locals: keep them from being freed under us
+        if (!pinThreadLocals()) {
+            return false;
+        }
+        try {
+            final Pointer tla = this.tla;
+            if (tla.isZero()) {
+                return false;
+            }
+            return nativeUnpark(PARK_EVENT.addressIn(tla));
+        } finally {
+            unpinThreadLocals();
+        }
+    }
+
+    /**
+     * Stops the thread locals of this thread from being freed until {@link #unpinThreadLocals()} is called. This
+     * lets another thread access them without holding a lock. A terminating thread waits for all pins to be released
+     * before it detaches, so a pin must be released promptly once this thread's {@linkplain #state() state} is
+     * {@link Thread.State#TERMINATED}.
+     *
+     * @return {@code false} if this thread has detached, in which case its thread locals must not be accessed
+     */
+    public final boolean pinThreadLocals() {
+        int pins;
+        do {
+            pins = threadLocalsPins.get();
+            if (pins < 0) {
+                return false;
+            }
+        } while (!threadLocalsPins.compareAndSet(pins, pins + 1));
+        return true;
+    }
+
+    /**
+     * Releases a pin on the thread locals of this thread acquired by {@link #pinThreadLocals()}.
+     */
+    public final void unpinThreadLocals() {
+        threadLocalsPins.getAndAdd(-1);
+    }
+
     /**
      * This method interrupts thread by unparking if it is parked.
      *
      * @returns true if successfull, false otherwise.
      */
     public final boolean interrupt0ByUnparking() {
+        if (useParkEvent()) {
+            return unparkEvent();
+        }
         synchronized (this) {
             if (parkState == 2) {
                 parkState = 1;
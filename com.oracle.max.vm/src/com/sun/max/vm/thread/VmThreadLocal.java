@@ -304,6 +304,19 @@ public class VmThreadLocal implements FormatWithToString {
     public static final VmThreadLocal SUSPEND
         = new VmThreadLocal("SUSPEND", false, "Bitset for thread suspension", Nature.Single);
 
+    /**
+     * The park event of the thread, used by {@link VmThread#park()} and {@link VmThread#unpark()}. Only the low 32 bits
+     * are used, as a futex word: 1 if a permit is available, 0 if not and -1 if the thread is parked.
+     */
+    public static final VmThreadLocal PARK_EVENT
+        = new VmThreadLocal("PARK_EVENT", false, "Futex word for parking the thread", Nature.Single);
+
+    /**
+     * The {@link Handshake} performed by a thread on itself when it next traps at a {@linkplain SafepointPoll safepoint}.
+     */
+    public static final VmThreadLocal HANDSHAKE
+        = new VmThreadLocal("HANDSHAKE", true, "Handshake to perform when a safepoint is triggered", Nature.Single);
+
     private static VmThreadLocal[] valuesNeedingInitialization;
 
     /**
@@ -534,7 +547,8 @@ public class VmThreadLocal implements FormatWithToString {
 
         VMLog.scanLogs(tla, wordPointerIndexVisitor);
 
-        Pointer anchor = JavaFrameAnchor.from(tla);
+        // GC worker threads and concurrent GC threads aren't stopped for GC and only hold references to boot or immortal objects on their stack.
+        Pointer anchor = GCWorkerGang.isWorkerThread(tla) || ConcurrentGCThread.isConcurrentGCThread(tla) ? Pointer.zero() : JavaFrameAnchor.from(tla);
         if (!anchor.isZero()) {
             final Pointer lastJavaCallerStackPointer = JavaFrameAnchor.SP.get(anchor);
             final Pointer lowestActiveSlot = LOWEST_ACTIVE_STACK_SLOT_ADDRESS.load(tla);
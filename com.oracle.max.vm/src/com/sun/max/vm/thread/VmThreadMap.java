@@ -433,6 +433,15 @@ public final class VmThreadMap {
         return idMap.get(id);
     }
 
+    /**
+     * Gets an exclusive upper bound of the ids currently assigned to threads. Together with {@link #getVmThreadForID(int)},
+     * this allows iterating over the threads by id, e.g., to distribute them among several workers.
+     * <b>NOTE: The caller must synchronize on {@link #THREAD_LOCK} or run while threads are frozen by a {@link VmOperation}.</b>
+     */
+    public int threadIDLimit() {
+        return idMap.threads.length;
+    }
+
     /**
      * Gets a snapshot of the currently executing threads.
      * JVMTI agent threads can be included optionally.